@@ -261,6 +261,48 @@ JNIEXPORT void JNICALL Java_sun_jvm_hotspot_debugger_linux_LinuxDebuggerLocal_de
   }
 }
 
+/*
+ * Class:     sun_jvm_hotspot_debugger_linux_LinuxDebuggerLocal
+ * Method:    resume0
+ * Signature: ()V
+ */
+JNIEXPORT void JNICALL Java_sun_jvm_hotspot_debugger_linux_LinuxDebuggerLocal_resume0
+  (JNIEnv *env, jobject this_obj) {
+  struct ps_prochandle* ph = get_proc_handle(env, this_obj);
+  if (Presume(ph) != true) {
+    THROW_NEW_DEBUGGER_EXCEPTION("Can't resume the process");
+  }
+}
+
+/*
+ * Class:     sun_jvm_hotspot_debugger_linux_LinuxDebuggerLocal
+ * Method:    suspend0
+ * Signature: ()[I
+ */
+JNIEXPORT jintArray JNICALL Java_sun_jvm_hotspot_debugger_linux_LinuxDebuggerLocal_suspend0
+  (JNIEnv *env, jobject this_obj) {
+  struct ps_prochandle* ph = get_proc_handle(env, this_obj);
+  jintArray array;
+  jint *ids;
+  jboolean isCopy;
+  int n, i;
+
+  if (Psuspend(ph) != true) {
+    THROW_NEW_DEBUGGER_EXCEPTION_("Can't suspend the process", 0);
+  }
+
+  n = get_num_threads(ph);
+  array = (*env)->NewIntArray(env, n);
+  CHECK_EXCEPTION_(0);
+  ids = (*env)->GetIntArrayElements(env, array, &isCopy);
+  CHECK_EXCEPTION_(0);
+  for (i = 0; i < n; i++) {
+    ids[i] = (jint) get_lwp_id(ph, i);
+  }
+  (*env)->ReleaseIntArrayElements(env, array, ids, 0);
+  return array;
+}
+
 /*
  * Class:     sun_jvm_hotspot_debugger_linux_LinuxDebuggerLocal
  * Method:    lookupByName0
@@ -330,6 +372,100 @@ JNIEXPORT jbyteArray JNICALL Java_sun_jvm_hotspot_debugger_linux_LinuxDebuggerLo
   return (err == PS_OK)? array : 0;
 }
 
+/*
+ * Class:     sun_jvm_hotspot_debugger_linux_LinuxDebuggerLocal
+ * Method:    readPagesFromProcess0
+ * Signature: ([JJ)[[B
+ */
+JNIEXPORT jobjectArray JNICALL Java_sun_jvm_hotspot_debugger_linux_LinuxDebuggerLocal_readPagesFromProcess0
+  (JNIEnv *env, jobject this_obj, jlongArray addrs, jlong pageSize) {
+
+  jint count, i;
+  jlong *addrPtr;
+  jboolean isCopy;
+  jclass byteArrayClass;
+  jobjectArray result;
+  jbyteArray page;
+  uintptr_t *pageAddrs;
+  char *buf;
+  bool *ok;
+
+  count = (*env)->GetArrayLength(env, addrs);
+  pageAddrs = (uintptr_t *) malloc(count * sizeof(uintptr_t));
+  ok = (bool *) malloc(count * sizeof(bool));
+  buf = (char *) malloc(count * (size_t) pageSize);
+  if (pageAddrs == NULL || ok == NULL || buf == NULL) {
+    free(pageAddrs);
+    free(ok);
+    free(buf);
+    THROW_NEW_DEBUGGER_EXCEPTION_("can't allocate memory for pages", 0);
+  }
+
+  addrPtr = (*env)->GetLongArrayElements(env, addrs, &isCopy);
+  if (addrPtr == NULL) {
+    free(pageAddrs);
+    free(ok);
+    free(buf);
+    return 0;
+  }
+  for (i = 0; i < count; i++) {
+    pageAddrs[i] = (uintptr_t) addrPtr[i];
+  }
+  (*env)->ReleaseLongArrayElements(env, addrs, addrPtr, JNI_ABORT);
+
+  read_blocks(get_proc_handle(env, this_obj), pageAddrs, count, (size_t) pageSize, buf, ok);
+
+  result = NULL;
+  byteArrayClass = (*env)->FindClass(env, "[B");
+  if (byteArrayClass != NULL) {
+    result = (*env)->NewObjectArray(env, count, byteArrayClass, NULL);
+  }
+  for (i = 0; result != NULL && i < count; i++) {
+    if (ok[i]) {
+      page = (*env)->NewByteArray(env, (jsize) pageSize);
+      if (page == NULL) {
+        result = NULL;
+        break;
+      }
+      (*env)->SetByteArrayRegion(env, page, 0, (jsize) pageSize, (jbyte *) (buf + i * pageSize));
+      (*env)->SetObjectArrayElement(env, result, i, page);
+      (*env)->DeleteLocalRef(env, page);
+    }
+  }
+  free(pageAddrs);
+  free(ok);
+  free(buf);
+  return result;
+}
+
+/*
+ * Class:     sun_jvm_hotspot_debugger_linux_LinuxDebuggerLocal
+ * Method:    getCoreSegments0
+ * Signature: ()[J
+ */
+JNIEXPORT jlongArray JNICALL Java_sun_jvm_hotspot_debugger_linux_LinuxDebuggerLocal_getCoreSegments0
+  (JNIEnv *env, jobject this_obj) {
+
+  struct ps_prochandle* ph = get_proc_handle(env, this_obj);
+  jlongArray array;
+  jlong *segs;
+  jboolean isCopy;
+  int count;
+
+  count = get_core_segments(ph, NULL);
+  if (count < 0) {
+    THROW_NEW_DEBUGGER_EXCEPTION_("not attached to a core dump", 0);
+  }
+
+  array = (*env)->NewLongArray(env, 3 * count);
+  CHECK_EXCEPTION_(0);
+  segs = (*env)->GetLongArrayElements(env, array, &isCopy);
+  CHECK_EXCEPTION_(0);
+  get_core_segments(ph, (uint64_t *) segs);
+  (*env)->ReleaseLongArrayElements(env, array, segs, 0);
+  return array;
+}
+
 #if defined(i386) || defined(amd64) || defined(sparc) || defined(sparcv9)
 JNIEXPORT jlongArray JNICALL Java_sun_jvm_hotspot_debugger_linux_LinuxDebuggerLocal_getThreadIntegerRegisterSet0
   (JNIEnv *env, jobject this_obj, jint lwp_id) {
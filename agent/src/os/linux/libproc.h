@@ -90,12 +90,32 @@ struct ps_prochandle* Pgrab_core(const char* execfile, const char* corefile);
 // release a process or core
 void Prelease(struct ps_prochandle* ph);
 
+// let the threads of a process grabbed by Pgrab run again. the process
+// stays grabbed: its libraries and symbols are kept and its memory can
+// still be read, except when it is read with ptrace
+bool Presume(struct ps_prochandle* ph);
+
+// stop the threads of a process resumed by Presume again
+bool Psuspend(struct ps_prochandle* ph);
+
 // functions not directly available in Solaris libproc
 
 // initialize libproc (call this only once per app)
 // pass true to make library verbose
 bool init_libproc(bool verbose);
 
+// read "count" blocks of "size" bytes each from the addresses in "addrs" into
+// consecutive parts of "buf". ok[i] tells whether the i'th block could be read.
+// returns the number of blocks that were read
+int read_blocks(struct ps_prochandle* ph, const uintptr_t* addrs, int count,
+                size_t size, char* buf, bool* ok);
+
+// get the segments of a core dump that are read from the core file itself.
+// stores file offset, virtual address and size of each segment in 'segs'
+// (three entries per segment) if it is not NULL, and returns the number
+// of segments. returns -1 if 'ph' is not a core dump
+int get_core_segments(struct ps_prochandle* ph, uint64_t* segs);
+
 // get number of threads
 int get_num_threads(struct ps_prochandle* ph);
 
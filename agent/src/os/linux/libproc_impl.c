@@ -139,6 +139,13 @@ static void destroy_thread_info(struct ps_prochandle* ph) {
    }
 }
 
+// forget the threads of ps_prochandle
+void clear_thread_info(struct ps_prochandle* ph) {
+   destroy_thread_info(ph);
+   ph->threads = NULL;
+   ph->num_threads = 0;
+}
+
 // ps_prochandle cleanup
 
 // ps_prochandle cleanup
@@ -406,6 +413,21 @@ ps_err_e ps_pdread(struct ps_prochandle *ph, psaddr_t  addr,
   return ph->ops->p_pread(ph, (uintptr_t) addr, buf, size)? PS_OK: PS_ERR;
 }
 
+int read_blocks(struct ps_prochandle* ph, const uintptr_t* addrs, int count,
+                size_t size, char* buf, bool* ok) {
+  int i, nread = 0;
+  if (ph->ops->p_pread_blocks != NULL) {
+    return ph->ops->p_pread_blocks(ph, addrs, count, size, buf, ok);
+  }
+  for (i = 0; i < count; i++) {
+    ok[i] = ph->ops->p_pread(ph, addrs[i], buf + i * size, size);
+    if (ok[i]) {
+      nread++;
+    }
+  }
+  return nread;
+}
+
 // write "size" bytes of data to debuggee at address "addr"
 ps_err_e ps_pdwrite(struct ps_prochandle *ph, psaddr_t addr,
                     const void *buf, size_t size) {
@@ -67,6 +67,9 @@ typedef struct ps_prochandle_ops {
    // read from debuggee
    bool (*p_pread)(struct ps_prochandle *ph,
             uintptr_t addr, char *buf, size_t size);
+   // read several blocks of the same size from debuggee, may be NULL
+   int (*p_pread_blocks)(struct ps_prochandle *ph, const uintptr_t* addrs,
+            int count, size_t size, char *buf, bool* ok);
    // write into debuggee
    bool (*p_pwrite)(struct ps_prochandle *ph,
             uintptr_t addr, const char *buf , size_t size);
@@ -100,6 +103,8 @@ struct ps_prochandle {
    int                num_threads;
    thread_info*       threads;   // head of thread list
    struct core_data*  core;      // data only used for core dumps, NULL for process
+   int                mem_fd;    // file descriptor of /proc/<pid>/mem, -1 if not open, only used for process
+   int                read_mode; // how process memory is read, see ps_proc.c, only used for process
 };
 
 int pathmap_open(const char* name);
@@ -123,6 +128,9 @@ lib_info* add_lib_info_fd(struct ps_prochandle* ph, const char* libname, int fd,
 // adds a new thread to threads list, returns NULL on failure
 thread_info* add_thread_info(struct ps_prochandle* ph, pthread_t pthread_id, lwpid_t lwp_id);
 
+// forget all threads of ps_prochandle
+void clear_thread_info(struct ps_prochandle* ph);
+
 // a test for ELF signature without using libelf
 bool is_elf_file(int fd);
 
@@ -512,6 +512,28 @@ static bool core_read_data(struct ps_prochandle* ph, uintptr_t addr, char *buf,
    }
 }
 
+int get_core_segments(struct ps_prochandle* ph, uint64_t* segs) {
+   int i, count = 0;
+   if (ph->core == NULL || ph->core->map_array == NULL) {
+      return -1;
+   }
+   // segments of libraries and of the class sharing archive are read from
+   // their own files; library segments may have replaced core segments.
+   for (i = 0; i < ph->core->num_maps; i++) {
+      map_info* mp = ph->core->map_array[i];
+      if (mp->fd != ph->core->core_fd) {
+         continue;
+      }
+      if (segs != NULL) {
+         segs[3 * count]     = (uint64_t) mp->offset;
+         segs[3 * count + 1] = (uint64_t) mp->vaddr;
+         segs[3 * count + 2] = (uint64_t) mp->memsz;
+      }
+      count++;
+   }
+   return count;
+}
+
 // null implementation for write
 static bool core_write_data(struct ps_prochandle* ph,
                              uintptr_t addr, const char *buf , size_t size) {
@@ -27,9 +27,13 @@
 #include <string.h>
 #include <signal.h>
 #include <errno.h>
+#include <fcntl.h>
+#include <unistd.h>
 #include <sys/types.h>
 #include <sys/wait.h>
 #include <sys/ptrace.h>
+#include <sys/syscall.h>
+#include <sys/uio.h>
 #include "libproc_impl.h"
 
 #if defined(x86_64) && !defined(amd64)
@@ -51,12 +55,99 @@ static inline uintptr_t align(uintptr_t ptr, size_t size) {
 // ptrace functions
 // ---------------------------------------------
 
+// Ways of reading the memory of the target process, from fastest to slowest.
+// The read mode of a process starts with the fastest mode (or the one chosen
+// with LIBSAPROC_READ_MODE) and falls back to the next one if the kernel does
+// not support it. Word-wise ptrace is always available.
+enum {
+  READ_PROCESS_VM_READV = 0, // process_vm_readv(2), Linux 3.2 and later
+  READ_PROC_MEM         = 1, // pread(2) on /proc/<pid>/mem
+  READ_PTRACE           = 2  // ptrace(PTRACE_PEEKDATA), one word at a time
+};
+
+// maximum number of blocks read with one process_vm_readv call
+#define MAX_READ_BLOCKS 64
+
+static int initial_read_mode() {
+  const char* mode = getenv("LIBSAPROC_READ_MODE");
+  if (mode == NULL || strcmp(mode, "readv") == 0) {
+    return READ_PROCESS_VM_READV;
+  } else if (strcmp(mode, "procmem") == 0) {
+    return READ_PROC_MEM;
+  } else if (strcmp(mode, "ptrace") == 0) {
+    return READ_PTRACE;
+  }
+  print_debug("unknown LIBSAPROC_READ_MODE %s, using readv\n", mode);
+  return READ_PROCESS_VM_READV;
+}
+
+static ssize_t vm_readv(pid_t pid, const struct iovec* local, unsigned long liovcnt,
+                        const struct iovec* remote, unsigned long riovcnt) {
+#ifdef SYS_process_vm_readv
+  return syscall(SYS_process_vm_readv, pid, local, liovcnt, remote, riovcnt, 0);
+#else
+  errno = ENOSYS;
+  return -1;
+#endif
+}
+
+// process_vm_readv fails with ENOSYS on old kernels and with EPERM if
+// it is restricted by a security module. Don't try it again in that case.
+static bool vm_readv_unusable(struct ps_prochandle* ph) {
+  if (errno == ENOSYS || errno == EPERM) {
+    print_debug("process_vm_readv failed with errno %d, using /proc/%d/mem\n", errno, ph->pid);
+    ph->read_mode = READ_PROC_MEM;
+    return true;
+  }
+  return false;
+}
+
+// read as much as possible of "size" bytes from "addr" with the bulk read modes.
+// returns the number of bytes read, which is less than "size" if the range
+// is not fully mapped or if only ptrace can be used.
+static size_t bulk_read_data(struct ps_prochandle* ph, uintptr_t addr, char *buf, size_t size) {
+  size_t done = 0;
+  ssize_t n;
+
+  if (ph->read_mode == READ_PROCESS_VM_READV) {
+    while (done < size) {
+      struct iovec local, remote;
+      local.iov_base = buf + done;
+      local.iov_len = size - done;
+      remote.iov_base = (void*) (addr + done);
+      remote.iov_len = size - done;
+      n = vm_readv(ph->pid, &local, 1, &remote, 1);
+      if (n <= 0) {
+        if (n < 0 && vm_readv_unusable(ph)) {
+          break;
+        }
+        return done;
+      }
+      done += n;
+    }
+  }
+
+  if (ph->read_mode <= READ_PROC_MEM && ph->mem_fd >= 0) {
+    while (done < size) {
+      n = pread(ph->mem_fd, buf + done, size - done, (off_t) (addr + done));
+      if (n < 0 && errno == EINTR) {
+        continue;
+      }
+      if (n <= 0) {
+        break;
+      }
+      done += n;
+    }
+  }
+  return done;
+}
+
 // read "size" bytes of data from "addr" within the target process.
-// unlike the standard ptrace() function, process_read_data() can handle
+// unlike the standard ptrace() function, ptrace_read_data() can handle
 // unaligned address - alignment check, if required, should be done
-// before calling process_read_data.
+// before calling ptrace_read_data.
 
-static bool process_read_data(struct ps_prochandle* ph, uintptr_t addr, char *buf, size_t size) {
+static bool ptrace_read_data(struct ps_prochandle* ph, uintptr_t addr, char *buf, size_t size) {
   long rslt;
   size_t i, words;
   uintptr_t end_addr = addr + size;
@@ -105,6 +196,64 @@ static bool process_read_data(struct ps_prochandle* ph, uintptr_t addr, char *bu
   return true;
 }
 
+// read "size" bytes of data from "addr" within the target process, using
+// word-wise ptrace only for the part that the bulk read modes could not read.
+static bool process_read_data(struct ps_prochandle* ph, uintptr_t addr, char *buf, size_t size) {
+  size_t done = 0;
+  if (ph->read_mode != READ_PTRACE) {
+    done = bulk_read_data(ph, addr, buf, size);
+    if (done == size) {
+      return true;
+    }
+  }
+  return ptrace_read_data(ph, addr + done, buf + done, size - done);
+}
+
+// read "count" blocks of "size" bytes, up to MAX_READ_BLOCKS of them with a
+// single process_vm_readv call. A block that can't be read that way is read
+// with process_read_data so that partially mapped blocks behave as before.
+static int process_read_blocks(struct ps_prochandle* ph, const uintptr_t* addrs, int count,
+                               size_t size, char *buf, bool* ok) {
+  struct iovec local[MAX_READ_BLOCKS];
+  struct iovec remote[MAX_READ_BLOCKS];
+  int i = 0, j, n, full, nread = 0;
+  ssize_t rslt;
+
+  while (i < count && ph->read_mode == READ_PROCESS_VM_READV) {
+    n = count - i < MAX_READ_BLOCKS ? count - i : MAX_READ_BLOCKS;
+    for (j = 0; j < n; j++) {
+      local[j].iov_base = buf + (i + j) * size;
+      local[j].iov_len = size;
+      remote[j].iov_base = (void*) addrs[i + j];
+      remote[j].iov_len = size;
+    }
+    rslt = vm_readv(ph->pid, local, n, remote, n);
+    if (rslt < 0) {
+      if (vm_readv_unusable(ph)) {
+        break;
+      }
+      rslt = 0;
+    }
+    // the transfer stops at the first block that is not mapped
+    full = rslt / size;
+    for (j = 0; j < full; j++) {
+      ok[i + j] = true;
+    }
+    nread += full;
+    i += full;
+    if (full < n) {
+      ok[i] = process_read_data(ph, addrs[i], buf + i * size, size);
+      nread += ok[i] ? 1 : 0;
+      i++;
+    }
+  }
+  for (; i < count; i++) {
+    ok[i] = process_read_data(ph, addrs[i], buf + i * size, size);
+    nread += ok[i] ? 1 : 0;
+  }
+  return nread;
+}
+
 // null implementation for write
 static bool process_write_data(struct ps_prochandle* ph,
                              uintptr_t addr, const char *buf , size_t size) {
@@ -317,12 +466,16 @@ static void detach_all_pids(struct ps_prochandle* ph) {
 }
 
 static void process_cleanup(struct ps_prochandle* ph) {
+  if (ph->mem_fd >= 0) {
+    close(ph->mem_fd);
+  }
   detach_all_pids(ph);
 }
 
 static ps_prochandle_ops process_ops = {
   .release=  process_cleanup,
   .p_pread=  process_read_data,
+  .p_pread_blocks= process_read_blocks,
   .p_pwrite= process_write_data,
   .get_lwp_regs= process_get_lwp_regs
 };
@@ -344,6 +497,16 @@ struct ps_prochandle* Pgrab(pid_t pid) {
 
   // initialize ps_prochandle
   ph->pid = pid;
+  ph->mem_fd = -1;
+  ph->read_mode = initial_read_mode();
+  if (ph->read_mode != READ_PTRACE) {
+    // used if process_vm_readv is not available
+    char fname[32];
+    snprintf(fname, sizeof(fname), "/proc/%d/mem", pid);
+    if ((ph->mem_fd = open(fname, O_RDONLY)) < 0) {
+      print_debug("can't open %s, using ptrace to read memory\n", fname);
+    }
+  }
 
   // initialize vtable
   ph->ops = &process_ops;
@@ -369,3 +532,49 @@ struct ps_prochandle* Pgrab(pid_t pid) {
   }
   return ph;
 }
+
+// let the threads of the process run again. Detaching from them is the
+// only way to do so without also reporting the signals they receive
+bool Presume(struct ps_prochandle* ph) {
+  if (ph->core != NULL) {
+    print_debug("can't resume a core dump\n");
+    return false;
+  }
+  detach_all_pids(ph);
+  return true;
+}
+
+// stop the threads of a resumed process again. Threads may have started
+// or exited while the process was running, so the thread list is read
+// anew, in the same order as by Pgrab
+bool Psuspend(struct ps_prochandle* ph) {
+  thread_info** link;
+  thread_info* thr;
+
+  if (ph->core != NULL) {
+    print_debug("can't suspend a core dump\n");
+    return false;
+  }
+  if (ptrace_attach(ph->pid) != true) {
+    return false;
+  }
+
+  clear_thread_info(ph);
+  if (read_thread_info(ph, add_new_thread) != true) {
+    ptrace_detach(ph->pid);
+    return false;
+  }
+
+  link = &ph->threads;
+  while ((thr = *link) != NULL) {
+    if (ph->pid != thr->lwp_id && ptrace_attach(thr->lwp_id) != true) {
+      // the thread has most likely exited after the list was read
+      *link = thr->next;
+      ph->num_threads--;
+      free(thr);
+    } else {
+      link = &thr->next;
+    }
+  }
+  return true;
+}
@@ -46,11 +46,23 @@ struct elf_symbol {
   uintptr_t size;
 };
 
+// entry of the address index of a symtab, see build_address_index
+struct addr_entry {
+  uintptr_t start;
+  uintptr_t end;
+  // largest end of this and all preceding entries
+  uintptr_t max_end;
+  struct elf_symbol *sym;
+};
+
 typedef struct symtab {
   char *strs;
   size_t num_symbols;
   struct elf_symbol *symbols;
   struct hsearch_data *hash_table;
+  // symbols with a non-empty address range, sorted by start address
+  size_t num_addrs;
+  struct addr_entry *addrs;
 } symtab_t;
 
 
@@ -254,6 +266,57 @@ static int open_file_from_debug_link(const char *name,
 
 static struct symtab* build_symtab_internal(int fd, const char *filename, bool try_debuginfo);
 
+static int compare_addr_entries(const void *p1, const void *p2) {
+  const struct addr_entry *e1 = (const struct addr_entry *)p1;
+  const struct addr_entry *e2 = (const struct addr_entry *)p2;
+  if (e1->start != e2->start) {
+    return (e1->start < e2->start) ? -1 : 1;
+  }
+  // keep symbol table order for symbols at the same address
+  return (e1->sym < e2->sym) ? -1 : (e1->sym > e2->sym);
+}
+
+// Sort the symbols by address so that nearest_symbol can use binary
+// search instead of scanning the whole table. Symbols may overlap, so
+// each entry also records the largest end address up to it; that
+// tells nearest_symbol how far back a containing symbol can start.
+// If this fails nearest_symbol falls back to the linear scan.
+static void build_address_index(struct symtab* symtab) {
+  size_t i, n = 0;
+  uintptr_t max_end = 0;
+
+  for (i = 0; i < symtab->num_symbols; i++) {
+    if (symtab->symbols[i].name != NULL && symtab->symbols[i].size > 0) {
+      n++;
+    }
+  }
+  if (n == 0) {
+    return;
+  }
+  symtab->addrs = (struct addr_entry *)calloc(n, sizeof(struct addr_entry));
+  if (symtab->addrs == NULL) {
+    return;
+  }
+  n = 0;
+  for (i = 0; i < symtab->num_symbols; i++) {
+    struct elf_symbol* sym = &(symtab->symbols[i]);
+    if (sym->name != NULL && sym->size > 0) {
+      symtab->addrs[n].start = sym->offset;
+      symtab->addrs[n].end   = sym->offset + sym->size;
+      symtab->addrs[n].sym   = sym;
+      n++;
+    }
+  }
+  qsort(symtab->addrs, n, sizeof(struct addr_entry), compare_addr_entries);
+  for (i = 0; i < n; i++) {
+    if (symtab->addrs[i].end > max_end) {
+      max_end = symtab->addrs[i].end;
+    }
+    symtab->addrs[i].max_end = max_end;
+  }
+  symtab->num_addrs = n;
+}
+
 /* Look for a ".gnu_debuglink" section.  If one exists, try to open a
    suitable debuginfo file and read a symbol table from it.  */
 static struct symtab *build_symtab_from_debug_link(const char *name,
@@ -432,6 +495,7 @@ static struct symtab* build_symtab_internal(int fd, const char *filename, bool t
 
         hsearch_r(item, ENTER, &ret, symtab->hash_table);
       }
+      build_address_index(symtab);
     }
   }
 
@@ -497,6 +561,7 @@ void destroy_symtab(struct symtab* symtab) {
   if (!symtab) return;
   if (symtab->strs) free(symtab->strs);
   if (symtab->symbols) free(symtab->symbols);
+  if (symtab->addrs) free(symtab->addrs);
   if (symtab->hash_table) {
      hdestroy_r(symtab->hash_table);
      free(symtab->hash_table);
@@ -532,6 +597,30 @@ const char* nearest_symbol(struct symtab* symtab, uintptr_t offset,
                            uintptr_t* poffset) {
   int n = 0;
   if (!symtab) return NULL;
+  if (symtab->addrs != NULL) {
+    // find the last symbol starting at or below offset
+    size_t lo = 0, hi = symtab->num_addrs;
+    struct elf_symbol* best = NULL;
+    while (lo < hi) {
+      size_t mid = lo + (hi - lo) / 2;
+      if (symtab->addrs[mid].start <= offset) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    // walk back over the symbols which may still contain offset and
+    // pick the first one in the symbol table, as the linear scan did
+    while (lo > 0 && symtab->addrs[lo - 1].max_end > offset) {
+      struct addr_entry* e = &(symtab->addrs[--lo]);
+      if (offset < e->end && (best == NULL || e->sym < best)) {
+        best = e->sym;
+      }
+    }
+    if (best == NULL) return NULL;
+    if (poffset) *poffset = (offset - best->offset);
+    return best->name;
+  }
   for (; n < symtab->num_symbols; n++) {
      struct elf_symbol* sym = &(symtab->symbols[n]);
      if (sym->name != NULL &&
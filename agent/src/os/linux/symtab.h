@@ -43,7 +43,8 @@ uintptr_t search_symbol(struct symtab* symtab, uintptr_t base,
                       const char *sym_name, int *sym_size);
 
 // look for nearest symbol for a given offset (not address - base
-// subtraction done by caller
+// subtraction done by caller. Uses binary search over the symbols
+// sorted by address when the symbol table was built.
 const char* nearest_symbol(struct symtab* symtab, uintptr_t offset,
                       uintptr_t* poffset);
 
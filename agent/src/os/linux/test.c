@@ -24,7 +24,82 @@
 
 #include <stdio.h>
 #include <stdlib.h>
+#include <sys/time.h>
+#include <unistd.h>
 #include "libproc.h"
+#include "proc_service.h"
+
+// Times the symbol lookups a mixed mode stack dump makes: the pc and
+// the top words of the stack of every thread are looked up, the
+// latter standing in for the return addresses of native frames
+static void time_symbol_lookups(struct ps_prochandle* ph) {
+#if defined(amd64) || defined(i386)
+   const int words_per_thread = 32;
+   const int iterations = 10;
+   int n = get_num_threads(ph);
+   uintptr_t* addrs = (uintptr_t*) calloc((size_t) n * (words_per_thread + 1), sizeof(uintptr_t));
+   int i, iter, count = 0, found = 0;
+   struct timeval start, end;
+   double secs;
+
+   if (addrs == NULL) return;
+   for (i = 0; i < n; i++) {
+      struct user_regs_struct regs;
+      uintptr_t sp;
+      if (! get_lwp_regs(ph, get_lwp_id(ph, i), &regs)) continue;
+#ifdef amd64
+      addrs[count++] = regs.rip;
+      sp = regs.rsp;
+#else
+      addrs[count++] = regs.eip;
+      sp = regs.esp;
+#endif
+      if (ps_pdread(ph, (psaddr_t) sp, &addrs[count],
+                    words_per_thread * sizeof(uintptr_t)) == PS_OK) {
+         count += words_per_thread;
+      }
+   }
+
+   gettimeofday(&start, NULL);
+   for (iter = 0; iter < iterations; iter++) {
+      for (i = 0; i < count; i++) {
+         uintptr_t offset;
+         if (symbol_for_pc(ph, addrs[i], &offset) != NULL) found++;
+      }
+   }
+   gettimeofday(&end, NULL);
+   secs = (end.tv_sec - start.tv_sec) + (end.tv_usec - start.tv_usec) / 1e6;
+   printf("%d threads, %d of %d addresses in a symbol, %.2f us per lookup\n",
+          n, found / iterations, count, secs * 1e6 / ((double) count * iterations));
+   free(addrs);
+#endif
+}
+
+// Times how long the process is stopped when it is resumed and
+// suspended repeatedly, as by the stack sampler
+static void time_suspend_resume(struct ps_prochandle* ph) {
+   const int iterations = 20;
+   struct timeval start, end;
+   double secs = 0, max = 0;
+   int iter;
+
+   for (iter = 0; iter < iterations; iter++) {
+      double t;
+      if (! Presume(ph)) return;
+      usleep(10000);
+      gettimeofday(&start, NULL);
+      if (! Psuspend(ph)) {
+         printf("can't suspend the process again\n");
+         return;
+      }
+      gettimeofday(&end, NULL);
+      t = (end.tv_sec - start.tv_sec) + (end.tv_usec - start.tv_usec) / 1e6;
+      secs += t;
+      if (t > max) max = t;
+   }
+   printf("%d threads, %.1f us per suspend, %.1f us at most\n",
+          get_num_threads(ph), secs * 1e6 / iterations, max * 1e6);
+}
 
 int main(int argc, char** argv) {
    struct ps_prochandle* ph;
@@ -50,6 +125,10 @@ int main(int argc, char** argv) {
    }
 
    if (ph) {
+      time_symbol_lookups(ph);
+      if (argc == 2) {
+         time_suspend_resume(ph);
+      }
       Prelease(ph);
       return 0;
    } else {
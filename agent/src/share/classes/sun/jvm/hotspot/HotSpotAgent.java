@@ -24,7 +24,10 @@
 
 package sun.jvm.hotspot;
 
+import java.io.IOException;
+import java.net.InetAddress;
 import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 
@@ -44,6 +47,8 @@ import sun.jvm.hotspot.debugger.proc.ProcDebuggerLocal;
 import sun.jvm.hotspot.debugger.remote.RemoteDebugger;
 import sun.jvm.hotspot.debugger.remote.RemoteDebuggerClient;
 import sun.jvm.hotspot.debugger.remote.RemoteDebuggerServer;
+import sun.jvm.hotspot.debugger.remote.SocketDebuggerServer;
+import sun.jvm.hotspot.debugger.remote.SocketRemoteDebugger;
 import sun.jvm.hotspot.debugger.windbg.WindbgDebuggerLocal;
 import sun.jvm.hotspot.runtime.VM;
 import sun.jvm.hotspot.types.TypeDataBase;
@@ -91,6 +96,21 @@ public class HotSpotAgent {
     // All needed information for server side
     private String serverID;
 
+    // If this property is set the server listens for
+    // SocketRemoteDebugger clients on the given port instead of
+    // registering with RMI; clients then connect with a
+    // debugServerID of "socket:host:port". Both sides need the same
+    // secret in SocketDebuggerServer.SECRET_PROPERTY. The server only
+    // listens on the loopback interface unless SOCKET_ADDRESS_PROPERTY
+    // names another address ("*" for all interfaces).
+    private static final String SOCKET_PORT_PROPERTY =
+        "sun.jvm.hotspot.HotSpotAgent.socketPort";
+    private static final String SOCKET_ADDRESS_PROPERTY =
+        "sun.jvm.hotspot.HotSpotAgent.socketAddress";
+    private static final String SOCKET_PREFIX = "socket:";
+    private SocketDebuggerServer socketServer;
+    private SocketRemoteDebugger socketClient;
+
     private String[] jvmLibNames;
 
     static void showUsage() {
@@ -275,14 +295,33 @@ public class HotSpotAgent {
         Debugger dbg = null;
         DebuggerException ex = null;
         if (isServer) {
-            try {
-                RMIHelper.unbind(serverID);
-            }
-            catch (DebuggerException de) {
-                ex = de;
+            if (socketServer != null) {
+                try {
+                    socketServer.close();
+                }
+                catch (IOException e) {
+                    ex = new DebuggerException(e);
+                }
+                socketServer = null;
+            } else {
+                try {
+                    RMIHelper.unbind(serverID);
+                }
+                catch (DebuggerException de) {
+                    ex = de;
+                }
             }
             dbg = debugger;
         } else {
+            if (socketClient != null) {
+                try {
+                    socketClient.close();
+                }
+                catch (IOException e) {
+                    ex = new DebuggerException(e);
+                }
+                socketClient = null;
+            }
             if (startupMode != REMOTE_MODE) {
                 dbg = debugger;
             }
@@ -353,7 +392,34 @@ public class HotSpotAgent {
                 catch (RemoteException rem) {
                     throw new DebuggerException(rem);
                 }
-                RMIHelper.rebind(serverID, remote);
+                Integer socketPort = Integer.getInteger(SOCKET_PORT_PROPERTY);
+                if (socketPort != null) {
+                    try {
+                        // Served by hand, so RMI needn't listen for it
+                        UnicastRemoteObject.unexportObject(remote, true);
+                        String secret = System.getProperty(SocketDebuggerServer.SECRET_PROPERTY);
+                        if (secret == null) {
+                            throw new DebuggerException("The socket debug server needs a secret in the " +
+                                                        SocketDebuggerServer.SECRET_PROPERTY + " property");
+                        }
+                        String address = System.getProperty(SOCKET_ADDRESS_PROPERTY);
+                        InetAddress bindAddress;
+                        if (address == null) {
+                            bindAddress = InetAddress.getLoopbackAddress();
+                        } else if (address.equals("*")) {
+                            bindAddress = null;
+                        } else {
+                            bindAddress = InetAddress.getByName(address);
+                        }
+                        socketServer = new SocketDebuggerServer(remote, bindAddress, socketPort.intValue(), secret);
+                    }
+                    catch (IOException e) {
+                        throw new DebuggerException(e);
+                    }
+                    socketServer.start();
+                } else {
+                    RMIHelper.rebind(serverID, remote);
+                }
             }
         } else {
             //
@@ -514,8 +580,18 @@ public class HotSpotAgent {
     }
 
     private void connectRemoteDebugger() throws DebuggerException {
-        RemoteDebugger remote =
-        (RemoteDebugger) RMIHelper.lookup(debugServerID);
+        RemoteDebugger remote;
+        if (debugServerID.startsWith(SOCKET_PREFIX)) {
+            try {
+                socketClient = SocketRemoteDebugger.connect(debugServerID.substring(SOCKET_PREFIX.length()));
+            }
+            catch (IOException e) {
+                throw new DebuggerException(e);
+            }
+            remote = socketClient;
+        } else {
+            remote = (RemoteDebugger) RMIHelper.lookup(debugServerID);
+        }
         debugger = new RemoteDebuggerClient(remote);
         machDesc = ((RemoteDebuggerClient) debugger).getMachineDescription();
         os = debugger.getOS();
@@ -46,10 +46,14 @@ import sun.jvm.hotspot.utilities.*;
 public class HotSpotTypeDataBase extends BasicTypeDataBase {
   private Debugger symbolLookup;
   private String[] jvmLibNames;
+  // Records the tables as they are read, or holds them if they were
+  // read before; only used by the constructor
+  private HotSpotTypeDataBaseCache cache;
   private static final int UNINITIALIZED_SIZE = -1;
   private static final int C_INT8_SIZE  = 1;
   private static final int C_INT32_SIZE = 4;
   private static final int C_INT64_SIZE = 8;
+  private static final String OPAQUE_NAME = "<opaque>";
   private static int pointerSize = UNINITIALIZED_SIZE;
 
   private static final boolean DEBUG;
@@ -83,11 +87,27 @@ public class HotSpotTypeDataBase extends BasicTypeDataBase {
     this.symbolLookup = symbolLookup;
     this.jvmLibNames = jvmLibNames;
 
-    readVMTypes();
-    initializePrimitiveTypes();
-    readVMStructs();
-    readVMIntConstants();
-    readVMLongConstants();
+    cache = HotSpotTypeDataBaseCache.forTarget(symbolLookup, jvmLibNames, machDesc);
+    if (cache != null && cache.load() && cacheMatchesProcess()) {
+      if (DEBUG) {
+        System.err.println("Reading type database from " + cache.getFile());
+      }
+      readFromCache();
+    } else {
+      if (cache != null) {
+        // Start over with an empty cache and record what is read
+        cache = HotSpotTypeDataBaseCache.forTarget(symbolLookup, jvmLibNames, machDesc);
+      }
+      readVMTypes();
+      initializePrimitiveTypes();
+      readVMStructs();
+      readVMIntConstants();
+      readVMLongConstants();
+      if (cache != null) {
+        cache.store();
+      }
+    }
+    cache = null;
     readExternalDefinitions();
   }
 
@@ -185,16 +205,24 @@ public class HotSpotTypeDataBase extends BasicTypeDataBase {
         boolean isUnsigned    = (entryAddr.getCIntegerAt(typeEntryIsUnsignedOffset, C_INT32_SIZE, false) != 0);
         long size             = entryAddr.getCIntegerAt(typeEntrySizeOffset, C_INT64_SIZE, true);
 
-        createType(typeName, superclassName, isOopType, isIntegerType, isUnsigned, size);
-        if (pointerSize == UNINITIALIZED_SIZE && typeName.equals("void*")) {
-          pointerSize = (int)size;
+        if (cache != null) {
+          cache.addType(typeName, superclassName, isOopType, isIntegerType, isUnsigned, size);
         }
+        addVMType(typeName, superclassName, isOopType, isIntegerType, isUnsigned, size);
       }
 
       entryAddr = entryAddr.addOffsetTo(typeEntryArrayStride);
     } while (typeNameAddr != null);
   }
 
+  private void addVMType(String typeName, String superclassName, boolean isOopType,
+                         boolean isIntegerType, boolean isUnsigned, long size) {
+    createType(typeName, superclassName, isOopType, isIntegerType, isUnsigned, size);
+    if (pointerSize == UNINITIALIZED_SIZE && typeName.equals("void*")) {
+      pointerSize = (int)size;
+    }
+  }
+
   private void initializePrimitiveTypes() {
     // Look up the needed primitive types by name...they had better be present
     setJBooleanType(lookupPrimitiveType("jboolean"));
@@ -396,12 +424,15 @@ public class HotSpotTypeDataBase extends BasicTypeDataBase {
     structEntryArrayStride        = getLongValueFromProcess("gHotSpotVMStructEntryArrayStride");
 
     // Fetch the address of the VMStructEntry*
-    Address entryAddr = lookupInProcess("gHotSpotVMStructs");
+    Address structsAddr = lookupInProcess("gHotSpotVMStructs");
     // Dereference this once to get the pointer to the first VMStructEntry
-    entryAddr = entryAddr.getAddressAt(0);
+    Address entryAddr = structsAddr.getAddressAt(0);
     if (entryAddr == null) {
       throw new RuntimeException("gHotSpotVMStructs was not initialized properly in the remote process; can not continue");
     }
+    if (cache != null) {
+      cache.setStructsOffset(entryAddr.minus(structsAddr));
+    }
 
     // Start iterating down it until we find an entry with no name
     Address fieldNameAddr = null;
@@ -413,8 +444,7 @@ public class HotSpotTypeDataBase extends BasicTypeDataBase {
     Address staticFieldAddr = null;
     long size = 0;
     long index = 0;
-    String opaqueName = "<opaque>";
-    lookupOrCreateClass(opaqueName, false, false, false);
+    lookupOrCreateClass(OPAQUE_NAME, false, false, false);
 
     do {
       // Fetch the field name first
@@ -432,7 +462,7 @@ public class HotSpotTypeDataBase extends BasicTypeDataBase {
 
         addr = entryAddr.getAddressAt(structEntryTypeStringOffset);
         if (addr == null) {
-          typeString = opaqueName;
+          typeString = OPAQUE_NAME;
         } else {
           typeString = CStringUtilities.getString(addr);
         }
@@ -446,15 +476,11 @@ public class HotSpotTypeDataBase extends BasicTypeDataBase {
           staticFieldAddr = null;
         }
 
-        // The containing Type must already be in the database -- no exceptions
-        BasicType containingType = lookupOrFail(typeName);
-
-        // The field's Type must already be in the database -- no exceptions
-        BasicType fieldType = (BasicType)lookupType(typeString);
-
-        // Create field by type
-        createField(containingType, fieldName, fieldType,
-                    isStatic, offset, staticFieldAddr);
+        if (cache != null) {
+          cache.addStruct(typeName, fieldName, typeString, isStatic,
+                          isStatic ? staticFieldAddr.minus(structsAddr) : offset);
+        }
+        addVMStruct(typeName, fieldName, typeString, isStatic, offset, staticFieldAddr);
       }
 
       ++index;
@@ -462,6 +488,19 @@ public class HotSpotTypeDataBase extends BasicTypeDataBase {
     } while (fieldNameAddr != null);
   }
 
+  private void addVMStruct(String typeName, String fieldName, String typeString,
+                           boolean isStatic, long offset, Address staticFieldAddr) {
+    // The containing Type must already be in the database -- no exceptions
+    BasicType containingType = lookupOrFail(typeName);
+
+    // The field's Type must already be in the database -- no exceptions
+    BasicType fieldType = (BasicType)lookupType(typeString);
+
+    // Create field by type
+    createField(containingType, fieldName, fieldType,
+                isStatic, offset, staticFieldAddr);
+  }
+
   private void readVMIntConstants() {
     // Get the variables we need in order to traverse the VMIntConstantEntry[]
     long intConstantEntryNameOffset;
@@ -488,27 +527,33 @@ public class HotSpotTypeDataBase extends BasicTypeDataBase {
       if (nameAddr != null) {
         String name = CStringUtilities.getString(nameAddr);
         int value = (int) entryAddr.getCIntegerAt(intConstantEntryValueOffset, C_INT32_SIZE, false);
-
-        // Be a little resilient
-        Integer oldValue = lookupIntConstant(name, false);
-        if (oldValue == null) {
-          addIntConstant(name, value);
-        } else {
-          if (oldValue.intValue() != value) {
-            throw new RuntimeException("Error: the integer constant \"" + name +
-                                       "\" had its value redefined (old was " + oldValue +
-                                       ", new is " + value + ". Aborting.");
-          } else {
-            System.err.println("Warning: the int constant \"" + name + "\" (declared in the remote VM in VMStructs::localHotSpotVMIntConstants) " +
-                               "had its value declared as " + value + " twice. Continuing.");
-          }
+        if (cache != null) {
+          cache.addIntConstant(name, value);
         }
+        addVMIntConstant(name, value);
       }
 
       entryAddr = entryAddr.addOffsetTo(intConstantEntryArrayStride);
     } while (nameAddr != null);
   }
 
+  private void addVMIntConstant(String name, int value) {
+    // Be a little resilient
+    Integer oldValue = lookupIntConstant(name, false);
+    if (oldValue == null) {
+      addIntConstant(name, value);
+    } else {
+      if (oldValue.intValue() != value) {
+        throw new RuntimeException("Error: the integer constant \"" + name +
+                                   "\" had its value redefined (old was " + oldValue +
+                                   ", new is " + value + ". Aborting.");
+      } else {
+        System.err.println("Warning: the int constant \"" + name + "\" (declared in the remote VM in VMStructs::localHotSpotVMIntConstants) " +
+                           "had its value declared as " + value + " twice. Continuing.");
+      }
+    }
+  }
+
   private void readVMLongConstants() {
     // Get the variables we need in order to traverse the VMLongConstantEntry[]
     long longConstantEntryNameOffset;
@@ -535,27 +580,87 @@ public class HotSpotTypeDataBase extends BasicTypeDataBase {
       if (nameAddr != null) {
         String name = CStringUtilities.getString(nameAddr);
         int value = (int) entryAddr.getCIntegerAt(longConstantEntryValueOffset, C_INT64_SIZE, true);
-
-        // Be a little resilient
-        Long oldValue = lookupLongConstant(name, false);
-        if (oldValue == null) {
-          addLongConstant(name, value);
-        } else {
-          if (oldValue.longValue() != value) {
-            throw new RuntimeException("Error: the long constant \"" + name +
-                                       "\" had its value redefined (old was " + oldValue +
-                                       ", new is " + value + ". Aborting.");
-          } else {
-            System.err.println("Warning: the long constant \"" + name + "\" (declared in the remote VM in VMStructs::localHotSpotVMLongConstants) " +
-                               "had its value declared as " + value + " twice. Continuing.");
-          }
+        if (cache != null) {
+          cache.addLongConstant(name, value);
         }
+        addVMLongConstant(name, value);
       }
 
       entryAddr = entryAddr.addOffsetTo(longConstantEntryArrayStride);
     } while (nameAddr != null);
   }
 
+  private void addVMLongConstant(String name, long value) {
+    // Be a little resilient
+    Long oldValue = lookupLongConstant(name, false);
+    if (oldValue == null) {
+      addLongConstant(name, value);
+    } else {
+      if (oldValue.longValue() != value) {
+        throw new RuntimeException("Error: the long constant \"" + name +
+                                   "\" had its value redefined (old was " + oldValue +
+                                   ", new is " + value + ". Aborting.");
+      } else {
+        System.err.println("Warning: the long constant \"" + name + "\" (declared in the remote VM in VMStructs::localHotSpotVMLongConstants) " +
+                           "had its value declared as " + value + " twice. Continuing.");
+      }
+    }
+  }
+
+  // Checks the cached tables against the few values which can be
+  // read cheaply from the process: the location of the VMStructEntry
+  // array relative to gHotSpotVMStructs, which is fixed for a build
+  // of the library, and the name of the first VMTypes entry.
+  private boolean cacheMatchesProcess() {
+    try {
+      Address structsAddr = lookupInProcess("gHotSpotVMStructs");
+      Address entryAddr = structsAddr.getAddressAt(0);
+      if (entryAddr == null || entryAddr.minus(structsAddr) != cache.getStructsOffset()) {
+        return false;
+      }
+      Address typeEntryAddr = lookupInProcess("gHotSpotVMTypes").getAddressAt(0);
+      if (typeEntryAddr == null) {
+        return false;
+      }
+      Address typeNameAddr = typeEntryAddr.getAddressAt(getLongValueFromProcess("gHotSpotVMTypeEntryTypeNameOffset"));
+      return typeNameAddr != null &&
+             CStringUtilities.getString(typeNameAddr).equals(cache.getFirstTypeName());
+    } catch (AddressException e) {
+      return false;
+    }
+  }
+
+  // Fills the database from the cache; the only value read from the
+  // process is the address of gHotSpotVMStructs, which static field
+  // addresses are relative to
+  private void readFromCache() {
+    for (Iterator iter = cache.getTypes().iterator(); iter.hasNext(); ) {
+      HotSpotTypeDataBaseCache.TypeEntry e = (HotSpotTypeDataBaseCache.TypeEntry) iter.next();
+      addVMType(e.typeName, e.superclassName, e.isOopType, e.isIntegerType, e.isUnsigned, e.size);
+    }
+    initializePrimitiveTypes();
+
+    Address structsAddr = lookupInProcess("gHotSpotVMStructs");
+    lookupOrCreateClass(OPAQUE_NAME, false, false, false);
+    for (Iterator iter = cache.getStructs().iterator(); iter.hasNext(); ) {
+      HotSpotTypeDataBaseCache.StructEntry e = (HotSpotTypeDataBaseCache.StructEntry) iter.next();
+      if (e.isStatic) {
+        addVMStruct(e.typeName, e.fieldName, e.typeString, true, 0, structsAddr.addOffsetTo(e.offset));
+      } else {
+        addVMStruct(e.typeName, e.fieldName, e.typeString, false, e.offset, null);
+      }
+    }
+
+    for (Iterator iter = cache.getIntConstants().iterator(); iter.hasNext(); ) {
+      HotSpotTypeDataBaseCache.ConstantEntry e = (HotSpotTypeDataBaseCache.ConstantEntry) iter.next();
+      addVMIntConstant(e.name, (int) e.value);
+    }
+    for (Iterator iter = cache.getLongConstants().iterator(); iter.hasNext(); ) {
+      HotSpotTypeDataBaseCache.ConstantEntry e = (HotSpotTypeDataBaseCache.ConstantEntry) iter.next();
+      addVMLongConstant(e.name, e.value);
+    }
+  }
+
   private BasicType lookupOrFail(String typeName) {
     BasicType type = (BasicType) lookupType(typeName, false);
     if (type == null) {
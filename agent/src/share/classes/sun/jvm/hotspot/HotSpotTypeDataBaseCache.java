@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+package sun.jvm.hotspot;
+
+import java.io.*;
+import java.util.*;
+import sun.jvm.hotspot.debugger.*;
+import sun.jvm.hotspot.debugger.cdbg.*;
+
+/** <P> A local cache of the VMStructs, VMTypes and VM constant tables
+    read by HotSpotTypeDataBase. Reading these tables entry by entry
+    from the remote process is the bulk of the work of attaching; with
+    the cache, later attaches to a VM with the same libjvm only read a
+    few words from the process. </P>
+
+    <P> The cache files are keyed by the GNU build ID of the JVM
+    library, which is read from the ELF note of the library in the
+    target. There is no cache for targets whose JVM library has no
+    build ID. The addresses of static fields are stored relative to
+    the gHotSpotVMStructs symbol, so they are valid for every process
+    using the library wherever it is loaded. </P>
+
+    <P> The files are kept in the directory given by the
+    sun.jvm.hotspot.HotSpotTypeDataBase.cacheDir property, by default
+    .hsdb_typedb_cache in the user's home directory. Setting
+    sun.jvm.hotspot.HotSpotTypeDataBase.noCache disables the cache.
+    </P> */
+
+class HotSpotTypeDataBaseCache {
+  private static final int MAGIC   = 0x53415444; // "SATD"
+  private static final int VERSION = 1;
+
+  private static final byte[] ELF_MAGIC     = { 0x7f, 'E', 'L', 'F' };
+  private static final byte[] GNU_NOTE_NAME = { 'G', 'N', 'U', 0 };
+  private static final int ELF_CLASS_64      = 2;
+  private static final int ELF_PT_NOTE       = 4;
+  private static final int NT_GNU_BUILD_ID   = 3;
+  private static final int MAX_BUILD_ID_SIZE = 64;
+
+  private static final boolean DISABLED;
+  private static final String  CACHE_DIR;
+
+  static {
+    DISABLED = System.getProperty("sun.jvm.hotspot.HotSpotTypeDataBase.noCache") != null;
+    CACHE_DIR = System.getProperty("sun.jvm.hotspot.HotSpotTypeDataBase.cacheDir",
+                                   System.getProperty("user.home") + File.separator +
+                                   ".hsdb_typedb_cache");
+  }
+
+  /** An entry of VMStructs::localHotSpotVMTypes */
+  static class TypeEntry {
+    String  typeName;
+    String  superclassName;
+    boolean isOopType;
+    boolean isIntegerType;
+    boolean isUnsigned;
+    long    size;
+  }
+
+  /** An entry of VMStructs::localHotSpotVMStructs. For static fields
+      the offset is the address of the field relative to the
+      gHotSpotVMStructs symbol. */
+  static class StructEntry {
+    String  typeName;
+    String  fieldName;
+    String  typeString;
+    boolean isStatic;
+    long    offset;
+  }
+
+  /** An entry of the int or long constant tables */
+  static class ConstantEntry {
+    String name;
+    long   value;
+  }
+
+  private File file;
+
+  // Values used to check that the cache matches the process
+  private long   structsOffset;
+  private String firstTypeName;
+
+  private List types         = new ArrayList();
+  private List structs       = new ArrayList();
+  private List intConstants  = new ArrayList();
+  private List longConstants = new ArrayList();
+
+  private HotSpotTypeDataBaseCache(File file) {
+    this.file = file;
+  }
+
+  /** Returns an empty cache for the JVM library of the target, or
+      null if the cache is disabled or the library has no build ID */
+  static HotSpotTypeDataBaseCache forTarget(Debugger dbg, String[] jvmLibNames,
+                                            MachineDescription machDesc) {
+    if (DISABLED) {
+      return null;
+    }
+    String buildId = null;
+    try {
+      buildId = readBuildId(dbg, jvmLibNames);
+    } catch (RuntimeException e) {
+      // No build ID, for example since the ELF headers are not in the core file
+    }
+    if (buildId == null) {
+      return null;
+    }
+    String name = "typedb-" + buildId + "-" + (8 * machDesc.getAddressSize()) + ".bin";
+    return new HotSpotTypeDataBaseCache(new File(CACHE_DIR, name));
+  }
+
+  /** Reads the cache file. Returns false if there is none or it can
+      not be read, in which case the cache is left empty. */
+  boolean load() {
+    if (!file.isFile()) {
+      return false;
+    }
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return false;
+      }
+      structsOffset = in.readLong();
+      firstTypeName = in.readUTF();
+      for (int n = in.readInt(); n > 0; n--) {
+        TypeEntry e = new TypeEntry();
+        e.typeName       = in.readUTF();
+        e.superclassName = readNullableUTF(in);
+        e.isOopType      = in.readBoolean();
+        e.isIntegerType  = in.readBoolean();
+        e.isUnsigned     = in.readBoolean();
+        e.size           = in.readLong();
+        types.add(e);
+      }
+      for (int n = in.readInt(); n > 0; n--) {
+        StructEntry e = new StructEntry();
+        e.typeName   = in.readUTF();
+        e.fieldName  = in.readUTF();
+        e.typeString = in.readUTF();
+        e.isStatic   = in.readBoolean();
+        e.offset     = in.readLong();
+        structs.add(e);
+      }
+      readConstants(in, intConstants);
+      readConstants(in, longConstants);
+      return true;
+    } catch (IOException e) {
+      types.clear();
+      structs.clear();
+      intConstants.clear();
+      longConstants.clear();
+      return false;
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+        }
+      }
+    }
+  }
+
+  /** Writes the cache file. Failures only produce a warning since the
+      cache merely speeds up later attaches. */
+  void store() {
+    File dir = file.getParentFile();
+    dir.mkdirs();
+    File tmp = null;
+    DataOutputStream out = null;
+    try {
+      // Write to a temporary file first so that concurrent attaches
+      // never see a partial file
+      tmp = File.createTempFile("typedb", ".tmp", dir);
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(structsOffset);
+      out.writeUTF(firstTypeName);
+      out.writeInt(types.size());
+      for (Iterator iter = types.iterator(); iter.hasNext(); ) {
+        TypeEntry e = (TypeEntry) iter.next();
+        out.writeUTF(e.typeName);
+        writeNullableUTF(out, e.superclassName);
+        out.writeBoolean(e.isOopType);
+        out.writeBoolean(e.isIntegerType);
+        out.writeBoolean(e.isUnsigned);
+        out.writeLong(e.size);
+      }
+      out.writeInt(structs.size());
+      for (Iterator iter = structs.iterator(); iter.hasNext(); ) {
+        StructEntry e = (StructEntry) iter.next();
+        out.writeUTF(e.typeName);
+        out.writeUTF(e.fieldName);
+        out.writeUTF(e.typeString);
+        out.writeBoolean(e.isStatic);
+        out.writeLong(e.offset);
+      }
+      writeConstants(out, intConstants);
+      writeConstants(out, longConstants);
+      out.close();
+      out = null;
+      if (!tmp.renameTo(file)) {
+        file.delete();
+        tmp.renameTo(file);
+      }
+    } catch (IOException e) {
+      System.err.println("Warning: could not write type database cache " + file + ": " + e);
+    } finally {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException e) {
+        }
+      }
+      if (tmp != null) {
+        tmp.delete();
+      }
+    }
+  }
+
+  /** The address of the VMStructEntry array relative to the
+      gHotSpotVMStructs symbol */
+  long getStructsOffset()            { return structsOffset;  }
+  void setStructsOffset(long offset) { structsOffset = offset; }
+
+  /** The name of the first entry of the VMTypes table */
+  String getFirstTypeName()          { return firstTypeName;  }
+
+  void addType(String typeName, String superclassName, boolean isOopType,
+               boolean isIntegerType, boolean isUnsigned, long size) {
+    TypeEntry e = new TypeEntry();
+    e.typeName       = typeName;
+    e.superclassName = superclassName;
+    e.isOopType      = isOopType;
+    e.isIntegerType  = isIntegerType;
+    e.isUnsigned     = isUnsigned;
+    e.size           = size;
+    if (types.isEmpty()) {
+      firstTypeName = typeName;
+    }
+    types.add(e);
+  }
+
+  void addStruct(String typeName, String fieldName, String typeString,
+                 boolean isStatic, long offset) {
+    StructEntry e = new StructEntry();
+    e.typeName   = typeName;
+    e.fieldName  = fieldName;
+    e.typeString = typeString;
+    e.isStatic   = isStatic;
+    e.offset     = offset;
+    structs.add(e);
+  }
+
+  void addIntConstant(String name, long value) {
+    intConstants.add(newConstant(name, value));
+  }
+
+  void addLongConstant(String name, long value) {
+    longConstants.add(newConstant(name, value));
+  }
+
+  /** Lists of TypeEntry, StructEntry and ConstantEntry in table order */
+  List getTypes()         { return types;         }
+  List getStructs()       { return structs;       }
+  List getIntConstants()  { return intConstants;  }
+  List getLongConstants() { return longConstants; }
+
+  File getFile() {
+    return file;
+  }
+
+  //---------------------------------------------------------------------------
+  // Internals only below this point
+  //
+
+  private static ConstantEntry newConstant(String name, long value) {
+    ConstantEntry e = new ConstantEntry();
+    e.name  = name;
+    e.value = value;
+    return e;
+  }
+
+  private static void readConstants(DataInputStream in, List list) throws IOException {
+    for (int n = in.readInt(); n > 0; n--) {
+      list.add(newConstant(in.readUTF(), in.readLong()));
+    }
+  }
+
+  private static void writeConstants(DataOutputStream out, List list) throws IOException {
+    out.writeInt(list.size());
+    for (Iterator iter = list.iterator(); iter.hasNext(); ) {
+      ConstantEntry e = (ConstantEntry) iter.next();
+      out.writeUTF(e.name);
+      out.writeLong(e.value);
+    }
+  }
+
+  private static String readNullableUTF(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void writeNullableUTF(DataOutputStream out, String s) throws IOException {
+    out.writeBoolean(s != null);
+    if (s != null) {
+      out.writeUTF(s);
+    }
+  }
+
+  /** Reads the GNU build ID from the program headers of the JVM
+      library as loaded in the target. Returns null if the library is
+      not found or has no build ID. */
+  private static String readBuildId(Debugger dbg, String[] jvmLibNames) {
+    CDebugger cdbg = dbg.getCDebugger();
+    if (cdbg == null) {
+      return null;
+    }
+    Address base = null;
+    for (Iterator iter = cdbg.getLoadObjectList().iterator(); iter.hasNext() && base == null; ) {
+      LoadObject lo = (LoadObject) iter.next();
+      String name = new File(lo.getName()).getName();
+      for (int i = 0; i < jvmLibNames.length; i++) {
+        if (name.equals(new File(jvmLibNames[i]).getName())) {
+          base = lo.getBase();
+          break;
+        }
+      }
+    }
+    if (base == null || !hasBytes(base, 0, ELF_MAGIC)) {
+      return null;
+    }
+
+    boolean is64 = base.getCIntegerAt(4, 1, true) == ELF_CLASS_64;
+    long phoff     = is64 ? base.getCIntegerAt(32, 8, true) : base.getCIntegerAt(28, 4, true);
+    long phentsize = base.getCIntegerAt(is64 ? 54 : 42, 2, true);
+    long phnum     = base.getCIntegerAt(is64 ? 56 : 44, 2, true);
+    for (long i = 0; i < phnum; i++) {
+      long ph = phoff + i * phentsize;
+      if (base.getCIntegerAt(ph, 4, true) != ELF_PT_NOTE) {
+        continue;
+      }
+      long vaddr  = is64 ? base.getCIntegerAt(ph + 16, 8, true) : base.getCIntegerAt(ph + 8, 4, true);
+      long memsz  = is64 ? base.getCIntegerAt(ph + 40, 8, true) : base.getCIntegerAt(ph + 20, 4, true);
+      // Walk the notes of this segment
+      for (long note = vaddr; note + 12 <= vaddr + memsz; ) {
+        long namesz = base.getCIntegerAt(note, 4, true);
+        long descsz = base.getCIntegerAt(note + 4, 4, true);
+        long type   = base.getCIntegerAt(note + 8, 4, true);
+        long desc   = note + 12 + ((namesz + 3) & ~3L);
+        if (type == NT_GNU_BUILD_ID && namesz == GNU_NOTE_NAME.length &&
+            hasBytes(base, note + 12, GNU_NOTE_NAME) &&
+            descsz > 0 && descsz <= MAX_BUILD_ID_SIZE) {
+          StringBuffer buf = new StringBuffer();
+          for (long j = 0; j < descsz; j++) {
+            String hex = Long.toHexString(base.getCIntegerAt(desc + j, 1, true));
+            if (hex.length() == 1) {
+              buf.append('0');
+            }
+            buf.append(hex);
+          }
+          return buf.toString();
+        }
+        note = desc + ((descsz + 3) & ~3L);
+      }
+    }
+    return null;
+  }
+
+  private static boolean hasBytes(Address addr, long offset, byte[] bytes) {
+    for (int i = 0; i < bytes.length; i++) {
+      if (addr.getCIntegerAt(offset + i, 1, true) != (bytes[i] & 0xFF)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+
+package sun.jvm.hotspot.code;
+
+import java.util.*;
+import sun.jvm.hotspot.debugger.*;
+import sun.jvm.hotspot.memory.*;
+import sun.jvm.hotspot.runtime.*;
+
+/** A snapshot of the allocated blocks of a CodeHeap, sorted by
+    address. Resolving a PC to its CodeBlob is a binary search over
+    this table rather than a walk of the target's segment map, and the
+    wrapper for each blob is created once and then shared by all
+    frames which refer to it. The snapshot is taken the first time it
+    is needed; since the target is suspended while the SA is attached
+    it remains valid for the lifetime of the CodeCache object, which
+    is recreated on every attach. */
+
+class CodeBlobIndex {
+  private Address    begin;
+  private Address    end;
+  private int        size;
+  // Block bounds as offsets from begin; ends are exclusive
+  private long[]     starts;
+  private long[]     ends;
+  private Address[]  blobAddrs;
+  private CodeBlob[] blobs;
+
+  CodeBlobIndex(CodeHeap heap) {
+    begin = heap.begin();
+    end = heap.end();
+    starts = new long[1024];
+    ends = new long[1024];
+    blobAddrs = new Address[1024];
+
+    Address ptr = begin;
+    try {
+      while (ptr.lessThan(end)) {
+        Address next = heap.nextBlock(ptr);
+        if (next == null || next.lessThanOrEqual(ptr)) {
+          break;
+        }
+        HeapBlock block = (HeapBlock) VMObjectFactory.newObject(HeapBlock.class, ptr);
+        if (!block.isFree()) {
+          add(ptr.minus(begin), next.minus(begin), block.getAllocatedSpace());
+        }
+        ptr = next;
+      }
+    } catch (AddressException e) {
+      // Fall through
+    }
+    if (ptr.lessThan(end)) {
+      // Damaged segment map or block header, or unreadable memory in a
+      // core file; PCs beyond this point use the segment map lookup
+      end = ptr;
+    }
+    blobs = new CodeBlob[size];
+  }
+
+  /** Whether lookups of this PC can be answered from the index */
+  boolean covers(Address pc) {
+    return begin.lessThanOrEqual(pc) && end.greaterThan(pc);
+  }
+
+  /** Number of allocated blocks in the snapshot */
+  int getSize() {
+    return size;
+  }
+
+  /** Returns the start of the allocated block containing pc, or null
+      if pc is in a free block. pc must be covered by the index. */
+  Address findStart(Address pc) {
+    int i = find(pc.minus(begin));
+    return (i < 0) ? null : blobAddrs[i];
+  }
+
+  /** Returns the wrapper for the blob containing pc, creating it on
+      first use, or null if pc is in a free block. pc must be covered
+      by the index. */
+  CodeBlob findBlob(Address pc, CodeCache cache) {
+    int i = find(pc.minus(begin));
+    if (i < 0) {
+      return null;
+    }
+    CodeBlob blob = blobs[i];
+    if (blob == null) {
+      blob = cache.instantiateWrapperFor(blobAddrs[i], pc);
+      blobs[i] = blob;
+    }
+    return blob;
+  }
+
+  //--------------------------------------------------------------------------------
+  // Internals only below this point
+  //
+
+  private void add(long start, long limit, Address blobAddr) {
+    if (size == starts.length) {
+      int newLength = size * 2;
+      starts = Arrays.copyOf(starts, newLength);
+      ends = Arrays.copyOf(ends, newLength);
+      blobAddrs = Arrays.copyOf(blobAddrs, newLength);
+    }
+    starts[size] = start;
+    ends[size] = limit;
+    blobAddrs[size] = blobAddr;
+    size++;
+  }
+
+  private int find(long offset) {
+    // Blocks are added in address order and never overlap
+    int lo = 0;
+    int hi = size - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      if (starts[mid] > offset) {
+        hi = mid - 1;
+      } else if (ends[mid] <= offset) {
+        lo = mid + 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+}
@@ -35,8 +35,11 @@ public class CodeCache {
   private static AddressField       heapField;
   private static AddressField       scavengeRootNMethodsField;
   private static VirtualConstructor virtualConstructor;
+  private static final boolean useBlobIndex =
+    System.getProperty("sun.jvm.hotspot.code.CodeCache.noBlobIndex") == null;
 
   private CodeHeap heap;
+  private CodeBlobIndex blobIndex;
 
   static {
     VM.registerVMInitializedObserver(new Observer() {
@@ -98,25 +101,11 @@ public class CodeCache {
   public CodeBlob findBlobUnsafe(Address start) {
     CodeBlob result = null;
 
-    try {
-      result = (CodeBlob) virtualConstructor.instantiateWrapperFor(getHeap().findStart(start));
-    }
-    catch (WrongTypeException wte) {
-      Address cbAddr = null;
-      try {
-        cbAddr = getHeap().findStart(start);
-      }
-      catch (Exception findEx) {
-        findEx.printStackTrace();
-      }
-
-      String message = "Couldn't deduce type of CodeBlob ";
-      if (cbAddr != null) {
-        message = message + "@" + cbAddr + " ";
-      }
-      message = message + "for PC=" + start;
-
-      throw new RuntimeException(message, wte);
+    CodeBlobIndex index = getBlobIndex();
+    if (index != null && index.covers(start)) {
+      result = index.findBlob(start, this);
+    } else {
+      result = instantiateWrapperFor(getHeap().findStart(start), start);
     }
     if (result == null) return null;
     if (Assert.ASSERTS_ENABLED) {
@@ -203,4 +192,37 @@ public class CodeCache {
   private CodeHeap getHeap() {
     return heap;
   }
+
+  /** Returns the blob index, building it on first use, or null if it
+      has been disabled */
+  private synchronized CodeBlobIndex getBlobIndex() {
+    if (blobIndex == null && useBlobIndex) {
+      blobIndex = new CodeBlobIndex(getHeap());
+    }
+    return blobIndex;
+  }
+
+  /** Drops the blob index so that it is rebuilt from the current
+      state of the code heap. Needed when the target has been running
+      since it was built, as blobs may have been added or freed. */
+  public synchronized void invalidateBlobIndex() {
+    blobIndex = null;
+  }
+
+  /** Instantiates the wrapper for the blob at cbAddr, which was found
+      by looking up pc */
+  CodeBlob instantiateWrapperFor(Address cbAddr, Address pc) {
+    try {
+      return (CodeBlob) virtualConstructor.instantiateWrapperFor(cbAddr);
+    }
+    catch (WrongTypeException wte) {
+      String message = "Couldn't deduce type of CodeBlob ";
+      if (cbAddr != null) {
+        message = message + "@" + cbAddr + " ";
+      }
+      message = message + "for PC=" + pc;
+
+      throw new RuntimeException(message, wte);
+    }
+  }
 }
@@ -74,6 +74,18 @@ public class DebugInfoReadStream extends CompressedReadStream {
     return result;
   }
 
+  ScopeValue readSharedObjectValue() {
+    int id = readInt();
+    int descriptionOffset = readInt();
+    Assert.that(objectPool != null, "object pool does not exist");
+    ObjectValue result = new ObjectValue(id);
+    // The description can reference objects later in the pool, so it is only
+    // read once the whole pool has been decoded (see ScopeDesc.decodeObjectValues).
+    objectPool.add(result);
+    result.setDescriptionOffset(descriptionOffset);
+    return result;
+  }
+
   ScopeValue getCachedObject() {
     int id = readInt();
     Assert.that(objectPool != null, "object pool does not exist");
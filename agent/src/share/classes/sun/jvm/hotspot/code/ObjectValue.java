@@ -36,6 +36,7 @@ public class ObjectValue extends ScopeValue {
   private int        id;
   private ScopeValue klass;
   private List       fieldsValue; // ArrayList<ScopeValue>
+  private int        descriptionOffset; // shared description not yet read, or 0
 
   // Field "boolean visited" is not implemented here since
   // it is used only a during debug info creation.
@@ -52,6 +53,8 @@ public class ObjectValue extends ScopeValue {
   public List getFieldsValue() { return fieldsValue; }
   public ScopeValue getFieldAt(int i) { return (ScopeValue)fieldsValue.get(i); }
   public int fieldsSize() { return fieldsValue.size(); }
+  int descriptionOffset() { return descriptionOffset; }
+  void setDescriptionOffset(int offset) { descriptionOffset = offset; }
 
   // Field "value" is always NULL here since it is used
   // only during deoptimization of a compiled frame
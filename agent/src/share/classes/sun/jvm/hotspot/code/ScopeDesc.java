@@ -208,6 +208,14 @@ public class ScopeDesc {
       // res.add(ScopeValue.readFrom(stream));
     }
     Assert.that(res.size() == length, "inconsistent debug information");
+    // Shared descriptions are read once every object they could reference exists.
+    for (int i = 0; i < length; i++) {
+      ObjectValue ov = (ObjectValue) res.get(i);
+      if (ov.descriptionOffset() != 0) {
+        ov.readObject(new DebugInfoReadStream(code, ov.descriptionOffset(), res));
+        ov.setDescriptionOffset(0);
+      }
+    }
     return res;
   }
 }
@@ -51,6 +51,7 @@ public abstract class ScopeValue {
   static final int CONSTANT_DOUBLE_CODE = 4;
   static final int CONSTANT_OBJECT_CODE = 5;
   static final int CONSTANT_OBJECT_ID_CODE = 6;
+  static final int CONSTANT_OBJECT_SHARED_CODE = 7;
 
   public boolean isLocation()       { return false; }
   public boolean isConstantInt()    { return false; }
@@ -75,6 +76,8 @@ public abstract class ScopeValue {
       return stream.readObjectValue();
     case CONSTANT_OBJECT_ID_CODE:
       return stream.getCachedObject();
+    case CONSTANT_OBJECT_SHARED_CODE:
+      return stream.readSharedObjectValue();
     default:
       Assert.that(false, "should not reach here");
       return null;
@@ -24,6 +24,8 @@
 
 package sun.jvm.hotspot.debugger;
 
+import java.util.Arrays;
+
 /** <P> DebuggerBase is a recommended base class for debugger
     implementations. It can use a PageCache to cache data from the
     target process. Note that this class would not be suitable if the
@@ -64,6 +66,9 @@ public abstract class DebuggerBase implements Debugger {
   protected int  narrowKlassShift; // shift to decode compressed klass ptrs.
   // Should be initialized if desired by calling initCache()
   private PageCache cache;
+  // Parts of the address space that can be read without copying; see
+  // setMappedMemory()
+  private MappedMemory mappedMemory;
 
   // State for faster accessors that don't allocate memory on each read
   private boolean useFastAccessors;
@@ -83,6 +88,17 @@ public abstract class DebuggerBase implements Debugger {
       }
       return new Page(pageBaseAddress, res.getData());
     }
+
+    public Page[] fetchPages(long[] pageBaseAddresses, long numBytes) {
+      byte[][] data = readPagesFromProcess(pageBaseAddresses, numBytes);
+      Page[] pages = new Page[pageBaseAddresses.length];
+      for (int i = 0; i < pages.length; i++) {
+        if (data[i] != null) {
+          pages[i] = new Page(pageBaseAddresses[i], data[i]);
+        }
+      }
+      return pages;
+    }
   }
 
   protected DebuggerBase() {
@@ -218,9 +234,66 @@ public abstract class DebuggerBase implements Debugger {
     }
   }
 
+  /** Reads the pageSize bytes at each of the given addresses. An
+      element of the result is null if the corresponding page could
+      not be read. Used by the cache to read ahead; subclasses may
+      override this to fetch all pages with a single request. */
+  protected byte[][] readPagesFromProcess(long[] addresses, long pageSize)
+    throws DebuggerException {
+    byte[][] pages = new byte[addresses.length][];
+    for (int i = 0; i < addresses.length; i++) {
+      pages[i] = readBytesFromProcess(addresses[i], pageSize).getData();
+    }
+    return pages;
+  }
+
+  /** Reads the given ranges of the target into the page cache with a
+      single batched request. Tools about to read a structure of known
+      extent through many small reads, such as the metadata of a
+      class, can call this first. Ranges held in mapped memory are
+      skipped, and without a cache this does nothing. */
+  public void prefetch(long[] addresses, long[] numBytes) {
+    if (cache == null) {
+      return;
+    }
+    if (mappedMemory != null) {
+      long[] a = new long[addresses.length];
+      long[] n = new long[addresses.length];
+      int count = 0;
+      for (int i = 0; i < addresses.length; i++) {
+        if (mappedChunk(addresses[i], numBytes[i]) < 0) {
+          a[count] = addresses[i];
+          n[count] = numBytes[i];
+          count++;
+        }
+      }
+      addresses = Arrays.copyOf(a, count);
+      numBytes = Arrays.copyOf(n, count);
+    }
+    cache.prefetch(addresses, numBytes);
+  }
+
+  /** Returns the hit, miss and read-ahead statistics of the page
+      cache, or null if there is no cache */
+  public String getPageCacheStatistics() {
+    return (cache != null) ? cache.getStatistics() : null;
+  }
+
+  /** May be called by subclasses to satisfy reads of the given parts
+      of the address space directly from memory-mapped files, for
+      example the segments of a core dump, instead of through the
+      cache. Pass null to stop using them. */
+  protected final void setMappedMemory(MappedMemory mappedMemory) {
+    this.mappedMemory = mappedMemory;
+  }
+
   /** May be called by subclasses directly but may not be overridden */
   protected final byte[] readBytes(long address, long numBytes)
     throws UnmappedAddressException, DebuggerException {
+    int chunk = mappedChunk(address, numBytes);
+    if (chunk >= 0) {
+      return mappedMemory.getData(chunk, address, numBytes);
+    }
     if (cache != null) {
       return cache.getData(address, numBytes);
     } else {
@@ -232,6 +305,27 @@ public abstract class DebuggerBase implements Debugger {
     }
   }
 
+  /** Returns the chunk of the mapped memory holding the numBytes bytes
+      at address, or -1 if they are not all mapped */
+  private int mappedChunk(long address, long numBytes) {
+    return (mappedMemory != null) ? mappedMemory.lookup(address, numBytes) : -1;
+  }
+
+  /** May be called by subclasses directly but may not be overridden.
+      Reads a C integer without checking its alignment, directly from
+      the mapped memory if possible; for subclasses that relax the
+      alignment checks of readCInteger and readJLong. */
+  protected final long readCIntegerUnaligned(long address, long numBytes, boolean isUnsigned)
+    throws UnmappedAddressException {
+    int chunk = (numBytes == 1 || numBytes == 2 || numBytes == 4 || numBytes == 8) ?
+      mappedChunk(address, numBytes) : -1;
+    if (chunk >= 0) {
+      return mappedMemory.getCInteger(chunk, address, numBytes, isUnsigned);
+    }
+    byte[] data = readBytes(address, numBytes);
+    return utils.dataToCInteger(data, isUnsigned);
+  }
+
   /** May be called by subclasses directly but may not be overridden */
   protected final void writeBytes(long address, long numBytes, byte[] data)
     throws UnmappedAddressException, DebuggerException {
@@ -246,6 +340,10 @@ public abstract class DebuggerBase implements Debugger {
     checkJavaConfigured();
     utils.checkAlignment(address, jbooleanSize);
     if (useFastAccessors) {
+      int chunk = mappedChunk(address, jbooleanSize);
+      if (chunk >= 0) {
+        return (mappedMemory.getByte(chunk, address) != 0);
+      }
       return (cache.getByte(address) != 0);
     } else {
       byte[] data = readBytes(address, jbooleanSize);
@@ -258,6 +356,10 @@ public abstract class DebuggerBase implements Debugger {
     checkJavaConfigured();
     utils.checkAlignment(address, jbyteSize);
     if (useFastAccessors) {
+      int chunk = mappedChunk(address, jbyteSize);
+      if (chunk >= 0) {
+        return mappedMemory.getByte(chunk, address);
+      }
       return cache.getByte(address);
     } else {
       byte[] data = readBytes(address, jbyteSize);
@@ -272,6 +374,10 @@ public abstract class DebuggerBase implements Debugger {
     checkJavaConfigured();
     utils.checkAlignment(address, jcharSize);
     if (useFastAccessors) {
+      int chunk = mappedChunk(address, jcharSize);
+      if (chunk >= 0) {
+        return mappedMemory.getChar(chunk, address);
+      }
       return cache.getChar(address, bigEndian);
     } else {
       byte[] data = readBytes(address, jcharSize);
@@ -286,6 +392,10 @@ public abstract class DebuggerBase implements Debugger {
     checkJavaConfigured();
     utils.checkAlignment(address, jdoubleSize);
     if (useFastAccessors) {
+      int chunk = mappedChunk(address, jdoubleSize);
+      if (chunk >= 0) {
+        return mappedMemory.getDouble(chunk, address);
+      }
       return cache.getDouble(address, bigEndian);
     } else {
       byte[] data = readBytes(address, jdoubleSize);
@@ -300,6 +410,10 @@ public abstract class DebuggerBase implements Debugger {
     checkJavaConfigured();
     utils.checkAlignment(address, jfloatSize);
     if (useFastAccessors) {
+      int chunk = mappedChunk(address, jfloatSize);
+      if (chunk >= 0) {
+        return mappedMemory.getFloat(chunk, address);
+      }
       return cache.getFloat(address, bigEndian);
     } else {
       byte[] data = readBytes(address, jfloatSize);
@@ -314,6 +428,10 @@ public abstract class DebuggerBase implements Debugger {
     checkJavaConfigured();
     utils.checkAlignment(address, jintSize);
     if (useFastAccessors) {
+      int chunk = mappedChunk(address, jintSize);
+      if (chunk >= 0) {
+        return mappedMemory.getInt(chunk, address);
+      }
       return cache.getInt(address, bigEndian);
     } else {
       byte[] data = readBytes(address, jintSize);
@@ -328,6 +446,10 @@ public abstract class DebuggerBase implements Debugger {
     checkJavaConfigured();
     utils.checkAlignment(address, jlongSize);
     if (useFastAccessors) {
+      int chunk = mappedChunk(address, jlongSize);
+      if (chunk >= 0) {
+        return mappedMemory.getLong(chunk, address);
+      }
       return cache.getLong(address, bigEndian);
     } else {
       byte[] data = readBytes(address, jlongSize);
@@ -342,6 +464,10 @@ public abstract class DebuggerBase implements Debugger {
     checkJavaConfigured();
     utils.checkAlignment(address, jshortSize);
     if (useFastAccessors) {
+      int chunk = mappedChunk(address, jshortSize);
+      if (chunk >= 0) {
+        return mappedMemory.getShort(chunk, address);
+      }
       return cache.getShort(address, bigEndian);
     } else {
       byte[] data = readBytes(address, jshortSize);
@@ -356,6 +482,11 @@ public abstract class DebuggerBase implements Debugger {
     checkConfigured();
     utils.checkAlignment(address, numBytes);
     if (useFastAccessors) {
+      int chunk = (numBytes == 1 || numBytes == 2 || numBytes == 4 || numBytes == 8) ?
+        mappedChunk(address, numBytes) : -1;
+      if (chunk >= 0) {
+        return mappedMemory.getCInteger(chunk, address, numBytes, isUnsigned);
+      }
       if (isUnsigned) {
         switch((int) numBytes) {
         case 1: return cache.getByte(address) & 0xFF;
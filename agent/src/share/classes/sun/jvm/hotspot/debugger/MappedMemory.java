@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+package sun.jvm.hotspot.debugger;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+
+/** Gives zero-copy access to the parts of a target's address space
+    that are stored in a file, such as the segments of a core dump, or
+    that have been copied from the target. File segments are
+    memory-mapped and reads are satisfied directly from the buffers,
+    without system calls and without going through the PageCache.
+    Segments larger than a MappedByteBuffer can address are split into
+    several chunks; a value straddling two chunks is reported as not
+    contained so that the caller falls back to its regular read path.
+    Reads are safe from several threads. */
+
+public class MappedMemory {
+  private static final long MAX_CHUNK_SIZE = 1L << 30;
+
+  // Sorted, non-overlapping chunks of the mapped segments
+  private final long[]       bases;
+  private final long[]       ends;
+  private final ByteBuffer[] buffers;
+  private final int          numChunks;
+  private final long         mappedSize;
+  // Index of the chunk that satisfied the last lookup. Racy but benign.
+  private int lastChunk;
+
+  /** Maps the given segments of fileName. segments holds three
+      entries per segment: the file offset, the virtual address and
+      the size of the segment. The segments must be sorted by virtual
+      address. */
+  public MappedMemory(String fileName, long[] segments, boolean bigEndian)
+    throws IOException {
+    int maxChunks = 0;
+    for (int i = 0; i < segments.length; i += 3) {
+      maxChunks += (int) ((segments[i + 2] + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+    }
+    bases = new long[maxChunks];
+    ends = new long[maxChunks];
+    buffers = new ByteBuffer[maxChunks];
+
+    ByteOrder order = bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+    long total = 0;
+    int chunk = 0;
+    RandomAccessFile file = new RandomAccessFile(fileName, "r");
+    try {
+      FileChannel channel = file.getChannel();
+      long fileSize = channel.size();
+      for (int i = 0; i < segments.length; i += 3) {
+        long offset = segments[i];
+        long vaddr = segments[i + 1];
+        long size = segments[i + 2];
+        // A truncated core only provides what was written
+        size = Math.max(0, Math.min(size, fileSize - offset));
+        for (long done = 0; done < size; done += MAX_CHUNK_SIZE) {
+          long len = Math.min(MAX_CHUNK_SIZE, size - done);
+          buffers[chunk] = channel.map(FileChannel.MapMode.READ_ONLY, offset + done, len).order(order);
+          bases[chunk] = vaddr + done;
+          ends[chunk] = vaddr + done + len;
+          chunk++;
+          total += len;
+        }
+      }
+    } finally {
+      // The mappings stay valid after the channel is closed
+      file.close();
+    }
+    numChunks = chunk;
+    mappedSize = total;
+  }
+
+  /** Gives access to copies of parts of the address space, for example
+      ones taken from a process before it was resumed. data[i] holds
+      the bytes at addresses[i]. The parts must be sorted by address
+      and must not overlap. */
+  public MappedMemory(long[] addresses, byte[][] data, boolean bigEndian) {
+    ByteOrder order = bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+    numChunks = addresses.length;
+    bases = new long[numChunks];
+    ends = new long[numChunks];
+    buffers = new ByteBuffer[numChunks];
+    long total = 0;
+    for (int i = 0; i < numChunks; i++) {
+      buffers[i] = ByteBuffer.wrap(data[i]).order(order);
+      bases[i] = addresses[i];
+      ends[i] = addresses[i] + data[i].length;
+      total += data[i].length;
+    }
+    mappedSize = total;
+  }
+
+  /** Returns the number of bytes that are mapped */
+  public long getMappedSize() {
+    return mappedSize;
+  }
+
+  /** Returns a chunk index to be passed to the accessors if the
+      numBytes bytes at address are all mapped, or -1 if they are
+      not. */
+  public int lookup(long address, long numBytes) {
+    int c = lastChunk;
+    if (c < numChunks && address >= bases[c] && address + numBytes <= ends[c]) {
+      return c;
+    }
+    int lo = 0;
+    int hi = numChunks - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      if (address < bases[mid]) {
+        hi = mid - 1;
+      } else if (address >= ends[mid]) {
+        lo = mid + 1;
+      } else {
+        if (address + numBytes > ends[mid]) {
+          return -1;
+        }
+        lastChunk = mid;
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  public byte getByte(int chunk, long address) {
+    return buffers[chunk].get((int) (address - bases[chunk]));
+  }
+
+  public short getShort(int chunk, long address) {
+    return buffers[chunk].getShort((int) (address - bases[chunk]));
+  }
+
+  public char getChar(int chunk, long address) {
+    return buffers[chunk].getChar((int) (address - bases[chunk]));
+  }
+
+  public int getInt(int chunk, long address) {
+    return buffers[chunk].getInt((int) (address - bases[chunk]));
+  }
+
+  public long getLong(int chunk, long address) {
+    return buffers[chunk].getLong((int) (address - bases[chunk]));
+  }
+
+  public float getFloat(int chunk, long address) {
+    return buffers[chunk].getFloat((int) (address - bases[chunk]));
+  }
+
+  public double getDouble(int chunk, long address) {
+    return buffers[chunk].getDouble((int) (address - bases[chunk]));
+  }
+
+  /** Reads a C integer of 1, 2, 4 or 8 bytes */
+  public long getCInteger(int chunk, long address, long numBytes, boolean isUnsigned) {
+    int index = (int) (address - bases[chunk]);
+    ByteBuffer buf = buffers[chunk];
+    switch ((int) numBytes) {
+    case 1: return isUnsigned ? buf.get(index) & 0xFF : buf.get(index);
+    case 2: return isUnsigned ? buf.getShort(index) & 0xFFFF : buf.getShort(index);
+    case 4: return isUnsigned ? buf.getInt(index) & 0xFFFFFFFFL : buf.getInt(index);
+    case 8: return buf.getLong(index);
+    default:
+      throw new IllegalArgumentException("unsupported C integer size " + numBytes);
+    }
+  }
+
+  /** Copies numBytes bytes at address into a new array. The range
+      must have been found by lookup(). */
+  public byte[] getData(int chunk, long address, long numBytes) {
+    byte[] data = new byte[(int) numBytes];
+    ByteBuffer buf = buffers[chunk].duplicate();
+    buf.position((int) (address - bases[chunk]));
+    buf.get(data);
+    return data;
+  }
+}
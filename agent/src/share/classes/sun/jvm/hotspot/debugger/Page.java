@@ -33,6 +33,7 @@ public class Page {
   private Page   prev;
   private Page   next;
   private long   unmappedPageLength;
+  private boolean prefetched;
 
   /** The length of the data[] array implicitly defines the size of the
       page. */
@@ -67,6 +68,16 @@ public class Page {
     return (data != null);
   }
 
+  /** Indicates whether this page was read ahead by the PageCache and
+      has not been accessed since */
+  public boolean isPrefetched() {
+    return prefetched;
+  }
+
+  public void setPrefetched(boolean prefetched) {
+    this.prefetched = prefetched;
+  }
+
   public Page getPrev() {
     return prev;
   }
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2000, 2002, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2000, 2015, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -21,7 +21,6 @@
  * questions.
  *
  */
-
 package sun.jvm.hotspot.debugger;
 
 /** This class implements an LRU page-level cache of configurable page
@@ -29,8 +28,20 @@ package sun.jvm.hotspot.debugger;
     which enables it to transparently satisfy requests which span
     multiple pages when one or more of those pages is not in the
     cache. It is generic enough to be sharable among debugger
-    implementations. */
+    implementations. <P>
+
+    The cache is split into stripes, each with its own lock, hash
+    table and LRU list, so that several threads of an SA tool can read
+    through it concurrently. Consecutive pages fall into different
+    stripes. <P>
+
+    When misses hit consecutive pages, the cache assumes a sequential
+    scan (such as a heap walk) and fetches the following pages in one
+    batched request to the PageFetcher. The number of pages read ahead
+    is given by the sun.jvm.hotspot.debugger.pageCacheReadAhead
+    property (default 16, 0 disables read-ahead). */
 
+import java.util.concurrent.atomic.AtomicLong;
 import sun.jvm.hotspot.utilities.*;
 
 public class PageCache {
@@ -44,7 +55,17 @@ public class PageCache {
     this.pageSize    = pageSize;
     this.maxNumPages = maxNumPages;
     this.fetcher     = fetcher;
-    addressToPageMap = new LongHashMap();
+    int numStripes = 1;
+    while (numStripes < MAX_STRIPES && numStripes * 2 <= maxNumPages) {
+      numStripes *= 2;
+    }
+    stripes = new Stripe[numStripes];
+    long stripeCapacity = (maxNumPages + numStripes - 1) / numStripes;
+    for (int i = 0; i < numStripes; i++) {
+      stripes[i] = new Stripe(stripeCapacity);
+    }
+    readAhead = Math.min(Integer.getInteger("sun.jvm.hotspot.debugger.pageCacheReadAhead", 16),
+                         (int) Math.min(maxNumPages / 2, Integer.MAX_VALUE));
     enabled = true;
   }
 
@@ -52,7 +73,7 @@ public class PageCache {
       presence of the PageFetcher. Throws UnmappedAddressException if
       a page on which data was requested was unmapped. This can not
       really handle numBytes > 32 bits. */
-  public synchronized byte[] getData(long startAddress, long numBytes)
+  public byte[] getData(long startAddress, long numBytes)
     throws UnmappedAddressException {
     byte[] data = new byte[(int) numBytes];
     long numRead = 0;
@@ -76,190 +97,435 @@ public class PageCache {
     return data;
   }
 
-  public synchronized boolean getBoolean(long address) {
+  public boolean getBoolean(long address) {
     return (getByte(address) != 0);
   }
 
-  public synchronized byte getByte(long address) {
+  public byte getByte(long address) {
     return checkPage(getPage(address & pageMask), address).getByte(address);
   }
 
-  public synchronized short getShort(long address, boolean bigEndian) {
+  public short getShort(long address, boolean bigEndian) {
     return checkPage(getPage(address & pageMask), address).getShort(address, bigEndian);
   }
 
-  public synchronized char getChar(long address, boolean bigEndian) {
+  public char getChar(long address, boolean bigEndian) {
     return checkPage(getPage(address & pageMask), address).getChar(address, bigEndian);
   }
 
-  public synchronized int getInt(long address, boolean bigEndian) {
+  public int getInt(long address, boolean bigEndian) {
     return checkPage(getPage(address & pageMask), address).getInt(address, bigEndian);
   }
 
-  public synchronized long getLong(long address, boolean bigEndian) {
+  public long getLong(long address, boolean bigEndian) {
     return checkPage(getPage(address & pageMask), address).getLong(address, bigEndian);
   }
 
-  public synchronized float getFloat(long address, boolean bigEndian) {
+  public float getFloat(long address, boolean bigEndian) {
     return checkPage(getPage(address & pageMask), address).getFloat(address, bigEndian);
   }
 
-  public synchronized double getDouble(long address, boolean bigEndian) {
+  public double getDouble(long address, boolean bigEndian) {
     return checkPage(getPage(address & pageMask), address).getDouble(address, bigEndian);
   }
 
+  /** Fetches the pages covering the given ranges which are not yet
+      cached in one batch, so that the many small reads of a structure
+      of known extent do not miss one by one. */
+  public void prefetch(long[] startAddresses, long[] numBytes) {
+    if (!enabled) {
+      return;
+    }
+    long[] addresses = new long[16];
+    int count = 0;
+    for (int i = 0; i < startAddresses.length; i++) {
+      long end = startAddresses[i] + numBytes[i];
+      for (long address = startAddresses[i] & pageMask; address < end; address += pageSize) {
+        if (stripeFor(address).contains(address)) {
+          continue;
+        }
+        if (count == addresses.length) {
+          long[] tmp = new long[2 * count];
+          System.arraycopy(addresses, 0, tmp, 0, count);
+          addresses = tmp;
+        }
+        addresses[count++] = address;
+      }
+    }
+    fetchBatch(addresses, count);
+  }
+
   /** A mechanism for clearing cached data covering the given region */
-  public synchronized void clear(long startAddress, long numBytes) {
+  public void clear(long startAddress, long numBytes) {
     long pageBaseAddress = startAddress & pageMask;
     long endAddress      = startAddress + numBytes;
     while (pageBaseAddress < endAddress) {
-      flushPage(pageBaseAddress);
+      stripeFor(pageBaseAddress).flushPage(pageBaseAddress);
       pageBaseAddress += pageSize;
     }
   }
 
   /** A mechanism for clearing out the cache is necessary to handle
       detaching and reattaching */
-  public synchronized void clear() {
-    // Should probably break next/prev links in list as well
-    addressToPageMap.clear();
-    lruList = null;
-    numPages = 0;
+  public void clear() {
+    for (int i = 0; i < stripes.length; i++) {
+      stripes[i].clear();
+    }
+    nextSequentialPage = -1;
   }
 
   /** Disables the page cache; no further pages will be added to the
       cache and all existing pages will be flushed. Call this when the
       target process has been resumed. */
-  public synchronized void disable() {
+  public void disable() {
     enabled = false;
     clear();
   }
 
   /** Enables the page cache; fetched pages will be added to the
       cache. Call this when the target process has been suspended. */
-  public synchronized void enable() {
+  public void enable() {
     enabled = true;
   }
 
+  /** Returns a one-line summary of the hit, miss and read-ahead
+      counters since the cache was created */
+  public String getStatistics() {
+    long hits = 0;
+    long misses = 0;
+    long prefetched = 0;
+    long prefetchHits = 0;
+    long pages = 0;
+    for (int i = 0; i < stripes.length; i++) {
+      Stripe s = stripes[i];
+      synchronized (s) {
+        hits         += s.hits;
+        misses       += s.misses;
+        prefetched   += s.prefetched;
+        prefetchHits += s.prefetchHits;
+        pages        += s.numPages;
+      }
+    }
+    long accesses = hits + misses;
+    return "PageCache: " + pages + "/" + maxNumPages + " pages of " + pageSize + " bytes, " +
+           hits + " hits, " + misses + " misses (" +
+           (accesses == 0 ? 0 : (100 * hits / accesses)) + "% hit rate), " +
+           prefetched + " pages read ahead in " + prefetchBatches.get() + " batches, " +
+           prefetchHits + " of them used";
+  }
+
 
   //--------------------------------------------------------------------------------
   // Internals only below this point
   //
 
-  // This is implemented with two data structures: a hash table for
-  // fast lookup by a page's base address and a circular doubly-linked
-  // list for implementing LRU behavior.
+  // Each stripe is implemented with two data structures: a hash table
+  // for fast lookup by a page's base address and a circular
+  // doubly-linked list for implementing LRU behavior. A page belongs
+  // to exactly one stripe, and its list links are guarded by that
+  // stripe's lock. The data of a page never changes once it has been
+  // fetched, so pages can be read outside of the lock.
+
+  private static final int MAX_STRIPES = 16;
 
-  private boolean     enabled;
+  private volatile boolean enabled;
   private long        pageSize;
   private long        maxNumPages;
   private long        pageMask;
-  private long        numPages;
+  private int         pageShift;
   private PageFetcher fetcher;
-  private LongHashMap addressToPageMap; // Map<long, Page>
-  private Page        lruList; // Most recently fetched page, or null
+  private Stripe[]    stripes;
+  private int         readAhead;
 
-  /** Page fetcher plus LRU functionality */
-  private Page getPage(long pageBaseAddress) {
-    // Check head of LRU list first to avoid hash table lookup and
-    // extra list work if possible
-    if (lruList != null) {
-      if (lruList.getBaseAddress() == pageBaseAddress) {
-        // Hit. Return it.
+  // Base address of the page whose miss would continue a sequential
+  // scan, or -1. Updated without synchronization; a lost update at
+  // worst delays or repeats a read-ahead.
+  private volatile long nextSequentialPage = -1;
+  private final AtomicLong prefetchBatches = new AtomicLong();
+
+  class Stripe {
+    private final long  capacity;
+    private long        numPages;
+    private LongHashMap addressToPageMap = new LongHashMap(); // Map<long, Page>
+    private Page        lruList; // Most recently fetched page, or null
+    private LongHashMap inFlight = new LongHashMap(); // Map<long, PendingFetch>
+    // Incremented whenever pages are flushed, so that a fetch that was
+    // in flight at that time does not add a stale page
+    private long        generation;
+
+    // Statistics, guarded by this stripe's lock
+    long hits;
+    long misses;
+    long prefetched;
+    long prefetchHits;
+
+    Stripe(long capacity) {
+      this.capacity = capacity;
+    }
+
+    /** Returns the cached page at pageBaseAddress, or null */
+    synchronized Page lookup(long pageBaseAddress) {
+      // Check head of LRU list first to avoid hash table lookup and
+      // extra list work if possible
+      if (lruList != null && lruList.getBaseAddress() == pageBaseAddress) {
+        hits++;
         return lruList;
       }
+      Page page = (Page) addressToPageMap.get(pageBaseAddress);
+      if (page != null) {
+        hit(page);
+      }
+      return page;
     }
-    //    Long key = new Long(pageBaseAddress);
-    long key = pageBaseAddress;
-    Page page = (Page) addressToPageMap.get(key);
-    if (page == null) {
-      // System.err.println("** Cache miss at address 0x" + Long.toHexString(pageBaseAddress) + " **");
-      // Fetch new page
-      page = fetcher.fetchPage(pageBaseAddress, pageSize);
-      if (enabled) {
-        // Add to cache, evicting last element if necessary
-        addressToPageMap.put(key, page);
-        if (Assert.ASSERTS_ENABLED) {
-          Assert.that(page == (Page) addressToPageMap.get(pageBaseAddress),
-                      "must have found page in cache!");
+
+    /** Fetches the page at pageBaseAddress unless another thread has
+        done so in the meantime. The remote read is done without
+        holding the lock; concurrent misses on the same page wait for
+        the fetch in flight instead of reading the page again. */
+    Page fetch(long pageBaseAddress) {
+      PendingFetch pending;
+      boolean owner = false;
+      long fetchGeneration;
+      synchronized (this) {
+        Page page = (Page) addressToPageMap.get(pageBaseAddress);
+        if (page != null) {
+          hit(page);
+          return page;
         }
-        addPageToList(page);
-        // See whether eviction of oldest is necessary
-        if (numPages == maxNumPages) {
-          Page evictedPage = lruList.getPrev();
-          // System.err.println("-> Evicting page at      0x" + Long.toHexString(evictedPage.getBaseAddress()) +
-          //                    "; " + countPages() + " pages left (expect " + numPages + ")");
-          removePageFromList(evictedPage);
-          addressToPageMap.remove(evictedPage.getBaseAddress());
+        pending = (PendingFetch) inFlight.get(pageBaseAddress);
+        if (pending != null) {
+          hits++;
         } else {
-          ++numPages;
+          misses++;
+          pending = new PendingFetch();
+          inFlight.put(pageBaseAddress, pending);
+          owner = true;
         }
+        fetchGeneration = generation;
+      }
+      if (!owner) {
+        return pending.await();
+      }
+
+      Page page = null;
+      RuntimeException error = null;
+      try {
+        page = fetcher.fetchPage(pageBaseAddress, pageSize);
+      } catch (RuntimeException e) {
+        error = e;
+        throw e;
+      } finally {
+        synchronized (this) {
+          inFlight.remove(pageBaseAddress);
+          // A page flushed or cleared while it was read may be stale
+          if (page != null && enabled && generation == fetchGeneration &&
+              addressToPageMap.get(pageBaseAddress) == null) {
+            add(page);
+          }
+        }
+        pending.complete(page, error);
+      }
+      return page;
+    }
+
+    // Accounts for a hit on a page found in the hash table and moves
+    // it to the front of the LRU list
+    private void hit(Page page) {
+      hits++;
+      if (page.isPrefetched()) {
+        prefetchHits++;
+        page.setPrefetched(false);
+      }
+      if (lruList != page) {
+        removePageFromList(page);
+        addPageToList(page);
+      }
+    }
+
+    /** Adds a page that was read ahead unless it is already cached */
+    synchronized void addPrefetched(Page page) {
+      if (!enabled || addressToPageMap.get(page.getBaseAddress()) != null) {
+        return;
+      }
+      prefetched++;
+      page.setPrefetched(true);
+      add(page);
+    }
+
+    synchronized boolean contains(long pageBaseAddress) {
+      return addressToPageMap.get(pageBaseAddress) != null;
+    }
+
+    private void add(Page page) {
+      // Add to cache, evicting last element if necessary
+      addressToPageMap.put(page.getBaseAddress(), page);
+      if (Assert.ASSERTS_ENABLED) {
+        Assert.that(page == (Page) addressToPageMap.get(page.getBaseAddress()),
+                    "must have found page in cache!");
       }
-    } else {
-      // Page already in cache, move to front of list
-      removePageFromList(page);
       addPageToList(page);
+      // See whether eviction of oldest is necessary
+      if (numPages == capacity) {
+        Page evictedPage = lruList.getPrev();
+        removePageFromList(evictedPage);
+        addressToPageMap.remove(evictedPage.getBaseAddress());
+      } else {
+        ++numPages;
+      }
     }
-    return page;
-  }
 
-  private Page checkPage(Page page, long startAddress) {
-    if (!page.isMapped()) {
-      throw new UnmappedAddressException(startAddress);
+    synchronized void flushPage(long pageBaseAddress) {
+      generation++;
+      Page page = (Page) addressToPageMap.remove(pageBaseAddress);
+      if (page != null) {
+        removePageFromList(page);
+        --numPages;
+      }
+    }
+
+    synchronized void clear() {
+      // Should probably break next/prev links in list as well
+      generation++;
+      addressToPageMap.clear();
+      lruList = null;
+      numPages = 0;
+    }
+
+    // Adds given page to head of list
+    private void addPageToList(Page page) {
+      if (lruList == null) {
+        lruList = page;
+        page.setNext(page);
+        page.setPrev(page);
+      } else {
+        // Add to front of list
+        page.setNext(lruList);
+        page.setPrev(lruList.getPrev());
+        lruList.getPrev().setNext(page);
+        lruList.setPrev(page);
+        lruList = page;
+      }
+    }
+
+    // Removes given page from list
+    private void removePageFromList(Page page) {
+      if (page.getNext() == page) {
+        lruList = null;
+      } else {
+        if (lruList == page) {
+          lruList = page.getNext();
+        }
+        page.getPrev().setNext(page.getNext());
+        page.getNext().setPrev(page.getPrev());
+      }
+      page.setPrev(null);
+      page.setNext(null);
     }
-    return page;
   }
 
-  private int countPages() {
-    Page page = lruList;
-    int num = 0;
-    if (page == null) {
-      return num;
+  /** A page being fetched by one thread, which other threads missing
+      on the same page wait for */
+  static class PendingFetch {
+    private boolean done;
+    private Page page;
+    private RuntimeException error;
+
+    synchronized void complete(Page page, RuntimeException error) {
+      this.page = page;
+      this.error = error;
+      done = true;
+      notifyAll();
+    }
+
+    synchronized Page await() {
+      boolean interrupted = false;
+      while (!done) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      if (error != null) {
+        throw error;
+      }
+      if (page == null) {
+        throw new DebuggerException("fetch of page failed in another thread");
+      }
+      return page;
     }
-    do {
-      ++num;
-      page = page.getNext();
-    } while (page != lruList);
-    return num;
   }
 
-  private void flushPage(long pageBaseAddress) {
-    long key = pageBaseAddress;
-    Page page = (Page) addressToPageMap.remove(key);
+  private Stripe stripeFor(long pageBaseAddress) {
+    return stripes[(int) (pageBaseAddress >>> pageShift) & (stripes.length - 1)];
+  }
+
+  /** Page fetcher plus LRU functionality */
+  private Page getPage(long pageBaseAddress) {
+    Stripe stripe = stripeFor(pageBaseAddress);
+    Page page = stripe.lookup(pageBaseAddress);
     if (page != null) {
-      removePageFromList(page);
+      return page;
     }
+    page = stripe.fetch(pageBaseAddress);
+    if (readAhead > 0 && enabled) {
+      // A miss on the page following an earlier miss or read-ahead
+      // window indicates a sequential scan
+      if (pageBaseAddress == nextSequentialPage) {
+        readAhead(pageBaseAddress + pageSize);
+      } else {
+        nextSequentialPage = pageBaseAddress + pageSize;
+      }
+    }
+    return page;
   }
 
-  // Adds given page to head of list
-  private void addPageToList(Page page) {
-    if (lruList == null) {
-      lruList = page;
-      page.setNext(page);
-      page.setPrev(page);
-    } else {
-      // Add to front of list
-      page.setNext(lruList);
-      page.setPrev(lruList.getPrev());
-      lruList.getPrev().setNext(page);
-      lruList.setPrev(page);
-      lruList = page;
+  /** Fetches the readAhead pages starting at startAddress which are
+      not yet cached in one batch. Must be called without holding a
+      stripe lock, since the pages are spread over all stripes. */
+  private void readAhead(long startAddress) {
+    long[] addresses = new long[readAhead];
+    int count = 0;
+    for (int i = 0; i < readAhead; i++) {
+      long address = startAddress + i * pageSize;
+      if (!stripeFor(address).contains(address)) {
+        addresses[count++] = address;
+      }
     }
+    nextSequentialPage = startAddress + readAhead * pageSize;
+    fetchBatch(addresses, count);
   }
 
-  // Removes given page from list
-  private void removePageFromList(Page page) {
-    if (page.getNext() == page) {
-      lruList = null;
-    } else {
-      if (lruList == page) {
-        lruList = page.getNext();
+  /** Fetches the first count pages of addresses, which must not
+      contain duplicates, and adds the mapped ones to the cache */
+  private void fetchBatch(long[] addresses, int count) {
+    if (count == 0) {
+      return;
+    }
+    if (count < addresses.length) {
+      long[] tmp = new long[count];
+      System.arraycopy(addresses, 0, tmp, 0, count);
+      addresses = tmp;
+    }
+    Page[] pages = fetcher.fetchPages(addresses, pageSize);
+    prefetchBatches.incrementAndGet();
+    for (int i = 0; i < pages.length; i++) {
+      // Unmapped pages are not kept; a scan has most likely left
+      // the region
+      if (pages[i] != null && pages[i].isMapped()) {
+        stripeFor(pages[i].getBaseAddress()).addPrefetched(pages[i]);
       }
-      page.getPrev().setNext(page.getNext());
-      page.getNext().setPrev(page.getPrev());
     }
-    page.setPrev(null);
-    page.setNext(null);
+  }
+
+  private Page checkPage(Page page, long startAddress) {
+    if (!page.isMapped()) {
+      throw new UnmappedAddressException(startAddress);
+    }
+    return page;
   }
 
   /** Ensure that page size fits within 32 bits and is a power of two, and that maxNumPages > 0 */
@@ -282,6 +548,7 @@ public class PageCache {
       pageSize >>>= 1;
       if (numNonZeroBits == 0) {
         pageMask = (pageMask << 1) | 1L;
+        ++pageShift;
       }
     }
     pageMask = ~pageMask;
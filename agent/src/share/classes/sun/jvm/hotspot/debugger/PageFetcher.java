@@ -28,4 +28,9 @@ package sun.jvm.hotspot.debugger;
 
 public interface PageFetcher {
   public Page fetchPage(long pageBaseAddress, long numBytes);
+
+  /** Fetches several pages at once, used by the PageCache to read
+      ahead. Elements of the result may be null for pages that could
+      not be fetched. */
+  public Page[] fetchPages(long[] pageBaseAddresses, long numBytes);
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+
+package sun.jvm.hotspot.debugger;
+
+/** <P> Optional interface of debuggers which can let an attached
+    process run and stop it again without detaching from it. Everything
+    the agent has built up about the target, such as the type
+    database, symbol tables and code cache indexes, stays valid across
+    such stops, which makes it possible to sample a live VM
+    repeatedly at the cost of one attach. </P>
+
+    <P> While the process runs, reads of its memory see it changing
+    underneath; the parts which must be consistent, such as thread
+    stacks, can be copied while it is stopped with {@link
+    #freezeMemory}. The register sets of all threads are read at each
+    stop and remain available until the next one. </P> */
+
+public interface ResumableDebugger {
+  /** Indicates whether the threads of the target process are stopped */
+  public boolean isSuspended();
+
+  /** Lets the threads of the target process run.
+
+      @throw DebuggerException if the process is not suspended or
+      could not be resumed */
+  public void resume() throws DebuggerException;
+
+  /** Stops the threads of the target process again, reads their
+      register sets and discards the memory frozen at the previous
+      stop. Threads started while the process ran are included.
+
+      @throw DebuggerException if the process is already suspended or
+      could not be stopped */
+  public void suspend() throws DebuggerException;
+
+  /** Copies the given ranges of the memory of the suspended process.
+      Until the next suspend(), reads within them are answered from the
+      copy, also after the process has been resumed. Ranges which can
+      not be read are skipped; ranges may overlap. */
+  public void freezeMemory(long[] addresses, long[] sizes) throws DebuggerException;
+}
@@ -25,17 +25,24 @@
 package sun.jvm.hotspot.debugger.linux;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import sun.jvm.hotspot.debugger.Address;
 import sun.jvm.hotspot.debugger.DebuggerBase;
 import sun.jvm.hotspot.debugger.DebuggerException;
 import sun.jvm.hotspot.debugger.DebuggerUtilities;
 import sun.jvm.hotspot.debugger.MachineDescription;
+import sun.jvm.hotspot.debugger.MappedMemory;
 import sun.jvm.hotspot.debugger.NotInHeapException;
 import sun.jvm.hotspot.debugger.OopHandle;
 import sun.jvm.hotspot.debugger.ReadResult;
+import sun.jvm.hotspot.debugger.ResumableDebugger;
 import sun.jvm.hotspot.debugger.ThreadProxy;
 import sun.jvm.hotspot.debugger.UnalignedAddressException;
 import sun.jvm.hotspot.debugger.UnmappedAddressException;
@@ -59,11 +66,15 @@ import sun.jvm.hotspot.utilities.PlatformInfo;
     RuntimeException if they are called before the debugger is
     configured with the Java primitive type sizes. </P> */
 
-public class LinuxDebuggerLocal extends DebuggerBase implements LinuxDebugger {
+public class LinuxDebuggerLocal extends DebuggerBase implements LinuxDebugger, ResumableDebugger {
     private boolean useGCC32ABI;
     private boolean attached;
     private long    p_ps_prochandle; // native debugger handle
     private boolean isCore;
+    // whether the threads of the process are stopped, see ResumableDebugger
+    private boolean suspended;
+    // register sets of the threads, read when the process was suspended
+    private Map registerCache = new HashMap();
 
     // CDebugger support
     private LinuxCDebugger cdbg;
@@ -71,6 +82,12 @@ public class LinuxDebuggerLocal extends DebuggerBase implements LinuxDebugger {
     // threadList and loadObjectList are filled by attach0 method
     private List threadList;
     private List loadObjectList;
+    // Results of lookup() by address, with NO_SYMBOL for addresses
+    // without one. The threads of a process share most of their native
+    // PCs, so stack dumps of many threads mostly hit this.
+    private Map symbolCache = new HashMap();
+    private static final Object NO_SYMBOL = new Object();
+    private static final int MAX_CACHED_SYMBOLS = 100000;
 
     // called by native method lookupByAddress0
     private ClosestSymbol createClosestSymbol(String name, long offset) {
@@ -95,6 +112,10 @@ public class LinuxDebuggerLocal extends DebuggerBase implements LinuxDebugger {
                                 throws DebuggerException;
     private native void detach0()
                                 throws DebuggerException;
+    private native void resume0()
+                                throws DebuggerException;
+    private native int[] suspend0()
+                                throws DebuggerException;
     private native long lookupByName0(String objectName, String symbol)
                                 throws DebuggerException;
     private native ClosestSymbol lookupByAddress0(long address)
@@ -103,6 +124,10 @@ public class LinuxDebuggerLocal extends DebuggerBase implements LinuxDebugger {
                                 throws DebuggerException;
     private native byte[] readBytesFromProcess0(long address, long numBytes)
                                 throws DebuggerException;
+    private native byte[][] readPagesFromProcess0(long[] addresses, long pageSize)
+                                throws DebuggerException;
+    private native long[] getCoreSegments0()
+                                throws DebuggerException;
     public native static int  getAddressSize() ;
 
     // Note on Linux threads are really processes. When target process is
@@ -269,6 +294,7 @@ public class LinuxDebuggerLocal extends DebuggerBase implements LinuxDebugger {
               debugger.attach0(pid);
               debugger.attached = true;
               debugger.isCore = false;
+              debugger.suspended = true;
               findABIVersion();
            }
         }
@@ -286,7 +312,26 @@ public class LinuxDebuggerLocal extends DebuggerBase implements LinuxDebugger {
         attach0(execName, coreName);
         attached = true;
         isCore = true;
+        suspended = true;
         findABIVersion();
+        mapCore(coreName);
+    }
+
+    /* called from attach(String, String). Maps the segments of the core
+       file so that reads of them do not need a system call and a copy.
+       Segments that come from the executable, shared libraries or the
+       class sharing archive are still read through the native code. */
+    private void mapCore(String coreName) {
+        if (Boolean.getBoolean("sun.jvm.hotspot.debugger.linux.noMappedCore")) {
+            return;
+        }
+        try {
+            setMappedMemory(new MappedMemory(coreName, getCoreSegments0(),
+                                             machDesc.isBigEndian()));
+        } catch (IOException e) {
+            // Not fatal, all reads go through the native code instead
+            System.err.println("Warning: could not map core file " + coreName + ": " + e);
+        }
     }
 
     /** From the Debugger interface via JVMDebugger */
@@ -297,8 +342,11 @@ public class LinuxDebuggerLocal extends DebuggerBase implements LinuxDebugger {
 
         threadList = null;
         loadObjectList = null;
+        symbolCache.clear();
+        registerCache.clear();
 
         if (isCore) {
+            setMappedMemory(null);
             detach0();
             attached = false;
             return true;
@@ -319,6 +367,124 @@ public class LinuxDebuggerLocal extends DebuggerBase implements LinuxDebugger {
         }
     }
 
+    /** From the ResumableDebugger interface */
+    public synchronized boolean isSuspended() {
+        return attached && suspended;
+    }
+
+    /** From the ResumableDebugger interface */
+    public synchronized void resume() throws DebuggerException {
+        requireAttach();
+        if (isCore) {
+            throw new DebuggerException("can't resume a core dump");
+        }
+        if (!suspended) {
+            throw new DebuggerException("process is running already");
+        }
+        class ResumeTask implements WorkerThreadTask {
+            public void doit(LinuxDebuggerLocal debugger) {
+                debugger.resume0();
+                debugger.suspended = false;
+            }
+        }
+
+        workerThread.execute(new ResumeTask());
+        // Pages read while the process runs are dropped at the next suspend()
+        clearCache();
+    }
+
+    /** From the ResumableDebugger interface */
+    public synchronized void suspend() throws DebuggerException {
+        requireAttach();
+        if (isCore || suspended) {
+            throw new DebuggerException("process is suspended already");
+        }
+        class SuspendTask implements WorkerThreadTask {
+            public void doit(LinuxDebuggerLocal debugger) {
+                int[] ids = debugger.suspend0();
+                debugger.suspended = true;
+                debugger.threadList.clear();
+                debugger.registerCache.clear();
+                for (int i = 0; i < ids.length; i++) {
+                    debugger.threadList.add(debugger.getThreadForThreadId(ids[i]));
+                    try {
+                        debugger.registerCache.put(new Integer(ids[i]),
+                                                   debugger.getThreadIntegerRegisterSet0(ids[i]));
+                    } catch (DebuggerException e) {
+                        // Not fatal, the thread may have exited meanwhile
+                    }
+                }
+            }
+        }
+
+        setMappedMemory(null);
+        workerThread.execute(new SuspendTask());
+        clearCache();
+    }
+
+    /** From the ResumableDebugger interface */
+    public synchronized void freezeMemory(long[] addresses, long[] sizes)
+            throws DebuggerException {
+        requireAttach();
+        if (isCore) {
+            // Nothing changes
+            return;
+        }
+        if (!suspended) {
+            throw new DebuggerException("process is running");
+        }
+
+        // Sort the ranges and merge the overlapping ones
+        long[][] ranges = new long[addresses.length][];
+        for (int i = 0; i < ranges.length; i++) {
+            ranges[i] = new long[] { addresses[i], addresses[i] + sizes[i] };
+        }
+        Arrays.sort(ranges, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                long a1 = ((long[]) o1)[0];
+                long a2 = ((long[]) o2)[0];
+                return (a1 < a2) ? -1 : ((a1 > a2) ? 1 : 0);
+            }
+        });
+        int count = 0;
+        for (int i = 0; i < ranges.length; i++) {
+            if (count > 0 && ranges[i][0] <= ranges[count - 1][1]) {
+                ranges[count - 1][1] = Math.max(ranges[count - 1][1], ranges[i][1]);
+            } else {
+                ranges[count++] = ranges[i];
+            }
+        }
+
+        class FreezeTask implements WorkerThreadTask {
+            long[][] ranges;
+            int count;
+            long[] bases;
+            byte[][] data;
+            int numRead;
+
+            public void doit(LinuxDebuggerLocal debugger) {
+                bases = new long[count];
+                data = new byte[count][];
+                for (int i = 0; i < count; i++) {
+                    byte[] res = debugger.readBytesFromProcess0(ranges[i][0], ranges[i][1] - ranges[i][0]);
+                    if (res != null) {
+                        bases[numRead] = ranges[i][0];
+                        data[numRead] = res;
+                        numRead++;
+                    }
+                }
+            }
+        }
+
+        FreezeTask task = new FreezeTask();
+        task.ranges = ranges;
+        task.count = count;
+        workerThread.execute(task);
+        setMappedMemory(new MappedMemory(Arrays.copyOf(task.bases, task.numRead),
+                                         Arrays.copyOf(task.data, task.numRead),
+                                         machDesc.isBigEndian()));
+    }
+
     /** From the Debugger interface via JVMDebugger */
     public Address parseAddress(String addressString)
             throws NumberFormatException {
@@ -466,6 +632,13 @@ public class LinuxDebuggerLocal extends DebuggerBase implements LinuxDebugger {
     public synchronized long[] getThreadIntegerRegisterSet(int lwp_id)
                                             throws DebuggerException {
         requireAttach();
+        long[] regs = (long[]) registerCache.get(new Integer(lwp_id));
+        if (regs != null) {
+            return regs;
+        }
+        if (!suspended) {
+            throw new DebuggerException("thread " + lwp_id + " was not stopped at the last suspension");
+        }
         if (isCore) {
             return getThreadIntegerRegisterSet0(lwp_id);
         } else {
@@ -495,8 +668,7 @@ public class LinuxDebuggerLocal extends DebuggerBase implements LinuxDebugger {
         } else {
             utils.checkAlignment(address, numBytes);
         }
-        byte[] data = readBytes(address, numBytes);
-        return utils.dataToCInteger(data, isUnsigned);
+        return readCIntegerUnaligned(address, numBytes, isUnsigned);
     }
 
     // Overridden from DebuggerBase because we need to relax alignment
@@ -504,8 +676,7 @@ public class LinuxDebuggerLocal extends DebuggerBase implements LinuxDebugger {
     public long readJLong(long address)
         throws UnmappedAddressException, UnalignedAddressException {
         utils.checkAlignment(address, jintSize);
-        byte[] data = readBytes(address, jlongSize);
-        return utils.dataToJLong(data, jlongSize);
+        return readCIntegerUnaligned(address, jlongSize, false);
     }
 
     //----------------------------------------------------------------------
@@ -539,6 +710,20 @@ public class LinuxDebuggerLocal extends DebuggerBase implements LinuxDebugger {
     /** From the LinuxCDebugger interface */
     public synchronized ClosestSymbol lookup(long addr) {
        requireAttach();
+       Long key = new Long(addr);
+       Object cached = symbolCache.get(key);
+       if (cached != null) {
+          return (cached == NO_SYMBOL)? null : (ClosestSymbol) cached;
+       }
+       ClosestSymbol result = lookupUncached(addr);
+       if (symbolCache.size() >= MAX_CACHED_SYMBOLS) {
+          symbolCache.clear();
+       }
+       symbolCache.put(key, (result == null)? NO_SYMBOL : result);
+       return result;
+    }
+
+    private ClosestSymbol lookupUncached(long addr) {
        if (isCore) {
           return lookupByAddress0(addr);
        } else {
@@ -598,6 +783,32 @@ public class LinuxDebuggerLocal extends DebuggerBase implements LinuxDebugger {
         }
     }
 
+    /** This reads several pages of the remote process with as few
+        system calls as possible. An element of the result is null if
+        the page at the corresponding address could not be read. */
+    public synchronized byte[][] readPagesFromProcess(long[] addresses,
+            long pageSize) throws DebuggerException {
+        requireAttach();
+        if (isCore) {
+            return readPagesFromProcess0(addresses, pageSize);
+        } else {
+            class ReadPagesFromProcessTask implements WorkerThreadTask {
+                long[] addresses;
+                long pageSize;
+                byte[][] result;
+                public void doit(LinuxDebuggerLocal debugger) {
+                    result = debugger.readPagesFromProcess0(addresses, pageSize);
+                }
+            }
+
+            ReadPagesFromProcessTask task = new ReadPagesFromProcessTask();
+            task.addresses = addresses;
+            task.pageSize = pageSize;
+            workerThread.execute(task);
+            return task.result;
+        }
+    }
+
     public void writeBytesToProcess(long address, long numBytes, byte[] data)
         throws UnmappedAddressException, DebuggerException {
         // FIXME
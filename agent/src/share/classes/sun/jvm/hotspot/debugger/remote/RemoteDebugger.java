@@ -54,6 +54,10 @@ public interface RemoteDebugger extends Remote {
   public MachineDescription getMachineDescription() throws RemoteException;
   public long      lookupInProcess(String objectName, String symbol) throws RemoteException;
   public ReadResult readBytesFromProcess(long address, long numBytes) throws RemoteException;
+  /** Reads several blocks in one round trip; element i of the result
+      is what readBytesFromProcess(addresses[i], numBytes[i]) would
+      have returned */
+  public ReadResult[] readBlocksFromProcess(long[] addresses, long[] numBytes) throws RemoteException;
   public boolean   hasConsole() throws RemoteException;
   public String    getConsolePrompt() throws RemoteException;
   public String    consoleExecuteCommand(String cmd) throws RemoteException;
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+
+package sun.jvm.hotspot.debugger.remote;
+
+import java.rmi.*;
+import java.rmi.server.*;
+import java.util.*;
+
+import sun.jvm.hotspot.debugger.*;
+
+/** <P> Compares the RMI and socket transports on localhost. A
+    synthetic target stands in for the debuggee so that no process
+    needs to be attached; its memory looks roughly like a heap (small
+    values in mostly zero upper bytes). Usage: </P>
+
+    <PRE>
+    java sun.jvm.hotspot.debugger.remote.RemoteDebuggerBenchmark [megabytes [pageSize [pagesPerRequest [window]]]]
+    </PRE>
+
+    <P> Each transport reads the given amount of memory in pages, one
+    page per request, pagesPerRequest pages per request and, for the
+    socket transport, with up to window batched requests in flight. </P> */
+
+public class RemoteDebuggerBenchmark {
+  private long totalBytes;
+  private int pageSize;
+  private int batch;
+  private int window;
+  private long checksum;
+
+  private RemoteDebuggerBenchmark(long totalBytes, int pageSize, int batch, int window) {
+    this.totalBytes = totalBytes;
+    this.pageSize = pageSize;
+    this.batch = batch;
+    this.window = window;
+  }
+
+  public static void main(String[] args) throws Exception {
+    long mb       = (args.length > 0) ? Long.parseLong(args[0]) : 256;
+    int pageSize  = (args.length > 1) ? Integer.parseInt(args[1]) : 4096;
+    int batch     = (args.length > 2) ? Integer.parseInt(args[2]) : 64;
+    int window    = (args.length > 3) ? Integer.parseInt(args[3]) : 4;
+    new RemoteDebuggerBenchmark(mb * 1024 * 1024, pageSize, batch, window).run();
+  }
+
+  private void run() throws Exception {
+    SyntheticTarget target = new SyntheticTarget();
+    RemoteDebugger rmi = (RemoteDebugger) RemoteObject.toStub(target);
+    String secret = SocketDebuggerServer.newSecret();
+    SocketDebuggerServer server = new SocketDebuggerServer(target, 0, secret);
+    server.start();
+    String host = server.getAddress().getHostAddress();
+    SocketRemoteDebugger socket = new SocketRemoteDebugger(host, server.getPort(), secret, false);
+    SocketRemoteDebugger deflating = new SocketRemoteDebugger(host, server.getPort(), secret, true);
+    try {
+      System.out.println("Reading " + (totalBytes >> 20) + " MB in " + pageSize + " byte pages, " +
+                         batch + " pages per batch, " + window + " batches in flight");
+      // Warm up both transports before measuring
+      long saved = totalBytes;
+      totalBytes = Math.min(totalBytes, 16 * 1024 * 1024);
+      readSingle(rmi);
+      readBatched(socket, 1);
+      totalBytes = saved;
+
+      time("RMI, one page per call", rmi, 0, 1);
+      time("RMI, batched", rmi, batch, 1);
+      time("Socket, one page per call", socket, 0, 1);
+      time("Socket, batched", socket, batch, 1);
+      time("Socket, batched, pipelined", socket, batch, window);
+      time("Socket, batched, pipelined, deflated", deflating, batch, window);
+    } finally {
+      socket.close();
+      deflating.close();
+      server.close();
+      UnicastRemoteObject.unexportObject(target, true);
+    }
+  }
+
+  private void time(String name, RemoteDebugger dbg, int batchSize, int inFlight) throws Exception {
+    checksum = 0;
+    long start = System.nanoTime();
+    long requests;
+    if (batchSize == 0) {
+      requests = readSingle(dbg);
+    } else if (inFlight == 1) {
+      requests = readBatched(dbg, batchSize);
+    } else {
+      requests = readPipelined((SocketRemoteDebugger) dbg, batchSize, inFlight);
+    }
+    double secs = (System.nanoTime() - start) / 1e9;
+    if (checksum != expectedChecksum()) {
+      throw new RuntimeException(name + ": wrong data read");
+    }
+    System.out.println(formatColumn(name, 40) +
+                       formatColumn(Math.round(totalBytes / secs / (1024 * 1024)) + " MB/s", 14) +
+                       Math.round(requests / secs) + " requests/s");
+  }
+
+  private long readSingle(RemoteDebugger dbg) throws RemoteException {
+    long n = 0;
+    for (long addr = 0; addr < totalBytes; addr += pageSize) {
+      consume(dbg.readBytesFromProcess(addr, pageSize));
+      n++;
+    }
+    return n;
+  }
+
+  private long readBatched(RemoteDebugger dbg, int batchSize) throws RemoteException {
+    long n = 0;
+    for (long addr = 0; addr < totalBytes; ) {
+      long[] addresses = nextBatch(addr, batchSize);
+      long[] sizes = new long[addresses.length];
+      Arrays.fill(sizes, pageSize);
+      ReadResult[] res = dbg.readBlocksFromProcess(addresses, sizes);
+      for (int i = 0; i < res.length; i++) {
+        consume(res[i]);
+      }
+      addr += (long) addresses.length * pageSize;
+      n++;
+    }
+    return n;
+  }
+
+  private long readPipelined(SocketRemoteDebugger dbg, int batchSize, int inFlight) throws RemoteException {
+    LinkedList outstanding = new LinkedList();
+    long n = 0;
+    for (long addr = 0; addr < totalBytes || !outstanding.isEmpty(); ) {
+      while (addr < totalBytes && outstanding.size() < inFlight) {
+        long[] addresses = nextBatch(addr, batchSize);
+        long[] sizes = new long[addresses.length];
+        Arrays.fill(sizes, pageSize);
+        outstanding.addLast(dbg.submitRead(addresses, sizes));
+        addr += (long) addresses.length * pageSize;
+        n++;
+      }
+      ReadResult[] res = (ReadResult[]) ((SocketRemoteDebugger.Request) outstanding.removeFirst()).get();
+      for (int i = 0; i < res.length; i++) {
+        consume(res[i]);
+      }
+    }
+    return n;
+  }
+
+  private long[] nextBatch(long addr, int batchSize) {
+    int count = (int) Math.min(batchSize, (totalBytes - addr + pageSize - 1) / pageSize);
+    long[] addresses = new long[count];
+    for (int i = 0; i < count; i++) {
+      addresses[i] = addr + (long) i * pageSize;
+    }
+    return addresses;
+  }
+
+  private void consume(ReadResult res) {
+    byte[] data = res.getData();
+    if (data == null) {
+      throw new DebuggerException("Read failed at 0x" + Long.toHexString(res.getFailureAddress()));
+    }
+    checksum += data[data.length - 1];
+  }
+
+  private long expectedChecksum() {
+    long sum = 0;
+    for (long addr = 0; addr < totalBytes; addr += pageSize) {
+      sum += SyntheticTarget.byteAt(addr + pageSize - 1);
+    }
+    return sum;
+  }
+
+  private static String formatColumn(String s, int width) {
+    StringBuffer buf = new StringBuffer(s);
+    while (buf.length() < width) {
+      buf.append(' ');
+    }
+    return buf.toString();
+  }
+
+  /** Answers reads with generated data; only the read methods are
+      supported */
+  static class SyntheticTarget extends RemoteDebuggerServer {
+    SyntheticTarget() throws RemoteException {
+      super();
+    }
+
+    static byte byteAt(long addr) {
+      // Little-endian 8 byte words whose upper half is zero
+      if ((addr & 4) != 0) {
+        return 0;
+      }
+      long word = addr >>> 3;
+      return (byte) ((word * 0x9E3779B97F4A7C15L) >>> (56 - 8 * (addr & 3)));
+    }
+
+    public ReadResult readBytesFromProcess(long address, long numBytes) {
+      byte[] data = new byte[(int) numBytes];
+      for (int i = 0; i < data.length; i++) {
+        data[i] = byteAt(address + i);
+      }
+      return new ReadResult(data);
+    }
+
+    public ReadResult[] readBlocksFromProcess(long[] addresses, long[] numBytes) {
+      ReadResult[] res = new ReadResult[addresses.length];
+      for (int i = 0; i < res.length; i++) {
+        res[i] = readBytesFromProcess(addresses[i], numBytes[i]);
+      }
+      return res;
+    }
+  }
+}
@@ -35,7 +35,8 @@ import sun.jvm.hotspot.debugger.remote.x86.*;
 import sun.jvm.hotspot.debugger.remote.amd64.*;
 
 /** An implementation of Debugger which wraps a
-    RemoteDebugger, providing remote debugging via RMI.
+    RemoteDebugger, providing remote debugging via RMI or, see
+    SocketRemoteDebugger, a plain socket.
     This implementation provides caching of the remote process's
     address space on the local machine where the user interface is
     running. */
@@ -411,6 +412,26 @@ public class RemoteDebuggerClient extends DebuggerBase implements JVMDebugger {
     }
   }
 
+  /** Fetches all pages of a cache read-ahead in a single round trip
+      instead of one call per page */
+  protected byte[][] readPagesFromProcess(long[] addresses, long pageSize)
+    throws DebuggerException {
+    long[] sizes = new long[addresses.length];
+    Arrays.fill(sizes, pageSize);
+    ReadResult[] res;
+    try {
+      res = remoteDebugger.readBlocksFromProcess(addresses, sizes);
+    }
+    catch (RemoteException e) {
+      throw new DebuggerException(e);
+    }
+    byte[][] pages = new byte[addresses.length][];
+    for (int i = 0; i < pages.length; i++) {
+      pages[i] = res[i].getData();
+    }
+    return pages;
+  }
+
   public void writeBytesToProcess(long a, long b, byte[] c) {
      throw new DebuggerException("Unimplemented!");
   }
@@ -70,6 +70,17 @@ public class RemoteDebuggerServer extends UnicastRemoteObject
     return debugger.readBytesFromProcess(address, numBytes);
   }
 
+  public ReadResult[] readBlocksFromProcess(long[] addresses, long[] numBytes) throws RemoteException {
+    if (addresses.length != numBytes.length) {
+      throw new IllegalArgumentException("Mismatched block counts");
+    }
+    ReadResult[] res = new ReadResult[addresses.length];
+    for (int i = 0; i < addresses.length; i++) {
+      res[i] = debugger.readBytesFromProcess(addresses[i], numBytes[i]);
+    }
+    return res;
+  }
+
   public boolean hasConsole() throws RemoteException {
     return debugger.hasConsole();
   }
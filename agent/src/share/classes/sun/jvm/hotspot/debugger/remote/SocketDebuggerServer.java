@@ -0,0 +1,451 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+
+package sun.jvm.hotspot.debugger.remote;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.net.*;
+import java.security.*;
+import java.util.*;
+import java.util.zip.*;
+import javax.crypto.*;
+import javax.crypto.spec.*;
+
+import sun.jvm.hotspot.debugger.*;
+
+/** <P> Serves a RemoteDebugger over a plain TCP socket as an
+    alternative to RMI. The client side is SocketRemoteDebugger. </P>
+
+    <P> The protocol is a stream of request frames, each tagged with
+    an id chosen by the client, answered by response frames carrying
+    the same id. Reads are sent as a vector of (address, length)
+    blocks so that a whole cache read-ahead costs one round trip, and
+    a client may send further requests before the answers to earlier
+    ones have arrived. Responses are only flushed once no further
+    request is waiting in the input buffer, so pipelined requests are
+    answered in as few packets as possible. Block data is optionally
+    deflated; the client asks for this in the handshake. All other
+    RemoteDebugger methods are sent by name with their (long, int,
+    boolean or String) arguments and answered with the serialized
+    result. Failures are answered with the class name and message of
+    the exception. </P>
+
+    <P> The server listens on the loopback interface unless another
+    address is given explicitly. Clients must prove that they know the
+    secret the server was created with: the server sends a random
+    challenge and the client answers with its HMAC-SHA256 under the
+    secret, so the secret itself never crosses the connection. The
+    number and size of the blocks of a read are limited, and requests
+    exceeding the limits are rejected. </P>
+
+    <P> Requests on one connection are executed in order; separate
+    connections are served by separate threads. </P> */
+
+public class SocketDebuggerServer {
+  static final int  MAGIC   = 0x53415250; // "SARP"
+  static final int  VERSION = 2;
+
+  /** The system property holding the shared secret, used by
+      HotSpotAgent on both sides of the connection */
+  public static final String SECRET_PROPERTY = "sun.jvm.hotspot.debugger.remote.secret";
+
+  static final byte OP_READ = 1;
+  static final byte OP_CALL = 2;
+
+  static final byte STATUS_OK    = 0;
+  static final byte STATUS_ERROR = 1;
+
+  static final byte BLOCK_FAILED   = 0;
+  static final byte BLOCK_RAW      = 1;
+  static final byte BLOCK_DEFLATED = 2;
+
+  static final byte ARG_NULL    = 0;
+  static final byte ARG_LONG    = 1;
+  static final byte ARG_INT     = 2;
+  static final byte ARG_BOOLEAN = 3;
+  static final byte ARG_STRING  = 4;
+
+  static final int  BUFFER_SIZE = 64 * 1024;
+  // Limits on reads, checked by both sides
+  static final int  MAX_BLOCKS     = 64 * 1024;
+  static final int  MAX_BLOCK_SIZE = 16 * 1024 * 1024;
+  static final long MAX_READ_SIZE  = 64 * 1024 * 1024;
+  // Longer messages of exceptions are truncated
+  static final int  MAX_MESSAGE_LENGTH = 8 * 1024;
+
+  static final int  CHALLENGE_SIZE = 32;
+  static final String MAC_ALGORITHM = "HmacSHA256";
+  // Unauthenticated connections are dropped after this many milliseconds
+  static final int  HANDSHAKE_TIMEOUT = 10 * 1000;
+  // Blocks smaller than this are never worth deflating
+  static final int  MIN_DEFLATE_SIZE = 256;
+
+  private RemoteDebugger target;
+  private ServerSocket serverSocket;
+  private String secret;
+  private SecureRandom random = new SecureRandom();
+  private Map methods = new HashMap();
+  private volatile boolean closed;
+
+  /** Listens on the loopback interface at the given port; 0 picks a
+      free one, see getPort(). target is typically an
+      RemoteDebuggerServer wrapping the local debugger. Only clients
+      that know secret are served. */
+  public SocketDebuggerServer(RemoteDebugger target, int port, String secret) throws IOException {
+    this(target, InetAddress.getLoopbackAddress(), port, secret);
+  }
+
+  /** Listens on the given address and port. A null bindAddress
+      listens on all interfaces, which makes the target's memory
+      readable by anybody on the network who knows the secret. */
+  public SocketDebuggerServer(RemoteDebugger target, InetAddress bindAddress, int port,
+                              String secret) throws IOException {
+    if (secret == null || secret.length() == 0) {
+      throw new IllegalArgumentException("A shared secret is required");
+    }
+    this.target = target;
+    this.secret = secret;
+    serverSocket = new ServerSocket(port, 0, bindAddress);
+    Method[] ms = RemoteDebugger.class.getMethods();
+    for (int i = 0; i < ms.length; i++) {
+      methods.put(ms[i].getName(), ms[i]);
+    }
+  }
+
+  /** Returns a random secret suitable for the constructors */
+  public static String newSecret() {
+    byte[] bytes = new byte[16];
+    new SecureRandom().nextBytes(bytes);
+    StringBuffer buf = new StringBuffer();
+    for (int i = 0; i < bytes.length; i++) {
+      buf.append(Integer.toHexString((bytes[i] >> 4) & 0xF));
+      buf.append(Integer.toHexString(bytes[i] & 0xF));
+    }
+    return buf.toString();
+  }
+
+  public InetAddress getAddress() {
+    return serverSocket.getInetAddress();
+  }
+
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /** Starts accepting connections on a new thread. The thread is not
+      a daemon, so the server keeps the VM alive until close() is
+      called. */
+  public void start() {
+    Thread t = new Thread(new Runnable() {
+        public void run() {
+          acceptConnections();
+        }
+      }, "SA socket debug server on port " + getPort());
+    t.start();
+  }
+
+  public void close() throws IOException {
+    closed = true;
+    serverSocket.close();
+  }
+
+  private void acceptConnections() {
+    while (!closed) {
+      Socket s;
+      try {
+        s = serverSocket.accept();
+      } catch (IOException e) {
+        if (!closed) {
+          System.err.println("SocketDebuggerServer: " + e);
+        }
+        return;
+      }
+      Thread t = new Thread(new Connection(s), "SA socket debug connection " + s.getRemoteSocketAddress());
+      t.setDaemon(true);
+      t.start();
+    }
+  }
+
+  class Connection implements Runnable {
+    private Socket socket;
+    private DataInputStream in;
+    private DataOutputStream out;
+    private Deflater deflater;
+    private byte[] deflated = new byte[8192];
+
+    Connection(Socket socket) {
+      this.socket = socket;
+    }
+
+    public void run() {
+      try {
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+        in  = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+          out.writeInt(0);
+          out.flush();
+          return;
+        }
+        byte[] challenge = new byte[CHALLENGE_SIZE];
+        random.nextBytes(challenge);
+        out.writeInt(MAGIC);
+        out.write(challenge);
+        out.flush();
+        byte[] expected = mac(secret, challenge);
+        byte[] response = new byte[expected.length];
+        in.readFully(response);
+        boolean compress = in.readBoolean();
+        if (!MessageDigest.isEqual(response, expected)) {
+          out.writeBoolean(false);
+          out.flush();
+          System.err.println("SocketDebuggerServer: rejected " + socket.getRemoteSocketAddress() +
+                             ", wrong secret");
+          return;
+        }
+        out.writeBoolean(true);
+        out.flush();
+        socket.setSoTimeout(0);
+        if (compress) {
+          deflater = new Deflater(Deflater.BEST_SPEED);
+        }
+        while (true) {
+          int id;
+          try {
+            id = in.readInt();
+          } catch (EOFException e) {
+            return;
+          }
+          byte op = in.readByte();
+          if (op == OP_READ) {
+            serveRead(id);
+          } else if (op == OP_CALL) {
+            serveCall(id);
+          } else {
+            throw new IOException("Unknown request type " + op);
+          }
+          if (in.available() == 0) {
+            out.flush();
+          }
+        }
+      } catch (IOException e) {
+        if (!closed) {
+          System.err.println("SocketDebuggerServer: " + e);
+        }
+      } finally {
+        if (deflater != null) {
+          deflater.end();
+        }
+        try {
+          socket.close();
+        } catch (IOException e) {
+        }
+      }
+    }
+
+    private void serveRead(int id) throws IOException {
+      int n = in.readInt();
+      if (n < 0 || n > MAX_BLOCKS) {
+        // The rest of the request can not be skipped reliably
+        throw new IOException("Bad block count " + n);
+      }
+      long[] addresses = new long[n];
+      int[] lengths = new int[n];
+      for (int i = 0; i < n; i++) {
+        addresses[i] = in.readLong();
+        lengths[i] = in.readInt();
+      }
+      String rejected = checkRead(n, lengths);
+      if (rejected != null) {
+        writeError(id, new DebuggerException(rejected));
+        return;
+      }
+      ReadResult[] res = new ReadResult[n];
+      try {
+        for (int i = 0; i < n; i++) {
+          res[i] = target.readBytesFromProcess(addresses[i], lengths[i]);
+        }
+      } catch (Throwable t) {
+        writeError(id, t);
+        return;
+      }
+      out.writeInt(id);
+      out.writeByte(STATUS_OK);
+      out.writeInt(n);
+      for (int i = 0; i < n; i++) {
+        byte[] data = res[i].getData();
+        if (data == null) {
+          out.writeByte(BLOCK_FAILED);
+          out.writeLong(res[i].getFailureAddress());
+        } else {
+          writeBlock(data);
+        }
+      }
+    }
+
+    private void writeBlock(byte[] data) throws IOException {
+      if (deflater != null && data.length >= MIN_DEFLATE_SIZE) {
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        int len = 0;
+        while (!deflater.finished() && len < data.length) {
+          if (len == deflated.length) {
+            deflated = Arrays.copyOf(deflated, 2 * deflated.length);
+          }
+          len += deflater.deflate(deflated, len, deflated.length - len);
+        }
+        if (deflater.finished() && len < data.length) {
+          out.writeByte(BLOCK_DEFLATED);
+          out.writeInt(data.length);
+          out.writeInt(len);
+          out.write(deflated, 0, len);
+          return;
+        }
+      }
+      out.writeByte(BLOCK_RAW);
+      out.writeInt(data.length);
+      out.write(data);
+    }
+
+    private void serveCall(int id) throws IOException {
+      String name = in.readUTF();
+      Object[] args = new Object[in.readUnsignedByte()];
+      for (int i = 0; i < args.length; i++) {
+        args[i] = readArgument(in);
+      }
+      Object result;
+      try {
+        Method m = (Method) methods.get(name);
+        if (m == null) {
+          throw new DebuggerException("Unknown remote debugger method " + name);
+        }
+        result = m.invoke(target, args);
+      } catch (InvocationTargetException e) {
+        writeError(id, e.getCause());
+        return;
+      } catch (Throwable t) {
+        writeError(id, t);
+        return;
+      }
+      out.writeInt(id);
+      out.writeByte(STATUS_OK);
+      writeObject(result);
+    }
+
+    // Sends the class name and message rather than the serialized
+    // exception, so that the client needn't deserialize arbitrary
+    // classes
+    private void writeError(int id, Throwable t) throws IOException {
+      out.writeInt(id);
+      out.writeByte(STATUS_ERROR);
+      out.writeBoolean(t instanceof DebuggerException);
+      out.writeUTF(t.getClass().getName());
+      String message = t.getMessage();
+      out.writeBoolean(message != null);
+      if (message != null) {
+        if (message.length() > MAX_MESSAGE_LENGTH) {
+          message = message.substring(0, MAX_MESSAGE_LENGTH) + "...";
+        }
+        out.writeUTF(message);
+      }
+    }
+
+    private void writeObject(Object o) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(bytes);
+      oos.writeObject(o);
+      oos.close();
+      out.writeInt(bytes.size());
+      bytes.writeTo(out);
+    }
+  }
+
+  /** Returns why a read of the given block sizes is rejected, or null */
+  static String checkRead(int n, int[] lengths) {
+    if (n > MAX_BLOCKS) {
+      return "Read of " + n + " blocks exceeds the limit of " + MAX_BLOCKS;
+    }
+    long total = 0;
+    for (int i = 0; i < n; i++) {
+      if (lengths[i] < 0 || lengths[i] > MAX_BLOCK_SIZE) {
+        return "Bad block size " + lengths[i];
+      }
+      total += lengths[i];
+    }
+    if (total > MAX_READ_SIZE) {
+      return "Read of " + total + " bytes exceeds the limit of " + MAX_READ_SIZE;
+    }
+    return null;
+  }
+
+  /** Computes the answer to a handshake challenge */
+  static byte[] mac(String secret, byte[] challenge) throws IOException {
+    try {
+      Mac mac = Mac.getInstance(MAC_ALGORITHM);
+      mac.init(new SecretKeySpec(secret.getBytes("UTF-8"), MAC_ALGORITHM));
+      return mac.doFinal(challenge);
+    } catch (GeneralSecurityException e) {
+      throw (IOException) new IOException("Can not authenticate").initCause(e);
+    }
+  }
+
+  static void writeArgument(DataOutputStream out, Object arg) throws IOException {
+    if (arg == null) {
+      out.writeByte(ARG_NULL);
+    } else if (arg instanceof Long) {
+      out.writeByte(ARG_LONG);
+      out.writeLong(((Long) arg).longValue());
+    } else if (arg instanceof Integer) {
+      out.writeByte(ARG_INT);
+      out.writeInt(((Integer) arg).intValue());
+    } else if (arg instanceof Boolean) {
+      out.writeByte(ARG_BOOLEAN);
+      out.writeBoolean(((Boolean) arg).booleanValue());
+    } else if (arg instanceof String) {
+      out.writeByte(ARG_STRING);
+      out.writeUTF((String) arg);
+    } else {
+      throw new IllegalArgumentException("Unsupported argument type " + arg.getClass().getName());
+    }
+  }
+
+  /** Arguments are decoded by hand rather than deserialized so that
+      clients can not make the server instantiate arbitrary classes */
+  static Object readArgument(DataInputStream in) throws IOException {
+    byte tag = in.readByte();
+    switch (tag) {
+    case ARG_NULL:    return null;
+    case ARG_LONG:    return new Long(in.readLong());
+    case ARG_INT:     return new Integer(in.readInt());
+    case ARG_BOOLEAN: return Boolean.valueOf(in.readBoolean());
+    case ARG_STRING:  return in.readUTF();
+    default:
+      throw new IOException("Unknown argument type " + tag);
+    }
+  }
+}
@@ -0,0 +1,488 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+
+package sun.jvm.hotspot.debugger.remote;
+
+import java.io.*;
+import java.net.*;
+import java.rmi.*;
+import java.util.*;
+import java.util.zip.*;
+
+import sun.jvm.hotspot.debugger.*;
+
+/** <P> The client side of SocketDebuggerServer's protocol. It
+    implements RemoteDebugger so that it can be handed to
+    RemoteDebuggerClient in place of an RMI stub. </P>
+
+    <P> Any number of threads may use one instance concurrently: each
+    request is written as soon as it is made and a reader thread hands
+    the responses back to whichever thread is waiting for them, so
+    requests from different threads are pipelined on the connection
+    rather than each waiting for a full round trip. A single thread
+    can pipeline its own reads with submitRead(). </P>
+
+    <P> Block data is deflated by the server if the
+    sun.jvm.hotspot.debugger.remote.SocketRemoteDebugger.compress
+    property is true; this pays off on slow links. </P>
+
+    <P> The server only accepts clients knowing its secret, which
+    connect() takes from the SocketDebuggerServer.SECRET_PROPERTY
+    system property. </P> */
+
+public class SocketRemoteDebugger implements RemoteDebugger {
+  private static final boolean COMPRESS =
+    Boolean.getBoolean("sun.jvm.hotspot.debugger.remote.SocketRemoteDebugger.compress");
+
+  private String description;
+  private Socket socket;
+  private DataOutputStream out;
+  private DataInputStream in;
+  // Maps request id to Request, guarded by this
+  private Map pending = new HashMap();
+  private int nextId;
+  // Non-null once the connection failed, guarded by this
+  private IOException failure;
+
+  /** An outstanding request; see submitRead() */
+  public static class Request {
+    private int id;
+    private byte op;
+    private boolean done;
+    private Object result;
+    private Throwable error;
+
+    Request(int id, byte op) {
+      this.id = id;
+      this.op = op;
+    }
+
+    synchronized void complete(Object result, Throwable error) {
+      this.result = result;
+      this.error = error;
+      done = true;
+      notifyAll();
+    }
+
+    /** Waits for the response; for reads the result is a
+        ReadResult[] */
+    public synchronized Object get() throws RemoteException {
+      boolean interrupted = false;
+      while (!done) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      if (error == null) {
+        return result;
+      }
+      if (error instanceof RemoteException) {
+        throw (RemoteException) error;
+      }
+      if (error instanceof RuntimeException) {
+        throw (RuntimeException) error;
+      }
+      if (error instanceof Error) {
+        throw (Error) error;
+      }
+      throw new ServerException("Remote debugger failed", (Exception) error);
+    }
+  }
+
+  public SocketRemoteDebugger(String host, int port, String secret) throws IOException {
+    this(host, port, secret, COMPRESS);
+  }
+
+  public SocketRemoteDebugger(String host, int port, String secret, boolean compress) throws IOException {
+    if (secret == null || secret.length() == 0) {
+      throw new IllegalArgumentException("A shared secret is required");
+    }
+    description = host + ":" + port;
+    socket = new Socket(host, port);
+    try {
+      socket.setTcpNoDelay(true);
+      out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), SocketDebuggerServer.BUFFER_SIZE));
+      in  = new DataInputStream(new BufferedInputStream(socket.getInputStream(), SocketDebuggerServer.BUFFER_SIZE));
+      out.writeInt(SocketDebuggerServer.MAGIC);
+      out.writeInt(SocketDebuggerServer.VERSION);
+      out.flush();
+      if (in.readInt() != SocketDebuggerServer.MAGIC) {
+        throw new IOException("Incompatible remote debugger at " + description);
+      }
+      byte[] challenge = new byte[SocketDebuggerServer.CHALLENGE_SIZE];
+      in.readFully(challenge);
+      out.write(SocketDebuggerServer.mac(secret, challenge));
+      out.writeBoolean(compress);
+      out.flush();
+      if (!in.readBoolean()) {
+        throw new IOException("Remote debugger at " + description + " rejected the secret");
+      }
+    } catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+    Thread t = new Thread(new Runnable() {
+        public void run() {
+          readResponses();
+        }
+      }, "SA socket debugger reader for " + description);
+    t.setDaemon(true);
+    t.start();
+  }
+
+  /** Parses "host:port"; the secret is taken from the
+      SocketDebuggerServer.SECRET_PROPERTY system property */
+  public static SocketRemoteDebugger connect(String hostAndPort) throws IOException {
+    int colon = hostAndPort.lastIndexOf(':');
+    if (colon < 0) {
+      throw new IllegalArgumentException("Expected host:port but got " + hostAndPort);
+    }
+    String secret = System.getProperty(SocketDebuggerServer.SECRET_PROPERTY);
+    if (secret == null) {
+      throw new IllegalArgumentException("The " + SocketDebuggerServer.SECRET_PROPERTY +
+                                         " property must hold the secret of the remote debugger");
+    }
+    return new SocketRemoteDebugger(hostAndPort.substring(0, colon),
+                                    Integer.parseInt(hostAndPort.substring(colon + 1)),
+                                    secret);
+  }
+
+  public void close() throws IOException {
+    socket.close();
+  }
+
+  public String toString() {
+    return "SocketRemoteDebugger[" + description + "]";
+  }
+
+  /** Sends a vector read without waiting for the answer. Callers
+      that have several independent reads to make can submit them all
+      before calling get() on the first. */
+  public Request submitRead(long[] addresses, long[] numBytes) throws RemoteException {
+    if (addresses.length != numBytes.length) {
+      throw new IllegalArgumentException("Mismatched block counts");
+    }
+    int[] lengths = new int[numBytes.length];
+    for (int i = 0; i < numBytes.length; i++) {
+      if (numBytes[i] < 0 || numBytes[i] > SocketDebuggerServer.MAX_BLOCK_SIZE) {
+        throw new IllegalArgumentException("Bad block size " + numBytes[i]);
+      }
+      lengths[i] = (int) numBytes[i];
+    }
+    String rejected = SocketDebuggerServer.checkRead(lengths.length, lengths);
+    if (rejected != null) {
+      throw new IllegalArgumentException(rejected);
+    }
+    Request r = newRequest(SocketDebuggerServer.OP_READ);
+    try {
+      synchronized (out) {
+        out.writeInt(r.id);
+        out.writeByte(SocketDebuggerServer.OP_READ);
+        out.writeInt(addresses.length);
+        for (int i = 0; i < addresses.length; i++) {
+          out.writeLong(addresses[i]);
+          out.writeInt(lengths[i]);
+        }
+        out.flush();
+      }
+    } catch (IOException e) {
+      throw connectionFailed(e);
+    }
+    return r;
+  }
+
+  public ReadResult readBytesFromProcess(long address, long numBytes) throws RemoteException {
+    return readBlocksFromProcess(new long[] { address }, new long[] { numBytes })[0];
+  }
+
+  public ReadResult[] readBlocksFromProcess(long[] addresses, long[] numBytes) throws RemoteException {
+    return (ReadResult[]) submitRead(addresses, numBytes).get();
+  }
+
+  private Object call(String name, Object[] args) throws RemoteException {
+    Request r = newRequest(SocketDebuggerServer.OP_CALL);
+    try {
+      synchronized (out) {
+        out.writeInt(r.id);
+        out.writeByte(SocketDebuggerServer.OP_CALL);
+        out.writeUTF(name);
+        out.writeByte(args.length);
+        for (int i = 0; i < args.length; i++) {
+          SocketDebuggerServer.writeArgument(out, args[i]);
+        }
+        out.flush();
+      }
+    } catch (IOException e) {
+      throw connectionFailed(e);
+    }
+    return r.get();
+  }
+
+  private Object call(String name) throws RemoteException {
+    return call(name, new Object[0]);
+  }
+
+  private long callLong(String name) throws RemoteException {
+    return ((Long) call(name)).longValue();
+  }
+
+  private int callInt(String name) throws RemoteException {
+    return ((Integer) call(name)).intValue();
+  }
+
+  private synchronized Request newRequest(byte op) throws RemoteException {
+    if (failure != null) {
+      throw new java.rmi.ConnectException("Connection to " + description + " failed", failure);
+    }
+    Request r = new Request(nextId++, op);
+    pending.put(new Integer(r.id), r);
+    return r;
+  }
+
+  private synchronized Request takeRequest(int id) throws IOException {
+    Request r = (Request) pending.remove(new Integer(id));
+    if (r == null) {
+      throw new IOException("Unexpected response " + id);
+    }
+    return r;
+  }
+
+  private RemoteException connectionFailed(IOException e) {
+    try {
+      socket.close();
+    } catch (IOException ignore) {
+    }
+    return new java.rmi.ConnectException("Connection to " + description + " failed", e);
+  }
+
+  private void readResponses() {
+    Inflater inflater = new Inflater();
+    try {
+      while (true) {
+        int id = in.readInt();
+        byte status = in.readByte();
+        Request r = takeRequest(id);
+        if (status == SocketDebuggerServer.STATUS_ERROR) {
+          r.complete(null, readError());
+        } else if (r.op == SocketDebuggerServer.OP_READ) {
+          r.complete(readBlocks(inflater), null);
+        } else {
+          r.complete(readObject(), null);
+        }
+      }
+    } catch (IOException e) {
+      failAll(e);
+    } catch (ClassNotFoundException e) {
+      failAll((IOException) new IOException("Bad response").initCause(e));
+    } catch (DataFormatException e) {
+      failAll((IOException) new IOException("Bad compressed data").initCause(e));
+    } finally {
+      inflater.end();
+      try {
+        socket.close();
+      } catch (IOException e) {
+      }
+    }
+  }
+
+  // The server sends the class name and message of the exception
+  private Exception readError() throws IOException {
+    boolean debuggerException = in.readBoolean();
+    String className = in.readUTF();
+    String message = in.readBoolean() ? in.readUTF() : null;
+    if (debuggerException) {
+      return new DebuggerException(message);
+    }
+    return new ServerException(className + (message != null ? ": " + message : ""));
+  }
+
+  private ReadResult[] readBlocks(Inflater inflater) throws IOException, DataFormatException {
+    ReadResult[] res = new ReadResult[readSize(SocketDebuggerServer.MAX_BLOCKS)];
+    byte[] compressed = null;
+    for (int i = 0; i < res.length; i++) {
+      byte kind = in.readByte();
+      if (kind == SocketDebuggerServer.BLOCK_FAILED) {
+        res[i] = new ReadResult(in.readLong());
+        continue;
+      }
+      byte[] data = new byte[readSize(SocketDebuggerServer.MAX_BLOCK_SIZE)];
+      if (kind == SocketDebuggerServer.BLOCK_RAW) {
+        in.readFully(data);
+      } else if (kind == SocketDebuggerServer.BLOCK_DEFLATED) {
+        int len = readSize(SocketDebuggerServer.MAX_BLOCK_SIZE);
+        if (compressed == null || compressed.length < len) {
+          compressed = new byte[len];
+        }
+        in.readFully(compressed, 0, len);
+        inflater.reset();
+        inflater.setInput(compressed, 0, len);
+        if (inflater.inflate(data) != data.length || !inflater.finished()) {
+          throw new DataFormatException("Truncated block");
+        }
+      } else {
+        throw new IOException("Unknown block type " + kind);
+      }
+      res[i] = new ReadResult(data);
+    }
+    return res;
+  }
+
+  private int readSize(int max) throws IOException {
+    int size = in.readInt();
+    if (size < 0 || size > max) {
+      throw new IOException("Bad size " + size + " in response");
+    }
+    return size;
+  }
+
+  private Object readObject() throws IOException, ClassNotFoundException {
+    byte[] bytes = new byte[readSize(SocketDebuggerServer.MAX_BLOCK_SIZE)];
+    in.readFully(bytes);
+    ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+    return ois.readObject();
+  }
+
+  private void failAll(IOException e) {
+    List requests;
+    synchronized (this) {
+      failure = e;
+      requests = new ArrayList(pending.values());
+      pending.clear();
+    }
+    for (Iterator iter = requests.iterator(); iter.hasNext(); ) {
+      ((Request) iter.next()).complete(null, new java.rmi.ConnectException("Connection to " + description + " lost", e));
+    }
+  }
+
+  //--------------------------------------------------------------------------------
+  // Remaining RemoteDebugger methods, sent by name
+  //
+
+  public String getOS() throws RemoteException {
+    return (String) call("getOS");
+  }
+
+  public String getCPU() throws RemoteException {
+    return (String) call("getCPU");
+  }
+
+  public MachineDescription getMachineDescription() throws RemoteException {
+    return (MachineDescription) call("getMachineDescription");
+  }
+
+  public long lookupInProcess(String objectName, String symbol) throws RemoteException {
+    return ((Long) call("lookupInProcess", new Object[] { objectName, symbol })).longValue();
+  }
+
+  public boolean hasConsole() throws RemoteException {
+    return ((Boolean) call("hasConsole")).booleanValue();
+  }
+
+  public String getConsolePrompt() throws RemoteException {
+    return (String) call("getConsolePrompt");
+  }
+
+  public String consoleExecuteCommand(String cmd) throws RemoteException {
+    return (String) call("consoleExecuteCommand", new Object[] { cmd });
+  }
+
+  public long getJBooleanSize() throws RemoteException {
+    return callLong("getJBooleanSize");
+  }
+
+  public long getJByteSize() throws RemoteException {
+    return callLong("getJByteSize");
+  }
+
+  public long getJCharSize() throws RemoteException {
+    return callLong("getJCharSize");
+  }
+
+  public long getJDoubleSize() throws RemoteException {
+    return callLong("getJDoubleSize");
+  }
+
+  public long getJFloatSize() throws RemoteException {
+    return callLong("getJFloatSize");
+  }
+
+  public long getJIntSize() throws RemoteException {
+    return callLong("getJIntSize");
+  }
+
+  public long getJLongSize() throws RemoteException {
+    return callLong("getJLongSize");
+  }
+
+  public long getJShortSize() throws RemoteException {
+    return callLong("getJShortSize");
+  }
+
+  public long getHeapOopSize() throws RemoteException {
+    return callLong("getHeapOopSize");
+  }
+
+  public long getNarrowOopBase() throws RemoteException {
+    return callLong("getNarrowOopBase");
+  }
+
+  public int getNarrowOopShift() throws RemoteException {
+    return callInt("getNarrowOopShift");
+  }
+
+  public long getKlassPtrSize() throws RemoteException {
+    return callLong("getKlassPtrSize");
+  }
+
+  public long getNarrowKlassBase() throws RemoteException {
+    return callLong("getNarrowKlassBase");
+  }
+
+  public int getNarrowKlassShift() throws RemoteException {
+    return callInt("getNarrowKlassShift");
+  }
+
+  public boolean areThreadsEqual(long addrOrId1, boolean isAddress1,
+                                 long addrOrId2, boolean isAddress2) throws RemoteException {
+    return ((Boolean) call("areThreadsEqual",
+                           new Object[] { new Long(addrOrId1), Boolean.valueOf(isAddress1),
+                                          new Long(addrOrId2), Boolean.valueOf(isAddress2) })).booleanValue();
+  }
+
+  public int getThreadHashCode(long addrOrId, boolean isAddress) throws RemoteException {
+    return ((Integer) call("getThreadHashCode",
+                           new Object[] { new Long(addrOrId), Boolean.valueOf(isAddress) })).intValue();
+  }
+
+  public long[] getThreadIntegerRegisterSet(long addrOrId, boolean isAddress) throws RemoteException {
+    return (long[]) call("getThreadIntegerRegisterSet",
+                         new Object[] { new Long(addrOrId), Boolean.valueOf(isAddress) });
+  }
+}
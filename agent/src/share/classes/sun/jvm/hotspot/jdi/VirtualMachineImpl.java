@@ -57,9 +57,10 @@ import java.util.Map;
 import java.util.Iterator;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Observer;
 import java.util.StringTokenizer;
-import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.Reference;
 
@@ -110,8 +111,9 @@ public class VirtualMachineImpl extends MirrorImpl implements PathSearchingVirtu
     private VoidType    theVoidType;
 
     private VoidValue voidVal;
-    private Map       typesByID;             // Map<Klass, ReferenceTypeImpl>
-    private List      typesBySignature;      // List<ReferenceTypeImpl> - used in signature search
+    private Map       typesByID;             // Map<Klass, ReferenceTypeImpl>, in creation order
+    private List      loadedKlasses;         // List<Klass> - all loaded classes, mirrored on demand
+    private Map       klassesByName;         // Map<Symbol, List<Klass>> - used in name search
     private boolean   retrievedAllTypes = false;
     private List      bootstrapClasses;      // all bootstrap classes
     private ArrayList allThreads;
@@ -306,20 +308,26 @@ public class VirtualMachineImpl extends MirrorImpl implements PathSearchingVirtu
     public List classesByName(String className) {
         String signature = JNITypeParser.typeNameToSignature(className);
         List list;
-        if (!retrievedAllTypes) {
-            retrieveAllClasses();
-        }
+        retrieveAllClasses();
         list = findReferenceTypes(signature);
         return Collections.unmodifiableList(list);
     }
 
     public List allClasses() {
-        if (!retrievedAllTypes) {
-            retrieveAllClasses();
-        }
+        retrieveAllClasses();
         ArrayList a;
         synchronized (this) {
-            a = new ArrayList(typesBySignature);
+            if (!retrievedAllTypes) {
+                int count = loadedKlasses.size();
+                for (int ii = 0; ii < count; ii++) {
+                    Klass kk = (Klass)loadedKlasses.get(ii);
+                    if (isPrepared(kk)) {
+                        referenceType(kk);
+                    }
+                }
+                retrievedAllTypes = true;
+            }
+            a = new ArrayList(typesByID.values());
         }
         return Collections.unmodifiableList(a);
     }
@@ -340,14 +348,9 @@ public class VirtualMachineImpl extends MirrorImpl implements PathSearchingVirtu
     }
 
     private synchronized List findReferenceTypes(String signature) {
-        if (typesByID == null) {
-            return new ArrayList(0);
-        }
-
-        // we haven't sorted types by signatures. But we can take
-        // advantage of comparing symbols instead of name. In the worst
-        // case, we will be comparing N addresses rather than N strings
-        // where N being total no. of classes in allClasses() list.
+        // Classes are indexed by their name symbols, so looking up a
+        // name costs a symbol table probe and mirrors for the classes
+        // of that name only.
 
         // The signature could be Lx/y/z; or [....
         // If it is Lx/y/z; the internal type name is x/y/x
@@ -366,33 +369,40 @@ public class VirtualMachineImpl extends MirrorImpl implements PathSearchingVirtu
             return new ArrayList(0);
         }
 
-        Iterator iter = typesBySignature.iterator();
+        List klasses = (List)klassesByName.get(typeNameSym);
         List list = new ArrayList();
-        while (iter.hasNext()) {
-            // We have cached type name as symbol in reference type
-            ReferenceTypeImpl type = (ReferenceTypeImpl)iter.next();
-            if (typeNameSym.equals(type.typeNameAsSymbol())) {
-                list.add(type);
+        if (klasses != null) {
+            for (Iterator iter = klasses.iterator(); iter.hasNext(); ) {
+                Klass kk = (Klass)iter.next();
+                // classes mirrored already are found even if un-prepared
+                if (typesByID.containsKey(kk) || isPrepared(kk)) {
+                    list.add(referenceType(kk));
+                }
             }
         }
         return list;
     }
 
+    // for non-array classes filter out un-prepared classes
+    // refer to 'allClasses' in share/back/VirtualMachineImpl.c
+    private static boolean isPrepared(Klass kk) {
+        return (kk instanceof ArrayKlass) ||
+               ((kk.getClassStatus() & JVMDIClassStatus.PREPARED) != 0);
+    }
+
+    // Collects the loaded classes and indexes them by name. Mirrors
+    // for them are only created when they are asked for.
     private void retrieveAllClasses() {
+        synchronized (this) {
+            if (loadedKlasses != null) {
+                return;
+            }
+        }
         final List saKlasses = new ArrayList();
         SystemDictionary.ClassVisitor visitor = new SystemDictionary.ClassVisitor() {
                 public void visit(Klass k) {
                     for (Klass l = k; l != null; l = l.arrayKlassOrNull()) {
-                        // for non-array classes filter out un-prepared classes
-                        // refer to 'allClasses' in share/back/VirtualMachineImpl.c
-                        if (l instanceof ArrayKlass) {
-                           saKlasses.add(l);
-                        } else {
-                           int status = l.getClassStatus();
-                           if ((status & JVMDIClassStatus.PREPARED) != 0) {
-                               saKlasses.add(l);
-                           }
-                        }
+                        saKlasses.add(l);
                     }
                 }
         };
@@ -407,21 +417,34 @@ public class VirtualMachineImpl extends MirrorImpl implements PathSearchingVirtu
         // klasses from Universe.
         saVM.getUniverse().basicTypeClassesDo(visitor);
 
-        // Hold lock during processing to improve performance
-        // and to have safe check/set of retrievedAllTypes
+        // Hold lock during processing to have safe check/set of
+        // loadedKlasses
         synchronized (this) {
-            if (!retrievedAllTypes) {
-                // Number of classes
+            if (loadedKlasses == null) {
+                if (typesByID == null) {
+                    initReferenceTypes();
+                }
                 int count = saKlasses.size();
                 for (int ii = 0; ii < count; ii++) {
-                    Klass kk = (Klass)saKlasses.get(ii);
-                    ReferenceTypeImpl type = referenceType(kk);
+                    addToNameIndex((Klass)saKlasses.get(ii));
                 }
-                retrievedAllTypes = true;
+                loadedKlasses = saKlasses;
             }
         }
     }
 
+    private void addToNameIndex(Klass kk) {
+        Symbol name = kk.getName();
+        List klasses = (List)klassesByName.get(name);
+        if (klasses == null) {
+            klasses = new ArrayList(1);
+            klassesByName.put(name, klasses);
+        }
+        if (!klasses.contains(kk)) {
+            klasses.add(kk);
+        }
+    }
+
     ReferenceTypeImpl referenceType(Klass kk) {
         ReferenceTypeImpl retType = null;
         synchronized (this) {
@@ -436,8 +459,8 @@ public class VirtualMachineImpl extends MirrorImpl implements PathSearchingVirtu
     }
 
     private void initReferenceTypes() {
-        typesByID = new HashMap();
-        typesBySignature = new ArrayList();
+        typesByID = new LinkedHashMap();
+        klassesByName = new HashMap();
     }
 
     private synchronized ReferenceTypeImpl addReferenceType(Klass kk) {
@@ -458,7 +481,9 @@ public class VirtualMachineImpl extends MirrorImpl implements PathSearchingVirtu
         }
 
         typesByID.put(kk, newRefType);
-        typesBySignature.add(newRefType);
+        // classes found through their objects need not be in the
+        // SystemDictionary, see findReferenceTypes
+        addToNameIndex(kk);
         return newRefType;
     }
 
@@ -1060,8 +1085,8 @@ public class VirtualMachineImpl extends MirrorImpl implements PathSearchingVirtu
     private void processQueue() {
         Reference ref;
         while ((ref = referenceQueue.poll()) != null) {
-            SoftObjectReference softRef = (SoftObjectReference)ref;
-            removeObjectMirror(softRef);
+            WeakObjectReference weakRef = (WeakObjectReference)ref;
+            removeObjectMirror(weakRef);
         }
     }
 
@@ -1083,13 +1108,13 @@ public class VirtualMachineImpl extends MirrorImpl implements PathSearchingVirtu
         /*
          * Attempt to retrieve an existing object object reference
          */
-        SoftObjectReference ref = (SoftObjectReference)objectsByID.get(key);
+        WeakObjectReference ref = (WeakObjectReference)objectsByID.get(key);
         if (ref != null) {
             object = ref.object();
         }
 
         /*
-         * If the object wasn't in the table, or it's soft reference was
+         * If the object wasn't in the table, or it's weak reference was
          * cleared, create a new instance.
          */
         if (object == null) {
@@ -1142,7 +1167,7 @@ public class VirtualMachineImpl extends MirrorImpl implements PathSearchingVirtu
             } else {
                 throw new RuntimeException("unexpected object type " + key);
             }
-            ref = new SoftObjectReference(key, object, referenceQueue);
+            ref = new WeakObjectReference(key, object, referenceQueue);
 
             /*
              * If there was no previous entry in the table, we add one here
@@ -1156,9 +1181,9 @@ public class VirtualMachineImpl extends MirrorImpl implements PathSearchingVirtu
         return object;
     }
 
-    synchronized void removeObjectMirror(SoftObjectReference ref) {
+    synchronized void removeObjectMirror(WeakObjectReference ref) {
         /*
-         * This will remove the soft reference if it has not been
+         * This will remove the weak reference if it has not been
          * replaced in the cache.
          */
         objectsByID.remove(ref.key());
@@ -1192,13 +1217,15 @@ public class VirtualMachineImpl extends MirrorImpl implements PathSearchingVirtu
         return (ClassObjectReferenceImpl) objectMirror(id);
     }
 
-    // Use of soft refs and caching stuff here has to be re-examined.
-    //  It might not make sense for JDI - SA.
-    static private class SoftObjectReference extends SoftReference {
+    // Mirrors are only kept while the debugger refers to them. A mirror
+    // created again for the same object is equal to the dropped one,
+    // so there is no need to hold on to the others until memory runs
+    // low.
+    static private class WeakObjectReference extends WeakReference {
        int count;
        Object key;
 
-       SoftObjectReference(Object key, ObjectReferenceImpl mirror,
+       WeakObjectReference(Object key, ObjectReferenceImpl mirror,
                            ReferenceQueue queue) {
            super(mirror, queue);
            this.count = 1;
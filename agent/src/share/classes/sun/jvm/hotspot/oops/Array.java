@@ -76,7 +76,7 @@ public class Array extends Oop {
     }
   }
 
-  private long lengthOffsetInBytes() {
+  static long lengthOffsetInBytes() {
     if (lengthOffsetInBytes != 0) {
       return lengthOffsetInBytes;
     }
@@ -90,8 +90,13 @@ public class Array extends Oop {
 
   // Accessors for declared fields
   public long getLength() {
+    return getLengthForOopHandle(getHandle());
+  }
+
+  // Reads the length of the array at handle without creating an Array
+  public static long getLengthForOopHandle(OopHandle handle) {
     boolean isUnsigned = true;
-    return this.getHandle().getCIntegerAt(lengthOffsetInBytes(), VM.getVM().getIntSize(), isUnsigned);
+    return handle.getCIntegerAt(lengthOffsetInBytes(), VM.getVM().getIntSize(), isUnsigned);
   }
 
   public long getObjectSize() {
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+
+package sun.jvm.hotspot.oops;
+
+import java.util.*;
+import sun.jvm.hotspot.debugger.*;
+
+// Runs several heap analyses in a single walk of the heap. Every
+// object header is read once, and its klass address and size are
+// passed to all registered ObjectHeaderVisitors. HeapVisitors are
+// registered with an optional ObjectHeap.ObjectHeaderFilter; the
+// Klass of each object is resolved and the filters' klass decisions
+// are made once per klass, and a single Oop is created for an object
+// which any HeapVisitor wants and shared by all of them. A visitor
+// which returns true is not called again for the rest of the walk.
+//
+// iterateParallel walks the heap on several threads if all registered
+// visitors are ParallelObjectHeaderVisitors or ParallelHeapVisitors;
+// their filters must then be thread-safe.
+
+public class CompositeHeapVisitor {
+  private List headerVisitors = new ArrayList();
+  private List oopVisitors    = new ArrayList();
+  private List filters        = new ArrayList();
+
+  public void add(ObjectHeaderVisitor visitor) {
+    headerVisitors.add(visitor);
+  }
+
+  /** Registers a HeapVisitor which visits all objects */
+  public void add(HeapVisitor visitor) {
+    add(visitor, null);
+  }
+
+  /** Registers a HeapVisitor which visits the objects passing hf,
+      which may be null */
+  public void add(HeapVisitor visitor, ObjectHeap.ObjectHeaderFilter hf) {
+    oopVisitors.add(visitor);
+    filters.add(hf);
+  }
+
+  /** Whether iterateParallel() would use several threads */
+  public boolean isParallel() {
+    for (Iterator iter = headerVisitors.iterator(); iter.hasNext(); ) {
+      if (!(iter.next() instanceof ParallelObjectHeaderVisitor)) {
+        return false;
+      }
+    }
+    for (Iterator iter = oopVisitors.iterator(); iter.hasNext(); ) {
+      if (!(iter.next() instanceof ParallelHeapVisitor)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Visits the objects of the heap with all registered visitors */
+  public void iterate(ObjectHeap heap) {
+    heap.iterateHeaders(new Pass(heap, headerVisitors, oopVisitors));
+  }
+
+  /** Visits the objects of the heap with all registered visitors, on
+      several threads if isParallel(). Every worker uses its own
+      visitors created from the registered ones, which are merged into
+      them before this method returns. */
+  public void iterateParallel(final ObjectHeap heap) {
+    if (!isParallel()) {
+      iterate(heap);
+      return;
+    }
+    List passes = heap.iterateHeadersParallel(new ObjectHeap.HeaderClosureFactory() {
+        public ObjectHeap.HeaderClosure createClosure() {
+          List workerHeaderVisitors = new ArrayList();
+          for (Iterator iter = headerVisitors.iterator(); iter.hasNext(); ) {
+            workerHeaderVisitors.add(((ParallelObjectHeaderVisitor) iter.next()).createHeaderVisitor());
+          }
+          List workerOopVisitors = new ArrayList();
+          for (Iterator iter = oopVisitors.iterator(); iter.hasNext(); ) {
+            workerOopVisitors.add(((ParallelHeapVisitor) iter.next()).createVisitor());
+          }
+          return new Pass(heap, workerHeaderVisitors, workerOopVisitors);
+        }
+      });
+    for (Iterator iter = passes.iterator(); iter.hasNext(); ) {
+      Pass pass = (Pass) iter.next();
+      for (int i = 0; i < pass.headerVisitors.length; i++) {
+        ((ParallelObjectHeaderVisitor) headerVisitors.get(i)).merge(pass.headerVisitors[i]);
+      }
+      for (int i = 0; i < pass.oopVisitors.length; i++) {
+        ((ParallelHeapVisitor) oopVisitors.get(i)).merge(pass.oopVisitors[i]);
+      }
+    }
+  }
+
+  //--------------------------------------------------------------------------------
+  // Internals only below this point
+  //
+
+  // The filter decisions for one klass
+  private static class KlassEntry {
+    Klass     klass;
+    // Whether each HeapVisitor may visit objects of this klass
+    boolean[] included;
+  }
+
+  // One walk of the heap, or the part of it done by one worker
+  private class Pass extends ObjectHeap.HeaderClosure {
+    private ObjectHeap            heap;
+    private ObjectHeaderVisitor[] headerVisitors;
+    private HeapVisitor[]         oopVisitors;
+    private ObjectHeap.ObjectHeaderFilter[] oopFilters;
+    private boolean[]             headerDone;
+    private boolean[]             oopDone;
+    private int                   remaining;
+    // The first value is 0 for klasses which no HeapVisitor includes,
+    // else the index of the KlassEntry in klasses plus one
+    private KlassAddressTable     decisions = new KlassAddressTable();
+    private List                  klasses = new ArrayList();
+
+    Pass(ObjectHeap heap, List headerVisitors, List oopVisitors) {
+      this.heap = heap;
+      this.headerVisitors = (ObjectHeaderVisitor[])
+        headerVisitors.toArray(new ObjectHeaderVisitor[headerVisitors.size()]);
+      this.oopVisitors = (HeapVisitor[]) oopVisitors.toArray(new HeapVisitor[oopVisitors.size()]);
+      this.oopFilters = (ObjectHeap.ObjectHeaderFilter[])
+        filters.toArray(new ObjectHeap.ObjectHeaderFilter[filters.size()]);
+      headerDone = new boolean[this.headerVisitors.length];
+      oopDone = new boolean[this.oopVisitors.length];
+      remaining = this.headerVisitors.length + this.oopVisitors.length;
+    }
+
+    void prologue(long usedSize) {
+      for (int i = 0; i < headerVisitors.length; i++) {
+        headerVisitors[i].prologue(usedSize);
+      }
+      for (int i = 0; i < oopVisitors.length; i++) {
+        oopVisitors[i].prologue(usedSize);
+      }
+    }
+
+    void epilogue() {
+      for (int i = 0; i < headerVisitors.length; i++) {
+        headerVisitors[i].epilogue();
+      }
+      for (int i = 0; i < oopVisitors.length; i++) {
+        oopVisitors[i].epilogue();
+      }
+    }
+
+    boolean doHeader(long address, long klass, long size) {
+      if (remaining == 0) {
+        return true;
+      }
+      for (int i = 0; i < headerVisitors.length; i++) {
+        if (!headerDone[i] && headerVisitors[i].doObjectHeader(klass, size)) {
+          headerDone[i] = true;
+          remaining--;
+        }
+      }
+      if (oopVisitors.length > 0) {
+        KlassEntry entry = entryFor(address, klass);
+        if (entry != null) {
+          visitOop(address, entry);
+        }
+      }
+      return remaining == 0;
+    }
+
+    private void visitOop(long address, KlassEntry entry) {
+      OopHandle handle = null;
+      Oop obj = null;
+      for (int i = 0; i < oopVisitors.length; i++) {
+        if (oopDone[i] || !entry.included[i]) {
+          continue;
+        }
+        if (handle == null) {
+          handle = handleAt(address);
+        }
+        if (oopFilters[i] != null && !oopFilters[i].canInclude(entry.klass, handle)) {
+          continue;
+        }
+        if (obj == null) {
+          try {
+            obj = heap.newOop(handle);
+          } catch (UnknownOopException e) {
+            return;
+          }
+        }
+        if (oopVisitors[i].doObj(obj)) {
+          oopDone[i] = true;
+          remaining--;
+        }
+      }
+    }
+
+    private KlassEntry entryFor(long address, long klass) {
+      int slot = decisions.find(klass);
+      if (slot >= 0) {
+        long index = decisions.firstAt(slot);
+        return (index == 0) ? null : (KlassEntry) klasses.get((int) index - 1);
+      }
+      Klass k = null;
+      try {
+        k = Oop.getKlassForOopHandle(handleAt(address));
+      } catch (RuntimeException e) {
+        // Not a valid klass
+      }
+      KlassEntry entry = null;
+      if (k != null) {
+        boolean[] included = new boolean[oopVisitors.length];
+        boolean any = false;
+        for (int i = 0; i < oopVisitors.length; i++) {
+          included[i] = (oopFilters[i] == null) || oopFilters[i].canIncludeKlass(k);
+          any |= included[i];
+        }
+        if (any) {
+          entry = new KlassEntry();
+          entry.klass = k;
+          entry.included = included;
+        }
+      }
+      if (entry == null) {
+        decisions.set(decisions.findOrAdd(klass), 0, 0);
+      } else {
+        klasses.add(entry);
+        decisions.set(decisions.findOrAdd(klass), klasses.size(), 0);
+      }
+      return entry;
+    }
+  }
+}
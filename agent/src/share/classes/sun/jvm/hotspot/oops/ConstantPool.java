@@ -699,6 +699,11 @@ public class ConstantPool extends Metadata implements ClassConstants {
     return Oop.alignObjectSize(headerSize + getLength());
   }
 
+  /** Size in bytes of the ConstantPool including its entries */
+  public long getSizeInBytes() {
+    return Oop.alignObjectSize(headerSize + getLength() * getElementSize());
+  }
+
   //----------------------------------------------------------------------
   // Internals only below this point
   //
@@ -29,6 +29,7 @@ import java.util.*;
 import sun.jvm.hotspot.debugger.*;
 import sun.jvm.hotspot.runtime.*;
 import sun.jvm.hotspot.types.*;
+import sun.jvm.hotspot.utilities.memo.*;
 
 public class Klass extends Metadata implements ClassConstants {
   static {
@@ -71,6 +72,18 @@ public class Klass extends Metadata implements ClassConstants {
     super(addr);
   }
 
+  // The name and superclass never change once a Klass is loaded
+  private MemoizedObject memoName = new MemoizedObject() {
+      protected Object computeValue() {
+        return getSymbol(name);
+      }
+    };
+  private MemoizedObject memoSuper = new MemoizedObject() {
+      protected Object computeValue() {
+        return superField.getValue(Klass.this);
+      }
+    };
+
   // jvmdi support - see also class_status in VM code
   public int getClassStatus() {
     return 0; // overridden in derived classes
@@ -97,10 +110,10 @@ public class Klass extends Metadata implements ClassConstants {
 
   // Accessors for declared fields
   public Instance getJavaMirror()       { return (Instance) javaMirror.getValue(this);   }
-  public Klass    getSuper()            { return (Klass)    superField.getValue(this);   }
+  public Klass    getSuper()            { return (Klass)    memoSuper.getValue();        }
   public Klass    getJavaSuper()        { return null;  }
   public int      getLayoutHelper()     { return (int)           layoutHelper.getValue(this); }
-  public Symbol   getName()             { return getSymbol(name); }
+  public Symbol   getName()             { return (Symbol)   memoName.getValue();         }
   public long     getAccessFlags()      { return            accessFlags.getValue(this);  }
   // Convenience routine
   public AccessFlags getAccessFlagsObj(){ return new AccessFlags(getAccessFlags());      }
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+package sun.jvm.hotspot.oops;
+
+/** An open addressing hash table from Klass addresses to two longs.
+    It is used where a HashMap keyed by Klass wrappers would create
+    objects for every object in the heap; adding to an existing entry
+    does not allocate. Address 0 is never a valid Klass and marks
+    free slots. Not thread-safe. */
+
+final class KlassAddressTable {
+  private long[] keys;
+  private long[] firstValues;
+  private long[] secondValues;
+  private int    size;
+
+  KlassAddressTable() {
+    allocate(256);
+  }
+
+  /** Number of klasses in the table */
+  int size() {
+    return size;
+  }
+
+  /** Number of slots; the slots without a klass have klassAt() == 0 */
+  int capacity() {
+    return keys.length;
+  }
+
+  /** Returns the slot of klass, or -1 if it is not in the table */
+  int find(long klass) {
+    int mask = keys.length - 1;
+    for (int i = hash(klass) & mask; ; i = (i + 1) & mask) {
+      if (keys[i] == klass) {
+        return i;
+      }
+      if (keys[i] == 0) {
+        return -1;
+      }
+    }
+  }
+
+  /** Returns the slot of klass, adding it with zero values if it is
+      not in the table. Slots returned earlier become invalid when
+      this adds a klass. */
+  int findOrAdd(long klass) {
+    int mask = keys.length - 1;
+    int i = hash(klass) & mask;
+    for (; keys[i] != 0; i = (i + 1) & mask) {
+      if (keys[i] == klass) {
+        return i;
+      }
+    }
+    if (2 * (size + 1) > keys.length) {
+      grow();
+      return findOrAdd(klass);
+    }
+    keys[i] = klass;
+    size++;
+    return i;
+  }
+
+  long klassAt(int slot)  { return keys[slot];         }
+  long firstAt(int slot)  { return firstValues[slot];  }
+  long secondAt(int slot) { return secondValues[slot]; }
+
+  void set(int slot, long first, long second) {
+    firstValues[slot]  = first;
+    secondValues[slot] = second;
+  }
+
+  void add(int slot, long first, long second) {
+    firstValues[slot]  += first;
+    secondValues[slot] += second;
+  }
+
+  /** Adds the values of all klasses of another table to this one */
+  void addAll(KlassAddressTable other) {
+    for (int i = 0; i < other.keys.length; i++) {
+      if (other.keys[i] != 0) {
+        add(findOrAdd(other.keys[i]), other.firstValues[i], other.secondValues[i]);
+      }
+    }
+  }
+
+  //---------------------------------------------------------------------------
+  // Internals only below this point
+  //
+
+  private static int hash(long klass) {
+    // Klasses are word aligned, so mix in the higher bits
+    long h = klass * 0x9E3779B97F4A7C15L;
+    return (int) (h >>> 32);
+  }
+
+  private void allocate(int capacity) {
+    keys         = new long[capacity];
+    firstValues  = new long[capacity];
+    secondValues = new long[capacity];
+  }
+
+  private void grow() {
+    long[] oldKeys         = keys;
+    long[] oldFirstValues  = firstValues;
+    long[] oldSecondValues = secondValues;
+    allocate(2 * oldKeys.length);
+    size = 0;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != 0) {
+        set(findOrAdd(oldKeys[i]), oldFirstValues[i], oldSecondValues[i]);
+      }
+    }
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+
+package sun.jvm.hotspot.oops;
+
+import java.util.*;
+
+import sun.jvm.hotspot.debugger.*;
+
+/** An index from every Klass to the addresses of its objects in the
+    heap, built with a single walk of the object headers. Tools which
+    run many queries against the same heap, such as the SOQL engine,
+    can then visit the objects of a few klasses without walking the
+    heap again. The index takes 8 bytes per object and is only valid
+    as long as the heap does not change, which holds for a core file
+    and for a process stopped by the debugger. */
+
+public class KlassObjectIndex {
+  private ObjectHeap heap;
+  // Maps klass address to the index of its lists below in the first
+  // value and the number of its objects in the second
+  private KlassAddressTable table = new KlassAddressTable();
+  private List     klasses   = new ArrayList();
+  private long[][] addresses = new long[16][];
+  private long[]   sizes     = new long[16];
+  private long     objectCount;
+  // Handles are created relative to the first object seen
+  private Address  base;
+  private long     baseValue;
+
+  public KlassObjectIndex(ObjectHeap heap) {
+    this.heap = heap;
+    heap.iterateHeaders(new ObjectHeap.HeaderClosure() {
+        boolean doHeader(long address, long klass, long size) {
+          add(this, address, klass, size);
+          return false;
+        }
+      });
+    // Trim the lists to their final sizes
+    for (int i = 0; i < table.capacity(); i++) {
+      if (table.klassAt(i) != 0) {
+        int list = (int) table.firstAt(i);
+        addresses[list] = Arrays.copyOf(addresses[list], (int) table.secondAt(i));
+      }
+    }
+  }
+
+  /** Number of objects in the index */
+  public long getObjectCount() {
+    return objectCount;
+  }
+
+  /** Visits the objects of the given Klass, and of its subtypes if
+      includeSubtypes is true, which satisfy an ObjectHeaderFilter
+      (which may be null). The objects of each Klass are visited in
+      heap order. A visitor returning true from doObj() stops the
+      traversal of the objects of the current Klass. */
+  public void iterateObjectsOfKlass(HeapVisitor visitor, Klass k, boolean includeSubtypes,
+                                    ObjectHeap.ObjectHeaderFilter hf) {
+    List lists = new ArrayList();
+    long totalSize = 0;
+    for (int i = 0; i < klasses.size(); i++) {
+      Klass tk = (Klass) klasses.get(i);
+      boolean matches = includeSubtypes ? tk.isSubtypeOf(k) : tk.equals(k);
+      if (matches && (hf == null || hf.canIncludeKlass(tk))) {
+        lists.add(new Integer(i));
+        totalSize += sizes[i];
+      }
+    }
+
+    visitor.prologue(totalSize);
+    for (Iterator iter = lists.iterator(); iter.hasNext(); ) {
+      int list = ((Integer) iter.next()).intValue();
+      Klass tk = (Klass) klasses.get(list);
+      long[] objs = addresses[list];
+      for (int i = 0; i < objs.length; i++) {
+        OopHandle handle = base.addOffsetToAsOopHandle(objs[i] - baseValue);
+        if (hf != null && !hf.canInclude(tk, handle)) {
+          continue;
+        }
+        Oop obj;
+        try {
+          obj = heap.newOop(handle);
+        } catch (UnknownOopException e) {
+          continue;
+        }
+        if (visitor.doObj(obj)) {
+          break;
+        }
+      }
+    }
+    visitor.epilogue();
+  }
+
+  //---------------------------------------------------------------------------
+  // Internals only below this point
+  //
+
+  private void add(ObjectHeap.HeaderClosure closure, long address, long klass, long size) {
+    if (base == null) {
+      base = closure.handleAt(address);
+      baseValue = address;
+    }
+    int slot = table.find(klass);
+    if (slot < 0) {
+      Klass k;
+      try {
+        k = Oop.getKlassForOopHandle(closure.handleAt(address));
+      } catch (RuntimeException e) {
+        // Not a valid klass; skip the object as a heap walk would
+        return;
+      }
+      if (k == null) {
+        return;
+      }
+      int list = klasses.size();
+      klasses.add(k);
+      if (list == addresses.length) {
+        addresses = Arrays.copyOf(addresses, 2 * list);
+        sizes = Arrays.copyOf(sizes, 2 * list);
+      }
+      addresses[list] = new long[16];
+      slot = table.findOrAdd(klass);
+      table.set(slot, list, 0);
+    }
+    int list = (int) table.firstAt(slot);
+    int count = (int) table.secondAt(slot);
+    if (count == addresses[list].length) {
+      addresses[list] = Arrays.copyOf(addresses[list], 2 * count);
+    }
+    addresses[list][count] = address;
+    table.add(slot, 0, 1);
+    sizes[list] += size;
+    objectCount++;
+  }
+}
@@ -64,8 +64,21 @@ abstract public class Metadata extends VMObject {
     metadataConstructor.addMapping("ConstantPoolCache", ConstantPoolCache.class);
   }
 
+  /** Returns the wrapper for the Metadata at addr. Wrappers are cached
+      per VM, so that state memoized in them (such as the name of a
+      Klass) survives between lookups and the dynamic type of addr is
+      only resolved once. */
   public static Metadata instantiateWrapperFor(Address addr) {
-    return metadataConstructor.instantiateWrapperFor(addr);
+    if (addr == null) {
+      return null;
+    }
+    WrapperCache cache = VM.getVM().getMetadataCache();
+    Metadata wrapper = (Metadata) cache.get(addr);
+    if (wrapper == null) {
+      wrapper = metadataConstructor.instantiateWrapperFor(addr);
+      cache.put(addr, wrapper);
+    }
+    return wrapper;
   }
 
   public void iterate(MetadataVisitor visitor) {
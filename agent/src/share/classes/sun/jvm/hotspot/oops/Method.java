@@ -39,6 +39,7 @@ import sun.jvm.hotspot.types.Type;
 import sun.jvm.hotspot.types.TypeDataBase;
 import sun.jvm.hotspot.types.WrongTypeException;
 import sun.jvm.hotspot.utilities.Assert;
+import sun.jvm.hotspot.utilities.memo.MemoizedObject;
 
 // A Method represents a Java method
 
@@ -75,6 +76,24 @@ public class Method extends Metadata {
     super(addr);
   }
 
+  // A Method keeps its ConstMethod, name and signature for its lifetime
+  private MemoizedObject memoConstMethod = new MemoizedObject() {
+      protected Object computeValue() {
+        Address addr = constMethod.getValue(getAddress());
+        return VMObjectFactory.newObject(ConstMethod.class, addr);
+      }
+    };
+  private MemoizedObject memoName = new MemoizedObject() {
+      protected Object computeValue() {
+        return getConstants().getSymbolAt(getNameIndex());
+      }
+    };
+  private MemoizedObject memoSignature = new MemoizedObject() {
+      protected Object computeValue() {
+        return getConstants().getSymbolAt(getSignatureIndex());
+      }
+    };
+
   public boolean isMethod()            { return true; }
 
   // Fields
@@ -113,8 +132,7 @@ public class Method extends Metadata {
 
   // Accessors for declared fields
   public ConstMethod  getConstMethod()                {
-    Address addr = constMethod.getValue(getAddress());
-    return (ConstMethod) VMObjectFactory.newObject(ConstMethod.class, addr);
+    return (ConstMethod) memoConstMethod.getValue();
   }
   public ConstantPool getConstants()                  {
     return getConstMethod().getConstants();
@@ -220,8 +238,8 @@ public class Method extends Metadata {
   public Address      getFromCompiledCodeEntryPoint() { return fromCompiledCodeEntryPointField.getValue(this); }
   */
   // Accessors
-  public Symbol  getName()          { return getConstants().getSymbolAt(getNameIndex());         }
-  public Symbol  getSignature()     { return getConstants().getSymbolAt(getSignatureIndex());    }
+  public Symbol  getName()          { return (Symbol) memoName.getValue();                       }
+  public Symbol  getSignature()     { return (Symbol) memoSignature.getValue();                  }
   public Symbol  getGenericSignature() {
      long index = getGenericSignatureIndex();
      return (index != 0L) ? getConstants().getSymbolAt(index) : null;
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+package sun.jvm.hotspot.oops;
+
+// An ObjectHeaderVisitor is used with ObjectHeap.iterateObjectHeaders
+// to visit all objects in the heap without creating Oops for them.
+// Only the address of the klass and the size of each object are
+// passed, as read from the object header.
+
+public interface ObjectHeaderVisitor {
+  // This is called at the beginning of the iteration with the amount
+  // of memory which will be traversed
+  public void prologue(long usedSize);
+
+  // Callback method for each object, with the address of its Klass
+  // and its size in bytes.
+  // Return true if the iteration of the current region should be stopped.
+  public boolean doObjectHeader(long klass, long size);
+
+  // This is called after the traversal is complete
+  public void epilogue();
+};
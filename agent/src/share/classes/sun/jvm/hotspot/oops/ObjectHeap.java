@@ -30,6 +30,8 @@
 package sun.jvm.hotspot.oops;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import sun.jvm.hotspot.debugger.*;
 import sun.jvm.hotspot.gc_interface.*;
@@ -43,9 +45,13 @@ import sun.jvm.hotspot.utilities.*;
 public class ObjectHeap {
 
   private static final boolean DEBUG;
+  // Number of threads used by iterateParallel
+  private static final int PARALLELISM;
 
   static {
     DEBUG = System.getProperty("sun.jvm.hotspot.oops.ObjectHeap.DEBUG") != null;
+    PARALLELISM = Integer.getInteger("sun.jvm.hotspot.oops.ObjectHeap.parallelism",
+                                     Runtime.getRuntime().availableProcessors());
   }
 
   private Address              boolArrayKlassHandle;
@@ -176,22 +182,149 @@ public class ObjectHeap {
     iterateLiveRegions(collectLiveRegions(), visitor, of);
   }
 
+  /** Filters objects before Oops are created for them; see
+      iterate(HeapVisitor, ObjectHeaderFilter) */
+  public static interface ObjectHeaderFilter {
+    /** Called once for every Klass with objects in the heap; the
+        objects of klasses for which this returns false are skipped
+        after reading their header */
+    public boolean canIncludeKlass(Klass k);
+    /** Called for every object of an included Klass */
+    public boolean canInclude(Klass k, OopHandle handle);
+  }
+
+  /** iterate objects satisfying a specified ObjectHeaderFilter. The
+      heap is walked by reading object headers only, as in
+      iterateObjectHeaders(), and Oops are only created for the objects
+      which pass the filter. This is much faster than an ObjectFilter
+      when few objects are selected. */
+  public void iterate(HeapVisitor visitor, ObjectHeaderFilter hf) {
+    List liveRegions = collectLiveRegions();
+    visitor.prologue(liveRegionsSize(liveRegions));
+    iterateHeaders(liveRegions, new FilteringClosure(visitor, hf));
+    visitor.epilogue();
+  }
+
+  /** Iterates the heap on several threads. The live regions of the
+      heap (G1 regions, spaces and the parts between TLABs) are handed
+      out to the workers of a fork-join pool one at a time, and every
+      worker visits its regions with its own visitor obtained from
+      pv.createVisitor(). The visitors are merged into pv before this
+      method returns. A visitor returning true from doObj() stops the
+      traversal of the current region only, as in iterate(). <P>
+
+      This relies on the heap not changing during the iteration, which
+      holds for a core file and for a process stopped by the debugger.
+      Setting the sun.jvm.hotspot.oops.ObjectHeap.parallelism property
+      to 1 makes this a sequential iteration with a single visitor. */
+  public void iterateParallel(ParallelHeapVisitor pv) {
+    iterateParallel(pv, null);
+  }
+
+  /** iterate objects satisfying a specified ObjectFilter on several
+      threads. The filter must be thread-safe. */
+  public void iterateParallel(ParallelHeapVisitor pv, final ObjectFilter of) {
+    final List liveRegions = collectLiveRegions();
+    final long totalSize = liveRegionsSize(liveRegions);
+    final CompactibleFreeListSpace cmsSpaceOld = cmsSpaceOld();
+    List visitors = new ArrayList();
+    List workers = new ArrayList();
+    for (int w = numWorkers(liveRegions); w > 0; w--) {
+      final HeapVisitor visitor = pv.createVisitor();
+      visitors.add(visitor);
+      workers.add(new RegionWorker() {
+          void prologue() {
+            visitor.prologue(totalSize);
+          }
+          void doRegion(Address bottom, Address top) {
+            iterateLiveRegion(bottom, top, visitor, of, cmsSpaceOld);
+          }
+          void epilogue() {
+            visitor.epilogue();
+          }
+        });
+    }
+    runWorkers(liveRegions, workers);
+    for (Iterator iter = visitors.iterator(); iter.hasNext(); ) {
+      pv.merge((HeapVisitor) iter.next());
+    }
+  }
+
+  /** Iterates the heap without creating Oops or Klass wrappers for
+      the objects. The address of the Klass and the size of every
+      object are read straight from its header, and a Klass wrapper is
+      only created the first time a Klass is seen. This is much faster
+      than iterate() for visitors which only need the type and size of
+      the objects, such as class histograms. <P>
+
+      This needs a debugger derived from DebuggerBase, which all
+      debuggers of the SA are; the iteration falls back to Oops for
+      others. */
+  public void iterateObjectHeaders(ObjectHeaderVisitor visitor) {
+    List liveRegions = collectLiveRegions();
+    visitor.prologue(liveRegionsSize(liveRegions));
+    iterateHeaders(liveRegions, new VisitorClosure(visitor));
+    visitor.epilogue();
+  }
+
+  /** Iterates the object headers on several threads, handing out the
+      live regions of the heap as iterateParallel() does. Every worker
+      uses its own visitor obtained from pv.createHeaderVisitor(); the
+      visitors are merged into pv before this method returns. */
+  public void iterateObjectHeadersParallel(ParallelObjectHeaderVisitor pv) {
+    final List liveRegions = collectLiveRegions();
+    final long totalSize = liveRegionsSize(liveRegions);
+    final CompactibleFreeListSpace cmsSpaceOld = cmsSpaceOld();
+    List visitors = new ArrayList();
+    List workers = new ArrayList();
+    for (int w = numWorkers(liveRegions); w > 0; w--) {
+      final ObjectHeaderVisitor visitor = pv.createHeaderVisitor();
+      final HeaderClosure closure = new VisitorClosure(visitor);
+      // Klass information is cached per worker so it needs no locking
+      final KlassAddressTable klassInfo = new KlassAddressTable();
+      visitors.add(visitor);
+      workers.add(new RegionWorker() {
+          void prologue() {
+            visitor.prologue(totalSize);
+          }
+          void doRegion(Address bottom, Address top) {
+            iterateLiveRegionHeaders(bottom, top, closure, klassInfo, cmsSpaceOld);
+          }
+          void epilogue() {
+            visitor.epilogue();
+          }
+        });
+    }
+    runWorkers(liveRegions, workers);
+    for (Iterator iter = visitors.iterator(); iter.hasNext(); ) {
+      pv.merge((ObjectHeaderVisitor) iter.next());
+    }
+  }
+
   /** iterate objects of given Klass. param 'includeSubtypes' tells whether to
    *  include objects of subtypes or not */
   public void iterateObjectsOfKlass(HeapVisitor visitor, final Klass k, boolean includeSubtypes) {
-    if (includeSubtypes) {
-      if (k.isFinal()) {
-        // do the simpler "exact" klass loop
-        iterateExact(visitor, k);
-      } else {
-        iterateSubtypes(visitor, k);
-      }
-    } else {
-      // there can no object of abstract classes and interfaces
-      if (!k.isAbstract() && !k.isInterface()) {
-        iterateExact(visitor, k);
-      }
+    iterateObjectsOfKlass(visitor, k, includeSubtypes, null);
+  }
+
+  /** iterate objects of given Klass which also satisfy an
+      ObjectHeaderFilter (which may be null). Only the headers of the
+      other objects are read, as in iterateObjectHeaders(). */
+  public void iterateObjectsOfKlass(HeapVisitor visitor, final Klass k,
+                                    final boolean includeSubtypes, final ObjectHeaderFilter hf) {
+    // there can no object of abstract classes and interfaces
+    if (!includeSubtypes && (k.isAbstract() || k.isInterface())) {
+      return;
     }
+    iterate(visitor, new ObjectHeaderFilter() {
+        public boolean canIncludeKlass(Klass tk) {
+          boolean matches = includeSubtypes ? tk.isSubtypeOf(k) : tk.equals(k);
+          return matches && (hf == null || hf.canIncludeKlass(tk));
+        }
+        public boolean canInclude(Klass tk, OopHandle handle) {
+          return hf == null || hf.canInclude(tk, handle);
+        }
+      });
   }
 
   /** iterate objects of given Klass (objects of subtypes included) */
@@ -273,37 +406,128 @@ public class ObjectHeap {
   // Internals only below this point
   //
 
-  private void iterateExact(HeapVisitor visitor, final Klass k) {
-    iterateLiveRegions(collectLiveRegions(), visitor, new ObjectFilter() {
-          public boolean canInclude(Oop obj) {
-            Klass tk = obj.getKlass();
-            // null Klass is seen sometimes!
-            return (tk != null && tk.equals(k));
-          }
-        });
+  /** Walks the object headers of the whole heap, for KlassObjectIndex
+      and CompositeHeapVisitor */
+  void iterateHeaders(HeaderClosure closure) {
+    List liveRegions = collectLiveRegions();
+    closure.prologue(liveRegionsSize(liveRegions));
+    iterateHeaders(liveRegions, closure);
+    closure.epilogue();
   }
 
-  private void iterateSubtypes(HeapVisitor visitor, final Klass k) {
-    iterateLiveRegions(collectLiveRegions(), visitor, new ObjectFilter() {
-          public boolean canInclude(Oop obj) {
-            Klass tk = obj.getKlass();
-            // null Klass is seen sometimes!
-            return (tk != null && tk.isSubtypeOf(k));
+  /** Walks the object headers of the whole heap on several threads as
+      iterateObjectHeadersParallel() does, with a closure per worker
+      from factory.createClosure(). Returns the closures. */
+  List iterateHeadersParallel(HeaderClosureFactory factory) {
+    final List liveRegions = collectLiveRegions();
+    final long totalSize = liveRegionsSize(liveRegions);
+    final CompactibleFreeListSpace cmsSpaceOld = cmsSpaceOld();
+    List closures = new ArrayList();
+    List workers = new ArrayList();
+    for (int w = numWorkers(liveRegions); w > 0; w--) {
+      final HeaderClosure closure = factory.createClosure();
+      final KlassAddressTable klassInfo = new KlassAddressTable();
+      closures.add(closure);
+      workers.add(new RegionWorker() {
+          void prologue() {
+            closure.prologue(totalSize);
+          }
+          void doRegion(Address bottom, Address top) {
+            iterateLiveRegionHeaders(bottom, top, closure, klassInfo, cmsSpaceOld);
+          }
+          void epilogue() {
+            closure.epilogue();
           }
         });
+    }
+    runWorkers(liveRegions, workers);
+    return closures;
   }
 
-  private void iterateLiveRegions(List liveRegions, HeapVisitor visitor, ObjectFilter of) {
-    // Summarize size
+  private void iterateHeaders(List liveRegions, HeaderClosure closure) {
+    CompactibleFreeListSpace cmsSpaceOld = cmsSpaceOld();
+    KlassAddressTable klassInfo = new KlassAddressTable();
+    for (int i = 0; i < liveRegions.size(); i += 2) {
+      iterateLiveRegionHeaders((Address) liveRegions.get(i), (Address) liveRegions.get(i + 1),
+                               closure, klassInfo, cmsSpaceOld);
+    }
+  }
+
+  private long liveRegionsSize(List liveRegions) {
     long totalSize = 0;
     for (int i = 0; i < liveRegions.size(); i += 2) {
       Address bottom = (Address) liveRegions.get(i);
       Address top    = (Address) liveRegions.get(i+1);
       totalSize += top.minus(bottom);
     }
-    visitor.prologue(totalSize);
+    return totalSize;
+  }
+
+  // The part of a parallel iteration done by one worker thread
+  private static abstract class RegionWorker {
+    abstract void prologue();
+    // Visits the objects in [bottom, top)
+    abstract void doRegion(Address bottom, Address top);
+    abstract void epilogue();
+  }
+
+  private int numWorkers(List liveRegions) {
+    return Math.max(1, Math.min(PARALLELISM, liveRegions.size() / 2));
+  }
 
-    CompactibleFreeListSpace cmsSpaceOld = null;
+  // Runs the workers until all live regions are visited. Regions are
+  // claimed dynamically since their sizes vary a lot.
+  private void runWorkers(final List liveRegions, List workers) {
+    if (workers.size() == 1) {
+      RegionWorker worker = (RegionWorker) workers.get(0);
+      worker.prologue();
+      for (int i = 0; i < liveRegions.size(); i += 2) {
+        worker.doRegion((Address) liveRegions.get(i), (Address) liveRegions.get(i + 1));
+      }
+      worker.epilogue();
+      return;
+    }
+
+    final AtomicInteger nextRegion = new AtomicInteger();
+    List tasks = new ArrayList();
+    for (Iterator iter = workers.iterator(); iter.hasNext(); ) {
+      final RegionWorker worker = (RegionWorker) iter.next();
+      tasks.add(new Callable() {
+          public Object call() {
+            worker.prologue();
+            for (int i = nextRegion.getAndIncrement(); 2 * i < liveRegions.size();
+                 i = nextRegion.getAndIncrement()) {
+              worker.doRegion((Address) liveRegions.get(2 * i), (Address) liveRegions.get(2 * i + 1));
+            }
+            worker.epilogue();
+            return null;
+          }
+        });
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(workers.size());
+    try {
+      List results = pool.invokeAll(tasks);
+      for (Iterator iter = results.iterator(); iter.hasNext(); ) {
+        ((Future) iter.next()).get();
+      }
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private CompactibleFreeListSpace cmsSpaceOld() {
     CollectedHeap heap = VM.getVM().getUniverse().heap();
 
     if (heap instanceof GenCollectedHeap) {
@@ -311,14 +535,30 @@ public class ObjectHeap {
       Generation genOld = genHeap.getGen(1);
       if (genOld instanceof ConcurrentMarkSweepGeneration) {
           ConcurrentMarkSweepGeneration concGen = (ConcurrentMarkSweepGeneration)genOld;
-          cmsSpaceOld = concGen.cmsSpace();
+          return concGen.cmsSpace();
       }
     }
+    return null;
+  }
+
+  private void iterateLiveRegions(List liveRegions, HeapVisitor visitor, ObjectFilter of) {
+    // Summarize size
+    long totalSize = liveRegionsSize(liveRegions);
+    visitor.prologue(totalSize);
+
+    CompactibleFreeListSpace cmsSpaceOld = cmsSpaceOld();
 
     for (int i = 0; i < liveRegions.size(); i += 2) {
       Address bottom = (Address) liveRegions.get(i);
       Address top    = (Address) liveRegions.get(i+1);
+      iterateLiveRegion(bottom, top, visitor, of, cmsSpaceOld);
+    }
 
+    visitor.epilogue();
+  }
+
+  private void iterateLiveRegion(Address bottom, Address top, HeapVisitor visitor,
+                                 ObjectFilter of, CompactibleFreeListSpace cmsSpaceOld) {
       try {
         // Traverses the space from bottom to top
         OopHandle handle = bottom.addOffsetToAsOopHandle(0);
@@ -368,9 +608,245 @@ public class ObjectHeap {
       catch (UnknownOopException e) {
         // This is okay at the top of these regions
       }
+  }
+
+  // Kinds of klasses recorded by iterateLiveRegionHeaders. The size
+  // of an object follows from the layout helper of its klass, except
+  // for java.lang.Class instances whose size is in the object itself.
+  private static final int KLASS_INVALID  = 0;
+  private static final int KLASS_INSTANCE = 1;
+  private static final int KLASS_MIRROR   = 2;
+  private static final int KLASS_ARRAY    = 3;
+  private static final int KLASS_OTHER    = 4;
+
+  private void iterateLiveRegionHeaders(Address bottom, Address top, HeaderClosure closure,
+                                        KlassAddressTable klassInfo,
+                                        CompactibleFreeListSpace cmsSpaceOld) {
+    Debugger debugger = VM.getVM().getDebugger();
+    if (!(debugger instanceof DebuggerBase)) {
+      iterateLiveRegion(bottom, top, new HeaderClosureAdapter(closure), null, cmsSpaceOld);
+      return;
     }
+    DebuggerBase dbg = (DebuggerBase) debugger;
+    // Live regions are parts of a single space
+    boolean inCmsSpace = (cmsSpaceOld != null) && cmsSpaceOld.contains(bottom);
+    boolean compressed = VM.getVM().isCompressedKlassPointersEnabled();
+    long klassOffset = Oop.getKlassOffset();
+    long klassPtrSize = compressed ? dbg.getKlassPtrSize() : VM.getVM().getAddressSize();
+    long narrowKlassBase = dbg.getNarrowKlassBase();
+    int narrowKlassShift = dbg.getNarrowKlassShift();
+    long bottomValue = dbg.getAddressValue(bottom);
+    long topValue = dbg.getAddressValue(top);
+    closure.bottom = bottom;
+    closure.bottomValue = bottomValue;
 
-    visitor.epilogue();
+    try {
+      for (long cur = bottomValue; cur < topValue; ) {
+        long klass = dbg.readCInteger(cur + klassOffset, klassPtrSize, true);
+        if (compressed && klass != 0) {
+          klass = narrowKlassBase + (klass << narrowKlassShift);
+        }
+        int slot = klassInfo.find(klass);
+        if (slot < 0 && klass != 0) {
+          slot = klassInfo.findOrAdd(klass);
+          recordKlassInfo(klassInfo, slot, bottom.addOffsetToAsOopHandle(cur - bottomValue));
+        }
+
+        long size = 0;
+        if (slot >= 0) {
+          size = objectSize(dbg, cur, klassInfo.firstAt(slot), klassInfo.secondAt(slot),
+                            bottom, bottomValue);
+        }
+        if (size <= 0) {
+          //Find the object size using Printezis bits and skip over
+          if (inCmsSpace) {
+            size = cmsSpaceOld.collector().blockSizeUsingPrintezisBits(bottom.addOffsetTo(cur - bottomValue));
+          }
+          if (size <= 0) {
+            //Either Printezis bits not set or handle is not in cms space.
+            throw new UnknownOopException();
+          }
+          cur += CompactibleFreeListSpace.adjustObjectSizeInBytes(size);
+          continue;
+        }
+        if (closure.doHeader(cur, klass, size)) {
+          // doHeader() returns true to abort this loop.
+          break;
+        }
+        cur += inCmsSpace ? CompactibleFreeListSpace.adjustObjectSizeInBytes(size) : size;
+      }
+    }
+    catch (AddressException e) {
+      // This is okay at the top of these regions
+    }
+    catch (UnknownOopException e) {
+      // This is okay at the top of these regions
+    }
+  }
+
+  // Records the kind and the layout helper of the klass of the object
+  // at handle, the same way newOop() checks it.
+  private void recordKlassInfo(KlassAddressTable klassInfo, int slot, OopHandle handle) {
+    Klass klass = null;
+    try {
+      klass = Oop.getKlassForOopHandle(handle);
+    } catch (RuntimeException e) {
+      // Not a valid klass; the object is handled like an unknown oop
+    }
+    int kind = KLASS_INVALID;
+    int lh = 0;
+    if (klass != null) {
+      lh = klass.getLayoutHelper();
+      if (klass instanceof InstanceMirrorKlass) {
+        kind = KLASS_MIRROR;
+      } else if (klass instanceof InstanceKlass) {
+        kind = (lh > 0) ? KLASS_INSTANCE : KLASS_OTHER;
+      } else if (klass instanceof TypeArrayKlass || klass instanceof ObjArrayKlass) {
+        kind = (lh < 0) ? KLASS_ARRAY : KLASS_OTHER;
+      }
+    }
+    klassInfo.set(slot, kind, lh);
+  }
+
+  // Returns the size in bytes of the object at address cur, or 0 if it
+  // is not a valid object
+  private long objectSize(DebuggerBase dbg, long cur, long kind, long layoutHelper,
+                          Address bottom, long bottomValue) {
+    int lh = (int) layoutHelper;
+    if (kind == KLASS_INSTANCE) {
+      // Same as InstanceKlass.getSizeHelper()
+      long wordSize = VM.getVM().getAddressSize();
+      return (lh / wordSize) * wordSize;
+    } else if (kind == KLASS_ARRAY) {
+      long length = dbg.readCInteger(cur + Array.lengthOffsetInBytes(), VM.getVM().getIntSize(), true);
+      long log2ElementSize = Bits.maskBits(lh >> Klass.LH_LOG2_ELEMENT_SIZE_SHIFT, 0xFF);
+      long headerSize = Bits.maskBits(lh >> Klass.LH_HEADER_SIZE_SHIFT, 0xFF);
+      return Oop.alignObjectSize((length << log2ElementSize) + headerSize);
+    } else if (kind == KLASS_MIRROR) {
+      return dbg.readJInt(cur + java_lang_Class.oopSizeField.getOffset()) * VM.getVM().getAddressSize();
+    } else if (kind == KLASS_OTHER) {
+      return newOop(bottom.addOffsetToAsOopHandle(cur - bottomValue)).getObjectSize();
+    }
+    return 0;
+  }
+
+  // Receives the objects found by iterateLiveRegionHeaders
+  static abstract class HeaderClosure {
+    // Some address in the region being walked, and its value
+    Address bottom;
+    long    bottomValue;
+
+    // Called with the address of every object, the address of its
+    // Klass and its size in bytes. Return true to stop the walk of the
+    // current region.
+    abstract boolean doHeader(long address, long klass, long size);
+
+    // Called before and after the walk by iterateHeaders and
+    // iterateHeadersParallel
+    void prologue(long usedSize) {}
+    void epilogue() {}
+
+    OopHandle handleAt(long address) {
+      return bottom.addOffsetToAsOopHandle(address - bottomValue);
+    }
+  }
+
+  // Creates the HeaderClosure of each worker of iterateHeadersParallel
+  static interface HeaderClosureFactory {
+    HeaderClosure createClosure();
+  }
+
+  private static class VisitorClosure extends HeaderClosure {
+    private ObjectHeaderVisitor visitor;
+
+    VisitorClosure(ObjectHeaderVisitor visitor) {
+      this.visitor = visitor;
+    }
+
+    boolean doHeader(long address, long klass, long size) {
+      return visitor.doObjectHeader(klass, size);
+    }
+  }
+
+  // Creates Oops for the objects which pass an ObjectHeaderFilter.
+  // The filter's decision for a klass is made once and kept by klass
+  // address.
+  private class FilteringClosure extends HeaderClosure {
+    private HeapVisitor visitor;
+    private ObjectHeaderFilter hf;
+    // The first value is 0 for excluded klasses, else the index of
+    // the Klass in klasses plus one
+    private KlassAddressTable decisions = new KlassAddressTable();
+    private List klasses = new ArrayList();
+
+    FilteringClosure(HeapVisitor visitor, ObjectHeaderFilter hf) {
+      this.visitor = visitor;
+      this.hf = hf;
+    }
+
+    boolean doHeader(long address, long klass, long size) {
+      Klass k = includedKlass(address, klass);
+      if (k == null) {
+        return false;
+      }
+      OopHandle handle = handleAt(address);
+      if (!hf.canInclude(k, handle)) {
+        return false;
+      }
+      Oop obj;
+      try {
+        obj = newOop(handle);
+      } catch (UnknownOopException e) {
+        return false;
+      }
+      return visitor.doObj(obj);
+    }
+
+    private Klass includedKlass(long address, long klass) {
+      int slot = decisions.find(klass);
+      if (slot >= 0) {
+        long index = decisions.firstAt(slot);
+        return (index == 0) ? null : (Klass) klasses.get((int) index - 1);
+      }
+      Klass k = null;
+      try {
+        k = Oop.getKlassForOopHandle(handleAt(address));
+      } catch (RuntimeException e) {
+        // Not a valid klass
+      }
+      if (k == null || !hf.canIncludeKlass(k)) {
+        decisions.set(decisions.findOrAdd(klass), 0, 0);
+        return null;
+      }
+      klasses.add(k);
+      decisions.set(decisions.findOrAdd(klass), klasses.size(), 0);
+      return k;
+    }
+  }
+
+  // Passes Oops to a HeaderClosure, for debuggers which do not
+  // support reading raw memory
+  private static class HeaderClosureAdapter implements HeapVisitor {
+    private HeaderClosure closure;
+    private Debugger dbg;
+
+    HeaderClosureAdapter(HeaderClosure closure) {
+      this.closure = closure;
+      this.dbg = VM.getVM().getDebugger();
+    }
+
+    public void prologue(long usedSize) {}
+
+    public boolean doObj(Oop obj) {
+      OopHandle handle = obj.getHandle();
+      long address = dbg.getAddressValue(handle);
+      long klass = dbg.getAddressValue(Oop.getKlassAddressForOopHandle(handle));
+      closure.bottom = handle;
+      closure.bottomValue = address;
+      return closure.doHeader(address, klass, obj.getObjectSize());
+    }
+
+    public void epilogue() {}
   }
 
   private void addLiveRegions(String name, List input, List output) {
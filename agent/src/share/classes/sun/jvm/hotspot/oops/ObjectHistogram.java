@@ -26,30 +26,67 @@ package sun.jvm.hotspot.oops;
 
 import java.io.*;
 import java.util.*;
+import sun.jvm.hotspot.debugger.*;
+import sun.jvm.hotspot.runtime.*;
 
-public class ObjectHistogram implements HeapVisitor {
+// Counts the instances and bytes per klass. The counts are kept in a
+// table keyed by the address of the klass, so neither the
+// iteration nor the counting creates objects; the Klass wrappers are
+// only created by getElements(). Use
+// ObjectHeap.iterateObjectHeadersParallel to fill it fastest.
 
-  public ObjectHistogram() { map = new HashMap(); }
+public class ObjectHistogram implements HeapVisitor, ParallelHeapVisitor,
+                                        ObjectHeaderVisitor, ParallelObjectHeaderVisitor {
 
-  private HashMap map;
+  public ObjectHistogram() { counts = new KlassAddressTable(); }
+
+  // Instance count and total size per klass address
+  private KlassAddressTable counts;
 
   public void prologue(long size) {}
 
   public boolean doObj(Oop obj) {
-    Klass klass = obj.getKlass();
-    if (!map.containsKey(klass)) map.put(klass, new ObjectHistogramElement(klass));
-    ((ObjectHistogramElement) map.get(klass)).updateWith(obj);
-        return false;
+    Address klass = Oop.getKlassAddressForOopHandle(obj.getHandle());
+    return doObjectHeader(VM.getVM().getDebugger().getAddressValue(klass), obj.getObjectSize());
+  }
+
+  public boolean doObjectHeader(long klass, long size) {
+    counts.add(counts.findOrAdd(klass), 1, size);
+    return false;
   }
 
   public void epilogue() {}
 
+  public HeapVisitor createVisitor() {
+    return new ObjectHistogram();
+  }
+
+  public void merge(HeapVisitor visitor) {
+    counts.addAll(((ObjectHistogram) visitor).counts);
+  }
+
+  public ObjectHeaderVisitor createHeaderVisitor() {
+    return new ObjectHistogram();
+  }
+
+  public void merge(ObjectHeaderVisitor visitor) {
+    counts.addAll(((ObjectHistogram) visitor).counts);
+  }
+
   /** Call this after the iteration is complete to obtain the
       ObjectHistogramElements in descending order of total heap size
       consumed in the form of a List<ObjectHistogramElement>. */
   public List getElements() {
-    List list = new ArrayList();
-    list.addAll(map.values());
+    Debugger dbg = VM.getVM().getDebugger();
+    List list = new ArrayList(counts.size());
+    for (int i = 0; i < counts.capacity(); i++) {
+      long klass = counts.klassAt(i);
+      if (klass != 0) {
+        Address addr = dbg.parseAddress("0x" + Long.toHexString(klass));
+        list.add(new ObjectHistogramElement((Klass) Metadata.instantiateWrapperFor(addr),
+                                            counts.firstAt(i), counts.secondAt(i)));
+      }
+    }
     Collections.sort(list, new Comparator() {
       public int compare(Object o1, Object o2) {
         return ((ObjectHistogramElement) o1).compare((ObjectHistogramElement) o2);
@@ -65,8 +102,8 @@ public class ObjectHistogram implements HeapVisitor {
     ObjectHistogramElement.titleOn(tty);
     Iterator iterator = list.listIterator();
     int num=0;
-    int totalCount=0;
-    int totalSize=0;
+    long totalCount=0;
+    long totalSize=0;
     while (iterator.hasNext()) {
       ObjectHistogramElement el = (ObjectHistogramElement) iterator.next();
       num++;
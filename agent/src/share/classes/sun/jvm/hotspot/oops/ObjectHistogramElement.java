@@ -41,13 +41,27 @@ public class ObjectHistogramElement {
      size  = 0;
   }
 
+  /** Creates an element with counts gathered elsewhere */
+  public ObjectHistogramElement(Klass k, long count, long size) {
+     klass = k;
+     this.count = count;
+     this.size  = size;
+  }
+
   public void updateWith(Oop obj) {
     count = count + 1;
     size  = size  + obj.getObjectSize();
   }
 
+  /** Adds the counts of another element for the same klass */
+  public void merge(ObjectHistogramElement other) {
+    count = count + other.count;
+    size  = size  + other.size;
+  }
+
   public int compare(ObjectHistogramElement other) {
-    return (int) (other.size - size);
+    // The sizes may differ by more than an int can hold
+    return (other.size > size) ? 1 : (other.size < size) ? -1 : 0;
   }
 
   /** Klass for this ObjectHistogramElement */
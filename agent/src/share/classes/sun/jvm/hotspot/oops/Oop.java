@@ -213,4 +213,22 @@ public class Oop {
       return (Klass)Metadata.instantiateWrapperFor(handle.getAddressAt(klass.getOffset()));
     }
   }
+
+  // Package-private routines used by ObjectHeap.iterateObjectHeaders
+  // to read the klass of an object without creating any wrappers
+  static long getKlassOffset() {
+    if (VM.getVM().isCompressedKlassPointersEnabled()) {
+      return compressedKlass.getOffset();
+    } else {
+      return klass.getOffset();
+    }
+  }
+
+  static Address getKlassAddressForOopHandle(OopHandle handle) {
+    if (VM.getVM().isCompressedKlassPointersEnabled()) {
+      return handle.getCompKlassAddressAt(compressedKlass.getOffset());
+    } else {
+      return handle.getAddressAt(klass.getOffset());
+    }
+  }
 };
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+package sun.jvm.hotspot.oops;
+
+// A ParallelObjectHeaderVisitor is used to visit the object headers of
+// the heap on several threads with
+// ObjectHeap.iterateObjectHeadersParallel. It works like a
+// ParallelHeapVisitor: every worker thread uses its own visitor and
+// the visitors are merged into this object at the end.
+
+public interface ParallelObjectHeaderVisitor {
+  // Creates the visitor for one worker thread
+  public ObjectHeaderVisitor createHeaderVisitor();
+
+  // Merges the results of a visitor returned by createHeaderVisitor().
+  // Called once per visitor, in no particular order.
+  public void merge(ObjectHeaderVisitor visitor);
+};
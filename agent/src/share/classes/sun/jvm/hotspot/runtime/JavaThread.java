@@ -367,7 +367,7 @@ public class JavaThread extends Thread {
     if (Assert.ASSERTS_ENABLED) {
       Assert.that(VM.getVM().isDebugging(), "Not yet implemented for non-debugging system");
     }
-    Address sp      = lastSPDbg();
+    Address sp      = getLastSPDbg();
     Address stackBase = getStackBase();
     // Be robust
     if (sp == null) return false;
@@ -449,7 +449,9 @@ public class JavaThread extends Thread {
     return fr;
   }
 
-  private Address lastSPDbg() {
+  /** Returns the stack pointer of the thread as found in its
+      registers; only for use on a stopped target */
+  public Address getLastSPDbg() {
     return access.getLastSP(addr);
   }
 
@@ -109,6 +109,9 @@ public class VM {
   private int          invocationEntryBCI;
   private int          invalidOSREntryBCI;
   private ReversePtrs  revPtrs;
+  /** Metadata wrappers by address, see Metadata.instantiateWrapperFor */
+  private WrapperCache metadataCache =
+    new WrapperCache(Integer.getInteger("sun.jvm.hotspot.runtime.VM.metadataCacheSize", 65536).intValue());
   private VMRegImpl    vmregImpl;
   private int          reserveForAllocationPrefetch;
 
@@ -743,6 +746,16 @@ public class VM {
     return true;
   }
 
+  public WrapperCache getMetadataCache() {
+    return metadataCache;
+  }
+
+  /** Drops the cached wrappers; must be called when the target may
+      have unloaded classes since they were created */
+  public void flushWrapperCaches() {
+    metadataCache.clear();
+  }
+
   public ReversePtrs getRevPtrs() {
     return revPtrs;
   }
@@ -73,32 +73,73 @@ public class ClassLoaderStats extends Tool {
       printClassLoaderStatistics();
    }
 
+   /** Collects the class loader instances of the heap, for
+       printClassLoaderStatistics(Map). Register it with its own
+       filter, which selects the subclasses of java.lang.ClassLoader. */
+   static class LoaderCollector extends DefaultHeapVisitor
+      implements ParallelHeapVisitor, ObjectHeap.ObjectHeaderFilter {
+      private Klass classLoaderKlass;
+      // Maps the loaders to their LoaderData
+      private Map loaderMap = new HashMap();
+
+      LoaderCollector() {
+         classLoaderKlass = VM.getVM().getSystemDictionary().getClassLoaderKlass();
+      }
+
+      Map getLoaderMap() {
+         return loaderMap;
+      }
+
+      public boolean doObj(Oop oop) {
+         loaderMap.put(oop, new LoaderData());
+         return false;
+      }
+
+      public boolean canIncludeKlass(Klass k) {
+         return k.isSubtypeOf(classLoaderKlass);
+      }
+
+      public boolean canInclude(Klass k, OopHandle handle) {
+         return true;
+      }
+
+      public HeapVisitor createVisitor() {
+         return new LoaderCollector();
+      }
+
+      public void merge(HeapVisitor visitor) {
+         loaderMap.putAll(((LoaderCollector) visitor).loaderMap);
+      }
+   }
+
    private void printClassLoaderStatistics() {
-      final PrintStream out = System.out;
       final PrintStream err = System.err;
-      final Map loaderMap = new HashMap();
-      // loader data for bootstrap class loader
-      final LoaderData bootstrapLoaderData = new LoaderData();
       if (verbose) {
          err.print("finding class loader instances ..");
       }
 
-      VM vm = VM.getVM();
-      ObjectHeap heap = vm.getObjectHeap();
-      Klass classLoaderKlass = vm.getSystemDictionary().getClassLoaderKlass();
+      ObjectHeap heap = VM.getVM().getObjectHeap();
+      LoaderCollector collector = new LoaderCollector();
       try {
-         heap.iterateObjectsOfKlass(new DefaultHeapVisitor() {
-                         public boolean doObj(Oop oop) {
-                            loaderMap.put(oop, new LoaderData());
-                                                        return false;
-                         }
-                      }, classLoaderKlass);
+         heap.iterate(collector, collector);
       } catch (Exception se) {
          se.printStackTrace();
       }
 
       if (verbose) {
          err.println("done.");
+      }
+      printClassLoaderStatistics(collector.getLoaderMap());
+   }
+
+   /** Prints the statistics of the loaders found by a LoaderCollector */
+   void printClassLoaderStatistics(final Map loaderMap) {
+      final PrintStream out = System.out;
+      final PrintStream err = System.err;
+      // loader data for bootstrap class loader
+      final LoaderData bootstrapLoaderData = new LoaderData();
+
+      if (verbose) {
          err.print("computing per loader stat ..");
       }
 
@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+
+package sun.jvm.hotspot.tools;
+
+import java.io.PrintStream;
+import java.util.*;
+
+import sun.jvm.hotspot.debugger.*;
+import sun.jvm.hotspot.oops.*;
+import sun.jvm.hotspot.runtime.VM;
+import sun.jvm.hotspot.utilities.DuplicateArrayCounter;
+
+/*
+ * Reports primitive arrays with identical contents, by default the
+ * char[] and byte[] arrays which hold the contents of Strings, in
+ * descending order of the bytes wasted by the copies. The heap is
+ * walked once to hash the arrays (see DuplicateArrayCounter), and
+ * then once per level of the owner path printed for one sample of
+ * every reported group. The options are
+ *
+ *   -all        hash the arrays of all primitive types
+ *   -top=<n>    number of groups to report (default 20)
+ *   -depth=<n>  length of the owner paths (default 2, 0 for none)
+ */
+public class DuplicateArrays extends Tool {
+
+    public DuplicateArrays(boolean allTypes, int top, int depth) {
+        this.allTypes = allTypes;
+        this.top = top;
+        this.depth = depth;
+    }
+
+    public DuplicateArrays() {
+        this(false, 20, 2);
+    }
+
+    public DuplicateArrays(JVMDebugger d) {
+        super(d);
+        top = 20;
+        depth = 2;
+    }
+
+    protected void printFlagsUsage() {
+        System.out.println("    -all\tto look at arrays of all primitive types, not only char[] and byte[]");
+        System.out.println("    -top=<n>\tto print the <n> groups wasting most space (default 20)");
+        System.out.println("    -depth=<n>\tto print owner paths of length <n> (default 2)");
+        super.printFlagsUsage();
+    }
+
+    public static void main(String[] args) {
+        boolean allTypes = false;
+        int top = 20;
+        int depth = 2;
+        int used = 0;
+        for (; used < args.length; used++) {
+            if (args[used].equals("-all")) {
+                allTypes = true;
+            } else if (args[used].startsWith("-top=")) {
+                top = Integer.parseInt(args[used].substring(5));
+            } else if (args[used].startsWith("-depth=")) {
+                depth = Integer.parseInt(args[used].substring(7));
+            } else {
+                break;
+            }
+        }
+
+        if (used != 0) {
+            String[] newArgs = new String[args.length - used];
+            for (int i = 0; i < newArgs.length; i++) {
+                newArgs[i] = args[i + used];
+            }
+            args = newArgs;
+        }
+
+        DuplicateArrays da = new DuplicateArrays(allTypes, top, depth);
+        da.execute(args);
+    }
+
+    public void run() {
+        run(System.out, System.err);
+    }
+
+    public void run(PrintStream out, PrintStream err) {
+        ObjectHeap heap = VM.getVM().getObjectHeap();
+        ArrayKlass[] klasses;
+        if (allTypes) {
+            klasses = new ArrayKlass[] {
+                heap.getCharArrayKlassObj(), heap.getByteArrayKlassObj(),
+                heap.getIntArrayKlassObj(), heap.getLongArrayKlassObj(),
+                heap.getShortArrayKlassObj(), heap.getBoolArrayKlassObj(),
+                heap.getSingleArrayKlassObj(), heap.getDoubleArrayKlassObj()
+            };
+        } else {
+            klasses = new ArrayKlass[] { heap.getCharArrayKlassObj(), heap.getByteArrayKlassObj() };
+        }
+
+        err.println("Hashing array contents. This may take a while...");
+        long startTime = System.currentTimeMillis();
+        DuplicateArrayCounter counter = new DuplicateArrayCounter(klasses);
+        CompositeHeapVisitor scan = new CompositeHeapVisitor();
+        scan.add(counter, counter);
+        scan.iterateParallel(heap);
+        List groups = counter.getDuplicates();
+        List reported = groups.subList(0, Math.min(top, groups.size()));
+        String[] paths = findOwnerPaths(heap, reported, err);
+        float secs = (float) (System.currentTimeMillis() - startTime) / 1000.0f;
+        err.println("Heap traversal took " + secs + " seconds.");
+
+        long wasted = 0;
+        for (Iterator iter = groups.iterator(); iter.hasNext(); ) {
+            wasted += ((DuplicateArrayCounter.Group) iter.next()).getWastedSize();
+        }
+        out.println("Arrays: " + counter.getArrayCount() + ", " + counter.getArrayBytes() + " bytes");
+        out.println("Duplicates: " + groups.size() + " groups, " + wasted + " bytes wasted");
+        if (!counter.isExact()) {
+            out.println("Counts are lower bounds: groups seen up to " + counter.getEvictedCount() +
+                        " times were evicted to bound memory");
+        }
+        out.println();
+        out.println("num\twasted\tcount\tsize\ttype\tsample\towner path");
+        for (int i = 0; i < reported.size(); i++) {
+            DuplicateArrayCounter.Group g = (DuplicateArrayCounter.Group) reported.get(i);
+            out.print((i + 1) + ":\t" + g.getWastedSize() + "\t" + g.getCount() + "\t" + g.getSize() + "\t");
+            out.print(((TypeArrayKlass) g.getKlass()).getElementTypeName() + "[" + g.getLength() + "]\t");
+            out.print("0x" + Long.toHexString(g.getSample()));
+            if (paths[i] != null) {
+                out.print("\t" + paths[i]);
+            }
+            out.println();
+        }
+    }
+
+    // Follows the first referrer of the sample of every group up to
+    // depth levels, with one heap walk per level
+    private String[] findOwnerPaths(ObjectHeap heap, List groups, PrintStream err) {
+        String[] paths = new String[groups.size()];
+        long[] current = new long[groups.size()];
+        for (int i = 0; i < current.length; i++) {
+            current[i] = ((DuplicateArrayCounter.Group) groups.get(i)).getSample();
+        }
+        for (int level = 0; level < depth; level++) {
+            ReferrerFinder finder = new ReferrerFinder(current);
+            if (finder.targets.length == 0) {
+                break;
+            }
+            err.println("Finding owners, level " + (level + 1) + "...");
+            CompositeHeapVisitor scan = new CompositeHeapVisitor();
+            scan.add(finder, finder);
+            scan.iterateParallel(heap);
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == 0) {
+                    continue;
+                }
+                int t = Arrays.binarySearch(finder.targets, current[i]);
+                String label = finder.labels[t];
+                if (label == null) {
+                    label = "<no referrer>";
+                    current[i] = 0;
+                } else {
+                    current[i] = finder.referrers[t];
+                }
+                paths[i] = (paths[i] == null) ? label : label + " -> " + paths[i];
+            }
+        }
+        return paths;
+    }
+
+    // Finds one object referring to each of a set of addresses, and
+    // the field through which it does
+    private static class ReferrerFinder extends DefaultHeapVisitor
+        implements ParallelHeapVisitor, ObjectHeap.ObjectHeaderFilter {
+        // Sorted addresses to find referrers of
+        long[] targets;
+        long[] referrers;
+        String[] labels;
+        private Debugger dbg;
+        // The oop fields of each klass, shared by the workers, and
+        // this worker's copy which needs no locking
+        private Map fieldsByKlass;
+        private Map localFieldsByKlass = new HashMap();
+
+        ReferrerFinder(long[] addresses) {
+            long[] sorted = addresses.clone();
+            Arrays.sort(sorted);
+            int n = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (sorted[i] != 0 && (n == 0 || sorted[n - 1] != sorted[i])) {
+                    sorted[n++] = sorted[i];
+                }
+            }
+            targets = Arrays.copyOf(sorted, n);
+            referrers = new long[n];
+            labels = new String[n];
+            dbg = VM.getVM().getDebugger();
+            fieldsByKlass = new HashMap();
+        }
+
+        private ReferrerFinder(ReferrerFinder parent) {
+            targets = parent.targets;
+            referrers = new long[targets.length];
+            labels = new String[targets.length];
+            dbg = parent.dbg;
+            fieldsByKlass = parent.fieldsByKlass;
+        }
+
+        public boolean canIncludeKlass(Klass k) {
+            if (k instanceof ObjArrayKlass || k instanceof InstanceMirrorKlass) {
+                return true;
+            }
+            return (k instanceof InstanceKlass) && sharedFieldsOf((InstanceKlass) k).length > 0;
+        }
+
+        public boolean canInclude(Klass k, OopHandle handle) {
+            return true;
+        }
+
+        public boolean doObj(Oop obj) {
+            if (obj instanceof ObjArray) {
+                ObjArray array = (ObjArray) obj;
+                long length = array.getLength();
+                for (long i = 0; i < length; i++) {
+                    check(obj, array.getOopHandleAt(i), null);
+                }
+                return false;
+            }
+            OopField[] fields;
+            if (obj.getKlass() instanceof InstanceMirrorKlass) {
+                // The static fields of the mirrored class vary
+                fields = collectFields(obj);
+            } else {
+                fields = fieldsOf((InstanceKlass) obj.getKlass());
+            }
+            for (int i = 0; i < fields.length; i++) {
+                check(obj, fields[i].getValueAsOopHandle(obj), fields[i]);
+            }
+            return false;
+        }
+
+        public HeapVisitor createVisitor() {
+            return new ReferrerFinder(this);
+        }
+
+        public void merge(HeapVisitor visitor) {
+            ReferrerFinder other = (ReferrerFinder) visitor;
+            for (int i = 0; i < targets.length; i++) {
+                if (labels[i] == null && other.labels[i] != null) {
+                    labels[i] = other.labels[i];
+                    referrers[i] = other.referrers[i];
+                }
+            }
+        }
+
+        private void check(Oop obj, OopHandle value, OopField field) {
+            if (value == null) {
+                return;
+            }
+            int t = Arrays.binarySearch(targets, dbg.getAddressValue(value));
+            if (t < 0 || labels[t] != null) {
+                return;
+            }
+            referrers[t] = dbg.getAddressValue(obj.getHandle());
+            if (field == null) {
+                labels[t] = obj.getKlass().getName().asString().replace('/', '.');
+            } else {
+                labels[t] = (field.isStatic() ? "static " : "") +
+                    field.getFieldHolder().getName().asString().replace('/', '.') + "." +
+                    field.getID().getName();
+            }
+        }
+
+        private OopField[] fieldsOf(InstanceKlass k) {
+            OopField[] fields = (OopField[]) localFieldsByKlass.get(k);
+            if (fields == null) {
+                fields = sharedFieldsOf(k);
+                localFieldsByKlass.put(k, fields);
+            }
+            return fields;
+        }
+
+        private OopField[] sharedFieldsOf(InstanceKlass k) {
+            synchronized (fieldsByKlass) {
+                OopField[] fields = (OopField[]) fieldsByKlass.get(k);
+                if (fields == null) {
+                    FieldCollector collector = new FieldCollector();
+                    k.iterateNonStaticFields(collector, null);
+                    fields = collector.getFields();
+                    fieldsByKlass.put(k, fields);
+                }
+                return fields;
+            }
+        }
+
+        private static OopField[] collectFields(Oop obj) {
+            FieldCollector collector = new FieldCollector();
+            obj.iterate(collector, false);
+            return collector.getFields();
+        }
+    }
+
+    // Collects the oop fields of an object or klass
+    private static class FieldCollector extends DefaultOopVisitor {
+        private List fields = new ArrayList();
+
+        public void doOop(OopField field, boolean isVMField) {
+            fields.add(field);
+        }
+
+        OopField[] getFields() {
+            return (OopField[]) fields.toArray(new OopField[fields.size()]);
+        }
+    }
+
+    private boolean allTypes;
+    private int top;
+    private int depth;
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+
+package sun.jvm.hotspot.tools;
+
+import java.io.PrintStream;
+import java.util.*;
+
+import sun.jvm.hotspot.debugger.JVMDebugger;
+import sun.jvm.hotspot.debugger.OopHandle;
+import sun.jvm.hotspot.oops.*;
+import sun.jvm.hotspot.runtime.VM;
+import sun.jvm.hotspot.utilities.FindObjectByType;
+import sun.jvm.hotspot.utilities.SystemDictionaryHelper;
+
+/*
+ * Prints several heap reports from a single walk of the heap, which
+ * is much faster than running jmap -histo, -clstats etc. one after
+ * another on a large heap. The reports are selected with
+ *
+ *   -summary         heap configuration and usage, and object totals
+ *   -histo           histogram of the java object heap
+ *   -clstats         class loader statistics
+ *   -finalizerinfo   objects pending finalization, and a histogram of
+ *                    all objects of classes with a finalizer
+ *   -type=<class>    addresses of the instances of a class (repeatable)
+ *
+ * and default to -summary -histo. The liveness analysis of -clstats
+ * follows references from the roots, which needs its own traversal.
+ */
+public class HeapAnalysis extends Tool {
+
+    public HeapAnalysis(List reportFlags) {
+        this.reportFlags = reportFlags;
+    }
+
+    public HeapAnalysis() {
+        this(new ArrayList());
+    }
+
+    public HeapAnalysis(JVMDebugger d) {
+        super(d);
+        reportFlags = new ArrayList();
+    }
+
+    protected void printFlagsUsage() {
+        System.out.println("    -summary\tto print heap summary and object totals");
+        System.out.println("    -histo\tto print histogram of java object heap");
+        System.out.println("    -clstats\tto print class loader statistics");
+        System.out.println("    -finalizerinfo\tto print information on finalizable objects");
+        System.out.println("    -type=<class>\tto print the instances of a class");
+        super.printFlagsUsage();
+    }
+
+    public static void main(String[] args) {
+        List reportFlags = new ArrayList();
+        int used = 0;
+        while (used < args.length && isReportFlag(args[used])) {
+            reportFlags.add(args[used]);
+            used++;
+        }
+        if (used != 0) {
+            String[] newArgs = new String[args.length - used];
+            for (int i = 0; i < newArgs.length; i++) {
+                newArgs[i] = args[i + used];
+            }
+            args = newArgs;
+        }
+
+        HeapAnalysis analysis = new HeapAnalysis(reportFlags);
+        analysis.execute(args);
+    }
+
+    private static boolean isReportFlag(String arg) {
+        return arg.equals("-summary") || arg.equals("-histo") || arg.equals("-clstats") ||
+               arg.equals("-finalizerinfo") || arg.startsWith("-type=");
+    }
+
+    // A report computed from the heap walk
+    private abstract static class Report {
+        // Registers the visitors of the report
+        abstract void register(CompositeHeapVisitor scan);
+        // Prints the report after the walk
+        abstract void print(PrintStream out);
+    }
+
+    public void run() {
+        List flags = reportFlags.isEmpty() ? Arrays.asList(new String[] { "-summary", "-histo" })
+                                           : reportFlags;
+        List reports = new ArrayList();
+        for (Iterator iter = flags.iterator(); iter.hasNext(); ) {
+            Report report = createReport((String) iter.next());
+            if (report != null) {
+                reports.add(report);
+            }
+        }
+
+        CompositeHeapVisitor scan = new CompositeHeapVisitor();
+        for (Iterator iter = reports.iterator(); iter.hasNext(); ) {
+            ((Report) iter.next()).register(scan);
+        }
+        System.err.println("Iterating over heap. This may take a while...");
+        long startTime = System.currentTimeMillis();
+        scan.iterateParallel(VM.getVM().getObjectHeap());
+        long endTime = System.currentTimeMillis();
+        float secs = (float) (endTime - startTime) / 1000.0f;
+        System.err.println("Heap traversal took " + secs + " seconds.");
+
+        for (Iterator iter = reports.iterator(); iter.hasNext(); ) {
+            ((Report) iter.next()).print(System.out);
+            System.out.println();
+        }
+    }
+
+    private Report createReport(String flag) {
+        if (flag.equals("-summary")) {
+            return new SummaryReport();
+        } else if (flag.equals("-histo")) {
+            return new HistogramReport();
+        } else if (flag.equals("-clstats")) {
+            return new ClassLoaderReport();
+        } else if (flag.equals("-finalizerinfo")) {
+            return new FinalizerReport();
+        } else {
+            String className = flag.substring(flag.indexOf('=') + 1);
+            InstanceKlass k = SystemDictionaryHelper.findInstanceKlass(className);
+            if (k == null) {
+                System.err.println("class " + className + " not found");
+                return null;
+            }
+            return new TypeReport(k);
+        }
+    }
+
+    private void runTool(Tool tool) {
+        tool.setAgent(getAgent());
+        tool.setDebugeeType(getDebugeeType());
+        tool.run();
+    }
+
+    // Counts objects and bytes
+    private static class Counter
+        implements ObjectHeaderVisitor, ParallelObjectHeaderVisitor {
+        long objects;
+        long bytes;
+
+        public void prologue(long usedSize) {}
+        public void epilogue()              {}
+
+        public boolean doObjectHeader(long klass, long size) {
+            objects++;
+            bytes += size;
+            return false;
+        }
+
+        public ObjectHeaderVisitor createHeaderVisitor() {
+            return new Counter();
+        }
+
+        public void merge(ObjectHeaderVisitor visitor) {
+            objects += ((Counter) visitor).objects;
+            bytes += ((Counter) visitor).bytes;
+        }
+    }
+
+    private class SummaryReport extends Report {
+        private Counter counter = new Counter();
+
+        void register(CompositeHeapVisitor scan) {
+            scan.add(counter);
+        }
+
+        void print(PrintStream out) {
+            runTool(new HeapSummary());
+            out.println();
+            out.println("Objects: " + counter.objects);
+            out.println("Bytes:   " + counter.bytes);
+        }
+    }
+
+    private static class HistogramReport extends Report {
+        private sun.jvm.hotspot.oops.ObjectHistogram histogram =
+            new sun.jvm.hotspot.oops.ObjectHistogram();
+
+        void register(CompositeHeapVisitor scan) {
+            scan.add((ObjectHeaderVisitor) histogram);
+        }
+
+        void print(PrintStream out) {
+            histogram.printOn(out);
+        }
+    }
+
+    private class ClassLoaderReport extends Report {
+        private ClassLoaderStats.LoaderCollector collector = new ClassLoaderStats.LoaderCollector();
+
+        void register(CompositeHeapVisitor scan) {
+            scan.add(collector, collector);
+        }
+
+        void print(PrintStream out) {
+            ClassLoaderStats stats = new ClassLoaderStats();
+            stats.setAgent(getAgent());
+            stats.setDebugeeType(getDebugeeType());
+            stats.printClassLoaderStatistics(collector.getLoaderMap());
+        }
+    }
+
+    private class FinalizerReport extends Report {
+        // Only visits objects of classes with a finalizer
+        private sun.jvm.hotspot.oops.ObjectHistogram histogram =
+            new sun.jvm.hotspot.oops.ObjectHistogram();
+
+        void register(CompositeHeapVisitor scan) {
+            scan.add((HeapVisitor) histogram, new ObjectHeap.ObjectHeaderFilter() {
+                    public boolean canIncludeKlass(Klass k) {
+                        return k.hasFinalizer();
+                    }
+                    public boolean canInclude(Klass k, OopHandle handle) {
+                        return true;
+                    }
+                });
+        }
+
+        void print(PrintStream out) {
+            runTool(new FinalizerInfo());
+            out.println();
+            out.println("Objects of classes with a finalizer:");
+            histogram.printOn(out);
+        }
+    }
+
+    private static class TypeReport extends Report {
+        private final Klass type;
+        private FindObjectByType finder;
+
+        TypeReport(Klass type) {
+            this.type = type;
+            finder = new FindObjectByType(type);
+        }
+
+        void register(CompositeHeapVisitor scan) {
+            scan.add(finder, new ObjectHeap.ObjectHeaderFilter() {
+                    public boolean canIncludeKlass(Klass k) {
+                        return k.equals(type);
+                    }
+                    public boolean canInclude(Klass k, OopHandle handle) {
+                        return true;
+                    }
+                });
+        }
+
+        void print(PrintStream out) {
+            List results = finder.getResults();
+            out.println(results.size() + " instances of " + type.getName().asString().replace('/', '.') + ":");
+            for (Iterator iter = results.iterator(); iter.hasNext(); ) {
+                out.println(((Oop) iter.next()).getHandle());
+            }
+        }
+    }
+
+    private List reportFlags;
+}
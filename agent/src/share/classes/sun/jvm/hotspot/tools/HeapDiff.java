@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+
+package sun.jvm.hotspot.tools;
+
+import java.io.*;
+import java.util.*;
+
+import sun.jvm.hotspot.debugger.JVMDebugger;
+import sun.jvm.hotspot.runtime.VM;
+import sun.jvm.hotspot.utilities.HeapSnapshot;
+
+/*
+ * Compares two heaps class by class, to find what grows between two
+ * points in time:
+ *
+ *   HeapDiff [-top=<n>] [-types=<n>] <before> <after>
+ *
+ * Each input is an HPROF file (for example one written by jmap
+ * -heap:format=b), a snapshot file written by this tool, a process id
+ * or <executable>,<core>. The tool prints the change in instance
+ * count and size per class and per class loader type, and the change
+ * in the retained size estimates of the largest types (see
+ * HeapSnapshot). Only one VM can be attached at a time, so snapshots
+ * of processes and cores are taken by child VMs running
+ *
+ *   HeapDiff -snapshot=<file> [-types=<n>] <pid> | <executable> <core> | <server>
+ *
+ * which can also be used on its own to keep snapshots for later.
+ */
+public class HeapDiff extends Tool {
+
+    public HeapDiff(String snapshotFile, int numTypes) {
+        this.snapshotFile = snapshotFile;
+        this.numTypes = numTypes;
+    }
+
+    public HeapDiff() {
+        this("heap.snapshot", 20);
+    }
+
+    public HeapDiff(JVMDebugger d) {
+        super(d);
+        snapshotFile = "heap.snapshot";
+        numTypes = 20;
+    }
+
+    protected void printFlagsUsage() {
+        System.out.println("    -snapshot=<file>\tto write a heap snapshot for a later diff");
+        System.out.println("    -types=<n>\tto estimate retained sizes of the <n> largest types (default 20)");
+        super.printFlagsUsage();
+    }
+
+    private static void diffUsage() {
+        System.out.println("Usage: HeapDiff [-top=<n>] [-types=<n>] <before> <after>");
+        System.out.println("where <before> and <after> are HPROF or heap snapshot files, process ids");
+        System.out.println("or <executable>,<core>, and the options are");
+        System.out.println("    -top=<n>\tto print the <n> classes which grew most (default 50)");
+        System.out.println("    -types=<n>\tto estimate retained sizes of the <n> largest types (default 20)");
+        System.out.println("To take a snapshot:");
+        new HeapDiff().usage();
+    }
+
+    public static void main(String[] args) {
+        String snapshotFile = null;
+        int top = 50;
+        int numTypes = 20;
+        int used = 0;
+        for (; used < args.length; used++) {
+            if (args[used].startsWith("-snapshot=")) {
+                snapshotFile = args[used].substring(10);
+            } else if (args[used].startsWith("-top=")) {
+                top = Integer.parseInt(args[used].substring(5));
+            } else if (args[used].startsWith("-types=")) {
+                numTypes = Integer.parseInt(args[used].substring(7));
+            } else {
+                break;
+            }
+        }
+
+        String[] newArgs = new String[args.length - used];
+        for (int i = 0; i < newArgs.length; i++) {
+            newArgs[i] = args[i + used];
+        }
+        args = newArgs;
+
+        if (snapshotFile != null) {
+            HeapDiff hd = new HeapDiff(snapshotFile, numTypes);
+            hd.execute(args);
+            return;
+        }
+
+        if (args.length != 2 || args[0].startsWith("-")) {
+            diffUsage();
+            System.exit(1);
+        }
+        try {
+            HeapSnapshot before = snapshotOf(args[0], numTypes);
+            HeapSnapshot after = snapshotOf(args[1], numTypes);
+            printDiff(before, after, top, System.out);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Writes the snapshot of the attached VM
+    public void run() {
+        System.err.println("Taking heap snapshot. This may take a while...");
+        long startTime = System.currentTimeMillis();
+        HeapSnapshot snapshot = HeapSnapshot.fromHeap(VM.getVM().getObjectHeap(), numTypes);
+        float secs = (float) (System.currentTimeMillis() - startTime) / 1000.0f;
+        System.err.println("Heap traversal took " + secs + " seconds.");
+        try {
+            OutputStream os = new FileOutputStream(snapshotFile);
+            try {
+                snapshot.write(os);
+            } finally {
+                os.close();
+            }
+        } catch (IOException e) {
+            // Makes the snapshot process fail
+            throw new RuntimeException(e);
+        }
+        System.out.println("heap snapshot written to " + snapshotFile);
+    }
+
+    private static HeapSnapshot snapshotOf(String input, int numTypes) throws IOException {
+        File file = new File(input);
+        if (file.isFile()) {
+            System.err.println("Reading " + input + "...");
+            return HeapSnapshot.read(file, numTypes);
+        }
+
+        File tmp = File.createTempFile("heapdiff", ".snapshot");
+        try {
+            List command = new ArrayList();
+            command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            for (Iterator iter = System.getProperties().entrySet().iterator(); iter.hasNext(); ) {
+                Map.Entry e = (Map.Entry) iter.next();
+                String key = (String) e.getKey();
+                if (key.startsWith("sun.jvm.hotspot.") || key.equals("java.library.path")) {
+                    command.add("-D" + key + "=" + e.getValue());
+                }
+            }
+            command.add(HeapDiff.class.getName());
+            command.add("-snapshot=" + tmp.getPath());
+            command.add("-types=" + numTypes);
+            command.addAll(Arrays.asList(input.split(",")));
+
+            System.err.println("Taking heap snapshot of " + input + "...");
+            ProcessBuilder pb = new ProcessBuilder(command);
+            pb.redirectErrorStream(true);
+            Process p = pb.start();
+            // Keeps the output of the child away from the diff
+            InputStream is = p.getInputStream();
+            byte[] buf = new byte[4096];
+            for (int n = is.read(buf); n >= 0; n = is.read(buf)) {
+                System.err.write(buf, 0, n);
+            }
+            int status;
+            try {
+                status = p.waitFor();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            if (status != 0) {
+                throw new IOException("taking the heap snapshot of " + input + " failed");
+            }
+            return HeapSnapshot.read(tmp, numTypes);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    // The counts of a class or class loader type in both heaps
+    private static class Delta {
+        String name;
+        long   countBefore;
+        long   sizeBefore;
+        long   retainedBefore = -1;
+        long   countAfter;
+        long   sizeAfter;
+        long   retainedAfter = -1;
+
+        Delta(String name) {
+            this.name = name;
+        }
+
+        long sizeDelta() {
+            return sizeAfter - sizeBefore;
+        }
+    }
+
+    private static void printDiff(HeapSnapshot before, HeapSnapshot after, int top, PrintStream out) {
+        Map classes = new HashMap();
+        Map loaders = new HashMap();
+        add(before, true, classes, loaders);
+        add(after, false, classes, loaders);
+
+        out.println("Before: " + before.getDescription());
+        out.println("After:  " + after.getDescription());
+        long sizeBefore = 0;
+        long sizeAfter = 0;
+        for (Iterator iter = classes.values().iterator(); iter.hasNext(); ) {
+            Delta d = (Delta) iter.next();
+            sizeBefore += d.sizeBefore;
+            sizeAfter += d.sizeAfter;
+        }
+        out.println("Total:  " + sizeBefore + " -> " + sizeAfter + " bytes (" +
+                    signed(sizeAfter - sizeBefore) + ")");
+        out.println();
+
+        out.println("Classes by growth:");
+        printDeltas(sortByGrowth(classes.values()), top, out);
+        out.println();
+        out.println("Class loader types by growth:");
+        printDeltas(sortByGrowth(loaders.values()), top, out);
+        out.println();
+
+        List retained = new ArrayList();
+        for (Iterator iter = classes.values().iterator(); iter.hasNext(); ) {
+            Delta d = (Delta) iter.next();
+            if (d.retainedBefore >= 0 || d.retainedAfter >= 0) {
+                retained.add(d);
+            }
+        }
+        Collections.sort(retained, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                long r1 = ((Delta) o1).retainedAfter;
+                long r2 = ((Delta) o2).retainedAfter;
+                return (r1 > r2) ? -1 : ((r1 < r2) ? 1 : 0);
+            }
+        });
+        out.println("Retained size estimates of the largest types:");
+        out.println("before\tafter\tdelta\tclass");
+        for (Iterator iter = retained.iterator(); iter.hasNext(); ) {
+            Delta d = (Delta) iter.next();
+            out.print(known(d.retainedBefore) + "\t" + known(d.retainedAfter) + "\t");
+            if (d.retainedBefore >= 0 && d.retainedAfter >= 0) {
+                out.print(signed(d.retainedAfter - d.retainedBefore));
+            } else {
+                out.print("n/a");
+            }
+            out.println("\t" + d.name);
+        }
+    }
+
+    private static void add(HeapSnapshot snapshot, boolean isBefore, Map classes, Map loaders) {
+        for (Iterator iter = snapshot.getEntries().iterator(); iter.hasNext(); ) {
+            HeapSnapshot.Entry e = (HeapSnapshot.Entry) iter.next();
+            Delta c = delta(classes, e.getClassName() + " (" + e.getLoader() + ")");
+            Delta l = delta(loaders, e.getLoader());
+            if (isBefore) {
+                c.countBefore += e.getCount();
+                c.sizeBefore += e.getSize();
+                c.retainedBefore = e.getRetained();
+                l.countBefore += e.getCount();
+                l.sizeBefore += e.getSize();
+            } else {
+                c.countAfter += e.getCount();
+                c.sizeAfter += e.getSize();
+                c.retainedAfter = e.getRetained();
+                l.countAfter += e.getCount();
+                l.sizeAfter += e.getSize();
+            }
+        }
+    }
+
+    private static Delta delta(Map map, String name) {
+        Delta d = (Delta) map.get(name);
+        if (d == null) {
+            d = new Delta(name);
+            map.put(name, d);
+        }
+        return d;
+    }
+
+    private static List sortByGrowth(Collection deltas) {
+        List list = new ArrayList(deltas);
+        Collections.sort(list, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                long d1 = ((Delta) o1).sizeDelta();
+                long d2 = ((Delta) o2).sizeDelta();
+                return (d1 > d2) ? -1 : ((d1 < d2) ? 1 : 0);
+            }
+        });
+        return list;
+    }
+
+    private static void printDeltas(List deltas, int top, PrintStream out) {
+        out.println("bytes\tcount\tbytes after\tcount after\tname");
+        for (int i = 0; i < Math.min(top, deltas.size()); i++) {
+            Delta d = (Delta) deltas.get(i);
+            out.println(signed(d.sizeAfter - d.sizeBefore) + "\t" +
+                        signed(d.countAfter - d.countBefore) + "\t" +
+                        d.sizeAfter + "\t" + d.countAfter + "\t" + d.name);
+        }
+    }
+
+    private static String signed(long value) {
+        return (value > 0) ? "+" + value : Long.toString(value);
+    }
+
+    private static String known(long value) {
+        return (value < 0) ? "n/a" : Long.toString(value);
+    }
+
+    private String snapshotFile;
+    private int numTypes;
+}
@@ -51,7 +51,7 @@ public class HeapDumper extends Tool {
     protected void printFlagsUsage() {
         System.out.println("    <no option>\tto dump heap to " +
             DEFAULT_DUMP_FILE);
-        System.out.println("    -f <file>\tto dump heap to <file>");
+        System.out.println("    -f <file>\tto dump heap to <file>, gzip compressed if <file> ends with .gz");
         super.printFlagsUsage();
     }
 
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+package sun.jvm.hotspot.tools;
+
+import sun.jvm.hotspot.debugger.DebuggerBase;
+import sun.jvm.hotspot.debugger.JVMDebugger;
+import sun.jvm.hotspot.oops.*;
+import sun.jvm.hotspot.runtime.VM;
+
+/*
+ * Times a full iteration over the heap of the target VM. This is the
+ * access pattern of jmap -histo and jmap -dump and is meant to compare
+ * debugger backends, for example the read modes of the Linux backend
+ * selected with the LIBSAPROC_READ_MODE environment variable (readv,
+ * procmem or ptrace).
+ */
+public class HeapIterationTime extends Tool {
+
+    public HeapIterationTime() {
+        super();
+    }
+
+    public HeapIterationTime(JVMDebugger d) {
+        super(d);
+    }
+
+    public static void main(String[] args) {
+        HeapIterationTime hit = new HeapIterationTime();
+        hit.execute(args);
+    }
+
+    // Counts objects and bytes
+    private static class Counter extends DefaultHeapVisitor
+        implements ParallelHeapVisitor, ObjectHeaderVisitor, ParallelObjectHeaderVisitor {
+        long objects;
+        long bytes;
+
+        public boolean doObj(Oop obj) {
+            objects++;
+            bytes += obj.getObjectSize();
+            return false;
+        }
+
+        public boolean doObjectHeader(long klass, long size) {
+            objects++;
+            bytes += size;
+            return false;
+        }
+
+        public HeapVisitor createVisitor() {
+            return new Counter();
+        }
+
+        public void merge(HeapVisitor visitor) {
+            objects += ((Counter) visitor).objects;
+            bytes += ((Counter) visitor).bytes;
+        }
+
+        public ObjectHeaderVisitor createHeaderVisitor() {
+            return new Counter();
+        }
+
+        public void merge(ObjectHeaderVisitor visitor) {
+            objects += ((Counter) visitor).objects;
+            bytes += ((Counter) visitor).bytes;
+        }
+    }
+
+    public void run() {
+        ObjectHeap heap = VM.getVM().getObjectHeap();
+        Counter counter = new Counter();
+        long start = System.currentTimeMillis();
+        heap.iterate(counter);
+        long time = System.currentTimeMillis() - start;
+        System.out.println("Objects: " + counter.objects);
+        System.out.println("Bytes:   " + counter.bytes);
+        printTime("Sequential", time, counter.bytes);
+
+        // Pages are cached by now, so this mostly measures the
+        // scalability of the iteration itself
+        counter = new Counter();
+        start = System.currentTimeMillis();
+        heap.iterateParallel(counter);
+        time = System.currentTimeMillis() - start;
+        printTime("Parallel", time, counter.bytes);
+
+        // Reads only the object headers, as jmap -histo does
+        counter = new Counter();
+        start = System.currentTimeMillis();
+        heap.iterateObjectHeadersParallel(counter);
+        time = System.currentTimeMillis() - start;
+        printTime("Parallel headers", time, counter.bytes);
+
+        if (VM.getVM().getDebugger() instanceof DebuggerBase) {
+            String stats = ((DebuggerBase) VM.getVM().getDebugger()).getPageCacheStatistics();
+            if (stats != null) {
+                System.out.println(stats);
+            }
+        }
+    }
+
+    private static void printTime(String kind, long time, long bytes) {
+        System.out.print(kind + ": " + time + " ms");
+        if (time > 0) {
+            System.out.print(", " + (bytes / 1024 / 1024 * 1000 / time) + " MB/s");
+        }
+        System.out.println();
+    }
+}
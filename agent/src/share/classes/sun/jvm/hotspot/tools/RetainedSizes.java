@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+
+package sun.jvm.hotspot.tools;
+
+import java.io.PrintStream;
+import java.util.*;
+
+import sun.jvm.hotspot.debugger.*;
+import sun.jvm.hotspot.oops.*;
+import sun.jvm.hotspot.utilities.RetainedSizeAnalysis;
+
+/*
+ * Reports the memory retained by the objects of the heap, computed
+ * from the dominator tree of the object graph (see
+ * RetainedSizeAnalysis): by kind of root, by class, and for the
+ * objects at the top of the dominator tree. The options are
+ *
+ *   -top=<n>    number of classes and objects to report (default 20)
+ */
+public class RetainedSizes extends Tool {
+
+    public RetainedSizes(int top) {
+        this.top = top;
+    }
+
+    public RetainedSizes() {
+        this(20);
+    }
+
+    public RetainedSizes(JVMDebugger d) {
+        super(d);
+        top = 20;
+    }
+
+    protected void printFlagsUsage() {
+        System.out.println("    -top=<n>\tto print the <n> classes and objects retaining most memory (default 20)");
+        super.printFlagsUsage();
+    }
+
+    public static void main(String[] args) {
+        int top = 20;
+        int used = 0;
+        for (; used < args.length; used++) {
+            if (args[used].startsWith("-top=")) {
+                top = Integer.parseInt(args[used].substring(5));
+            } else {
+                break;
+            }
+        }
+
+        if (used != 0) {
+            String[] newArgs = new String[args.length - used];
+            for (int i = 0; i < newArgs.length; i++) {
+                newArgs[i] = args[i + used];
+            }
+            args = newArgs;
+        }
+
+        RetainedSizes rs = new RetainedSizes(top);
+        rs.execute(args);
+    }
+
+    public void run() {
+        run(System.out, System.err);
+    }
+
+    public void run(PrintStream out, PrintStream err) {
+        err.println("Computing the dominator tree. This may take a while...");
+        long startTime = System.currentTimeMillis();
+        RetainedSizeAnalysis analysis = new RetainedSizeAnalysis();
+        analysis.run();
+        float secs = (float) (System.currentTimeMillis() - startTime) / 1000.0f;
+        err.println("Heap traversal took " + secs + " seconds.");
+
+        long total = analysis.getTotalSize();
+        out.println("Reachable objects: " + analysis.getObjectCount() + ", " + total + " bytes");
+        out.println();
+        out.println("roots\tretained\tpercent\troot kind");
+        long exclusive = 0;
+        for (int kind = 0; kind < RetainedSizeAnalysis.ROOT_KINDS; kind++) {
+            long retained = analysis.getRootKindRetainedSize(kind);
+            exclusive += retained;
+            out.println(analysis.getRootCount(kind) + "\t" + retained + "\t" + percent(retained, total) +
+                        "\t" + RetainedSizeAnalysis.getRootKindName(kind));
+        }
+        out.println("\t" + (total - exclusive) + "\t" + percent(total - exclusive, total) +
+                    "\t<roots of several kinds>");
+
+        out.println();
+        out.println("num\t#instances\tshallow\tretained\tpercent\tclass");
+        List classes = analysis.getClassSummaries();
+        for (int i = 0; i < Math.min(top, classes.size()); i++) {
+            RetainedSizeAnalysis.ClassSummary cs = (RetainedSizeAnalysis.ClassSummary) classes.get(i);
+            out.println((i + 1) + ":\t" + cs.getCount() + "\t" + cs.getShallowSize() + "\t" +
+                        cs.getRetainedSize() + "\t" + percent(cs.getRetainedSize(), total) + "\t" +
+                        new ObjectHistogramElement(cs.getKlass()).getDescription());
+        }
+
+        out.println();
+        out.println("num\tretained\tpercent\taddress\tclass\tretained by");
+        List objects = analysis.getLargestObjects(top);
+        for (int i = 0; i < objects.size(); i++) {
+            RetainedSizeAnalysis.ObjectSummary os = (RetainedSizeAnalysis.ObjectSummary) objects.get(i);
+            String klass = (os.getKlass() == null) ? "<unknown>" :
+                new ObjectHistogramElement(os.getKlass()).getDescription();
+            String retainedBy = (os.getRootKind() < 0) ? "<roots of several kinds>" :
+                RetainedSizeAnalysis.getRootKindName(os.getRootKind());
+            out.println((i + 1) + ":\t" + os.getRetainedSize() + "\t" + percent(os.getRetainedSize(), total) +
+                        "\t0x" + Long.toHexString(os.getAddress()) + "\t" + klass + "\t" + retainedBy);
+        }
+    }
+
+    private static String percent(long part, long total) {
+        return (total == 0) ? "-" : String.format("%.2f%%", 100.0 * part / total);
+    }
+
+    private int top;
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+
+package sun.jvm.hotspot.tools;
+
+import java.io.*;
+import java.util.*;
+
+import sun.jvm.hotspot.code.CodeCache;
+import sun.jvm.hotspot.debugger.*;
+import sun.jvm.hotspot.oops.Method;
+import sun.jvm.hotspot.runtime.*;
+
+/*
+ * Samples the Java stacks of all threads of a live VM repeatedly and
+ * prints how often each stack was seen, in the folded format read by
+ * flame graph tools: one line per distinct stack, with the frames from
+ * the root to the leaf separated by semicolons, followed by the count.
+ *
+ * The agent attaches once and keeps its type database, symbols and
+ * code cache index across samples. For each sample the target is
+ * stopped only to find its threads, read their registers and copy
+ * their JavaThread structures and the used parts of their stacks.
+ * The stacks are decoded from these copies after the target has been
+ * resumed. Code and metadata are still read from the running target,
+ * so a frame of a method which is being unloaded or recompiled just
+ * then may be misattributed. The time the target was stopped for
+ * each sample is reported at the end.
+ */
+public class StackSampler extends Tool {
+
+    public StackSampler(int numSamples, long interval, boolean threadNames,
+                        boolean runningOnly, String outFile) {
+        this.numSamples = numSamples;
+        this.interval = interval;
+        this.threadNames = threadNames;
+        this.runningOnly = runningOnly;
+        this.outFile = outFile;
+    }
+
+    public StackSampler() {
+        this(100, 10, false, false, null);
+    }
+
+    public StackSampler(JVMDebugger d) {
+        super(d);
+        numSamples = 100;
+        interval = 10;
+    }
+
+    protected void printFlagsUsage() {
+        System.out.println("    -samples=<n>\tto take <n> samples (default 100)");
+        System.out.println("    -interval=<ms>\tto sample every <ms> milliseconds (default 10)");
+        System.out.println("    -threads\tto start each stack with the name of its thread");
+        System.out.println("    -running\tto skip threads blocked in the VM");
+        System.out.println("    -out=<file>\tto write the folded stacks to <file>");
+        super.printFlagsUsage();
+    }
+
+    public void run() {
+        if (getDebugeeType() != DEBUGEE_PID ||
+            !(VM.getVM().getDebugger() instanceof ResumableDebugger)) {
+            System.err.println("Stack sampling needs a live process on a platform which can resume it");
+            return;
+        }
+        ResumableDebugger dbg = (ResumableDebugger) VM.getVM().getDebugger();
+        long javaThreadSize = VM.getVM().getTypeDataBase().lookupType("JavaThread").getSize();
+        CodeCache codeCache = VM.getVM().getCodeCache();
+
+        Map counts = new HashMap();
+        long[] pauses = new long[numSamples];
+        long frozenBytes = 0;
+        long decodeTime = 0;
+        long lastIndexRefresh = System.currentTimeMillis();
+        long start = System.currentTimeMillis();
+        int taken = 0;
+        try {
+            for (; taken < numSamples; taken++) {
+                long next = start + taken * interval;
+                long now = System.currentTimeMillis();
+                if (next > now) {
+                    java.lang.Thread.sleep(next - now);
+                }
+
+                long pauseStart = System.nanoTime();
+                if (!dbg.isSuspended()) {
+                    dbg.suspend();
+                }
+                List threads = new ArrayList();
+                frozenBytes += freezeThreads(dbg, javaThreadSize, threads);
+                dbg.resume();
+                pauses[taken] = System.nanoTime() - pauseStart;
+
+                long decodeStart = System.nanoTime();
+                if (System.currentTimeMillis() - lastIndexRefresh >= INDEX_REFRESH_INTERVAL) {
+                    codeCache.invalidateBlobIndex();
+                    VM.getVM().flushWrapperCaches();
+                    lastIndexRefresh = System.currentTimeMillis();
+                }
+                for (Iterator iter = threads.iterator(); iter.hasNext(); ) {
+                    String stack = foldedStack((JavaThread) iter.next());
+                    if (stack != null) {
+                        long[] count = (long[]) counts.get(stack);
+                        if (count == null) {
+                            count = new long[1];
+                            counts.put(stack, count);
+                        }
+                        count[0]++;
+                    }
+                }
+                decodeTime += System.nanoTime() - decodeStart;
+            }
+        } catch (InterruptedException e) {
+            // Report what has been sampled so far
+        } catch (DebuggerException e) {
+            System.err.println("Sampling stopped: " + e.getMessage());
+        }
+
+        try {
+            PrintStream out = (outFile != null) ? new PrintStream(new FileOutputStream(outFile)) : System.out;
+            printFolded(counts, out);
+            if (out != System.out) {
+                out.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write " + outFile + ": " + e.getMessage());
+        }
+        printPauses(pauses, taken, frozenBytes, decodeTime, System.err);
+    }
+
+    // Finds the threads of the suspended target which are to be
+    // sampled and freezes the memory needed to decode their stacks.
+    // Returns the number of bytes frozen.
+    private long freezeThreads(ResumableDebugger dbg, long javaThreadSize, List threads) {
+        VM vm = VM.getVM();
+        List addresses = new ArrayList();
+        List sizes = new ArrayList();
+        long total = 0;
+        for (JavaThread cur = vm.getThreads().first(); cur != null; cur = cur.next()) {
+            if (!cur.isJavaThread() || cur.isHiddenFromExternalView()) {
+                continue;
+            }
+            try {
+                Address sp = cur.getLastSPDbg();
+                Address stackBase = cur.getStackBase();
+                if (sp == null || stackBase == null || !sp.lessThan(stackBase)) {
+                    continue;
+                }
+                long stackSize = Math.min(stackBase.minus(sp), MAX_STACK_COPY);
+                addresses.add(new Long(vm.getAddressValue(cur.getAddress())));
+                sizes.add(new Long(javaThreadSize));
+                addresses.add(new Long(vm.getAddressValue(sp)));
+                sizes.add(new Long(stackSize));
+                total += javaThreadSize + stackSize;
+                threads.add(cur);
+            } catch (DebuggerException e) {
+                // The thread has exited or is just starting
+            } catch (AddressException e) {
+                // Likewise
+            }
+        }
+
+        long[] addrs = new long[addresses.size()];
+        long[] lens = new long[sizes.size()];
+        for (int i = 0; i < addrs.length; i++) {
+            addrs[i] = ((Long) addresses.get(i)).longValue();
+            lens[i] = ((Long) sizes.get(i)).longValue();
+        }
+        dbg.freezeMemory(addrs, lens);
+        return total;
+    }
+
+    // Returns the stack of thread from the root to the leaf with its
+    // frames separated by semicolons, or null if it is not sampled
+    private String foldedStack(JavaThread thread) {
+        List frames = new ArrayList();
+        try {
+            if (runningOnly) {
+                JavaThreadState state = thread.getThreadState();
+                if (state == JavaThreadState.BLOCKED || state == JavaThreadState.BLOCKED_TRANS) {
+                    return null;
+                }
+            }
+            for (JavaVFrame vf = thread.getLastJavaVFrameDbg(); vf != null; vf = vf.javaSender()) {
+                frames.add(methodName(vf.getMethod()));
+            }
+        } catch (RuntimeException e) {
+            // Code or metadata changed while the target was running
+            frames.add("[unknown]");
+        }
+
+        StringBuffer buf = new StringBuffer();
+        if (threadNames) {
+            String name = null;
+            try {
+                name = thread.getThreadName();
+            } catch (RuntimeException e) {
+            }
+            buf.append(name != null ? name.replace(';', ':') : "[unknown thread]");
+        } else if (frames.isEmpty()) {
+            return null;
+        }
+        for (int i = frames.size() - 1; i >= 0; i--) {
+            if (buf.length() > 0) {
+                buf.append(';');
+            }
+            buf.append((String) frames.get(i));
+        }
+        return buf.toString();
+    }
+
+    private String methodName(Method method) {
+        Address addr = method.getAddress();
+        String name = (String) methodNames.get(addr);
+        if (name == null) {
+            name = (method.getMethodHolder().getName().asString() + "." +
+                    method.getName().asString()).replace('/', '.');
+            methodNames.put(addr, name);
+        }
+        return name;
+    }
+
+    private static void printFolded(Map counts, PrintStream out) {
+        List stacks = new ArrayList(counts.keySet());
+        Collections.sort(stacks);
+        for (Iterator iter = stacks.iterator(); iter.hasNext(); ) {
+            String stack = (String) iter.next();
+            out.println(stack + " " + ((long[]) counts.get(stack))[0]);
+        }
+        out.flush();
+    }
+
+    private static void printPauses(long[] pauses, int taken, long frozenBytes,
+                                    long decodeTime, PrintStream out) {
+        if (taken == 0) {
+            out.println("No samples taken.");
+            return;
+        }
+        long[] sorted = new long[taken];
+        System.arraycopy(pauses, 0, sorted, 0, taken);
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (int i = 0; i < taken; i++) {
+            sum += sorted[i];
+        }
+        out.println(taken + " samples, target stopped for (us): min " + micros(sorted[0]) +
+                    ", avg " + micros(sum / taken) +
+                    ", median " + micros(sorted[taken / 2]) +
+                    ", 99% " + micros(sorted[(int) Math.min(taken - 1, (taken * 99L) / 100)]) +
+                    ", max " + micros(sorted[taken - 1]));
+        out.println("copied " + (frozenBytes / taken) + " bytes and decoded for " +
+                    micros(decodeTime / taken) + " us per sample");
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1000;
+    }
+
+    public static void main(String[] args) {
+        int numSamples = 100;
+        long interval = 10;
+        boolean threadNames = false;
+        boolean runningOnly = false;
+        String outFile = null;
+        int used = 0;
+        for (; used < args.length; used++) {
+            if (args[used].startsWith("-samples=")) {
+                numSamples = Integer.parseInt(args[used].substring(9));
+            } else if (args[used].startsWith("-interval=")) {
+                interval = Long.parseLong(args[used].substring(10));
+            } else if (args[used].equals("-threads")) {
+                threadNames = true;
+            } else if (args[used].equals("-running")) {
+                runningOnly = true;
+            } else if (args[used].startsWith("-out=")) {
+                outFile = args[used].substring(5);
+            } else {
+                break;
+            }
+        }
+
+        String[] newArgs = new String[args.length - used];
+        for (int i = 0; i < newArgs.length; i++) {
+            newArgs[i] = args[i + used];
+        }
+
+        StackSampler sampler = new StackSampler(numSamples, interval, threadNames, runningOnly, outFile);
+        sampler.execute(newArgs);
+    }
+
+    // How often the code cache index is rebuilt, in milliseconds
+    private static final long INDEX_REFRESH_INTERVAL = 1000;
+    // Frames of deeper stacks beyond this are read from the running target
+    private static final long MAX_STACK_COPY = 4 * 1024 * 1024;
+
+    private int numSamples;
+    private long interval;
+    private boolean threadNames;
+    private boolean runningOnly;
+    private String outFile;
+    private Map methodNames = new HashMap();
+}
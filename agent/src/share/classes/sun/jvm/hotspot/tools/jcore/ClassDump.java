@@ -26,6 +26,9 @@ package sun.jvm.hotspot.tools.jcore;
 
 import java.io.*;
 import java.lang.reflect.Constructor;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarOutputStream;
 import java.util.jar.JarEntry;
 import java.util.jar.Manifest;
@@ -34,8 +37,22 @@ import sun.jvm.hotspot.oops.*;
 import sun.jvm.hotspot.debugger.*;
 import sun.jvm.hotspot.runtime.*;
 import sun.jvm.hotspot.tools.*;
+import sun.jvm.hotspot.utilities.*;
 
+/*
+ * Writes the classes of the target to a directory or a jar. The
+ * classes to dump are collected from the SystemDictionary first, then
+ * they are read and written on several threads; the number of threads
+ * is given by the sun.jvm.hotspot.tools.jcore.ClassDump.parallelism
+ * property (default the number of processors). The metadata of each
+ * class is read into the debugger's page cache with one batched
+ * request before the class is written.
+ */
 public class ClassDump extends Tool {
+    private static final int PARALLELISM =
+        Integer.getInteger("sun.jvm.hotspot.tools.jcore.ClassDump.parallelism",
+                           Runtime.getRuntime().availableProcessors());
+
     private ClassFilter classFilter;
     private String      outputDirectory;
     private JarOutputStream jarStream;
@@ -101,19 +118,17 @@ public class ClassDump extends Tool {
             }
 
             // walk through the system dictionary
+            final List klasses = new ArrayList();
             SystemDictionary dict = VM.getVM().getSystemDictionary();
             dict.classesDo(new SystemDictionary.ClassVisitor() {
                     public void visit(Klass k) {
-                        if (k instanceof InstanceKlass) {
-                            try {
-                                dumpKlass((InstanceKlass) k);
-                            } catch (Exception e) {
-                                System.out.println(k.getName().asString());
-                                e.printStackTrace();
-                            }
+                        if (k instanceof InstanceKlass &&
+                            (classFilter == null || classFilter.canInclude((InstanceKlass) k))) {
+                            klasses.add(k);
                         }
                     }
                 });
+            dumpKlasses(klasses);
         }
         catch (AddressException e) {
             System.err.println("Error accessing address 0x"
@@ -134,19 +149,78 @@ public class ClassDump extends Tool {
         return "jcore";
     }
 
-    private void dumpKlass(InstanceKlass kls) {
-        if (classFilter != null && ! classFilter.canInclude(kls) ) {
+    private void dumpKlasses(final List klasses) {
+        int numWorkers = Math.max(1, Math.min(PARALLELISM, klasses.size()));
+        if (numWorkers == 1) {
+            for (Iterator iter = klasses.iterator(); iter.hasNext(); ) {
+                tryDumpKlass((InstanceKlass) iter.next());
+            }
             return;
         }
 
+        final AtomicInteger nextKlass = new AtomicInteger();
+        List tasks = new ArrayList();
+        for (int w = 0; w < numWorkers; w++) {
+            tasks.add(new Callable() {
+                    public Object call() {
+                        for (int i = nextKlass.getAndIncrement(); i < klasses.size();
+                             i = nextKlass.getAndIncrement()) {
+                            tryDumpKlass((InstanceKlass) klasses.get(i));
+                        }
+                        return null;
+                    }
+                });
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(numWorkers);
+        try {
+            List results = pool.invokeAll(tasks);
+            for (Iterator iter = results.iterator(); iter.hasNext(); ) {
+                ((Future) iter.next()).get();
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void tryDumpKlass(InstanceKlass kls) {
+        try {
+            dumpKlass(kls);
+        } catch (Exception e) {
+            synchronized (System.out) {
+                System.out.println(kls.getName().asString());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void dumpKlass(InstanceKlass kls) {
         String klassName = kls.getName().asString();
-        klassName = klassName.replace('/', File.separatorChar);
+        prefetchMetadata(kls);
+        // Classes are written on several threads but jar entries
+        // must be written one at a time
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
         try {
-            OutputStream os = null;
+            ClassWriter cw = new ClassWriter(kls, bytes);
+            cw.write();
             if (jarStream != null) {
-                jarStream.putNextEntry(new JarEntry(klassName + ".class"));
-                os = jarStream;
+                synchronized (jarStream) {
+                    jarStream.putNextEntry(new JarEntry(klassName + ".class"));
+                    bytes.writeTo(jarStream);
+                }
             } else {
+                klassName = klassName.replace('/', File.separatorChar);
                 int index = klassName.lastIndexOf(File.separatorChar);
                 File dir = null;
                 if (index != -1) {
@@ -159,13 +233,10 @@ public class ClassDump extends Tool {
                 dir.mkdirs();
                 File f = new File(dir, klassName.substring(index + 1) + ".class");
                 f.createNewFile();
-                os = new BufferedOutputStream(new FileOutputStream(f));
-            }
-            try {
-                ClassWriter cw = new ClassWriter(kls, os);
-                cw.write();
-            } finally {
-                if (os != jarStream) {
+                OutputStream os = new FileOutputStream(f);
+                try {
+                    bytes.writeTo(os);
+                } finally {
                     os.close();
                 }
             }
@@ -174,6 +245,53 @@ public class ClassDump extends Tool {
         }
     }
 
+    // Reads the constant pool, its cache and tags, and the methods of
+    // kls into the page cache in one batch
+    private void prefetchMetadata(InstanceKlass kls) {
+        Debugger debugger = VM.getVM().getDebugger();
+        if (!(debugger instanceof DebuggerBase)) {
+            return;
+        }
+        DebuggerBase dbg = (DebuggerBase) debugger;
+        long wordSize = VM.getVM().getAddressSize();
+        List ranges = new ArrayList();
+        try {
+            ConstantPool cp = kls.getConstants();
+            addRange(ranges, cp.getAddress(), cp.getSizeInBytes());
+            U1Array tags = cp.getTags();
+            addRange(ranges, tags.getAddress(), tags.getSize() * wordSize);
+            ConstantPoolCache cache = cp.getCache();
+            if (cache != null) {
+                addRange(ranges, cache.getAddress(), cache.getSize());
+            }
+            MethodArray methods = kls.getMethods();
+            addRange(ranges, methods.getAddress(), methods.getSize() * wordSize);
+            for (int i = 0; i < methods.length(); i++) {
+                Method m = methods.at(i);
+                addRange(ranges, m.getAddress(), m.getSize() * wordSize);
+                ConstMethod cm = m.getConstMethod();
+                addRange(ranges, cm.getAddress(), cm.getSize() * wordSize);
+            }
+        } catch (AddressException e) {
+            // Not fatal, the class is read without prefetching the rest
+        }
+
+        long[] addresses = new long[ranges.size() / 2];
+        long[] sizes = new long[addresses.length];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = ((Long) ranges.get(2 * i)).longValue();
+            sizes[i] = ((Long) ranges.get(2 * i + 1)).longValue();
+        }
+        dbg.prefetch(addresses, sizes);
+    }
+
+    private static void addRange(List ranges, Address addr, long size) {
+        if (addr != null) {
+            ranges.add(new Long(VM.getVM().getAddressValue(addr)));
+            ranges.add(new Long(size));
+        }
+    }
+
     public static void main(String[] args) {
 
         ClassDump cd = new ClassDump();
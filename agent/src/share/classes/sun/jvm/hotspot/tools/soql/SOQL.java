@@ -77,6 +77,8 @@ public class SOQL extends Tool {
                   handleClass(line);
                } else if (cmd.equals("object")) {
                   handleObject(line);
+               } else if (cmd.equals("index")) {
+                  handleIndex(line);
                } else if (cmd.equals("quit")) {
                   out.println("Bye!");
                   return;
@@ -217,6 +219,23 @@ public class SOQL extends Tool {
       }
    }
 
+   protected void handleIndex(String line) {
+      StringTokenizer st = new StringTokenizer(line);
+      st.nextToken(); // ignore "index"
+      if (st.hasMoreTokens()) {
+         String mode = st.nextToken();
+         if (mode.equals("on")) {
+            soqlEngine.setUseKlassIndex(true);
+         } else if (mode.equals("off")) {
+            soqlEngine.setUseKlassIndex(false);
+         } else {
+            out.println("usage: index [on|off]");
+            return;
+         }
+      }
+      out.println("klass index is " + (soqlEngine.getUseKlassIndex()? "on" : "off"));
+   }
+
    protected void handleUnknown(String line) {
       out.println("Unknown command!");
    }
@@ -27,6 +27,7 @@ package sun.jvm.hotspot.types.basic;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import sun.jvm.hotspot.debugger.Address;
 import sun.jvm.hotspot.debugger.MachineDescription;
@@ -155,7 +156,8 @@ public class BasicTypeDataBase implements TypeDataBase {
     return VM.getVM().getOopSize();
   }
 
-  HashMap typeToVtbl = new HashMap();
+  // Concurrent since the heap may be iterated on several threads
+  Map typeToVtbl = new ConcurrentHashMap();
 
   private Address vtblForType(Type type) {
     Address vtblAddr = (Address)typeToVtbl.get(type);
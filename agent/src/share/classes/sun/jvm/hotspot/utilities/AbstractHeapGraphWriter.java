@@ -46,6 +46,23 @@ public abstract class AbstractHeapGraphWriter implements HeapGraphWriter {
         javaLangClass = symTbl.probe("java/lang/Class");
         javaLangString = symTbl.probe("java/lang/String");
         javaLangThread = symTbl.probe("java/lang/Thread");
+        try {
+                // write all objects of the heap
+                writeHeapObjects();
+
+                // write JavaThreads
+                writeJavaThreads();
+
+                // write JNI global handles
+                writeGlobalJNIHandles();
+
+        } catch (RuntimeException re) {
+            handleRuntimeException(re);
+        }
+    }
+
+    // iterates the heap and writes all objects
+    protected void writeHeapObjects() throws IOException {
         ObjectHeap heap = VM.getVM().getObjectHeap();
         try {
             heap.iterate(new DefaultHeapVisitor() {
@@ -60,44 +77,7 @@ public abstract class AbstractHeapGraphWriter implements HeapGraphWriter {
                     public boolean doObj(Oop oop) {
                         try {
                             writeHeapRecordPrologue();
-                            if (oop instanceof TypeArray) {
-                                writePrimitiveArray((TypeArray)oop);
-                            } else if (oop instanceof ObjArray) {
-                                Klass klass = oop.getKlass();
-                                ObjArrayKlass oak = (ObjArrayKlass) klass;
-                                Klass bottomType = oak.getBottomKlass();
-                                if (bottomType instanceof InstanceKlass ||
-                                    bottomType instanceof TypeArrayKlass) {
-                                    writeObjectArray((ObjArray)oop);
-                                } else {
-                                    writeInternalObject(oop);
-                                }
-                            } else if (oop instanceof Instance) {
-                                Instance instance = (Instance) oop;
-                                Klass klass = instance.getKlass();
-                                Symbol name = klass.getName();
-                                if (name.equals(javaLangString)) {
-                                    writeString(instance);
-                                } else if (name.equals(javaLangClass)) {
-                                    writeClass(instance);
-                                } else if (name.equals(javaLangThread)) {
-                                    writeThread(instance);
-                                } else {
-                                    klass = klass.getSuper();
-                                    while (klass != null) {
-                                        name = klass.getName();
-                                        if (name.equals(javaLangThread)) {
-                                            writeThread(instance);
-                                            return false;
-                                        }
-                                        klass = klass.getSuper();
-                                    }
-                                    writeInstance(instance);
-                                }
-                            } else {
-                                // not-a-Java-visible oop
-                                writeInternalObject(oop);
-                            }
+                            writeHeapObject(oop);
                             writeHeapRecordEpilogue();
                         } catch (IOException exp) {
                             throw new RuntimeException(exp);
@@ -113,18 +93,53 @@ public abstract class AbstractHeapGraphWriter implements HeapGraphWriter {
                         }
                     }
                 });
-
-                // write JavaThreads
-                writeJavaThreads();
-
-                // write JNI global handles
-                writeGlobalJNIHandles();
-
         } catch (RuntimeException re) {
             handleRuntimeException(re);
         }
     }
 
+    // calls the Oop type specific writer for the given object
+    protected void writeHeapObject(Oop oop) throws IOException {
+        if (oop instanceof TypeArray) {
+            writePrimitiveArray((TypeArray)oop);
+        } else if (oop instanceof ObjArray) {
+            Klass klass = oop.getKlass();
+            ObjArrayKlass oak = (ObjArrayKlass) klass;
+            Klass bottomType = oak.getBottomKlass();
+            if (bottomType instanceof InstanceKlass ||
+                bottomType instanceof TypeArrayKlass) {
+                writeObjectArray((ObjArray)oop);
+            } else {
+                writeInternalObject(oop);
+            }
+        } else if (oop instanceof Instance) {
+            Instance instance = (Instance) oop;
+            Klass klass = instance.getKlass();
+            Symbol name = klass.getName();
+            if (name.equals(javaLangString)) {
+                writeString(instance);
+            } else if (name.equals(javaLangClass)) {
+                writeClass(instance);
+            } else if (name.equals(javaLangThread)) {
+                writeThread(instance);
+            } else {
+                klass = klass.getSuper();
+                while (klass != null) {
+                    name = klass.getName();
+                    if (name.equals(javaLangThread)) {
+                        writeThread(instance);
+                        return;
+                    }
+                    klass = klass.getSuper();
+                }
+                writeInstance(instance);
+            }
+        } else {
+            // not-a-Java-visible oop
+            writeInternalObject(oop);
+        }
+    }
+
     protected void writeJavaThreads() throws IOException {
         Threads threads = VM.getVM().getThreads();
         JavaThread jt = threads.first();
@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+
+package sun.jvm.hotspot.utilities;
+
+import java.util.*;
+
+import sun.jvm.hotspot.debugger.*;
+import sun.jvm.hotspot.oops.*;
+import sun.jvm.hotspot.runtime.*;
+
+/** Finds primitive arrays with identical contents. Register it with
+    itself as the ObjectHeaderFilter, so that Oops are only created
+    for arrays of the selected klasses, with ObjectHeap.iterate or
+    CompositeHeapVisitor.iterateParallel. The contents of every array
+    are hashed as they are visited, together with its klass and
+    length, and arrays with the same 64-bit hash are counted as
+    duplicates. <P>
+
+    Memory is bounded by the number of groups of equal arrays kept per
+    visitor, set with the
+    sun.jvm.hotspot.utilities.DuplicateArrayCounter.maxGroups property.
+    When the table is full, the groups seen least often are evicted,
+    as in lossy counting, so that large groups of duplicates survive;
+    the counts are then lower bounds, see isExact(). */
+
+public class DuplicateArrayCounter implements HeapVisitor, ParallelHeapVisitor,
+                                              ObjectHeap.ObjectHeaderFilter {
+  private static final int MAX_GROUPS =
+    Integer.getInteger("sun.jvm.hotspot.utilities.DuplicateArrayCounter.maxGroups", 1 << 18);
+
+  /** A set of arrays with the same contents */
+  public static class Group {
+    private ArrayKlass klass;
+    private long       length;
+    private long       size;
+    private long       count;
+    private long       sample;
+
+    Group(ArrayKlass klass, long length, long size, long count, long sample) {
+      this.klass = klass;
+      this.length = length;
+      this.size = size;
+      this.count = count;
+      this.sample = sample;
+    }
+
+    public ArrayKlass getKlass() { return klass;  }
+    public long getLength()      { return length; }
+    /** Size of each array in bytes */
+    public long getSize()        { return size;   }
+    public long getCount()       { return count;  }
+    /** Bytes which would be saved by keeping one of the arrays */
+    public long getWastedSize()  { return (count - 1) * size; }
+    /** Address of one of the arrays */
+    public long getSample()      { return sample; }
+  }
+
+  // The klasses whose arrays are hashed, with their layout
+  private ArrayKlass[] klasses;
+  private long[]       headerSizes;
+  private int[]        log2ElementSizes;
+  private Debugger     dbg;
+
+  // Open addressing table of groups, keyed by content hash. The
+  // klass is stored as an index into klasses.
+  private long[] hashes;
+  private long[] counts;
+  private long[] sizes;
+  private long[] lengths;
+  private long[] samples;
+  private int[]  klassIndices;
+  private int    numGroups;
+  private int    maxGroups;
+  // Groups seen this many times or less have been evicted
+  private long   evictedCount;
+  private long   arrays;
+  private long   bytes;
+
+  /** Counts duplicates among the arrays of the given klasses */
+  public DuplicateArrayCounter(ArrayKlass[] klasses) {
+    this(klasses, MAX_GROUPS);
+  }
+
+  public DuplicateArrayCounter(ArrayKlass[] klasses, int maxGroups) {
+    this.klasses = klasses;
+    this.maxGroups = Math.max(16, maxGroups);
+    headerSizes = new long[klasses.length];
+    log2ElementSizes = new int[klasses.length];
+    for (int i = 0; i < klasses.length; i++) {
+      headerSizes[i] = klasses[i].getArrayHeaderInBytes();
+      log2ElementSizes[i] = klasses[i].getLog2ElementSize();
+    }
+    dbg = VM.getVM().getDebugger();
+    allocate(16);
+  }
+
+  private DuplicateArrayCounter(DuplicateArrayCounter parent) {
+    klasses = parent.klasses;
+    maxGroups = parent.maxGroups;
+    headerSizes = parent.headerSizes;
+    log2ElementSizes = parent.log2ElementSizes;
+    dbg = parent.dbg;
+    allocate(16);
+  }
+
+  /** Whether all counts are exact, that is no group was evicted */
+  public boolean isExact() {
+    return evictedCount == 0;
+  }
+
+  /** Groups seen at most this many times may have been evicted, so
+      every count may be low by a multiple of it */
+  public long getEvictedCount() {
+    return evictedCount;
+  }
+
+  /** Number of arrays hashed */
+  public long getArrayCount() {
+    return arrays;
+  }
+
+  /** Total size of the arrays hashed */
+  public long getArrayBytes() {
+    return bytes;
+  }
+
+  /** Returns the groups with more than one array as a List<Group>,
+      in descending order of wasted size */
+  public List getDuplicates() {
+    List result = new ArrayList();
+    for (int i = 0; i < hashes.length; i++) {
+      if (counts[i] > 1) {
+        result.add(new Group(klasses[klassIndices[i]], lengths[i], sizes[i], counts[i], samples[i]));
+      }
+    }
+    Collections.sort(result, new Comparator() {
+        public int compare(Object o1, Object o2) {
+          long w1 = ((Group) o1).getWastedSize();
+          long w2 = ((Group) o2).getWastedSize();
+          return (w1 > w2) ? -1 : ((w1 < w2) ? 1 : 0);
+        }
+      });
+    return result;
+  }
+
+  public boolean canIncludeKlass(Klass k) {
+    return indexOf(k) >= 0;
+  }
+
+  public boolean canInclude(Klass k, OopHandle handle) {
+    return true;
+  }
+
+  public void prologue(long usedSize) {}
+  public void epilogue()              {}
+
+  public boolean doObj(Oop obj) {
+    int k = indexOf(obj.getKlass());
+    if (k < 0) {
+      return false;
+    }
+    OopHandle handle = obj.getHandle();
+    long length = ((Array) obj).getLength();
+    long size = obj.getObjectSize();
+    long hash = hashContents(handle, headerSizes[k], length << log2ElementSizes[k]);
+    hash = mix(mix(hash ^ length) ^ dbg.getAddressValue(klasses[k].getAddress()));
+    add(hash, 1, size, length, dbg.getAddressValue(handle), k);
+    arrays++;
+    bytes += size;
+    return false;
+  }
+
+  public HeapVisitor createVisitor() {
+    return new DuplicateArrayCounter(this);
+  }
+
+  public void merge(HeapVisitor visitor) {
+    DuplicateArrayCounter other = (DuplicateArrayCounter) visitor;
+    for (int i = 0; i < other.hashes.length; i++) {
+      if (other.counts[i] != 0) {
+        add(other.hashes[i], other.counts[i], other.sizes[i], other.lengths[i],
+            other.samples[i], other.klassIndices[i]);
+      }
+    }
+    evictedCount = Math.max(evictedCount, other.evictedCount);
+    arrays += other.arrays;
+    bytes += other.bytes;
+  }
+
+  //--------------------------------------------------------------------------------
+  // Internals only below this point
+  //
+
+  private int indexOf(Klass k) {
+    for (int i = 0; i < klasses.length; i++) {
+      if (klasses[i].equals(k)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // Hashes numBytes bytes starting offset bytes into the object,
+  // reading eight at a time where they are aligned
+  private long hashContents(OopHandle handle, long offset, long numBytes) {
+    long hash = numBytes;
+    long end = offset + numBytes;
+    long address = dbg.getAddressValue(handle);
+    while (offset < end && ((address + offset) & 7) != 0) {
+      hash = mix(hash ^ (handle.getJByteAt(offset) & 0xFF));
+      offset++;
+    }
+    for (; offset + 8 <= end; offset += 8) {
+      hash = mix(hash ^ handle.getJLongAt(offset));
+    }
+    for (; offset < end; offset++) {
+      hash = mix(hash ^ (handle.getJByteAt(offset) & 0xFF));
+    }
+    return hash;
+  }
+
+  private static long mix(long h) {
+    h *= 0x9E3779B97F4A7C15L;
+    return h ^ (h >>> 29);
+  }
+
+  private void allocate(int capacity) {
+    hashes = new long[capacity];
+    counts = new long[capacity];
+    sizes = new long[capacity];
+    lengths = new long[capacity];
+    samples = new long[capacity];
+    klassIndices = new int[capacity];
+    numGroups = 0;
+  }
+
+  private void add(long hash, long count, long size, long length, long sample, int klassIndex) {
+    int mask = hashes.length - 1;
+    int i = (int) (hash ^ (hash >>> 32)) & mask;
+    // A count of 0 marks an empty slot
+    while (counts[i] != 0) {
+      if (hashes[i] == hash) {
+        counts[i] += count;
+        return;
+      }
+      i = (i + 1) & mask;
+    }
+    hashes[i] = hash;
+    counts[i] = count;
+    sizes[i] = size;
+    lengths[i] = length;
+    samples[i] = sample;
+    klassIndices[i] = klassIndex;
+    numGroups++;
+    if (numGroups > maxGroups) {
+      evict();
+    } else if (2 * numGroups > hashes.length) {
+      rehash(2 * hashes.length, 0);
+    }
+  }
+
+  // Drops the groups seen least often until at most half of maxGroups
+  // remain. As in lossy counting, the threshold never decreases. The
+  // smallest threshold that keeps maxGroups / 2 groups is the count of
+  // the next group in descending order, which is found by selection.
+  private void evict() {
+    long[] live = new long[numGroups];
+    int n = 0;
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] != 0) {
+        live[n++] = counts[i];
+      }
+    }
+    long threshold = Math.max(evictedCount, 1);
+    evictedCount = Math.max(threshold, select(live, n, maxGroups / 2));
+    rehash(hashes.length, evictedCount);
+  }
+
+  // Returns the k-th largest (from 0) of the first n values, reordering
+  // them. Partitions three ways since many groups share a count.
+  private static long select(long[] values, int n, int k) {
+    int lo = 0;
+    int hi = n - 1;
+    while (lo < hi) {
+      long pivot = values[lo + (hi - lo) / 2];
+      // values[lo, lt) > pivot, values[lt, i) == pivot, values(gt, hi] < pivot
+      int lt = lo;
+      int gt = hi;
+      int i = lo;
+      while (i <= gt) {
+        if (values[i] > pivot) {
+          swap(values, lt++, i++);
+        } else if (values[i] < pivot) {
+          swap(values, i, gt--);
+        } else {
+          i++;
+        }
+      }
+      if (k < lt) {
+        hi = lt - 1;
+      } else if (k > gt) {
+        lo = gt + 1;
+      } else {
+        return pivot;
+      }
+    }
+    return values[k];
+  }
+
+  private static void swap(long[] values, int i, int j) {
+    long v = values[i];
+    values[i] = values[j];
+    values[j] = v;
+  }
+
+  // Reinserts the groups seen more than minCount times into a new
+  // table
+  private void rehash(int capacity, long minCount) {
+    long[] oldHashes = hashes;
+    long[] oldCounts = counts;
+    long[] oldSizes = sizes;
+    long[] oldLengths = lengths;
+    long[] oldSamples = samples;
+    int[]  oldKlassIndices = klassIndices;
+    allocate(capacity);
+    for (int i = 0; i < oldHashes.length; i++) {
+      if (oldCounts[i] > minCount) {
+        add(oldHashes[i], oldCounts[i], oldSizes[i], oldLengths[i], oldSamples[i], oldKlassIndices[i]);
+      }
+    }
+  }
+}
@@ -26,24 +26,51 @@ package sun.jvm.hotspot.utilities;
 
 import java.util.*;
 
+import sun.jvm.hotspot.debugger.*;
 import sun.jvm.hotspot.oops.*;
 
-public class FindObjectByType implements HeapVisitor {
+public class FindObjectByType implements HeapVisitor, ParallelHeapVisitor {
   private Klass type;
   private List results = new ArrayList();
+  // Results merged from a parallel walk arrive in scheduling order
+  private boolean sorted = true;
 
   public FindObjectByType(Klass type) {
     this.type = type;
   }
 
-  /** Returns a List of Oops */
+  /** Returns a List of Oops in address order */
   public List getResults() {
+    if (!sorted) {
+      Collections.sort(results, new Comparator() {
+          public int compare(Object o1, Object o2) {
+            Address a1 = ((Oop) o1).getHandle();
+            Address a2 = ((Oop) o2).getHandle();
+            if (AddressOps.lt(a1, a2)) {
+              return -1;
+            } else if (AddressOps.gt(a1, a2)) {
+              return 1;
+            }
+            return 0;
+          }
+        });
+      sorted = true;
+    }
     return results;
   }
 
   public void prologue(long size) {}
   public void epilogue()          {}
 
+  public HeapVisitor createVisitor() {
+    return new FindObjectByType(type);
+  }
+
+  public void merge(HeapVisitor visitor) {
+    results.addAll(((FindObjectByType) visitor).results);
+    sorted = false;
+  }
+
   public boolean doObj(Oop obj) {
     if (obj.getKlass().equals(type)) {
       results.add(obj);
@@ -25,8 +25,11 @@
 package sun.jvm.hotspot.utilities;
 
 import java.io.*;
+import java.nio.*;
 import java.nio.channels.*;
 import java.util.*;
+import java.util.concurrent.locks.*;
+import java.util.zip.*;
 import sun.jvm.hotspot.debugger.*;
 import sun.jvm.hotspot.memory.*;
 import sun.jvm.hotspot.oops.*;
@@ -36,6 +39,19 @@ import sun.jvm.hotspot.runtime.*;
  * This class writes Java heap in hprof binary format. This format is
  * used by Heap Analysis Tool (HAT). The class is heavily influenced
  * by 'hprof_io.c' of 1.5 new hprof implementation.
+ *
+ * Unless the sun.jvm.hotspot.utilities.HeapHprofBinWriter.sequential
+ * property is set, the heap is iterated on several threads (see
+ * ObjectHeap.iterateParallel). Every thread fills heap dump segments
+ * in memory and writes each completed segment to its own position in
+ * the file, so the file always uses the segmented "JAVA PROFILE 1.0.2"
+ * format and the order of the segments is not deterministic. Large
+ * arrays are not buffered but streamed to the file as segments of their
+ * own, which bounds the memory used by every thread. If the
+ * file name ends with ".gz", or the
+ * sun.jvm.hotspot.utilities.HeapHprofBinWriter.gzip property is set,
+ * every block written is compressed as a separate gzip member; the
+ * result is a regular multi-member gzip file.
  */
 
 /* hprof binary format: (result either written to a file or sent over
@@ -317,6 +333,22 @@ public class HeapHprofBinWriter extends AbstractHeapGraphWriter {
     // a new segment.
     private static final long HPROF_SEGMENTED_HEAP_DUMP_SEGMENT_SIZE = 1L * 0x40000000;
 
+    // The approximate size of the heap segments written by the parallel
+    // writer. Every thread fills a segment in memory before writing it.
+    private static final int HPROF_PARALLEL_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    // Records of arrays larger than this are not buffered by the parallel
+    // writer but streamed to the file as heap dump segments of their own,
+    // so a thread never buffers much more than one segment.
+    private static final int HPROF_PARALLEL_LARGE_RECORD_SIZE = 1024 * 1024;
+
+    // The size of the blocks in which such records are written out
+    private static final int HPROF_PARALLEL_STREAM_BLOCK_SIZE = 1024 * 1024;
+
+    // The capacity of the segment buffer of every thread
+    private static final int HPROF_PARALLEL_BUFFER_SIZE =
+        HPROF_PARALLEL_SEGMENT_SIZE + HPROF_PARALLEL_LARGE_RECORD_SIZE;
+
     // hprof binary file header
     private static final String HPROF_HEADER_1_0_1 = "JAVA PROFILE 1.0.1";
     private static final String HPROF_HEADER_1_0_2 = "JAVA PROFILE 1.0.2";
@@ -379,39 +411,66 @@ public class HeapHprofBinWriter extends AbstractHeapGraphWriter {
     private static final int JVM_SIGNATURE_ARRAY   = '[';
     private static final int JVM_SIGNATURE_CLASS   = 'L';
 
+    public HeapHprofBinWriter() {
+        this(!Boolean.getBoolean("sun.jvm.hotspot.utilities.HeapHprofBinWriter.sequential"),
+             Boolean.getBoolean("sun.jvm.hotspot.utilities.HeapHprofBinWriter.gzip"));
+    }
+
+    public HeapHprofBinWriter(boolean parallel, boolean gzip) {
+        this.parallel = parallel;
+        this.gzip = gzip;
+    }
+
+    // creates a writer for one worker thread of the parallel writer
+    private HeapHprofBinWriter(HeapHprofBinWriter parent) {
+        parallel = true;
+        gzip = parent.gzip;
+        sink = parent.sink;
+        buffer = new SegmentBuffer(HPROF_PARALLEL_BUFFER_SIZE);
+        out = new DataOutputStream(buffer);
+        dbg = parent.dbg;
+        objectHeap = parent.objectHeap;
+        symTbl = parent.symTbl;
+        OBJ_ID_SIZE = parent.OBJ_ID_SIZE;
+        useSegmentedHeapDump = true;
+        BOOLEAN_BASE_OFFSET = parent.BOOLEAN_BASE_OFFSET;
+        BYTE_BASE_OFFSET = parent.BYTE_BASE_OFFSET;
+        CHAR_BASE_OFFSET = parent.CHAR_BASE_OFFSET;
+        SHORT_BASE_OFFSET = parent.SHORT_BASE_OFFSET;
+        INT_BASE_OFFSET = parent.INT_BASE_OFFSET;
+        LONG_BASE_OFFSET = parent.LONG_BASE_OFFSET;
+        FLOAT_BASE_OFFSET = parent.FLOAT_BASE_OFFSET;
+        DOUBLE_BASE_OFFSET = parent.DOUBLE_BASE_OFFSET;
+        OBJECT_BASE_OFFSET = parent.OBJECT_BASE_OFFSET;
+        BOOLEAN_SIZE = parent.BOOLEAN_SIZE;
+        BYTE_SIZE = parent.BYTE_SIZE;
+        CHAR_SIZE = parent.CHAR_SIZE;
+        SHORT_SIZE = parent.SHORT_SIZE;
+        INT_SIZE = parent.INT_SIZE;
+        LONG_SIZE = parent.LONG_SIZE;
+        FLOAT_SIZE = parent.FLOAT_SIZE;
+        DOUBLE_SIZE = parent.DOUBLE_SIZE;
+        // only read from now on
+        classDataCache = parent.classDataCache;
+        javaLangClass = parent.javaLangClass;
+        javaLangString = parent.javaLangString;
+        javaLangThread = parent.javaLangThread;
+    }
+
     public synchronized void write(String fileName) throws IOException {
+        if (parallel || gzip || fileName.endsWith(".gz")) {
+            writeSegmented(fileName, gzip || fileName.endsWith(".gz"));
+            return;
+        }
+
         // open file stream and create buffered data output stream
         fos = new FileOutputStream(fileName);
         out = new DataOutputStream(new BufferedOutputStream(fos));
 
-        VM vm = VM.getVM();
-        dbg = vm.getDebugger();
-        objectHeap = vm.getObjectHeap();
-        symTbl = vm.getSymbolTable();
-
-        OBJ_ID_SIZE = (int) vm.getOopSize();
-
-        BOOLEAN_BASE_OFFSET = TypeArray.baseOffsetInBytes(BasicType.T_BOOLEAN);
-        BYTE_BASE_OFFSET = TypeArray.baseOffsetInBytes(BasicType.T_BYTE);
-        CHAR_BASE_OFFSET = TypeArray.baseOffsetInBytes(BasicType.T_CHAR);
-        SHORT_BASE_OFFSET = TypeArray.baseOffsetInBytes(BasicType.T_SHORT);
-        INT_BASE_OFFSET = TypeArray.baseOffsetInBytes(BasicType.T_INT);
-        LONG_BASE_OFFSET = TypeArray.baseOffsetInBytes(BasicType.T_LONG);
-        FLOAT_BASE_OFFSET = TypeArray.baseOffsetInBytes(BasicType.T_FLOAT);
-        DOUBLE_BASE_OFFSET = TypeArray.baseOffsetInBytes(BasicType.T_DOUBLE);
-        OBJECT_BASE_OFFSET = TypeArray.baseOffsetInBytes(BasicType.T_OBJECT);
-
-        BOOLEAN_SIZE = objectHeap.getBooleanSize();
-        BYTE_SIZE = objectHeap.getByteSize();
-        CHAR_SIZE = objectHeap.getCharSize();
-        SHORT_SIZE = objectHeap.getShortSize();
-        INT_SIZE = objectHeap.getIntSize();
-        LONG_SIZE = objectHeap.getLongSize();
-        FLOAT_SIZE = objectHeap.getFloatSize();
-        DOUBLE_SIZE = objectHeap.getDoubleSize();
+        initialize();
 
         // Check weather we should dump the heap as segments
-        useSegmentedHeapDump = vm.getUniverse().heap().used() > HPROF_SEGMENTED_HEAP_DUMP_THRESHOLD;
+        useSegmentedHeapDump = VM.getVM().getUniverse().heap().used() > HPROF_SEGMENTED_HEAP_DUMP_THRESHOLD;
 
         // hprof bin format header
         writeFileHeader();
@@ -453,8 +512,81 @@ public class HeapHprofBinWriter extends AbstractHeapGraphWriter {
         fos.close();
     }
 
+    // writes the dump as a sequence of heap dump segments which are
+    // produced concurrently, see the class comment
+    private void writeSegmented(String fileName, boolean compress) throws IOException {
+        fos = new FileOutputStream(fileName);
+        try {
+            sink = new SegmentSink(fos.getChannel(), compress);
+            buffer = new SegmentBuffer(HPROF_PARALLEL_BUFFER_SIZE);
+            out = new DataOutputStream(buffer);
+
+            initialize();
+            useSegmentedHeapDump = true;
+
+            writeFileHeader();
+            writeDummyTrace();
+            writeSymbols();
+            writeClasses();
+            writeClassDumpRecords();
+
+            // heap objects, threads and JNI global handles
+            super.write();
+            closeSegment();
+
+            // Write heap segment-end record
+            out.writeByte((byte) HPROF_HEAP_DUMP_END);
+            out.writeInt(0);
+            out.writeInt(0);
+            flushSegmentBuffer();
+            out = null;
+        } finally {
+            sink = null;
+            buffer = null;
+            fos.close();
+        }
+    }
+
+    private void initialize() {
+        VM vm = VM.getVM();
+        dbg = vm.getDebugger();
+        objectHeap = vm.getObjectHeap();
+        symTbl = vm.getSymbolTable();
+
+        OBJ_ID_SIZE = (int) vm.getOopSize();
+
+        BOOLEAN_BASE_OFFSET = TypeArray.baseOffsetInBytes(BasicType.T_BOOLEAN);
+        BYTE_BASE_OFFSET = TypeArray.baseOffsetInBytes(BasicType.T_BYTE);
+        CHAR_BASE_OFFSET = TypeArray.baseOffsetInBytes(BasicType.T_CHAR);
+        SHORT_BASE_OFFSET = TypeArray.baseOffsetInBytes(BasicType.T_SHORT);
+        INT_BASE_OFFSET = TypeArray.baseOffsetInBytes(BasicType.T_INT);
+        LONG_BASE_OFFSET = TypeArray.baseOffsetInBytes(BasicType.T_LONG);
+        FLOAT_BASE_OFFSET = TypeArray.baseOffsetInBytes(BasicType.T_FLOAT);
+        DOUBLE_BASE_OFFSET = TypeArray.baseOffsetInBytes(BasicType.T_DOUBLE);
+        OBJECT_BASE_OFFSET = TypeArray.baseOffsetInBytes(BasicType.T_OBJECT);
+
+        BOOLEAN_SIZE = objectHeap.getBooleanSize();
+        BYTE_SIZE = objectHeap.getByteSize();
+        CHAR_SIZE = objectHeap.getCharSize();
+        SHORT_SIZE = objectHeap.getShortSize();
+        INT_SIZE = objectHeap.getIntSize();
+        LONG_SIZE = objectHeap.getLongSize();
+        FLOAT_SIZE = objectHeap.getFloatSize();
+        DOUBLE_SIZE = objectHeap.getDoubleSize();
+    }
+
     @Override
     protected void writeHeapRecordPrologue() throws IOException {
+        if (sink != null) {
+            if (segmentStart < 0) {
+                segmentStart = buffer.size();
+                out.writeByte((byte) HPROF_HEAP_DUMP_SEGMENT);
+                out.writeInt(0);
+                // length is filled in by closeSegment()
+                out.writeInt(0);
+            }
+            return;
+        }
         if (currentSegmentStart == 0) {
             // write heap data header, depending on heap size use segmented heap
             // format
@@ -474,6 +606,12 @@ public class HeapHprofBinWriter extends AbstractHeapGraphWriter {
 
     @Override
     protected void writeHeapRecordEpilogue() throws IOException {
+        if (sink != null) {
+            if (buffer.size() - segmentStart >= HPROF_PARALLEL_SEGMENT_SIZE) {
+                closeSegment();
+            }
+            return;
+        }
         if (useSegmentedHeapDump) {
             out.flush();
             if ((fos.getChannel().position() - currentSegmentStart - 4) >= HPROF_SEGMENTED_HEAP_DUMP_SEGMENT_SIZE) {
@@ -483,6 +621,153 @@ public class HeapHprofBinWriter extends AbstractHeapGraphWriter {
         }
     }
 
+    // fills in the length of the open heap dump segment and writes out
+    // the buffer
+    private void closeSegment() throws IOException {
+        if (segmentStart >= 0) {
+            long length = buffer.size() - segmentStart - 9L;
+            // Check length boundary, an object array of 2^30 elements
+            // might overflow
+            if (length >= (4L * 0x40000000)) {
+                throw new RuntimeException("Heap segment size overflow.");
+            }
+            buffer.putInt(segmentStart + 5, (int) length);
+            segmentStart = -1;
+        }
+        flushSegmentBuffer();
+    }
+
+    private void flushSegmentBuffer() throws IOException {
+        sink.write(buffer.array(), buffer.size());
+        buffer.reset();
+    }
+
+    @Override
+    protected void writeHeapObjects() throws IOException {
+        if (sink == null) {
+            super.writeHeapObjects();
+            return;
+        }
+
+        // everything written so far goes before the heap objects
+        closeSegment();
+
+        ParallelHeapVisitor pv = new ParallelHeapVisitor() {
+                public HeapVisitor createVisitor() {
+                    return new HeapHprofBinWriter(HeapHprofBinWriter.this).new SegmentVisitor();
+                }
+
+                public void merge(HeapVisitor visitor) {
+                    // the segments have been written already
+                }
+            };
+        try {
+            if (parallel) {
+                objectHeap.iterateParallel(pv);
+            } else {
+                objectHeap.iterate(pv.createVisitor());
+            }
+        } catch (RuntimeException re) {
+            handleRuntimeException(re);
+        }
+
+        // open a segment for the thread and JNI handle roots
+        writeHeapRecordPrologue();
+    }
+
+    // Returns the size of the HPROF_GC_OBJ_ARRAY_DUMP or
+    // HPROF_GC_PRIM_ARRAY_DUMP record of the given object, or 0 if it is
+    // not an array written by writeObjectArray or writePrimitiveArray
+    private long arrayRecordSize(Oop oop) {
+        if (oop instanceof TypeArray) {
+            TypeArrayKlass tak = (TypeArrayKlass) oop.getKlass();
+            long elementSize;
+            switch ((int) tak.getElementType()) {
+                case TypeArrayKlass.T_BOOLEAN:
+                case TypeArrayKlass.T_BYTE:
+                    elementSize = 1;
+                    break;
+                case TypeArrayKlass.T_CHAR:
+                case TypeArrayKlass.T_SHORT:
+                    elementSize = 2;
+                    break;
+                case TypeArrayKlass.T_INT:
+                case TypeArrayKlass.T_FLOAT:
+                    elementSize = 4;
+                    break;
+                default:
+                    elementSize = 8;
+                    break;
+            }
+            return 1 + OBJ_ID_SIZE + 4 + 4 + 1 + ((TypeArray) oop).getLength() * elementSize;
+        } else if (oop instanceof ObjArray) {
+            Klass bottomType = ((ObjArrayKlass) oop.getKlass()).getBottomKlass();
+            if (bottomType instanceof InstanceKlass ||
+                bottomType instanceof TypeArrayKlass) {
+                return 1 + OBJ_ID_SIZE + 4 + 4 + OBJ_ID_SIZE +
+                       ((ObjArray) oop).getLength() * (long) OBJ_ID_SIZE;
+            }
+        }
+        return 0;
+    }
+
+    // writes an array whose record of the given size is too large to be
+    // buffered as a heap dump segment of its own, streamed to the file
+    private void writeLargeArray(Oop oop, long size) throws IOException {
+        // Check length boundary, an object array of 2^30 elements
+        // might overflow
+        if (size >= (4L * 0x40000000)) {
+            throw new RuntimeException("Heap segment size overflow.");
+        }
+        // the record must not end up in the middle of a buffered segment
+        closeSegment();
+        DataOutputStream bufferOut = out;
+        SegmentStream stream = sink.openStream();
+        out = new DataOutputStream(stream);
+        try {
+            out.writeByte((byte) HPROF_HEAP_DUMP_SEGMENT);
+            out.writeInt(0);
+            out.writeInt((int) size);
+            writeHeapObject(oop);
+            out.flush();
+            if (stream.written() != 9 + size) {
+                throw new RuntimeException("Inconsistent size of array record: " +
+                                           stream.written() + " bytes written, " +
+                                           (9 + size) + " expected");
+            }
+        } finally {
+            out = bufferOut;
+            stream.close();
+        }
+    }
+
+    // writes the objects visited by one worker thread
+    private class SegmentVisitor extends DefaultHeapVisitor {
+        public boolean doObj(Oop oop) {
+            try {
+                long size = arrayRecordSize(oop);
+                if (size > HPROF_PARALLEL_LARGE_RECORD_SIZE) {
+                    writeLargeArray(oop, size);
+                    return false;
+                }
+                writeHeapRecordPrologue();
+                writeHeapObject(oop);
+                writeHeapRecordEpilogue();
+            } catch (IOException exp) {
+                throw new RuntimeException(exp);
+            }
+            return false;
+        }
+
+        public void epilogue() {
+            try {
+                closeSegment();
+            } catch (IOException exp) {
+                throw new RuntimeException(exp);
+            }
+        }
+    }
+
     private void fillInHeapRecordLength() throws IOException {
 
         // now get current position to calculate length
@@ -900,6 +1185,10 @@ public class HeapHprofBinWriter extends AbstractHeapGraphWriter {
     }
 
     private void writeHeader(int tag, int len) throws IOException {
+        if (sink != null && segmentStart < 0 && buffer.size() >= HPROF_PARALLEL_SEGMENT_SIZE) {
+            // top level records are written in order by a single thread
+            flushSegmentBuffer();
+        }
         out.writeByte((byte)tag);
         out.writeInt(0); // current ticks
         out.writeInt(len);
@@ -1102,4 +1391,175 @@ public class HeapHprofBinWriter extends AbstractHeapGraphWriter {
     }
 
     private Map classDataCache = new HashMap(); // <InstanceKlass, ClassData>
+
+    // Used by the parallel writer
+    private boolean parallel;
+    private boolean gzip;
+    private SegmentSink sink;
+    private SegmentBuffer buffer;
+    private int segmentStart = -1; // start of the open segment in buffer
+
+    // An unsynchronized, growable byte buffer holding the records of
+    // one thread until they are written out
+    private static class SegmentBuffer extends OutputStream {
+        private byte[] buf;
+        private int count;
+
+        SegmentBuffer(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        private void ensureCapacity(long capacity) {
+            if (capacity > buf.length) {
+                // sizes are computed in long so that an overflow is caught
+                // here instead of as an index error
+                if (capacity > Integer.MAX_VALUE - 8) {
+                    throw new RuntimeException("Heap dump buffer size overflow.");
+                }
+                buf = Arrays.copyOf(buf, (int) Math.min(Math.max(capacity, 2L * buf.length),
+                                                        Integer.MAX_VALUE - 8));
+            }
+        }
+
+        public void write(int b) {
+            ensureCapacity(count + 1L);
+            buf[count++] = (byte) b;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity((long) count + len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        void putInt(int index, int value) {
+            buf[index]     = (byte) (value >>> 24);
+            buf[index + 1] = (byte) (value >>> 16);
+            buf[index + 2] = (byte) (value >>> 8);
+            buf[index + 3] = (byte) value;
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        int size() {
+            return count;
+        }
+
+        void reset() {
+            count = 0;
+        }
+    }
+
+    // Writes blocks of the dump file at positions that are reserved
+    // atomically, so that several threads can write their segments at
+    // the same time. With gzip every block becomes a separate gzip
+    // member, compressed on the thread that wrote it.
+    private static class SegmentSink {
+        private final FileChannel channel;
+        private final boolean gzip;
+        // Guards position. Held by a thread streaming a large record for
+        // as long as the stream is open.
+        private final ReentrantLock lock = new ReentrantLock();
+        private long position;
+
+        SegmentSink(FileChannel channel, boolean gzip) {
+            this.channel = channel;
+            this.gzip = gzip;
+        }
+
+        void write(byte[] data, int length) throws IOException {
+            if (length == 0) {
+                return;
+            }
+            if (gzip) {
+                SegmentBuffer compressed = new SegmentBuffer(length / 4 + 1024);
+                GZIPOutputStream gz = new GZIPOutputStream(compressed, 64 * 1024);
+                gz.write(data, 0, length);
+                gz.close();
+                data = compressed.array();
+                length = compressed.size();
+            }
+            long pos;
+            lock.lock();
+            try {
+                pos = position;
+                position += length;
+            } finally {
+                lock.unlock();
+            }
+            ByteBuffer bb = ByteBuffer.wrap(data, 0, length);
+            while (bb.hasRemaining()) {
+                pos += channel.write(bb, pos);
+            }
+        }
+
+        // Returns a stream that writes its data in blocks which follow
+        // each other in the file. Other threads can not write until the
+        // stream is closed.
+        SegmentStream openStream() {
+            lock.lock();
+            return new SegmentStream(this);
+        }
+
+        void closeStream() {
+            lock.unlock();
+        }
+    }
+
+    // A record written in blocks of HPROF_PARALLEL_STREAM_BLOCK_SIZE
+    // bytes, see SegmentSink.openStream()
+    private static class SegmentStream extends OutputStream {
+        private final SegmentSink sink;
+        private final SegmentBuffer block = new SegmentBuffer(HPROF_PARALLEL_STREAM_BLOCK_SIZE);
+        private long written;
+        private boolean closed;
+
+        SegmentStream(SegmentSink sink) {
+            this.sink = sink;
+        }
+
+        public void write(int b) throws IOException {
+            block.write(b);
+            written++;
+            if (block.size() == HPROF_PARALLEL_STREAM_BLOCK_SIZE) {
+                flushBlock();
+            }
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, HPROF_PARALLEL_STREAM_BLOCK_SIZE - block.size());
+                block.write(b, off, n);
+                written += n;
+                off += n;
+                len -= n;
+                if (block.size() == HPROF_PARALLEL_STREAM_BLOCK_SIZE) {
+                    flushBlock();
+                }
+            }
+        }
+
+        private void flushBlock() throws IOException {
+            sink.write(block.array(), block.size());
+            block.reset();
+        }
+
+        long written() {
+            return written;
+        }
+
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                flushBlock();
+            } finally {
+                sink.closeStream();
+            }
+        }
+    }
 }
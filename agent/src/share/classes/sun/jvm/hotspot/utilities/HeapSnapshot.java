@@ -0,0 +1,467 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+
+package sun.jvm.hotspot.utilities;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import sun.jvm.hotspot.debugger.*;
+import sun.jvm.hotspot.oops.*;
+import sun.jvm.hotspot.runtime.*;
+
+/** The instance count and size of every class in a heap, with the
+    defining class loader type, for comparing heaps taken at
+    different times. A snapshot is computed from the heap of the
+    attached VM, read from an HPROF file (see HprofSnapshotReader) or
+    read back from the text format written by write(). Each input is
+    processed in a few streaming passes, and the memory needed is
+    proportional to the number of classes, not to the size of the
+    heap. <P>
+
+    For the largest types a retained size estimate is computed as
+    well: the size of the instances plus that of the primitive arrays
+    they refer to directly, each array counted once per type. The
+    arrays referred to are recorded in a Bloom filter per type, so
+    the estimate may be slightly high; the filters share a budget of
+    sun.jvm.hotspot.utilities.HeapSnapshot.filterBudget megabytes
+    (default 64). */
+
+public class HeapSnapshot {
+  private static final String MAGIC = "# SA heap snapshot 1";
+  private static final long FILTER_BUDGET_BITS =
+    Long.getLong("sun.jvm.hotspot.utilities.HeapSnapshot.filterBudget", 64) * 8 * 1024 * 1024;
+  // Bloom filter bits per element, and hash functions; about 1% false
+  // positives when the budget is not exceeded
+  private static final int BITS_PER_ELEMENT = 10;
+  private static final int NUM_HASHES = 4;
+
+  static final String BOOTSTRAP_LOADER = "<bootstrap>";
+
+  /** The objects of one class */
+  public static class Entry {
+    private String className;
+    private String loader;
+    private long   count;
+    private long   size;
+    private long   retained = -1;
+
+    Entry(String className, String loader) {
+      this.className = className;
+      this.loader = loader;
+    }
+
+    public String getClassName() { return className; }
+    /** Type of the defining class loader, or "<bootstrap>" */
+    public String getLoader()    { return loader;    }
+    public long getCount()       { return count;     }
+    public long getSize()        { return size;      }
+    /** Retained size estimate, or -1 if it was not computed */
+    public long getRetained()    { return retained;  }
+
+    void add(long count, long size) {
+      this.count += count;
+      this.size += size;
+    }
+
+    void addRetained(long size) {
+      retained = Math.max(retained, 0) + size;
+    }
+  }
+
+  private String description;
+  // Maps class name and loader to Entry
+  private Map entries = new HashMap();
+
+  HeapSnapshot(String description) {
+    this.description = description;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  /** Returns the Entries as a Collection<Entry> */
+  public Collection getEntries() {
+    return entries.values();
+  }
+
+  Entry getEntry(String className, String loader) {
+    String key = className + '\t' + loader;
+    Entry e = (Entry) entries.get(key);
+    if (e == null) {
+      e = new Entry(className, loader);
+      entries.put(key, e);
+    }
+    return e;
+  }
+
+  /** Writes this snapshot in a text format which read() understands */
+  public void write(OutputStream os) throws IOException {
+    PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(os, "UTF-8")));
+    out.println(MAGIC);
+    out.println("# " + description);
+    for (Iterator iter = entries.values().iterator(); iter.hasNext(); ) {
+      Entry e = (Entry) iter.next();
+      out.println(e.count + "\t" + e.size + "\t" + e.retained + "\t" + e.className + "\t" + e.loader);
+    }
+    out.flush();
+    if (out.checkError()) {
+      throw new IOException("error writing heap snapshot");
+    }
+  }
+
+  /** Reads a snapshot written by write() or computes one from an HPROF
+      file, which may be compressed with gzip. numTypes is the number
+      of types to compute retained size estimates for in an HPROF
+      file. */
+  public static HeapSnapshot read(File file, int numTypes) throws IOException {
+    InputStream in = new BufferedInputStream(new FileInputStream(file));
+    byte[] magic = new byte[MAGIC.length()];
+    int n;
+    try {
+      in.mark(magic.length);
+      n = in.read(magic);
+      in.reset();
+    } catch (IOException e) {
+      in.close();
+      throw e;
+    }
+    if (n == magic.length && new String(magic, "UTF-8").equals(MAGIC)) {
+      try {
+        return readText(in);
+      } finally {
+        in.close();
+      }
+    }
+    in.close();
+    return new HprofSnapshotReader(file).read(numTypes);
+  }
+
+  private static HeapSnapshot readText(InputStream is) throws IOException {
+    BufferedReader in = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+    in.readLine();
+    String line = in.readLine();
+    HeapSnapshot snapshot = new HeapSnapshot((line == null) ? "" : line.substring(2));
+    while ((line = in.readLine()) != null) {
+      String[] parts = line.split("\t");
+      if (parts.length != 5) {
+        throw new IOException("malformed heap snapshot line: " + line);
+      }
+      Entry e = snapshot.getEntry(parts[3], parts[4]);
+      e.add(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+      e.retained = Long.parseLong(parts[2]);
+    }
+    return snapshot;
+  }
+
+  /** Computes a snapshot of the heap of the attached VM, with retained
+      size estimates for the numTypes largest types */
+  public static HeapSnapshot fromHeap(ObjectHeap heap, int numTypes) {
+    HeapSnapshot snapshot = new HeapSnapshot("heap of " + VM.getVM().getVMRelease() +
+                                             " taken " + new Date());
+    ObjectHistogram histogram = new ObjectHistogram();
+    heap.iterateObjectHeadersParallel(histogram);
+    List elements = histogram.getElements();
+    // Elements are sorted by size, so the first ones are the largest
+    List types = new ArrayList();
+    for (Iterator iter = elements.iterator(); iter.hasNext(); ) {
+      ObjectHistogramElement el = (ObjectHistogramElement) iter.next();
+      Klass k = el.getKlass();
+      Entry e = snapshot.getEntry(externalName(k.getName().asString()), loaderName(k));
+      e.add(el.getCount(), el.getSize());
+      if (types.size() < numTypes && (k instanceof InstanceKlass || k instanceof ObjArrayKlass)) {
+        types.add(new TypeInfo(k, e, el.getCount(), el.getSize()));
+      }
+    }
+    if (types.isEmpty()) {
+      return snapshot;
+    }
+
+    TypeInfo[] typeArray = (TypeInfo[]) types.toArray(new TypeInfo[types.size()]);
+    long[] expected = new long[typeArray.length];
+    for (int i = 0; i < typeArray.length; i++) {
+      expected[i] = typeArray[i].expectedReferences(heap);
+    }
+    allocateFilters(typeArray, expected);
+
+    // Record the referents of the objects of the selected types, then
+    // add up the primitive arrays among them
+    CompositeHeapVisitor scan = new CompositeHeapVisitor();
+    ReferenceRecorder recorder = new ReferenceRecorder(typeArray);
+    scan.add(recorder, recorder);
+    scan.iterateParallel(heap);
+
+    scan = new CompositeHeapVisitor();
+    ArrayMatcher matcher = new ArrayMatcher(typeArray);
+    scan.add(matcher, matcher);
+    scan.iterateParallel(heap);
+    for (int i = 0; i < typeArray.length; i++) {
+      typeArray[i].entry.addRetained(typeArray[i].size + matcher.sizes[i]);
+    }
+    return snapshot;
+  }
+
+  //--------------------------------------------------------------------------------
+  // Internals only below this point
+  //
+
+  static String externalName(String internalName) {
+    return internalName.replace('/', '.');
+  }
+
+  private static String loaderName(Klass k) {
+    if (k instanceof ObjArrayKlass) {
+      k = ((ObjArrayKlass) k).getBottomKlass();
+    }
+    if (!(k instanceof InstanceKlass)) {
+      return BOOTSTRAP_LOADER;
+    }
+    Oop loader = ((InstanceKlass) k).getClassLoader();
+    if (loader == null) {
+      return BOOTSTRAP_LOADER;
+    }
+    return externalName(loader.getKlass().getName().asString());
+  }
+
+  /** Sizes the filters of the types for the expected number of
+      elements, within the budget */
+  static void allocateFilters(TypeInfo[] types, long[] expected) {
+    long total = 0;
+    for (int i = 0; i < expected.length; i++) {
+      total += Math.max(expected[i], 1) * BITS_PER_ELEMENT;
+    }
+    double scale = Math.min(1.0, (double) FILTER_BUDGET_BITS / total);
+    for (int i = 0; i < types.length; i++) {
+      types[i].filter = new AddressFilter((long) (Math.max(expected[i], 1) * BITS_PER_ELEMENT * scale));
+    }
+  }
+
+  // A selected type and the addresses its objects refer to
+  static class TypeInfo {
+    Klass         klass;
+    Entry         entry;
+    long          count;
+    long          size;
+    // The oop fields of instances, if klass is an InstanceKlass other
+    // than that of java.lang.Class
+    OopField[]    fields;
+    AddressFilter filter;
+
+    TypeInfo(Klass klass, Entry entry, long count, long size) {
+      this.klass = klass;
+      this.entry = entry;
+      this.count = count;
+      this.size = size;
+      if (klass instanceof InstanceKlass && !(klass instanceof InstanceMirrorKlass)) {
+        FieldCollector collector = new FieldCollector();
+        ((InstanceKlass) klass).iterateNonStaticFields(collector, null);
+        fields = collector.getFields();
+      }
+    }
+
+    TypeInfo(Entry entry) {
+      this.entry = entry;
+    }
+
+    long expectedReferences(ObjectHeap heap) {
+      if (fields != null) {
+        return count * fields.length;
+      }
+      // Object arrays, and mirrors whose static fields vary
+      return size / heap.getOopSize();
+    }
+  }
+
+  // A Bloom filter of addresses which can be updated concurrently
+  static class AddressFilter {
+    private AtomicLongArray words;
+    private long            numBits;
+
+    AddressFilter(long numBits) {
+      this.numBits = Math.max(64, Math.min(numBits, (long) Integer.MAX_VALUE * 64));
+      words = new AtomicLongArray((int) ((this.numBits + 63) >>> 6));
+    }
+
+    void add(long address) {
+      long h1 = mix(address);
+      long h2 = mix(h1) | 1;
+      for (int i = 0; i < NUM_HASHES; i++) {
+        long bit = ((h1 + i * h2) & Long.MAX_VALUE) % numBits;
+        int index = (int) (bit >>> 6);
+        long mask = 1L << bit;
+        long word;
+        do {
+          word = words.get(index);
+        } while ((word & mask) == 0 && !words.compareAndSet(index, word, word | mask));
+      }
+    }
+
+    boolean mightContain(long address) {
+      long h1 = mix(address);
+      long h2 = mix(h1) | 1;
+      for (int i = 0; i < NUM_HASHES; i++) {
+        long bit = ((h1 + i * h2) & Long.MAX_VALUE) % numBits;
+        if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static long mix(long h) {
+      h *= 0x9E3779B97F4A7C15L;
+      h ^= h >>> 32;
+      h *= 0x9E3779B97F4A7C15L;
+      return h ^ (h >>> 29);
+    }
+  }
+
+  // Adds the referents of the objects of the selected types to their
+  // filters
+  private static class ReferenceRecorder extends DefaultHeapVisitor
+    implements ParallelHeapVisitor, ObjectHeap.ObjectHeaderFilter {
+    private TypeInfo[] types;
+    private Debugger   dbg;
+
+    ReferenceRecorder(TypeInfo[] types) {
+      this.types = types;
+      dbg = VM.getVM().getDebugger();
+    }
+
+    public boolean canIncludeKlass(Klass k) {
+      return indexOf(types, k) >= 0;
+    }
+
+    public boolean canInclude(Klass k, OopHandle handle) {
+      return true;
+    }
+
+    public boolean doObj(Oop obj) {
+      TypeInfo type = types[indexOf(types, obj.getKlass())];
+      if (obj instanceof ObjArray) {
+        ObjArray array = (ObjArray) obj;
+        long length = array.getLength();
+        for (long i = 0; i < length; i++) {
+          record(type, array.getOopHandleAt(i));
+        }
+        return false;
+      }
+      OopField[] fields = type.fields;
+      if (fields == null) {
+        FieldCollector collector = new FieldCollector();
+        obj.iterate(collector, false);
+        fields = collector.getFields();
+      }
+      for (int i = 0; i < fields.length; i++) {
+        record(type, fields[i].getValueAsOopHandle(obj));
+      }
+      return false;
+    }
+
+    private void record(TypeInfo type, OopHandle handle) {
+      if (handle != null) {
+        type.filter.add(dbg.getAddressValue(handle));
+      }
+    }
+
+    public HeapVisitor createVisitor() {
+      return new ReferenceRecorder(types);
+    }
+
+    public void merge(HeapVisitor visitor) {}
+  }
+
+  // Adds up the sizes of the primitive arrays in the filter of each
+  // type
+  private static class ArrayMatcher extends DefaultHeapVisitor
+    implements ParallelHeapVisitor, ObjectHeap.ObjectHeaderFilter {
+    private TypeInfo[] types;
+    private Debugger   dbg;
+    long[]             sizes;
+
+    ArrayMatcher(TypeInfo[] types) {
+      this.types = types;
+      dbg = VM.getVM().getDebugger();
+      sizes = new long[types.length];
+    }
+
+    public boolean canIncludeKlass(Klass k) {
+      return k instanceof TypeArrayKlass;
+    }
+
+    public boolean canInclude(Klass k, OopHandle handle) {
+      return true;
+    }
+
+    public boolean doObj(Oop obj) {
+      long address = dbg.getAddressValue(obj.getHandle());
+      long size = -1;
+      for (int i = 0; i < types.length; i++) {
+        if (types[i].filter.mightContain(address)) {
+          if (size < 0) {
+            size = obj.getObjectSize();
+          }
+          sizes[i] += size;
+        }
+      }
+      return false;
+    }
+
+    public HeapVisitor createVisitor() {
+      return new ArrayMatcher(types);
+    }
+
+    public void merge(HeapVisitor visitor) {
+      long[] other = ((ArrayMatcher) visitor).sizes;
+      for (int i = 0; i < sizes.length; i++) {
+        sizes[i] += other[i];
+      }
+    }
+  }
+
+  private static int indexOf(TypeInfo[] types, Klass k) {
+    for (int i = 0; i < types.length; i++) {
+      if (types[i].klass.equals(k)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // Collects the oop fields of an object or klass
+  private static class FieldCollector extends DefaultOopVisitor {
+    private List fields = new ArrayList();
+
+    public void doOop(OopField field, boolean isVMField) {
+      fields.add(field);
+    }
+
+    OopField[] getFields() {
+      return (OopField[]) fields.toArray(new OopField[fields.size()]);
+    }
+  }
+}
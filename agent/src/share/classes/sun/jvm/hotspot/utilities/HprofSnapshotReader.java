@@ -0,0 +1,548 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+
+package sun.jvm.hotspot.utilities;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+/** Computes a HeapSnapshot from an HPROF file, such as one written by
+    HeapHprofBinWriter, in up to three sequential passes over the
+    file. Only per-class state is kept:
+    <UL>
+    <LI> the first pass counts the objects of every class and records
+         the class dumps and the class loader instances;
+    <LI> the second reads the names of the classes and, for the
+         largest types, records the objects they refer to in Bloom
+         filters;
+    <LI> the third adds up the primitive arrays in each filter.
+    </UL>
+    HPROF files do not contain object sizes, so they are estimated
+    from the size of the fields or elements plus an object header. */
+
+class HprofSnapshotReader {
+  private static final int HPROF_UTF8              = 0x01;
+  private static final int HPROF_LOAD_CLASS        = 0x02;
+  private static final int HPROF_HEAP_DUMP         = 0x0C;
+  private static final int HPROF_HEAP_DUMP_SEGMENT = 0x1C;
+
+  private static final int HPROF_GC_ROOT_UNKNOWN       = 0xFF;
+  private static final int HPROF_GC_ROOT_JNI_GLOBAL    = 0x01;
+  private static final int HPROF_GC_ROOT_JNI_LOCAL     = 0x02;
+  private static final int HPROF_GC_ROOT_JAVA_FRAME    = 0x03;
+  private static final int HPROF_GC_ROOT_NATIVE_STACK  = 0x04;
+  private static final int HPROF_GC_ROOT_STICKY_CLASS  = 0x05;
+  private static final int HPROF_GC_ROOT_THREAD_BLOCK  = 0x06;
+  private static final int HPROF_GC_ROOT_MONITOR_USED  = 0x07;
+  private static final int HPROF_GC_ROOT_THREAD_OBJ    = 0x08;
+  private static final int HPROF_GC_CLASS_DUMP         = 0x20;
+  private static final int HPROF_GC_INSTANCE_DUMP      = 0x21;
+  private static final int HPROF_GC_OBJ_ARRAY_DUMP     = 0x22;
+  private static final int HPROF_GC_PRIM_ARRAY_DUMP    = 0x23;
+
+  private static final int HPROF_NORMAL_OBJECT = 2;
+  private static final int HPROF_LONG          = 11;
+  // Names of the primitive array classes by basic type
+  private static final String[] PRIM_ARRAY_NAMES = {
+    null, null, null, null, "[Z", "[C", "[F", "[D", "[B", "[S", "[I", "[J"
+  };
+
+  // What is known of a class id
+  private static class ClassInfo {
+    long    nameId;
+    long    superId;
+    long    loaderId;
+    // Basic types of the instance fields declared by the class
+    byte[]  fieldTypes = new byte[0];
+    long    count;
+    long    size;
+    // Number of elements, for object array classes
+    long    elements;
+  }
+
+  private File          file;
+  private CountingInput counter;
+  private DataInputStream in;
+  private int           idSize;
+  private Map           classes = new HashMap();       // Long -> ClassInfo
+  private Set           loaderIds = new HashSet();     // Long
+  private Map           loaderClasses = new HashMap(); // Long loader id -> Long class id
+  private Map           names = new HashMap();         // Long name id -> String
+  private long[]        primCounts = new long[HPROF_LONG + 1];
+  private long[]        primSizes = new long[HPROF_LONG + 1];
+  // The types with retained size estimates; their Bloom filters and
+  // the basic types of all instance fields, in dump order
+  private Map           topTypes = new HashMap();      // Long class id -> Integer index
+  private HeapSnapshot.TypeInfo[] typeInfos = new HeapSnapshot.TypeInfo[0];
+  private byte[][]      typeFieldTypes;
+  private long[]        matchedSizes;
+  // Cache of the last class looked up while counting
+  private long          lastClassId = -1;
+  private ClassInfo     lastClass;
+
+  HprofSnapshotReader(File file) {
+    this.file = file;
+  }
+
+  HeapSnapshot read(int numTypes) throws IOException {
+    scan(1);
+    List selected = selectTopTypes(numTypes);
+    scan(2);
+
+    HeapSnapshot snapshot = new HeapSnapshot("HPROF file " + file.getPath());
+    for (Iterator iter = classes.values().iterator(); iter.hasNext(); ) {
+      ClassInfo info = (ClassInfo) iter.next();
+      if (info.count > 0) {
+        snapshot.getEntry(className(info), loaderName(info.loaderId)).add(info.count, info.size);
+      }
+    }
+    for (int t = 0; t < primCounts.length; t++) {
+      if (primCounts[t] > 0) {
+        snapshot.getEntry(PRIM_ARRAY_NAMES[t], HeapSnapshot.BOOTSTRAP_LOADER)
+          .add(primCounts[t], primSizes[t]);
+      }
+    }
+    if (selected.isEmpty()) {
+      return snapshot;
+    }
+
+    scan(3);
+    for (int i = 0; i < typeInfos.length; i++) {
+      ClassInfo info = (ClassInfo) selected.get(i);
+      snapshot.getEntry(className(info), loaderName(info.loaderId)).addRetained(info.size + matchedSizes[i]);
+    }
+    return snapshot;
+  }
+
+  //--------------------------------------------------------------------------------
+  // Internals only below this point
+  //
+
+  // Picks the largest instance and object array classes, and sizes
+  // their filters
+  private List selectTopTypes(int numTypes) {
+    List all = new ArrayList();
+    final Map ids = new HashMap(); // ClassInfo -> Long class id
+    for (Iterator iter = classes.entrySet().iterator(); iter.hasNext(); ) {
+      Map.Entry me = (Map.Entry) iter.next();
+      ClassInfo info = (ClassInfo) me.getValue();
+      if (info.count > 0) {
+        all.add(info);
+        ids.put(info, me.getKey());
+      }
+    }
+    Collections.sort(all, new Comparator() {
+        public int compare(Object o1, Object o2) {
+          long s1 = ((ClassInfo) o1).size;
+          long s2 = ((ClassInfo) o2).size;
+          return (s1 > s2) ? -1 : ((s1 < s2) ? 1 : 0);
+        }
+      });
+    List selected = all.subList(0, Math.min(numTypes, all.size()));
+    typeInfos = new HeapSnapshot.TypeInfo[selected.size()];
+    typeFieldTypes = new byte[selected.size()][];
+    matchedSizes = new long[selected.size()];
+    long[] expected = new long[selected.size()];
+    for (int i = 0; i < typeInfos.length; i++) {
+      ClassInfo info = (ClassInfo) selected.get(i);
+      typeInfos[i] = new HeapSnapshot.TypeInfo(null);
+      topTypes.put(ids.get(info), new Integer(i));
+      typeFieldTypes[i] = allFieldTypes(info);
+      int refs = 0;
+      for (int f = 0; f < typeFieldTypes[i].length; f++) {
+        if (typeFieldTypes[i][f] == HPROF_NORMAL_OBJECT) {
+          refs++;
+        }
+      }
+      expected[i] = info.elements + info.count * refs;
+    }
+    HeapSnapshot.allocateFilters(typeInfos, expected);
+    return selected;
+  }
+
+  // The basic types of the fields of an instance: those of the class
+  // first, then those of its superclasses
+  private byte[] allFieldTypes(ClassInfo info) {
+    ByteArrayOutputStream types = new ByteArrayOutputStream();
+    for (int depth = 0; info != null && depth < 1000; depth++) {
+      types.write(info.fieldTypes, 0, info.fieldTypes.length);
+      info = (info.superId == 0) ? null : (ClassInfo) classes.get(new Long(info.superId));
+    }
+    return types.toByteArray();
+  }
+
+  private String className(ClassInfo info) {
+    String name = (String) names.get(new Long(info.nameId));
+    return (name == null) ? "<unknown class>" : HeapSnapshot.externalName(name);
+  }
+
+  private String loaderName(long loaderId) {
+    if (loaderId == 0) {
+      return HeapSnapshot.BOOTSTRAP_LOADER;
+    }
+    Long classId = (Long) loaderClasses.get(new Long(loaderId));
+    ClassInfo info = (classId == null) ? null : (ClassInfo) classes.get(classId);
+    return (info == null) ? "<unknown loader>" : className(info);
+  }
+
+  private ClassInfo classFor(long classId) {
+    if (classId == lastClassId) {
+      return lastClass;
+    }
+    Long key = new Long(classId);
+    ClassInfo info = (ClassInfo) classes.get(key);
+    if (info == null) {
+      info = new ClassInfo();
+      classes.put(key, info);
+    }
+    lastClassId = classId;
+    lastClass = info;
+    return info;
+  }
+
+  private void scan(int pass) throws IOException {
+    InputStream is = new BufferedInputStream(new FileInputStream(file), 1024 * 1024);
+    try {
+      is.mark(2);
+      int b0 = is.read();
+      int b1 = is.read();
+      is.reset();
+      if (b0 == 0x1f && b1 == 0x8b) {
+        // Concatenated gzip members, as HeapHprofBinWriter writes them
+        is = new BufferedInputStream(new GZIPInputStream(is, 64 * 1024), 1024 * 1024);
+      }
+      counter = new CountingInput(is);
+      in = new DataInputStream(counter);
+      readFileHeader();
+      for (int tag = in.read(); tag >= 0; tag = in.read()) {
+        in.readInt(); // time stamp
+        long length = in.readInt() & 0xFFFFFFFFL;
+        switch (tag) {
+        case HPROF_UTF8:
+          readUtf8(pass, length);
+          break;
+        case HPROF_LOAD_CLASS:
+          if (pass == 1) {
+            in.readInt(); // serial number
+            long classId = readId();
+            in.readInt(); // stack trace serial number
+            long nameId = readId();
+            classFor(classId).nameId = nameId;
+            // Only the names of classes are kept in the second pass
+            names.put(new Long(nameId), null);
+          } else {
+            skip(length);
+          }
+          break;
+        case HPROF_HEAP_DUMP:
+        case HPROF_HEAP_DUMP_SEGMENT:
+          readHeapDump(pass, counter.count + length);
+          break;
+        default:
+          skip(length);
+          break;
+        }
+      }
+    } finally {
+      is.close();
+      in = null;
+      counter = null;
+    }
+  }
+
+  private void readFileHeader() throws IOException {
+    StringBuffer header = new StringBuffer();
+    for (int c = in.readUnsignedByte(); c != 0; c = in.readUnsignedByte()) {
+      header.append((char) c);
+      if (header.length() > 64) {
+        break;
+      }
+    }
+    if (!header.toString().startsWith("JAVA PROFILE ")) {
+      throw new IOException(file + " is neither a heap snapshot nor an HPROF file");
+    }
+    idSize = in.readInt();
+    if (idSize != 4 && idSize != 8) {
+      throw new IOException("unsupported identifier size " + idSize + " in " + file);
+    }
+    in.readLong(); // time stamp
+  }
+
+  private void readUtf8(int pass, long length) throws IOException {
+    if (pass != 2) {
+      skip(length);
+      return;
+    }
+    Long id = new Long(readId());
+    byte[] bytes = new byte[(int) (length - idSize)];
+    in.readFully(bytes);
+    if (names.containsKey(id)) {
+      names.put(id, new String(bytes, "UTF-8"));
+    }
+  }
+
+  private void readHeapDump(int pass, long end) throws IOException {
+    while (counter.count < end) {
+      int tag = in.readUnsignedByte();
+      switch (tag) {
+      case HPROF_GC_ROOT_UNKNOWN:
+      case HPROF_GC_ROOT_STICKY_CLASS:
+      case HPROF_GC_ROOT_MONITOR_USED:
+        skip(idSize);
+        break;
+      case HPROF_GC_ROOT_JNI_GLOBAL:
+        skip(2 * idSize);
+        break;
+      case HPROF_GC_ROOT_NATIVE_STACK:
+      case HPROF_GC_ROOT_THREAD_BLOCK:
+        skip(idSize + 4);
+        break;
+      case HPROF_GC_ROOT_JNI_LOCAL:
+      case HPROF_GC_ROOT_JAVA_FRAME:
+      case HPROF_GC_ROOT_THREAD_OBJ:
+        skip(idSize + 8);
+        break;
+      case HPROF_GC_CLASS_DUMP:
+        readClassDump(pass);
+        break;
+      case HPROF_GC_INSTANCE_DUMP:
+        readInstanceDump(pass);
+        break;
+      case HPROF_GC_OBJ_ARRAY_DUMP:
+        readObjArrayDump(pass);
+        break;
+      case HPROF_GC_PRIM_ARRAY_DUMP:
+        readPrimArrayDump(pass);
+        break;
+      default:
+        throw new IOException("unknown heap dump record 0x" + Integer.toHexString(tag) +
+                              " at offset " + (counter.count - 1) + " of " + file);
+      }
+    }
+  }
+
+  private void readClassDump(int pass) throws IOException {
+    long classId = readId();
+    in.readInt(); // stack trace serial number
+    long superId = readId();
+    long loaderId = readId();
+    skip(4 * idSize); // signers, protection domain, reserved
+    in.readInt(); // instance size
+    int cpCount = in.readUnsignedShort();
+    for (int i = 0; i < cpCount; i++) {
+      in.readUnsignedShort();
+      skip(valueSize(in.readUnsignedByte()));
+    }
+    int staticCount = in.readUnsignedShort();
+    for (int i = 0; i < staticCount; i++) {
+      skip(idSize);
+      skip(valueSize(in.readUnsignedByte()));
+    }
+    int fieldCount = in.readUnsignedShort();
+    byte[] fieldTypes = new byte[fieldCount];
+    for (int i = 0; i < fieldCount; i++) {
+      skip(idSize);
+      fieldTypes[i] = (byte) in.readUnsignedByte();
+      valueSize(fieldTypes[i]);
+    }
+    if (pass == 1) {
+      ClassInfo info = classFor(classId);
+      info.superId = superId;
+      info.loaderId = loaderId;
+      info.fieldTypes = fieldTypes;
+      if (loaderId != 0) {
+        loaderIds.add(new Long(loaderId));
+      }
+    }
+  }
+
+  private void readInstanceDump(int pass) throws IOException {
+    long id = readId();
+    in.readInt(); // stack trace serial number
+    long classId = readId();
+    long numBytes = in.readInt() & 0xFFFFFFFFL;
+    if (pass == 1) {
+      ClassInfo info = classFor(classId);
+      info.count++;
+      info.size += align(headerSize() + numBytes);
+      if (!loaderIds.isEmpty() && loaderIds.contains(new Long(id))) {
+        loaderClasses.put(new Long(id), new Long(classId));
+      }
+    } else if (pass == 2 && !topTypes.isEmpty()) {
+      Integer index = (Integer) topTypes.get(new Long(classId));
+      if (index != null) {
+        readReferences(index.intValue(), numBytes);
+        return;
+      }
+    }
+    skip(numBytes);
+  }
+
+  // Adds the object fields of an instance of a selected type to its
+  // filter
+  private void readReferences(int type, long numBytes) throws IOException {
+    byte[] types = typeFieldTypes[type];
+    long remaining = numBytes;
+    for (int f = 0; f < types.length && remaining > 0; f++) {
+      int size = valueSize(types[f]);
+      if (size > remaining) {
+        break;
+      }
+      if (types[f] == HPROF_NORMAL_OBJECT) {
+        long value = readId();
+        if (value != 0) {
+          typeInfos[type].filter.add(value);
+        }
+      } else {
+        skip(size);
+      }
+      remaining -= size;
+    }
+    skip(remaining);
+  }
+
+  private void readObjArrayDump(int pass) throws IOException {
+    readId();
+    in.readInt(); // stack trace serial number
+    long length = in.readInt() & 0xFFFFFFFFL;
+    long classId = readId();
+    if (pass == 1) {
+      ClassInfo info = classFor(classId);
+      info.count++;
+      info.size += align(headerSize() + 4 + length * idSize);
+      info.elements += length;
+    } else if (pass == 2 && !topTypes.isEmpty()) {
+      Integer index = (Integer) topTypes.get(new Long(classId));
+      if (index != null) {
+        HeapSnapshot.AddressFilter filter = typeInfos[index.intValue()].filter;
+        for (long i = 0; i < length; i++) {
+          long value = readId();
+          if (value != 0) {
+            filter.add(value);
+          }
+        }
+        return;
+      }
+    }
+    skip(length * idSize);
+  }
+
+  private void readPrimArrayDump(int pass) throws IOException {
+    long id = readId();
+    in.readInt(); // stack trace serial number
+    long length = in.readInt() & 0xFFFFFFFFL;
+    int type = in.readUnsignedByte();
+    int elementSize = valueSize(type);
+    if (type == HPROF_NORMAL_OBJECT) {
+      throw new IOException("object type in primitive array dump in " + file);
+    }
+    long size = align(headerSize() + 4 + length * elementSize);
+    if (pass == 1) {
+      primCounts[type]++;
+      primSizes[type] += size;
+    } else if (pass == 3) {
+      for (int i = 0; i < typeInfos.length; i++) {
+        if (typeInfos[i].filter.mightContain(id)) {
+          matchedSizes[i] += size;
+        }
+      }
+    }
+    skip(length * elementSize);
+  }
+
+  private int valueSize(int type) throws IOException {
+    switch (type) {
+    case HPROF_NORMAL_OBJECT: return idSize;
+    case 4:  return 1; // boolean
+    case 5:  return 2; // char
+    case 6:  return 4; // float
+    case 7:  return 8; // double
+    case 8:  return 1; // byte
+    case 9:  return 2; // short
+    case 10: return 4; // int
+    case HPROF_LONG: return 8;
+    }
+    throw new IOException("unknown basic type " + type + " in " + file);
+  }
+
+  private long headerSize() {
+    return 2L * idSize;
+  }
+
+  private static long align(long size) {
+    return (size + 7) & ~7L;
+  }
+
+  private long readId() throws IOException {
+    return (idSize == 4) ? (in.readInt() & 0xFFFFFFFFL) : in.readLong();
+  }
+
+  private void skip(long n) throws IOException {
+    while (n > 0) {
+      long skipped = in.skip(n);
+      if (skipped <= 0) {
+        in.readByte(); // throws EOFException at the end of the file
+        skipped = 1;
+      }
+      n -= skipped;
+    }
+  }
+
+  // Counts the bytes read, to find the end of heap dump records
+  private static class CountingInput extends FilterInputStream {
+    long count;
+
+    CountingInput(InputStream in) {
+      super(in);
+    }
+
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        count++;
+      }
+      return b;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) {
+        count += n;
+      }
+      return n;
+    }
+
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      count += skipped;
+      return skipped;
+    }
+
+    public boolean markSupported() {
+      return false;
+    }
+  }
+}
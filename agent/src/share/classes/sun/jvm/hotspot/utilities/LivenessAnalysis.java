@@ -90,6 +90,13 @@ public class LivenessAnalysis {
     Map/*<LivenessElement, LivenessElement>*/ visitedRoots =
       new IdentityHashMap/*<LivenessElement, LivenessElement>*/();
 
+    // The LivenessPathElements of the objects seen so far. ReversePtrs
+    // creates new elements for every query, but roots and paths are
+    // told apart by the identity of their elements below, so the
+    // elements of each object are fetched only once.
+    Map/*<Oop, ArrayList<LivenessPathElement>>*/ revPtrsCache =
+      new HashMap/*<Oop, ArrayList<LivenessPathElement>>*/();
+
     visitedOops.add(target);
 
     // Construct the initial LivenessPath
@@ -127,8 +134,12 @@ public class LivenessAnalysis {
       try {
         // Fetch next set of reverse pointers for the last object on
         // the list
-        ArrayList/*<LivenessPathElement>*/ nextPtrs =
-          rev.get(path.peek().getObj());
+        Oop obj = path.peek().getObj();
+        ArrayList/*<LivenessPathElement>*/ nextPtrs = (ArrayList) revPtrsCache.get(obj);
+        if (nextPtrs == null) {
+          nextPtrs = rev.get(obj);
+          revPtrsCache.put(obj, nextPtrs);
+        }
 
         // Depending on exactly what the reverse pointers analysis
         // yields, these results may be null, although currently they
@@ -171,8 +182,8 @@ public class LivenessAnalysis {
                   while (j < list.size()) {
                     LivenessPath curPath = list.get(j);
                     // We can use an object identity since these
-                    // intermediate nodes are canonicalized via the
-                    // ReversePtrsAnalysis
+                    // intermediate nodes are canonicalized via
+                    // revPtrsCache
                     if (curPath.peek() == el) {
                       list.remove(curPath);
                     } else {
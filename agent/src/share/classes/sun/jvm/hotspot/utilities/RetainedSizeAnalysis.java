@@ -0,0 +1,691 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+
+package sun.jvm.hotspot.utilities;
+
+import java.io.*;
+import java.util.*;
+import sun.jvm.hotspot.debugger.*;
+import sun.jvm.hotspot.gc_interface.*;
+import sun.jvm.hotspot.memory.*;
+import sun.jvm.hotspot.oops.*;
+import sun.jvm.hotspot.runtime.*;
+
+/** Computes the dominator tree of the object graph and from it the
+    retained size of the objects, i.e. the memory which would become
+    unreachable without them. The graph has the roots known to {@link
+    ReversePtrsAnalysis}, except weak global JNI handles. Below a
+    single super root there is one pseudo node per kind of root, so
+    that the retained size of a kind is the memory which roots of that
+    kind alone keep alive. The referents of java.lang.ref.Reference
+    objects are not followed, since they do not keep objects alive
+    either. <P>
+
+    The graph is stored in primitive arrays: objects are numbered in
+    the order they are found, and the references of all objects are
+    node numbers in one int array indexed by the first edge of every
+    node. Dominators are computed with the iterative form of the
+    Lengauer-Tarjan algorithm, so neither deep object graphs nor large
+    heaps need a deep Java stack. */
+
+public class RetainedSizeAnalysis {
+  /** Kinds of roots */
+  public static final int STACK_ROOT        = 0;
+  public static final int JNI_LOCAL_ROOT    = 1;
+  public static final int JNI_GLOBAL_ROOT   = 2;
+  public static final int STATIC_FIELD_ROOT = 3;
+  public static final int ROOT_KINDS        = 4;
+
+  private static final String[] ROOT_KIND_NAMES = {
+    "Java stack", "JNI local handle", "JNI global handle", "Static field"
+  };
+
+  /** The totals of the objects of one class. The retained size of a
+      class is the retained size of all its instances together, so an
+      instance retained by another instance of the same class is not
+      counted twice. */
+  public static class ClassSummary {
+    private Klass klass;
+    private long  count;
+    private long  shallowSize;
+    private long  retainedSize;
+
+    ClassSummary(Klass klass) {
+      this.klass = klass;
+    }
+
+    public Klass getKlass()        { return klass;        }
+    public long  getCount()        { return count;        }
+    public long  getShallowSize()  { return shallowSize;  }
+    public long  getRetainedSize() { return retainedSize; }
+  }
+
+  /** An object which is only dominated by roots */
+  public static class ObjectSummary {
+    private long  address;
+    private Klass klass;
+    private long  retainedSize;
+    private int   rootKind;
+
+    ObjectSummary(long address, Klass klass, long retainedSize, int rootKind) {
+      this.address = address;
+      this.klass = klass;
+      this.retainedSize = retainedSize;
+      this.rootKind = rootKind;
+    }
+
+    public long  getAddress()      { return address;      }
+    public Klass getKlass()        { return klass;        }
+    public long  getRetainedSize() { return retainedSize; }
+    /** The kind of the roots which keep the object alive, or -1 if
+        roots of several kinds do */
+    public int   getRootKind()     { return rootKind;     }
+  }
+
+  public RetainedSizeAnalysis() {
+  }
+
+  /** Sets an optional progress thunk */
+  public void setHeapProgressThunk(HeapProgressThunk thunk) {
+    progressThunk = thunk;
+  }
+
+  public static String getRootKindName(int kind) {
+    return ROOT_KIND_NAMES[kind];
+  }
+
+  /** Runs the analysis algorithm */
+  public void run() {
+    VM vm = VM.getVM();
+    dbg = vm.getDebugger();
+    heap = vm.getObjectHeap();
+    CollectedHeap collHeap = vm.getUniverse().heap();
+    heapBase = collHeap.reservedRegion().start();
+    heapBaseValue = dbg.getAddressValue(heapBase);
+    usedSize = collHeap.used();
+    visitedSize = 0;
+    lastNotificationFraction = 0;
+
+    if (progressThunk != null) {
+      progressThunk.heapIterationFractionUpdate(0);
+    }
+    try {
+      buildGraph();
+    } finally {
+      if (progressThunk != null) {
+        progressThunk.heapIterationComplete();
+      }
+    }
+    computeDominators();
+    computeRetainedSizes();
+    summarizeClasses();
+  }
+
+  /** Number of objects reachable from the roots */
+  public long getObjectCount() {
+    return nodeCount - FIRST_OBJECT;
+  }
+
+  /** Size of the objects reachable from the roots */
+  public long getTotalSize() {
+    return retainedSizes[0];
+  }
+
+  public long getRootCount(int kind) {
+    return rootCounts[kind];
+  }
+
+  /** The size of the objects kept alive by roots of the given kind
+      only */
+  public long getRootKindRetainedSize(int kind) {
+    return retainedSizes[1 + kind];
+  }
+
+  /** Returns the ClassSummaries in descending order of retained
+      size */
+  public List getClassSummaries() {
+    List result = new ArrayList(classSummaries);
+    Collections.sort(result, new Comparator() {
+        public int compare(Object o1, Object o2) {
+          long r1 = ((ClassSummary) o1).getRetainedSize();
+          long r2 = ((ClassSummary) o2).getRetainedSize();
+          return (r1 > r2) ? -1 : ((r1 < r2) ? 1 : 0);
+        }
+      });
+    return result;
+  }
+
+  /** Returns the top objects of the dominator tree which retain most
+      memory, in descending order of retained size */
+  public List getLargestObjects(int top) {
+    int[] largest = new int[Math.max(0, top)];
+    int found = 0;
+    for (int node = FIRST_OBJECT; node < nodeCount; node++) {
+      if (idom[node] >= FIRST_OBJECT) {
+        continue;
+      }
+      // Insertion into largest, which is kept sorted
+      long size = retainedSizes[node];
+      int pos;
+      if (found < largest.length) {
+        pos = found++;
+      } else if (found > 0 && retainedSizes[largest[found - 1]] < size) {
+        pos = found - 1;
+      } else {
+        continue;
+      }
+      while (pos > 0 && retainedSizes[largest[pos - 1]] < size) {
+        largest[pos] = largest[pos - 1];
+        pos--;
+      }
+      largest[pos] = node;
+    }
+
+    List result = new ArrayList(found);
+    for (int i = 0; i < found; i++) {
+      int node = largest[i];
+      int rootKind = (idom[node] == 0) ? -1 : idom[node] - 1;
+      Klass klass = (klassIndices[node] < 0) ? null :
+        ((ClassSummary) classSummaries.get(klassIndices[node])).getKlass();
+      result.add(new ObjectSummary(addresses[node], klass, retainedSizes[node], rootKind));
+    }
+    return result;
+  }
+
+  //---------------------------------------------------------------------------
+  // Internals only below this point
+  //
+
+  // Node 0 is the super root, nodes 1 to ROOT_KINDS stand for the
+  // kinds of roots and the objects follow
+  private static final int FIRST_OBJECT = 1 + ROOT_KINDS;
+
+  private HeapProgressThunk progressThunk;
+  private long              usedSize;
+  private long              visitedSize;
+  private double            lastNotificationFraction;
+  private static final double MINIMUM_NOTIFICATION_FRACTION = 0.01;
+  private Debugger          dbg;
+  private ObjectHeap        heap;
+  private Address           heapBase;
+  private long              heapBaseValue;
+
+  // The graph, by node number
+  private int               nodeCount;
+  private long[]            addresses;
+  private int[]             klassIndices;
+  private int[]             firstEdge;
+  private int[]             edges;
+  private int               edgeCount;
+
+  // The roots found, by kind and object node
+  private int[]             rootKinds;
+  private int[]             rootTargets;
+  private int               rootCount;
+  private long[]            rootCounts = new long[ROOT_KINDS];
+
+  // Open addressing table from object address to node number, only
+  // used while the graph is built
+  private long[]            nodeTableKeys;
+  private int[]             nodeTableValues;
+  private int               nodeTableShift;
+
+  // Classes of the objects; klassIndices points into classSummaries
+  private List              classSummaries = new ArrayList();
+  private Map               klassToIndex = new HashMap();
+
+  // The results
+  private int[]             idom;
+  private long[]            retainedSizes;
+
+  // Lengauer-Tarjan state, indexed by node except vertex, which
+  // holds the vertexCount reachable nodes by depth-first number
+  private int[]             semi;
+  private int[]             vertex;
+  private int               vertexCount;
+  private int[]             label;
+  private int[]             ancestor;
+  private int[]             path;
+
+  private void buildGraph() {
+    int capacity = 1024;
+    addresses = new long[capacity];
+    retainedSizes = new long[capacity];
+    klassIndices = new int[capacity];
+    firstEdge = new int[capacity + 1];
+    edges = new int[4 * capacity];
+    rootKinds = new int[256];
+    rootTargets = new int[256];
+    nodeTableKeys = new long[2 * capacity];
+    nodeTableValues = new int[2 * capacity];
+    nodeTableShift = 64 - Integer.numberOfTrailingZeros(nodeTableKeys.length);
+    nodeCount = FIRST_OBJECT;
+    Arrays.fill(klassIndices, 0, FIRST_OBJECT, -1);
+
+    findRoots();
+
+    // The edges of a node are recorded when the node is scanned, and
+    // nodes are scanned in the order they were found
+    firstEdge[0] = edgeCount;
+    for (int kind = 0; kind < ROOT_KINDS; kind++) {
+      addEdge(1 + kind);
+    }
+    for (int kind = 0; kind < ROOT_KINDS; kind++) {
+      firstEdge[1 + kind] = edgeCount;
+      for (int i = 0; i < rootCount; i++) {
+        if (rootKinds[i] == kind) {
+          addEdge(rootTargets[i]);
+        }
+      }
+    }
+    rootKinds = null;
+    rootTargets = null;
+
+    for (int node = FIRST_OBJECT; node < nodeCount; node++) {
+      firstEdge[node] = edgeCount;
+      scan(node);
+    }
+    firstEdge[nodeCount] = edgeCount;
+    nodeTableKeys = null;
+    nodeTableValues = null;
+  }
+
+  private void findRoots() {
+    for (JavaThread thread = VM.getVM().getThreads().first();
+         thread != null;
+         thread = thread.next()) {
+      for (StackFrameStream fst = new StackFrameStream(thread); !fst.isDone(); fst.next()) {
+        fst.getCurrent().oopsDo(new RootVisitor(STACK_ROOT), fst.getRegisterMap());
+      }
+      JNIHandleBlock handles = thread.activeHandles();
+      if (handles != null) {
+        handles.oopsDo(new RootVisitor(JNI_LOCAL_ROOT));
+      }
+    }
+
+    VM.getVM().getJNIHandles().globalHandles().oopsDo(new RootVisitor(JNI_GLOBAL_ROOT));
+
+    SystemDictionary sysDict = VM.getVM().getSystemDictionary();
+    sysDict.allClassesDo(new SystemDictionary.ClassVisitor() {
+        public void visit(Klass k) {
+          if (k instanceof InstanceKlass) {
+            final InstanceKlass ik = (InstanceKlass) k;
+            try {
+              ik.iterateStaticFields(new DefaultOopVisitor() {
+                  public void doOop(OopField field, boolean isVMField) {
+                    addRoot(STATIC_FIELD_ROOT, field.getValue(getObj()));
+                  }
+                });
+            } catch (AddressException e) {
+              System.err.println("RetainedSizeAnalysis: WARNING: AddressException at 0x" +
+                                 Long.toHexString(e.getAddress()) +
+                                 " while traversing static fields of " + ik.getName().asString());
+            } catch (UnknownOopException e) {
+              System.err.println("RetainedSizeAnalysis: WARNING: UnknownOopException while " +
+                                 "traversing static fields of " + ik.getName().asString());
+            }
+          }
+        }
+      });
+  }
+
+  private void addRoot(int kind, Oop obj) {
+    if (obj == null) {
+      return;
+    }
+    if (rootCount == rootKinds.length) {
+      rootKinds = Arrays.copyOf(rootKinds, 2 * rootCount);
+      rootTargets = Arrays.copyOf(rootTargets, 2 * rootCount);
+    }
+    rootKinds[rootCount] = kind;
+    rootTargets[rootCount] = nodeFor(obj);
+    rootCount++;
+    rootCounts[kind]++;
+  }
+
+  class RootVisitor implements AddressVisitor {
+    private int kind;
+
+    RootVisitor(int kind) {
+      this.kind = kind;
+    }
+
+    public void visitAddress(Address addr) {
+      addRoot(kind, heap.newOop(addr.getOopHandleAt(0)));
+    }
+
+    public void visitCompOopAddress(Address addr) {
+      addRoot(kind, heap.newOop(addr.getCompOopHandleAt(0)));
+    }
+  }
+
+  // Records the size and class of the object of node, and its
+  // references as the edges of node
+  private void scan(int node) {
+    try {
+      final Oop obj = heap.newOop(heapBase.addOffsetToAsOopHandle(addresses[node] - heapBaseValue));
+      Klass klass = obj.getKlass();
+      long size = obj.getObjectSize();
+      retainedSizes[node] = size;
+      klassIndices[node] = summaryFor(klass, size);
+
+      if (progressThunk != null) {
+        visitedSize += size;
+        double curFrac = (double) visitedSize / (double) usedSize;
+        if (curFrac > lastNotificationFraction + MINIMUM_NOTIFICATION_FRACTION) {
+          progressThunk.heapIterationFractionUpdate(curFrac);
+          lastNotificationFraction = curFrac;
+        }
+      }
+
+      final boolean isReference = klass instanceof InstanceRefKlass;
+      obj.iterate(new DefaultOopVisitor() {
+          public void doOop(OopField field, boolean isVMField) {
+            if (isReference && field.getID().getName().equals("referent")) {
+              return;
+            }
+            Oop next = field.getValue(obj);
+            if (next != null) {
+              addEdge(nodeFor(next));
+            }
+          }
+        }, false);
+    } catch (AddressException e) {
+      System.err.println("RetainedSizeAnalysis: WARNING: AddressException at 0x" +
+                         Long.toHexString(e.getAddress()) +
+                         " while traversing oop at 0x" + Long.toHexString(addresses[node]));
+    } catch (UnknownOopException e) {
+      System.err.println("RetainedSizeAnalysis: WARNING: UnknownOopException for " +
+                         "oop at 0x" + Long.toHexString(addresses[node]));
+    }
+  }
+
+  private int summaryFor(Klass klass, long size) {
+    Integer index = (Integer) klassToIndex.get(klass);
+    if (index == null) {
+      index = new Integer(classSummaries.size());
+      klassToIndex.put(klass, index);
+      classSummaries.add(new ClassSummary(klass));
+    }
+    ClassSummary summary = (ClassSummary) classSummaries.get(index.intValue());
+    summary.count++;
+    summary.shallowSize += size;
+    return index.intValue();
+  }
+
+  private void addEdge(int target) {
+    if (edgeCount == edges.length) {
+      edges = Arrays.copyOf(edges, grow(edges.length));
+    }
+    edges[edgeCount++] = target;
+  }
+
+  private static int grow(int length) {
+    if (length == Integer.MAX_VALUE - 8) {
+      throw new RuntimeException("RetainedSizeAnalysis: object graph too large");
+    }
+    return (int) Math.min(2L * length, Integer.MAX_VALUE - 8);
+  }
+
+  // Returns the node of obj, numbering it if it was not seen before
+  private int nodeFor(Oop obj) {
+    long address = dbg.getAddressValue(obj.getHandle());
+    int mask = nodeTableKeys.length - 1;
+    int slot = hash(address);
+    while (nodeTableKeys[slot] != 0) {
+      if (nodeTableKeys[slot] == address) {
+        return nodeTableValues[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    int node = nodeCount++;
+    if (node == addresses.length) {
+      int capacity = grow(addresses.length);
+      addresses = Arrays.copyOf(addresses, capacity);
+      retainedSizes = Arrays.copyOf(retainedSizes, capacity);
+      klassIndices = Arrays.copyOf(klassIndices, capacity);
+      firstEdge = Arrays.copyOf(firstEdge, capacity + 1);
+    }
+    addresses[node] = address;
+    klassIndices[node] = -1;
+    nodeTableKeys[slot] = address;
+    nodeTableValues[slot] = node;
+    // Keep the table at most half full
+    if (2 * (nodeCount - FIRST_OBJECT) > nodeTableKeys.length) {
+      rehash();
+    }
+    return node;
+  }
+
+  private int hash(long address) {
+    // Objects are aligned, so drop the low bits before mixing
+    return (int) (((address >>> 3) * 0x9E3779B97F4A7C15L) >>> nodeTableShift);
+  }
+
+  private void rehash() {
+    long[] oldKeys = nodeTableKeys;
+    int[] oldValues = nodeTableValues;
+    nodeTableKeys = new long[2 * oldKeys.length];
+    nodeTableValues = new int[2 * oldKeys.length];
+    nodeTableShift--;
+    int mask = nodeTableKeys.length - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != 0) {
+        int slot = hash(oldKeys[i]);
+        while (nodeTableKeys[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        nodeTableKeys[slot] = oldKeys[i];
+        nodeTableValues[slot] = oldValues[i];
+      }
+    }
+  }
+
+  private void computeDominators() {
+    int n = nodeCount;
+
+    // The predecessors of every node, filled from the end of each row
+    int[] firstPred = new int[n + 1];
+    for (int e = 0; e < edgeCount; e++) {
+      firstPred[edges[e]]++;
+    }
+    for (int v = 0; v < n; v++) {
+      firstPred[v + 1] += firstPred[v];
+    }
+    int[] preds = new int[edgeCount];
+    for (int u = 0; u < n; u++) {
+      for (int e = firstEdge[u]; e < firstEdge[u + 1]; e++) {
+        preds[--firstPred[edges[e]]] = u;
+      }
+    }
+
+    // Depth-first numbering from the super root; semi holds the
+    // number of each node until it becomes the semidominator
+    semi = new int[n];
+    vertex = new int[n];
+    int[] parent = new int[n];
+    Arrays.fill(semi, -1);
+    int[] stack = new int[n];
+    int[] nextEdge = new int[n];
+    int count = 0;
+    int sp = 0;
+    semi[0] = count;
+    vertex[count++] = 0;
+    stack[sp] = 0;
+    nextEdge[sp++] = firstEdge[0];
+    while (sp > 0) {
+      int u = stack[sp - 1];
+      int e = nextEdge[sp - 1];
+      if (e == firstEdge[u + 1]) {
+        sp--;
+        continue;
+      }
+      nextEdge[sp - 1] = e + 1;
+      int v = edges[e];
+      if (semi[v] == -1) {
+        semi[v] = count;
+        vertex[count++] = v;
+        parent[v] = u;
+        stack[sp] = v;
+        nextEdge[sp++] = firstEdge[v];
+      }
+    }
+    nextEdge = null;
+    path = stack;
+
+    label = new int[n];
+    ancestor = new int[n];
+    for (int v = 0; v < n; v++) {
+      label[v] = v;
+      ancestor[v] = -1;
+    }
+    // Nodes waiting for their semidominator to be linked, as lists
+    int[] bucketHead = new int[n];
+    int[] bucketNext = new int[n];
+    Arrays.fill(bucketHead, -1);
+    idom = new int[n];
+
+    for (int i = count - 1; i > 0; i--) {
+      int w = vertex[i];
+      for (int p = firstPred[w]; p < firstPred[w + 1]; p++) {
+        int v = preds[p];
+        if (semi[v] == -1) {
+          // Not reachable, can only happen if the graph was cut short
+          continue;
+        }
+        int u = eval(v);
+        if (semi[u] < semi[w]) {
+          semi[w] = semi[u];
+        }
+      }
+      int s = vertex[semi[w]];
+      bucketNext[w] = bucketHead[s];
+      bucketHead[s] = w;
+
+      int pw = parent[w];
+      ancestor[w] = pw;
+      for (int v = bucketHead[pw]; v != -1; v = bucketNext[v]) {
+        int u = eval(v);
+        idom[v] = (semi[u] < semi[v]) ? u : pw;
+      }
+      bucketHead[pw] = -1;
+    }
+    for (int i = 1; i < count; i++) {
+      int w = vertex[i];
+      if (idom[w] != vertex[semi[w]]) {
+        idom[w] = idom[idom[w]];
+      }
+    }
+    idom[0] = 0;
+
+    vertexCount = count;
+    semi = null;
+    label = null;
+    ancestor = null;
+    path = null;
+  }
+
+  // Returns the node with the smallest semidominator on the path from
+  // v to the root of its tree in the forest, compressing the path
+  private int eval(int v) {
+    if (ancestor[v] == -1) {
+      return v;
+    }
+    int depth = 0;
+    int u = v;
+    while (ancestor[ancestor[u]] != -1) {
+      path[depth++] = u;
+      u = ancestor[u];
+    }
+    // Compress from the top of the path down, as the recursive
+    // formulation would
+    while (depth > 0) {
+      int x = path[--depth];
+      int a = ancestor[x];
+      if (semi[label[a]] < semi[label[x]]) {
+        label[x] = label[a];
+      }
+      ancestor[x] = ancestor[a];
+    }
+    return label[v];
+  }
+
+  private void computeRetainedSizes() {
+    // A dominator always has a smaller depth-first number than the
+    // nodes it dominates
+    for (int i = vertexCount - 1; i > 0; i--) {
+      int w = vertex[i];
+      retainedSizes[idom[w]] += retainedSizes[w];
+    }
+    vertex = null;
+  }
+
+  // Sums the retained sizes of the instances of every class, skipping
+  // instances dominated by another instance of the same class
+  private void summarizeClasses() {
+    int n = nodeCount;
+    int[] firstChild = new int[n + 1];
+    for (int v = 1; v < n; v++) {
+      firstChild[idom[v]]++;
+    }
+    for (int v = 0; v < n; v++) {
+      firstChild[v + 1] += firstChild[v];
+    }
+    int[] children = new int[Math.max(0, n - 1)];
+    for (int v = n - 1; v > 0; v--) {
+      children[--firstChild[idom[v]]] = v;
+    }
+
+    int[] active = new int[classSummaries.size()];
+    int[] stack = new int[n];
+    int[] nextChild = new int[n];
+    int sp = 0;
+    stack[sp] = 0;
+    nextChild[sp++] = firstChild[0];
+    while (sp > 0) {
+      int u = stack[sp - 1];
+      int c = nextChild[sp - 1];
+      if (c == firstChild[u + 1]) {
+        if (klassIndices[u] >= 0) {
+          active[klassIndices[u]]--;
+        }
+        sp--;
+        continue;
+      }
+      nextChild[sp - 1] = c + 1;
+      int v = children[c];
+      int k = klassIndices[v];
+      if (k >= 0) {
+        if (active[k] == 0) {
+          ((ClassSummary) classSummaries.get(k)).retainedSize += retainedSizes[v];
+        }
+        active[k]++;
+      }
+      stack[sp] = v;
+      nextChild[sp++] = firstChild[v];
+    }
+  }
+}
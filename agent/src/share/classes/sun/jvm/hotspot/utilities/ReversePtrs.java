@@ -25,35 +25,71 @@
 package sun.jvm.hotspot.utilities;
 
 import java.util.*;
+import sun.jvm.hotspot.debugger.*;
 import sun.jvm.hotspot.oops.*;
+import sun.jvm.hotspot.runtime.*;
 
-/** ReversePtrs hashtable. */
+/** Reverse pointers of the heap as computed by ReversePtrsAnalysis.
+    The pointers are kept in a ReversePtrsIndex; the
+    LivenessPathElements describing them are created on demand. */
 
 public class ReversePtrs  {
-  private HashMap rp;
+  private ReversePtrsIndex index;
 
-  public ReversePtrs() {
-    rp = new HashMap();
+  public ReversePtrs(ReversePtrsIndex index) {
+    this.index = index;
   }
 
-  public void put(LivenessPathElement from, Oop to) {
-    if (to == null) return;
-    ArrayList al = (ArrayList) rp.get((Object) to);
-    if (al == null) al = new ArrayList();
-    // Inserting at the beginning is a hack to change the reported
-    // paths from LivenessAnalysis to look more like they used to;
-    // otherwise paths through the Finalizer queue to popular objects
-    // seem to be preferred
-    al.add(0, (Object) from);
-    rp.put((Object) to, (Object) al);
+  public ReversePtrsIndex getIndex() {
+    return index;
   }
 
   /** Returns an ArrayList of the incoming references to this Oop if
       it is alive, and null if it is dead according to the
       ReversePtrsAnalysis. Currently not all roots are scanned so this
       result is frequently inaccurate for JVM-internal objects, but is
-      usually correct for Java-level objects. */
+      usually correct for Java-level objects. Every call returns new
+      LivenessPathElements. */
   public ArrayList/*<LivenessPathElement>*/ get(Oop obj) {
-    return (ArrayList) rp.get((Object)obj);
+    Debugger dbg = VM.getVM().getDebugger();
+    long target = index.findTarget(dbg.getAddressValue(obj.getHandle()));
+    if (target < 0) {
+      return null;
+    }
+    ObjectHeap heap = VM.getVM().getObjectHeap();
+    long begin = index.edgesBegin(target);
+    ArrayList al = new ArrayList((int) (index.edgesEnd(target) - begin));
+    // The most recently found references come first; otherwise paths
+    // through the Finalizer queue to popular objects seem to be
+    // preferred by LivenessAnalysis
+    for (long edge = index.edgesEnd(target) - 1; edge >= begin; edge--) {
+      long from = index.sourceAt(edge);
+      if (from == 0) {
+        String desc = index.getRootDescription((int) index.fieldAt(edge));
+        al.add(new LivenessPathElement(null, new NamedFieldIdentifier(desc)));
+      } else {
+        OopHandle handle = dbg.parseAddress("0x" + Long.toHexString(from)).addOffsetToAsOopHandle(0);
+        Oop fromObj = heap.newOop(handle);
+        al.add(new LivenessPathElement(fromObj, fieldAt(fromObj, index.fieldAt(edge))));
+      }
+    }
+    return al;
+  }
+
+  // Finds the identifier of the oop field at the given offset
+  private static FieldIdentifier fieldAt(Oop obj, final long offset) {
+    if (obj instanceof ObjArray) {
+      long base = ObjArray.baseOffsetInBytes(BasicType.T_OBJECT);
+      return new IndexableFieldIdentifier((int) ((offset - base) / VM.getVM().getHeapOopSize()));
+    }
+    final FieldIdentifier[] result = new FieldIdentifier[1];
+    obj.iterate(new DefaultOopVisitor() {
+        public void doOop(OopField field, boolean isVMField) {
+          if (field.getOffset() == offset) {
+            result[0] = field.getID();
+          }
+        }
+      }, false);
+    return result[0];
   }
 }
@@ -60,8 +60,8 @@ public class ReversePtrsAnalysis {
     }
 
     VM vm = VM.getVM();
-    rp = new ReversePtrs();
-    vm.setRevPtrs(rp);
+    index = new ReversePtrsIndex();
+    dbg = vm.getDebugger();
     Universe universe = vm.getUniverse();
     CollectedHeap collHeap = universe.heap();
     usedSize = collHeap.used();
@@ -86,9 +86,30 @@ public class ReversePtrsAnalysis {
 
     // Allocate mark bits for heap
     markBits = new MarkBits(collHeap);
+    heapBase = collHeap.reservedRegion().start();
+    heapBaseValue = dbg.getAddressValue(heapBase);
+    try {
+      doRoots();
+    } finally {
+      // Whatever was found is kept, as before
+      index.finish();
+      vm.setRevPtrs(new ReversePtrs(index));
+      index = null;
+
+      if (progressThunk != null) {
+        progressThunk.heapIterationComplete();
+      }
+
+      // Clear out markBits
+      markBits = null;
+      workList = null;
+    }
+  }
+
+  private void doRoots() {
 
     // Get a hold of the object heap
-    heap = vm.getObjectHeap();
+    heap = VM.getVM().getObjectHeap();
 
     // Do each thread's roots
     for (JavaThread thread = VM.getVM().getThreads().first();
@@ -123,12 +144,13 @@ public class ReversePtrsAnalysis {
                new DefaultOopVisitor() {
                    public void doOop(OopField field, boolean isVMField) {
                      Oop next = field.getValue(getObj());
-                                                   NamedFieldIdentifier nfi = new NamedFieldIdentifier("Static field \"" +
+                     if (next != null) {
+                       int root = index.addRoot("Static field \"" +
                                                 field.getID().getName() +
                                                 "\" in class \"" +
-                                                                                                       ik.getName().asString() + "\"");
-                                                   LivenessPathElement lp = new LivenessPathElement(null, nfi);
-                     rp.put(lp, next);
+                                                ik.getName().asString() + "\"");
+                       index.addRootEdge(root, addressOf(next));
+                     }
                      try {
                        markAndTraverse(next);
                      } catch (AddressException e) {
@@ -148,13 +170,6 @@ public class ReversePtrsAnalysis {
           }
         }
       });
-
-    if (progressThunk != null) {
-      progressThunk.heapIterationComplete();
-    }
-
-    // Clear out markBits
-    markBits = null;
   }
 
 
@@ -169,7 +184,31 @@ public class ReversePtrsAnalysis {
   private ObjectHeap          heap;
   private MarkBits            markBits;
   private int                 depth; // Debugging only
-  private ReversePtrs         rp;
+  private ReversePtrsIndex    index;
+  private Debugger            dbg;
+  // Objects are kept as addresses relative to the heap base while
+  // they wait to be traversed
+  private Address             heapBase;
+  private long                heapBaseValue;
+  private long[]              workList;
+  private int                 workListSize;
+
+  private long addressOf(Oop obj) {
+    return dbg.getAddressValue(obj.getHandle());
+  }
+
+  private void push(Oop obj) {
+    if (workList == null) {
+      workList = new long[1024];
+    } else if (workListSize == workList.length) {
+      workList = Arrays.copyOf(workList, 2 * workListSize);
+    }
+    workList[workListSize++] = addressOf(obj) - heapBaseValue;
+  }
+
+  private Oop pop() {
+    return heap.newOop(heapBase.addOffsetToAsOopHandle(workList[--workListSize]));
+  }
 
   private void markAndTraverse(OopHandle handle) {
     try {
@@ -202,10 +241,9 @@ public class ReversePtrsAnalysis {
       return;
     }
 
-    // Root of work list for objects to be visited.  A simple
-    // stack for saving new objects to be analyzed.
-
-    final Stack workList = new Stack();
+    // The work list is a simple stack of the addresses of the objects
+    // still to be analyzed, so it does not keep Oops alive
+    workListSize = 0;
 
     // Next object to be visited.
     Oop next = obj;
@@ -215,6 +253,7 @@ public class ReversePtrsAnalysis {
 
       while (true) {
         final Oop currObj = next;
+        final long currObjAddress = addressOf(currObj);
 
         // For the progress meter
         if (progressThunk != null) {
@@ -242,9 +281,11 @@ public class ReversePtrsAnalysis {
           public void doOop(OopField field, boolean isVMField) {
             // "field" refers to a reference in currObj
             Oop next = field.getValue(currObj);
-            rp.put(new LivenessPathElement(currObj, field.getID()), next);
-            if ((next != null) && markBits.mark(next)) {
-              workList.push(next);
+            if (next != null) {
+              index.addEdge(currObjAddress, field.getOffset(), addressOf(next));
+              if (markBits.mark(next)) {
+                push(next);
+              }
             }
           }
         }, false);
@@ -254,10 +295,11 @@ public class ReversePtrsAnalysis {
         }
 
         // Get the next object to visit.
-        next = (Oop) workList.pop();
+        if (workListSize == 0) {
+          break;
+        }
+        next = pop();
       }
-    } catch (EmptyStackException e) {
-      // Done
     } catch (NullPointerException e) {
       System.err.println("ReversePtrs: WARNING: " + e +
         " during traversal");
@@ -275,19 +317,17 @@ public class ReversePtrsAnalysis {
 
     public void visitAddress(Address addr) {
       Oop next = heap.newOop(addr.getOopHandleAt(0));
-      LivenessPathElement lp = new LivenessPathElement(null,
-                                        new NamedFieldIdentifier(baseRootDescription +
-                                                                 " @ " + addr));
-      rp.put(lp, next);
+      if (next != null) {
+        index.addRootEdge(index.addRoot(baseRootDescription + " @ " + addr), addressOf(next));
+      }
       markAndTraverse(next);
     }
 
     public void visitCompOopAddress(Address addr) {
       Oop next = heap.newOop(addr.getCompOopHandleAt(0));
-      LivenessPathElement lp = new LivenessPathElement(null,
-                                        new NamedFieldIdentifier(baseRootDescription +
-                                                                 " @ " + addr));
-      rp.put(lp, next);
+      if (next != null) {
+        index.addRootEdge(index.addRoot(baseRootDescription + " @ " + addr), addressOf(next));
+      }
       markAndTraverse(next);
     }
 
@@ -0,0 +1,457 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+package sun.jvm.hotspot.utilities;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+/** <P> A compact index of the reverse pointers of the heap, built by
+    ReversePtrsAnalysis. Every edge is stored as three longs: the
+    address of the object pointed to, the address of the object
+    pointing to it and the offset of the field holding the pointer.
+    Edges from roots have a source address of 0 and the number of the
+    root instead of the field offset. </P>
+
+    <P> Edges are added in a streaming fashion into a run buffer. When
+    the buffer is full it is sorted by target address and written to a
+    memory-mapped temporary file. finish() merges the runs into the
+    final index, which is in compressed sparse row form: a sorted
+    array of the distinct targets, the start of the edges of each
+    target, and the sources and fields of the edges. The index is
+    kept in the Java heap if it fits into the budget and in
+    memory-mapped temporary files otherwise, so it can describe target
+    heaps much larger than the heap of the SA. </P>
+
+    <P> The budget is a quarter of the maximum heap size of the SA by
+    default and can be set in megabytes with the
+    sun.jvm.hotspot.utilities.ReversePtrsIndex.budget property. The
+    temporary files are created in java.io.tmpdir. </P> */
+
+public class ReversePtrsIndex {
+  private static final long BUDGET;
+
+  static {
+    long budgetMB = Long.getLong("sun.jvm.hotspot.utilities.ReversePtrsIndex.budget", -1);
+    if (budgetMB > 0) {
+      BUDGET = budgetMB * 1024 * 1024;
+    } else {
+      BUDGET = Runtime.getRuntime().maxMemory() / 4;
+    }
+  }
+
+  // Each edge in a run takes three longs, plus as much again for sorting
+  private static final int BYTES_PER_RUN_EDGE = 2 * 3 * 8;
+  private static final int INITIAL_RUN_CAPACITY = 64 * 1024;
+
+  public ReversePtrsIndex() {
+    maxRunSize = (int) Math.max(INITIAL_RUN_CAPACITY,
+                                Math.min(BUDGET / BYTES_PER_RUN_EDGE, Integer.MAX_VALUE - 8));
+    runTo    = new long[INITIAL_RUN_CAPACITY];
+    runFrom  = new long[INITIAL_RUN_CAPACITY];
+    runField = new long[INITIAL_RUN_CAPACITY];
+  }
+
+  /** Registers a root and returns its number for addRootEdge() */
+  public int addRoot(String description) {
+    rootDescriptions.add(description);
+    return rootDescriptions.size() - 1;
+  }
+
+  /** Records that the given root points to the object at address to */
+  public void addRootEdge(int root, long to) {
+    addEdge(0, root, to);
+  }
+
+  /** Records that the field at offset fieldOffset of the object at
+      address from points to the object at address to */
+  public void addEdge(long from, long fieldOffset, long to) {
+    if (Assert.ASSERTS_ENABLED) {
+      Assert.that(targets == null, "index is already finished");
+    }
+    if (runSize == runTo.length) {
+      if (runSize < maxRunSize) {
+        growRun();
+      } else {
+        spillRun();
+      }
+    }
+    runTo[runSize]    = to;
+    runFrom[runSize]  = from;
+    runField[runSize] = fieldOffset;
+    runSize++;
+  }
+
+  /** Builds the index; no more edges can be added afterwards */
+  public void finish() {
+    if (targets != null) {
+      return;
+    }
+    if (runs.isEmpty()) {
+      // Everything fits into the Java heap
+      sortRun();
+      numEdges = runSize;
+      targets = new HeapLongs(runSize);
+      offsets = new HeapLongs(runSize + 1);
+      sources = new HeapLongs(runSize);
+      fields  = new HeapLongs(runSize);
+      for (int i = 0; i < runSize; i++) {
+        append(i, runTo[i], runFrom[i], runField[i]);
+      }
+    } else {
+      spillRun();
+      mergeRuns();
+    }
+    offsets.put(numTargets, numEdges);
+    runTo = runFrom = runField = null;
+  }
+
+  /** Returns true if the index has been built on disk */
+  public boolean isSpilled() {
+    return targets instanceof MappedLongs;
+  }
+
+  /** Releases the temporary files of the index */
+  public void dispose() {
+    for (Iterator iter = runs.iterator(); iter.hasNext(); ) {
+      ((Run) iter.next()).longs.dispose();
+    }
+    runs.clear();
+    if (targets != null) {
+      targets.dispose();
+      offsets.dispose();
+      sources.dispose();
+      fields.dispose();
+    }
+  }
+
+  /** Number of distinct objects with incoming edges */
+  public long getNumTargets() {
+    return numTargets;
+  }
+
+  /** Number of edges in the index */
+  public long getNumEdges() {
+    return numEdges;
+  }
+
+  /** Returns the number of the target with the given address, or -1
+      if nothing points to it */
+  public long findTarget(long to) {
+    long lo = 0;
+    long hi = numTargets - 1;
+    while (lo <= hi) {
+      long mid = (lo + hi) >>> 1;
+      long val = targets.get(mid);
+      if (val < to) {
+        lo = mid + 1;
+      } else if (val > to) {
+        hi = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /** The edges of a target are numbered from edgesBegin(target) up to
+      but excluding edgesEnd(target), in the order they were added */
+  public long edgesBegin(long target) {
+    return offsets.get(target);
+  }
+
+  public long edgesEnd(long target) {
+    return offsets.get(target + 1);
+  }
+
+  /** Address of the object at the source of the edge, or 0 for roots */
+  public long sourceAt(long edge) {
+    return sources.get(edge);
+  }
+
+  /** Offset of the field at the source of the edge, or the number of
+      the root */
+  public long fieldAt(long edge) {
+    return fields.get(edge);
+  }
+
+  public String getRootDescription(int root) {
+    return (String) rootDescriptions.get(root);
+  }
+
+  //---------------------------------------------------------------------------
+  // Internals only below this point
+  //
+
+  private List   rootDescriptions = new ArrayList();
+
+  // The run being filled
+  private long[] runTo;
+  private long[] runFrom;
+  private long[] runField;
+  private int    runSize;
+  private int    maxRunSize;
+
+  // Runs written to disk
+  private List   runs = new ArrayList();
+
+  // The index in compressed sparse row form
+  private Longs  targets;
+  private Longs  offsets;
+  private Longs  sources;
+  private Longs  fields;
+  private long   numTargets;
+  private long   numEdges;
+
+  private void growRun() {
+    int capacity = (int) Math.min((long) runTo.length * 2, maxRunSize);
+    runTo    = Arrays.copyOf(runTo, capacity);
+    runFrom  = Arrays.copyOf(runFrom, capacity);
+    runField = Arrays.copyOf(runField, capacity);
+  }
+
+  // Sorts the current run by target. The sort is stable so that the
+  // edges of a target stay in the order in which they were added.
+  private void sortRun() {
+    long[] tmpTo    = new long[runSize];
+    long[] tmpFrom  = new long[runSize];
+    long[] tmpField = new long[runSize];
+    long[] srcTo = runTo, srcFrom = runFrom, srcField = runField;
+    long[] dstTo = tmpTo, dstFrom = tmpFrom, dstField = tmpField;
+    for (int width = 1; width < runSize; width *= 2) {
+      for (int lo = 0; lo < runSize; lo += 2 * width) {
+        int mid = Math.min(lo + width, runSize);
+        int hi = Math.min(lo + 2 * width, runSize);
+        int i = lo, j = mid;
+        for (int k = lo; k < hi; k++) {
+          int from = (i < mid && (j >= hi || srcTo[i] <= srcTo[j])) ? i++ : j++;
+          dstTo[k]    = srcTo[from];
+          dstFrom[k]  = srcFrom[from];
+          dstField[k] = srcField[from];
+        }
+      }
+      long[] t;
+      t = srcTo;    srcTo = dstTo;       dstTo = t;
+      t = srcFrom;  srcFrom = dstFrom;   dstFrom = t;
+      t = srcField; srcField = dstField; dstField = t;
+    }
+    if (srcTo != runTo) {
+      System.arraycopy(srcTo, 0, runTo, 0, runSize);
+      System.arraycopy(srcFrom, 0, runFrom, 0, runSize);
+      System.arraycopy(srcField, 0, runField, 0, runSize);
+    }
+  }
+
+  private void spillRun() {
+    if (runSize == 0) {
+      return;
+    }
+    sortRun();
+    MappedLongs longs = new MappedLongs(3L * runSize);
+    for (int i = 0; i < runSize; i++) {
+      longs.put(3L * i,     runTo[i]);
+      longs.put(3L * i + 1, runFrom[i]);
+      longs.put(3L * i + 2, runField[i]);
+    }
+    runs.add(new Run(longs, runSize));
+    runSize = 0;
+  }
+
+  // Merges the sorted runs into the final index. Among edges with the
+  // same target, those of earlier runs come first.
+  private void mergeRuns() {
+    long total = 0;
+    for (Iterator iter = runs.iterator(); iter.hasNext(); ) {
+      total += ((Run) iter.next()).size;
+    }
+    long bytes = 4 * 8 * total;
+    if (bytes <= BUDGET) {
+      targets = new HeapLongs(total);
+      offsets = new HeapLongs(total + 1);
+      sources = new HeapLongs(total);
+      fields  = new HeapLongs(total);
+    } else {
+      targets = new MappedLongs(total);
+      offsets = new MappedLongs(total + 1);
+      sources = new MappedLongs(total);
+      fields  = new MappedLongs(total);
+    }
+
+    // Binary heap of the runs ordered by their next target
+    Run[] heap = (Run[]) runs.toArray(new Run[runs.size()]);
+    int heapSize = heap.length;
+    for (int i = 0; i < heap.length; i++) {
+      heap[i].number = i;
+    }
+    for (int i = heapSize / 2 - 1; i >= 0; i--) {
+      siftDown(heap, heapSize, i);
+    }
+    long edge = 0;
+    while (heapSize > 0) {
+      Run run = heap[0];
+      long base = 3 * run.next;
+      append(edge++, run.longs.get(base), run.longs.get(base + 1), run.longs.get(base + 2));
+      run.next++;
+      if (run.next == run.size) {
+        run.longs.dispose();
+        heap[0] = heap[--heapSize];
+      }
+      siftDown(heap, heapSize, 0);
+    }
+    runs.clear();
+  }
+
+  private static void siftDown(Run[] heap, int heapSize, int i) {
+    while (true) {
+      int smallest = i;
+      int left = 2 * i + 1;
+      int right = left + 1;
+      if (left < heapSize && heap[left].lessThan(heap[smallest])) {
+        smallest = left;
+      }
+      if (right < heapSize && heap[right].lessThan(heap[smallest])) {
+        smallest = right;
+      }
+      if (smallest == i) {
+        return;
+      }
+      Run t = heap[i];
+      heap[i] = heap[smallest];
+      heap[smallest] = t;
+      i = smallest;
+    }
+  }
+
+  // Appends an edge to the index; edges must come sorted by target
+  private void append(long edge, long to, long from, long field) {
+    if (numTargets == 0 || targets.get(numTargets - 1) != to) {
+      targets.put(numTargets, to);
+      offsets.put(numTargets, edge);
+      numTargets++;
+    }
+    sources.put(edge, from);
+    fields.put(edge, field);
+    numEdges = edge + 1;
+  }
+
+  // A sorted run of edges stored as (to, from, field) triples
+  private static class Run {
+    MappedLongs longs;
+    long        size;
+    long        next;
+    int         number;
+
+    Run(MappedLongs longs, long size) {
+      this.longs = longs;
+      this.size = size;
+    }
+
+    long nextTarget() {
+      return longs.get(3 * next);
+    }
+
+    boolean lessThan(Run other) {
+      long to = nextTarget();
+      long otherTo = other.nextTarget();
+      return (to < otherTo) || (to == otherTo && number < other.number);
+    }
+  }
+
+  // An array of longs which may be larger than the Java heap
+  private static abstract class Longs {
+    abstract long get(long index);
+    abstract void put(long index, long value);
+    void dispose() {}
+  }
+
+  private static class HeapLongs extends Longs {
+    private long[] values;
+
+    HeapLongs(long length) {
+      values = new long[(int) length];
+    }
+
+    long get(long index)             { return values[(int) index]; }
+    void put(long index, long value) { values[(int) index] = value; }
+  }
+
+  // Longs in a memory-mapped temporary file. The file is mapped in
+  // chunks since a single mapping is limited to 2 GB.
+  private static class MappedLongs extends Longs {
+    private static final int LOG_CHUNK_LONGS = 27;
+    private static final long CHUNK_MASK = (1L << LOG_CHUNK_LONGS) - 1;
+
+    private File               file;
+    private MappedByteBuffer[] chunks;
+
+    MappedLongs(long length) {
+      RandomAccessFile raf = null;
+      try {
+        file = File.createTempFile("sa-revptrs", ".tmp");
+        file.deleteOnExit();
+        raf = new RandomAccessFile(file, "rw");
+        long bytes = Math.max(length, 1) * 8;
+        raf.setLength(bytes);
+        FileChannel channel = raf.getChannel();
+        long chunkBytes = 8L << LOG_CHUNK_LONGS;
+        chunks = new MappedByteBuffer[(int) ((bytes + chunkBytes - 1) / chunkBytes)];
+        for (int i = 0; i < chunks.length; i++) {
+          long start = i * chunkBytes;
+          chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, start,
+                                  Math.min(chunkBytes, bytes - start));
+          chunks[i].order(ByteOrder.nativeOrder());
+        }
+      } catch (IOException e) {
+        dispose();
+        throw new RuntimeException("Unable to create reverse pointer file: " + e);
+      } finally {
+        if (raf != null) {
+          try {
+            raf.close();
+          } catch (IOException e) {
+          }
+        }
+      }
+    }
+
+    long get(long index) {
+      return chunks[(int) (index >>> LOG_CHUNK_LONGS)].getLong((int) (index & CHUNK_MASK) << 3);
+    }
+
+    void put(long index, long value) {
+      chunks[(int) (index >>> LOG_CHUNK_LONGS)].putLong((int) (index & CHUNK_MASK) << 3, value);
+    }
+
+    void dispose() {
+      // The mappings go away when the buffers are collected
+      chunks = null;
+      if (file != null) {
+        file.delete();
+        file = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+
+package sun.jvm.hotspot.utilities;
+
+import java.util.*;
+import sun.jvm.hotspot.debugger.*;
+
+/** A size-bounded cache of wrapper objects keyed by the address they
+    wrap. Entries are kept in a fixed number of stripes, each of which
+    is a small LRU map, so that threads walking the heap in parallel
+    rarely contend for the same lock. A capacity of zero disables the
+    cache. */
+
+public class WrapperCache {
+  private static final int STRIPES = 16;
+
+  private final Map[] stripes;
+  private final int stripeCapacity;
+
+  public WrapperCache(int capacity) {
+    stripeCapacity = (capacity + STRIPES - 1) / STRIPES;
+    stripes = new Map[STRIPES];
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new LinkedHashMap(16, 0.75f, true) {
+          protected boolean removeEldestEntry(Map.Entry eldest) {
+            return size() > stripeCapacity;
+          }
+        };
+    }
+  }
+
+  /** Returns the wrapper cached for addr, or null */
+  public Object get(Address addr) {
+    if (stripeCapacity == 0 || addr == null) {
+      return null;
+    }
+    Map stripe = stripeFor(addr);
+    synchronized (stripe) {
+      return stripe.get(addr);
+    }
+  }
+
+  public void put(Address addr, Object wrapper) {
+    if (stripeCapacity == 0 || addr == null) {
+      return;
+    }
+    Map stripe = stripeFor(addr);
+    synchronized (stripe) {
+      stripe.put(addr, wrapper);
+    }
+  }
+
+  /** Drops all cached wrappers, e.g. after the target has run */
+  public void clear() {
+    for (int i = 0; i < STRIPES; i++) {
+      synchronized (stripes[i]) {
+        stripes[i].clear();
+      }
+    }
+  }
+
+  private Map stripeFor(Address addr) {
+    // Wrapped addresses are word aligned, so mix the upper bits in
+    int h = addr.hashCode();
+    h ^= (h >>> 16);
+    return stripes[(h ^ (h >>> 3) ^ (h >>> 7)) & (STRIPES - 1)];
+  }
+}
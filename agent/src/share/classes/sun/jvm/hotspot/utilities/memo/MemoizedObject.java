@@ -25,10 +25,11 @@
 package sun.jvm.hotspot.utilities.memo;
 
 /** A memoized object. Override {@link #computeValue} in subclasses;
-    call {@link #getValue} in using code. */
+    call {@link #getValue} in using code. Safe to share between
+    threads; the value may be computed more than once. */
 
 public abstract class MemoizedObject {
-  private boolean computed;
+  private volatile boolean computed;
   private Object value;
 
   /** Should compute the value of this memoized object. This will only
@@ -157,8 +157,10 @@ public class SOQLEngine extends JSJavaScriptEngine {
 
       // iterate thru heap, if needed
       if (q.className != null) {
+         SOQLPlan plan = SOQLPlan.create(q);
+         debugPrint(plan.toString());
          try {
-            iterateOops(kls, visitor, q.isInstanceOf);
+            iterateOops(kls, visitor, q.isInstanceOf, plan);
          } finally {
             endQuery();
          }
@@ -200,19 +202,57 @@ public class SOQLEngine extends JSJavaScriptEngine {
    }
 
    private void iterateOops(final InstanceKlass ik, final ObjectVisitor visitor,
-                            boolean includeSubtypes) {
-      ObjectHeap oh = VM.getVM().getObjectHeap();
-      oh.iterateObjectsOfKlass(new HeapVisitor() {
+                            boolean includeSubtypes, final SOQLPlan plan) {
+      HeapVisitor hv = new HeapVisitor() {
                     boolean filterExists;
                     public void prologue(long usedSize) {
                         filterExists = getScriptEngine().get("filter") != null;
                     }
                     public boolean doObj(Oop obj) {
-                       dispatchObject(obj, visitor, filterExists);
+                       dispatchObject(obj, visitor, filterExists && plan.needsScriptFilter());
                        return false;
                     }
                     public void epilogue() {}
-                 }, ik, includeSubtypes);
+                 };
+      ObjectHeap.ObjectHeaderFilter hf = plan.hasPredicates()? plan : null;
+      KlassObjectIndex index = getKlassIndex();
+      if (index != null) {
+         index.iterateObjectsOfKlass(hv, ik, includeSubtypes, hf);
+      } else {
+         ObjectHeap oh = VM.getVM().getObjectHeap();
+         oh.iterateObjectsOfKlass(hv, ik, includeSubtypes, hf);
+      }
+   }
+
+   /**
+      Sets whether queries use a KlassObjectIndex of the heap. The
+      index is built by the first query which needs it and is reused
+      by later queries against the same VM, which then visit only the
+      objects of the queried class instead of walking the heap.
+   */
+   public synchronized void setUseKlassIndex(boolean useKlassIndex) {
+      this.useKlassIndex = useKlassIndex;
+      if (! useKlassIndex) {
+         klassIndex = null;
+         klassIndexVM = null;
+      }
+   }
+
+   public synchronized boolean getUseKlassIndex() {
+      return useKlassIndex;
+   }
+
+   private KlassObjectIndex getKlassIndex() {
+      if (! useKlassIndex) {
+         return null;
+      }
+      // rebuild the index if we are attached to another VM
+      if (klassIndex == null || klassIndexVM != VM.getVM()) {
+         klassIndex = new KlassObjectIndex(VM.getVM().getObjectHeap());
+         klassIndexVM = VM.getVM();
+         debugPrint("klass index built with " + klassIndex.getObjectCount() + " objects");
+      }
+      return klassIndex;
    }
 
    // we create fresh ObjectReader and factory to avoid
@@ -261,5 +301,8 @@ public class SOQLEngine extends JSJavaScriptEngine {
 
    private ObjectReader objReader;
    private JSJavaFactory factory;
+   private boolean useKlassIndex = Boolean.getBoolean("sun.jvm.hotspot.utilities.soql.SOQLEngine.useKlassIndex");
+   private KlassObjectIndex klassIndex;
+   private VM klassIndexVM;
    private static SOQLEngine soleInstance;
 }
@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+
+package sun.jvm.hotspot.utilities.soql;
+
+import java.util.*;
+import java.util.regex.*;
+import sun.jvm.hotspot.debugger.*;
+import sun.jvm.hotspot.oops.*;
+import sun.jvm.hotspot.runtime.*;
+
+/**
+ * Query plan for the "where" clause of a SOQL query. The clause is
+ * split into its top level "&amp;&amp;" terms, and terms of the forms
+ *
+ *    &lt;identifier&gt;.&lt;field&gt; &lt;op&gt; &lt;literal&gt;
+ *    &lt;identifier&gt;.length &lt;op&gt; &lt;literal&gt;
+ *
+ * where op is one of ==, !=, &lt;, &lt;=, &gt;, &gt;= and literal is an
+ * integer, true, false or null, are tested on the object in the
+ * debuggee, before any Oop or JavaScript wrapper is created for it.
+ * Fields of type long, int, short, byte and boolean are compared with
+ * integer and boolean literals, reference fields with null, and the
+ * length of arrays with integers. <p>
+ *
+ * The plan is a prefilter: it only rejects objects for which the
+ * JavaScript expression would be false. If every term could be tested
+ * exactly for the klass of an object, the JavaScript filter is not run
+ * for that object at all; see needsScriptFilter().
+ */
+class SOQLPlan implements ObjectHeap.ObjectHeaderFilter {
+   /** Creates the plan for the where clause of q, which may be null */
+   static SOQLPlan create(SOQLQuery q) {
+      SOQLPlan plan = new SOQLPlan();
+      if (q.whereExpr == null) {
+         return plan;
+      }
+      List terms = splitConjunction(q.whereExpr);
+      if (terms == null) {
+         plan.residualTerms = 1;
+         return plan;
+      }
+      for (Iterator itr = terms.iterator(); itr.hasNext();) {
+         Predicate p = Predicate.parse(q.identifier, (String) itr.next());
+         if (p != null) {
+            plan.predicates.add(p);
+         } else {
+            plan.residualTerms++;
+         }
+      }
+      return plan;
+   }
+
+   /** Whether any part of the where clause is tested in the debuggee */
+   boolean hasPredicates() {
+      return !predicates.isEmpty();
+   }
+
+   /** Whether the JavaScript filter still has to decide on the object
+       last accepted by canInclude() */
+   boolean needsScriptFilter() {
+      return !lastExact;
+   }
+
+   public boolean canIncludeKlass(Klass k) {
+      KlassPlan kp = new KlassPlan();
+      kp.tests = new Test[predicates.size()];
+      kp.exact = (residualTerms == 0);
+      int n = 0;
+      for (Iterator itr = predicates.iterator(); itr.hasNext();) {
+         Test t = ((Predicate) itr.next()).resolve(k);
+         if (t != null) {
+            kp.tests[n++] = t;
+            kp.exact = kp.exact && t.isExact();
+         } else {
+            kp.exact = false;
+         }
+      }
+      kp.tests = Arrays.copyOf(kp.tests, n);
+      klassPlans.put(k, kp);
+      return true;
+   }
+
+   public boolean canInclude(Klass k, OopHandle handle) {
+      KlassPlan kp = (KlassPlan) klassPlans.get(k);
+      if (kp == null) {
+         canIncludeKlass(k);
+         kp = (KlassPlan) klassPlans.get(k);
+      }
+      for (int i = 0; i < kp.tests.length; i++) {
+         if (! kp.tests[i].matches(handle)) {
+            return false;
+         }
+      }
+      lastExact = kp.exact;
+      return true;
+   }
+
+   public String toString() {
+      StringBuffer buf = new StringBuffer();
+      buf.append("plan: ");
+      buf.append(predicates.size());
+      buf.append(" pushed down ");
+      buf.append(predicates);
+      buf.append(", ");
+      buf.append(residualTerms);
+      buf.append(" evaluated in script");
+      return buf.toString();
+   }
+
+   //-- Internals only below this point
+
+   private List predicates = new ArrayList();
+   private int residualTerms;
+   // Klass -> KlassPlan, filled in as klasses are seen
+   private Map klassPlans = new HashMap();
+   private boolean lastExact;
+
+   private static class KlassPlan {
+      Test[] tests;
+      // true if the tests decide the whole where clause
+      boolean exact;
+   }
+
+   // Splits expr into its top level "&&" terms. Returns null if expr
+   // is not a plain conjunction.
+   private static List splitConjunction(String expr) {
+      expr = stripParentheses(expr.replace('\n', ' ').trim());
+      List res = new ArrayList();
+      int depth = 0;
+      char quote = 0;
+      int start = 0;
+      for (int i = 0; i < expr.length(); i++) {
+         char c = expr.charAt(i);
+         if (quote != 0) {
+            if (c == '\\') {
+               i++;
+            } else if (c == quote) {
+               quote = 0;
+            }
+         } else if (c == '\'' || c == '"') {
+            quote = c;
+         } else if (c == '(' || c == '[' || c == '{') {
+            depth++;
+         } else if (c == ')' || c == ']' || c == '}') {
+            depth--;
+         } else if (depth == 0) {
+            if (expr.startsWith("&&", i)) {
+               res.add(expr.substring(start, i));
+               start = i + 2;
+               i++;
+            } else if (expr.startsWith("||", i) || c == '?' || c == ',' || c == ';') {
+               return null;
+            }
+         }
+      }
+      res.add(expr.substring(start));
+      return res;
+   }
+
+   private static String stripParentheses(String expr) {
+      while (expr.startsWith("(") && expr.endsWith(")")) {
+         int depth = 0;
+         for (int i = 0; i < expr.length(); i++) {
+            char c = expr.charAt(i);
+            if (c == '(') {
+               depth++;
+            } else if (c == ')') {
+               depth--;
+               if (depth == 0 && i != expr.length() - 1) {
+                  // the first '(' closes before the end
+                  return expr;
+               }
+            }
+         }
+         expr = expr.substring(1, expr.length() - 1).trim();
+      }
+      return expr;
+   }
+
+   private static final int EQ = 0;
+   private static final int NE = 1;
+   private static final int LT = 2;
+   private static final int LE = 3;
+   private static final int GT = 4;
+   private static final int GE = 5;
+   private static final String[] OPS = { "==", "!=", "<", "<=", ">", ">=" };
+
+   private static final List WRAPPER_PROPERTIES =
+      Arrays.asList(new String[] { "name", "frames", "monitors", "stringValue" });
+
+   private static final Pattern TERM = Pattern.compile(
+      "\\s*(\\w+)\\s*\\.\\s*(\\w+)\\s*(==|!=|<=|>=|<|>)\\s*(-?\\d+|true|false|null)\\s*");
+
+   private static boolean compare(long value, int op, long literal) {
+      switch (op) {
+      case EQ: return value == literal;
+      case NE: return value != literal;
+      case LT: return value < literal;
+      case LE: return value <= literal;
+      case GT: return value > literal;
+      case GE: return value >= literal;
+      default: return true;
+      }
+   }
+
+   // A pushed down term, before it is resolved for a particular klass
+   private static class Predicate {
+      String field;
+      int op;
+      boolean isNull;
+      long literal;
+
+      static Predicate parse(String identifier, String term) {
+         Matcher m = TERM.matcher(stripParentheses(term.trim()));
+         if (! m.matches() || ! m.group(1).equals(identifier)) {
+            return null;
+         }
+         Predicate p = new Predicate();
+         p.field = m.group(2);
+         p.op = Arrays.asList(OPS).indexOf(m.group(3));
+         String lit = m.group(4);
+         if (lit.equals("null")) {
+            if (p.op != EQ && p.op != NE) {
+               return null;
+            }
+            p.isNull = true;
+         } else if (lit.equals("true")) {
+            p.literal = 1;
+         } else if (lit.equals("false")) {
+            p.literal = 0;
+         } else {
+            try {
+               p.literal = Long.parseLong(lit);
+            } catch (NumberFormatException exp) {
+               return null;
+            }
+         }
+         return p;
+      }
+
+      // Returns the test of this term for objects of k, or null if it
+      // has to be left to the script
+      Test resolve(Klass k) {
+         if (field.equals("length") && k instanceof ArrayKlass) {
+            return isNull ? null : new LengthTest(op, literal);
+         }
+         // java.lang.Class and java.lang.Thread objects have script
+         // wrappers with properties of their own
+         if (! (k instanceof InstanceKlass) || k instanceof InstanceMirrorKlass ||
+             WRAPPER_PROPERTIES.contains(field)) {
+            return null;
+         }
+         Field fld = findInstanceField((InstanceKlass) k, field);
+         if (fld == null) {
+            return null;
+         }
+         FieldType ft = fld.getFieldType();
+         int kind;
+         if (ft.isObject() || ft.isArray()) {
+            if (! isNull) {
+               return null;
+            }
+            kind = FieldTest.OOP;
+         } else if (isNull) {
+            return null;
+         } else if (ft.isLong()) {
+            kind = FieldTest.LONG;
+         } else if (ft.isInt()) {
+            kind = FieldTest.INT;
+         } else if (ft.isShort()) {
+            kind = FieldTest.SHORT;
+         } else if (ft.isByte()) {
+            kind = FieldTest.BYTE;
+         } else if (ft.isBoolean()) {
+            kind = FieldTest.BOOLEAN;
+         } else {
+            return null;
+         }
+         return new FieldTest(kind, fld.getOffset(), op, literal);
+      }
+
+      public String toString() {
+         return field + " " + OPS[op] + " " + (isNull ? "null" : Long.toString(literal));
+      }
+
+      // Same lookup as JSJavaInstanceKlass, so that the test reads
+      // the field the script would see
+      private static Field findInstanceField(InstanceKlass k, String name) {
+         for (InstanceKlass current = k; current != null;
+              current = (InstanceKlass) current.getSuper()) {
+            List fields = current.getImmediateFields();
+            for (Iterator itr = fields.iterator(); itr.hasNext();) {
+               Field fld = (Field) itr.next();
+               if (fld.getID().getName().equals(name) && !fld.isStatic()) {
+                  return fld;
+               }
+            }
+         }
+         return null;
+      }
+   }
+
+   private static abstract class Test {
+      abstract boolean matches(OopHandle handle);
+
+      // Whether matches() agrees with the script for all values
+      boolean isExact() {
+         return true;
+      }
+   }
+
+   private static class LengthTest extends Test {
+      private int op;
+      private long literal;
+
+      LengthTest(int op, long literal) {
+         this.op = op;
+         this.literal = literal;
+      }
+
+      boolean matches(OopHandle handle) {
+         return compare(Array.getLengthForOopHandle(handle), op, literal);
+      }
+   }
+
+   private static class FieldTest extends Test {
+      static final int OOP     = 0;
+      static final int LONG    = 1;
+      static final int INT     = 2;
+      static final int SHORT   = 3;
+      static final int BYTE    = 4;
+      static final int BOOLEAN = 5;
+
+      private int kind;
+      private long offset;
+      private int op;
+      private long literal;
+
+      FieldTest(int kind, long offset, int op, long literal) {
+         this.kind = kind;
+         this.offset = offset;
+         this.op = op;
+         this.literal = literal;
+      }
+
+      boolean matches(OopHandle handle) {
+         long value;
+         switch (kind) {
+         case OOP: {
+            OopHandle ref = VM.getVM().isCompressedOopsEnabled() ?
+               handle.getCompOopHandleAt(offset) : handle.getOopHandleAt(offset);
+            // compared with null, which the literal stands for
+            value = (ref == null) ? literal : literal + 1;
+            break;
+         }
+         case LONG:    value = handle.getJLongAt(offset); break;
+         case INT:     value = handle.getJIntAt(offset); break;
+         case SHORT:   value = handle.getJShortAt(offset); break;
+         case BYTE:    value = handle.getJByteAt(offset); break;
+         case BOOLEAN: value = handle.getJBooleanAt(offset) ? 1 : 0; break;
+         default:      return true;
+         }
+         return compare(value, op, literal);
+      }
+
+      // Script numbers are doubles, which hold longs only up to 2^53
+      boolean isExact() {
+         return kind != LONG;
+      }
+   }
+}
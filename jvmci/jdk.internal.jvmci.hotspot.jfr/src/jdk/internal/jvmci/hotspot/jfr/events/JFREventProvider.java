@@ -28,6 +28,7 @@ import java.net.URISyntaxException;
 
 import jdk.internal.jvmci.hotspot.events.EmptyEventProvider.EmptyCompilationEvent;
 import jdk.internal.jvmci.hotspot.events.EmptyEventProvider.EmptyCompilerFailureEvent;
+import jdk.internal.jvmci.hotspot.events.EmptyEventProvider.EmptyDeoptimizationStormEvent;
 import jdk.internal.jvmci.hotspot.events.EventProvider;
 import jdk.internal.jvmci.service.ServiceProvider;
 
@@ -175,4 +176,44 @@ public final class JFREventProvider implements EventProvider {
         }
     }
 
+    public DeoptimizationStormEvent newDeoptimizationStormEvent() {
+        if (enabled) {
+            return new JFRDeoptimizationStormEvent();
+        }
+        return new EmptyDeoptimizationStormEvent();
+    }
+
+    /**
+     * A JFR deoptimization storm event.
+     */
+    @com.oracle.jrockit.jfr.EventDefinition(name = "Deoptimization Storm", path = "vm/compiler/deoptimization_storm")
+    public static class JFRDeoptimizationStormEvent extends com.oracle.jrockit.jfr.InstantEvent implements DeoptimizationStormEvent {
+
+        @com.oracle.jrockit.jfr.ValueDefinition(name = "Java Method") public String method;
+        @com.oracle.jrockit.jfr.ValueDefinition(name = "Recompilations", description = "Number of recompilations within the window") public int recompilations;
+        @com.oracle.jrockit.jfr.ValueDefinition(name = "Window", contentType = com.oracle.jrockit.jfr.ContentType.Millis) public long window;
+        @com.oracle.jrockit.jfr.ValueDefinition(name = "Action", description = "How compilation of the method is throttled") public String action;
+        @com.oracle.jrockit.jfr.ValueDefinition(name = "Reasons", description = "Trap counts per deoptimization reason") public String reasons;
+
+        public void setMethod(String method) {
+            this.method = method;
+        }
+
+        public void setRecompilations(int recompilations) {
+            this.recompilations = recompilations;
+        }
+
+        public void setWindow(long windowMillis) {
+            this.window = windowMillis;
+        }
+
+        public void setAction(String action) {
+            this.action = action;
+        }
+
+        public void setReasons(String reasons) {
+            this.reasons = reasons;
+        }
+    }
+
 }
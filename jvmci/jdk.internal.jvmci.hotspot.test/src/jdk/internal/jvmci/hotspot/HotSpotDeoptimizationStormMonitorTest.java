@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+
+/**
+ * @test
+ * @run junit/othervm/bootclasspath jdk.internal.jvmci.hotspot.HotSpotDeoptimizationStormMonitorTest
+ */
+
+package jdk.internal.jvmci.hotspot;
+
+import jdk.internal.jvmci.code.InstalledCode;
+import jdk.internal.jvmci.hotspot.HotSpotDeoptimizationStormMonitor.History;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the cycle counting of the compilation history kept by
+ * {@link HotSpotDeoptimizationStormMonitor}.
+ */
+public class HotSpotDeoptimizationStormMonitorTest {
+
+    private static final int THRESHOLD = 4;
+    private static final long WINDOW = 1000;
+
+    private final History history = new History(THRESHOLD, WINDOW, 0);
+
+    @Test
+    public void testRequestsWithoutDeoptimization() {
+        for (int i = 0; i < THRESHOLD * 2; i++) {
+            Assert.assertEquals(0, history.recordRequest(i, 0));
+        }
+    }
+
+    @Test
+    public void testThreshold() {
+        for (int i = 1; i <= THRESHOLD; i++) {
+            Assert.assertEquals(i, history.recordRequest(i, i));
+        }
+        // Only increases of the counts complete a cycle
+        Assert.assertEquals(THRESHOLD, history.recordRequest(THRESHOLD + 1, THRESHOLD));
+    }
+
+    @Test
+    public void testWindowExpiry() {
+        for (int i = 1; i < THRESHOLD; i++) {
+            Assert.assertEquals(i, history.recordRequest(i, i));
+        }
+        // All but the most recent cycle have left the window
+        Assert.assertEquals(2, history.recordRequest(THRESHOLD - 1 + WINDOW, THRESHOLD));
+        Assert.assertEquals(1, history.recordRequest(THRESHOLD + 1 + WINDOW * 2, THRESHOLD + 1));
+    }
+
+    @Test
+    public void testInvalidation() {
+        InstalledCode code = new InstalledCode("test");
+        code.setAddress(1);
+        history.installed(code);
+        Assert.assertEquals(0, history.recordRequest(1, 0));
+
+        code = new InstalledCode("test");
+        code.setAddress(1);
+        history.installed(code);
+        code.setAddress(0);
+        Assert.assertEquals(1, history.recordRequest(2, 0));
+        // The invalidated code only completes the cycle of the request that followed it
+        Assert.assertEquals(1, history.recordRequest(3, 0));
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+/**
+ * @test
+ * @run junit/othervm/bootclasspath jdk.internal.jvmci.hotspot.HotSpotReplayLogTest
+ */
+
+package jdk.internal.jvmci.hotspot;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import jdk.internal.jvmci.meta.MetaAccessProvider;
+import jdk.internal.jvmci.meta.ResolvedJavaMethod;
+import jdk.internal.jvmci.runtime.JVMCI;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that values and logs written by {@link HotSpotReplayLog} are read back unchanged.
+ */
+public class HotSpotReplayLogTest {
+
+    private static final MetaAccessProvider metaAccess = JVMCI.getRuntime().getHostJVMCIBackend().getMetaAccess();
+
+    private static HotSpotReplayLog newLog() {
+        HotSpotReplayLog log = new HotSpotReplayLog();
+        log.setClassLoader(HotSpotReplayLogTest.class.getClassLoader());
+        return log;
+    }
+
+    private static String encode(Object value) {
+        String encoded = HotSpotReplayLog.encode(value);
+        Assert.assertNotNull("cannot encode " + value, encoded);
+        Assert.assertFalse(encoded, encoded.contains(" "));
+        Assert.assertFalse(encoded, encoded.contains("\n"));
+        Assert.assertFalse(encoded, encoded.contains("|"));
+        return encoded;
+    }
+
+    private static Object roundTrip(Object value) {
+        return newLog().decode(encode(value));
+    }
+
+    @Test
+    public void testPrimitives() {
+        Assert.assertNull(roundTrip(null));
+        Assert.assertEquals(Boolean.TRUE, roundTrip(true));
+        Assert.assertEquals(Boolean.FALSE, roundTrip(false));
+        Assert.assertEquals((byte) -3, roundTrip((byte) -3));
+        Assert.assertEquals(Integer.MIN_VALUE, roundTrip(Integer.MIN_VALUE));
+        Assert.assertEquals(-7L, roundTrip(-7L));
+    }
+
+    @Test
+    public void testStrings() {
+        for (String s : new String[]{"", "plain", "with space", "a|b", "back\\slash", "\\u0041", "line\nbreak", "caf\u00e9 \u2603", "9:x"}) {
+            Assert.assertEquals(s, roundTrip(s));
+        }
+    }
+
+    @Test
+    public void testArrays() {
+        long[] longs = {0L, -1L, Long.MAX_VALUE, Long.MIN_VALUE};
+        Assert.assertArrayEquals(longs, (long[]) roundTrip(longs));
+        Assert.assertArrayEquals(new long[0], (long[]) roundTrip(new long[0]));
+        byte[] bytes = {0, -1, 127, -128, 16};
+        Assert.assertArrayEquals(bytes, (byte[]) roundTrip(bytes));
+        Assert.assertArrayEquals(new byte[0], (byte[]) roundTrip(new byte[0]));
+    }
+
+    @Test
+    public void testExceptions() {
+        for (String message : new String[]{"plain", "a|b with space", "3:x"}) {
+            Object decoded = roundTrip(new IllegalArgumentException(message));
+            Assert.assertEquals(IllegalArgumentException.class, decoded.getClass());
+            Assert.assertEquals(message, ((Throwable) decoded).getMessage());
+        }
+    }
+
+    @Test
+    public void testTypes() {
+        for (Class<?> c : new Class<?>[]{Object.class, Map.Entry.class, int[].class, String[][].class, HotSpotReplayLogTest.class}) {
+            Object type = metaAccess.lookupJavaType(c);
+            Assert.assertEquals(type, roundTrip(type));
+        }
+    }
+
+    static class $Odd$Name {
+        $Odd$Name() {
+        }
+
+        void $method$(int[] a, $Odd$Name b) {
+        }
+    }
+
+    @Test
+    public void testMethods() throws Exception {
+        java.lang.reflect.Executable[] executables = {
+                        String.class.getMethod("indexOf", String.class, int.class),
+                        ArrayList.class.getConstructor(int.class),
+                        Map.Entry.class.getMethod("getKey"),
+                        $Odd$Name.class.getDeclaredConstructor(),
+                        $Odd$Name.class.getDeclaredMethod("$method$", int[].class, $Odd$Name.class)};
+        for (java.lang.reflect.Executable e : executables) {
+            ResolvedJavaMethod method = metaAccess.lookupJavaMethod(e);
+            Assert.assertEquals(method, roundTrip(method));
+        }
+    }
+
+    @Test
+    public void testWriteRead() throws Exception {
+        ResolvedJavaMethod method = metaAccess.lookupJavaMethod(String.class.getMethod("indexOf", String.class, int.class));
+        HotSpotReplayLog log = newLog();
+        log.method = encode(method);
+        log.entryBCI = 12;
+        log.compileId = 345;
+        log.classPath = "dir with space" + File.pathSeparator + "jar|with|bars.jar";
+        log.config.put("someFlag", encode(true));
+
+        String key = HotSpotReplayLog.key("lookupNameInPool", "a b", 7);
+        log.record(key, encode("first answer"));
+        log.record(key, encode("second answer"));
+        String methodKey = HotSpotReplayLog.key("getBytecode", method);
+        log.record(methodKey, encode(new byte[]{1, 2, 3}));
+
+        File file = File.createTempFile("replay", ".log");
+        try {
+            log.write(file);
+            HotSpotReplayLog read = HotSpotReplayLog.read(file);
+            read.setClassLoader(HotSpotReplayLogTest.class.getClassLoader());
+
+            Assert.assertEquals(method, read.decode(read.method));
+            Assert.assertEquals(12, read.entryBCI);
+            Assert.assertEquals(345, read.compileId);
+            Assert.assertEquals(log.classPath, read.classPath);
+            Assert.assertEquals(log.config, read.config);
+            Assert.assertEquals(3, read.size());
+
+            // Answers are replayed in order until they run out
+            Assert.assertEquals("first answer", read.decode(read.replay(key)));
+            Assert.assertEquals("second answer", read.decode(read.replay(key)));
+            Assert.assertNull(read.replay(key));
+            Assert.assertTrue(Arrays.equals(new byte[]{1, 2, 3}, (byte[]) read.decode(read.replay(methodKey))));
+            Assert.assertNull(read.replay("neverRecorded"));
+
+            read.rewind();
+            Assert.assertEquals("first answer", read.decode(read.replay(key)));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsOtherFiles() throws IOException {
+        File file = File.createTempFile("replay", ".log");
+        try {
+            Files.write(file.toPath(), Arrays.asList("# not a replay log"));
+            HotSpotReplayLog.read(file);
+        } finally {
+            file.delete();
+        }
+    }
+}
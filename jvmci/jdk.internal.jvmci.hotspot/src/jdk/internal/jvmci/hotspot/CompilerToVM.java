@@ -24,6 +24,8 @@
 package jdk.internal.jvmci.hotspot;
 
 import static jdk.internal.jvmci.hotspot.HotSpotJVMCIRuntime.runtime;
+import static jdk.internal.jvmci.hotspot.HotSpotVMConfig.config;
+import static jdk.internal.jvmci.hotspot.UnsafeAccess.UNSAFE;
 import static jdk.internal.jvmci.inittimer.InitTimer.timer;
 
 import java.lang.reflect.Constructor;
@@ -44,8 +46,12 @@ import sun.misc.Unsafe;
  * Calls from Java into HotSpot. The behavior of all the methods in this class that take a native
  * pointer as an argument (e.g., {@link #getSymbol(long)}) is undefined if the argument does not
  * denote a valid native object.
+ *
+ * This class is subclassed by {@link HotSpotCompilationRecorder} and
+ * {@link HotSpotCompilationReplayer} to capture and replay the answers given by the VM during a
+ * compilation.
  */
-public final class CompilerToVM {
+public class CompilerToVM {
     /**
      * Initializes the native part of the JVMCI runtime.
      */
@@ -70,6 +76,40 @@ public final class CompilerToVM {
         return runtime().getCompilerToVM();
     }
 
+    /**
+     * Gets the address of the {@code MethodData} for {@code method}.
+     *
+     * @return 0 if {@code method} has no {@code MethodData}
+     */
+    long getMetaspaceMethodData(HotSpotResolvedJavaMethodImpl method) {
+        return UNSAFE.getAddress(method.getMetaspacePointer() + config().methodDataOffset);
+    }
+
+    /**
+     * Gets the first subclass of {@code type}, i.e. the value of its {@code Klass::_subklass}
+     * field.
+     *
+     * @return {@code null} if {@code type} has no subclass
+     */
+    HotSpotResolvedObjectTypeImpl getSubklass(HotSpotResolvedObjectTypeImpl type) {
+        return getResolvedJavaType(type, config().subklassOffset, false);
+    }
+
+    /**
+     * Determines if the {@code Klass::_next_sibling} field of {@code type} is non-zero, i.e. if its
+     * superclass has another subclass.
+     */
+    boolean hasNextSibling(HotSpotResolvedObjectTypeImpl type) {
+        return UNSAFE.getAddress(type.getMetaspaceKlass() + config().nextSiblingOffset) != 0;
+    }
+
+    /**
+     * Gets the value of the {@code InstanceKlass::_init_state} field of {@code type}.
+     */
+    int getInitState(HotSpotResolvedObjectTypeImpl type) {
+        return UNSAFE.getByte(type.getMetaspaceKlass() + config().instanceKlassInitStateOffset) & 0xFF;
+    }
+
     /**
      * Copies the original bytecode of {@code method} into a new byte array and returns it.
      *
@@ -482,6 +522,14 @@ public final class CompilerToVM {
      */
     native void reprofile(HotSpotResolvedJavaMethodImpl method);
 
+    /**
+     * Records why the compilation associated with {@code jvmciEnv} does not produce code. The
+     * compile broker reports the compilation as failed with this reason, like a bailout.
+     *
+     * @param jvmciEnv pointer to the native {@code JVMCIEnv} of the compilation request
+     */
+    native void setCompilationFailure(long jvmciEnv, String reason);
+
     /**
      * Invalidates {@code installedCode} such that {@link InvalidInstalledCodeException} will be
      * raised the next time {@code installedCode} is executed.
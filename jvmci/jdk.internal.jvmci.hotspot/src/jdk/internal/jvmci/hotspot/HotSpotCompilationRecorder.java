@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package jdk.internal.jvmci.hotspot;
+
+import static jdk.internal.jvmci.hotspot.HotSpotVMConfig.config;
+
+import java.io.File;
+import java.io.IOException;
+
+import jdk.internal.jvmci.hotspot.HotSpotReplayLog.MethodDataOffset;
+
+/**
+ * A {@link CompilerToVM} that records the answers the VM gives to the queries of selected
+ * compilations into a {@link HotSpotReplayLog}. A compilation is recorded if its method matches the
+ * {@code jvmci.replay.capture} system property and the log is written to the directory named by
+ * the {@code jvmci.replay.dir} system property. Queries made by threads other than the one
+ * performing a recorded compilation are not recorded.
+ *
+ * While a compilation is being recorded, it sees a snapshot of each profile it reads so that
+ * profile updates made by concurrently executing code are not visible to the compiler. This is
+ * what allows {@link HotSpotCompilationReplayer} to reproduce the compilation.
+ */
+final class HotSpotCompilationRecorder extends CompilerToVM {
+
+    private final String filter;
+    private final File directory;
+    private final ThreadLocal<HotSpotReplayLog> currentLog = new ThreadLocal<>();
+
+    HotSpotCompilationRecorder(String filter, File directory) {
+        this.filter = filter;
+        this.directory = directory;
+    }
+
+    /**
+     * Starts recording the compilation of {@code method} on the current thread if it matches the
+     * capture filter.
+     *
+     * @return {@code true} if the compilation is being recorded
+     */
+    boolean beginCompilation(HotSpotResolvedJavaMethod method, int entryBCI, int id) {
+        if (!method.format("%H.%n").contains(filter)) {
+            return false;
+        }
+        HotSpotReplayLog log = new HotSpotReplayLog();
+        log.method = HotSpotReplayLog.encode(method);
+        log.entryBCI = entryBCI;
+        log.compileId = id;
+        log.classPath = System.getProperty("java.class.path");
+        currentLog.set(log);
+        return true;
+    }
+
+    /**
+     * Stops recording on the current thread, writes the log and releases the profile snapshots
+     * taken for the compilation.
+     */
+    void endCompilation() {
+        HotSpotReplayLog log = currentLog.get();
+        currentLog.set(null);
+        File file = new File(directory, "jvmci_replay_" + log.compileId + ".log");
+        String message;
+        try {
+            log.recordConfig(config());
+            log.write(file);
+            message = String.format("Wrote JVMCI replay log for compilation %d to %s (%d answers)%n", log.compileId, file, log.size());
+        } catch (IOException e) {
+            message = String.format("Could not write JVMCI replay log %s: %s%n", file, e);
+        } finally {
+            log.dispose();
+        }
+        byte[] bytes = message.getBytes();
+        writeDebugOutput(bytes, 0, bytes.length);
+        flushDebugOutput();
+    }
+
+    /**
+     * Records {@code result} as the answer to {@code query}. Encoding the arguments may itself
+     * query the VM so recording is suspended while doing so.
+     */
+    private <T> T record(T result, String query, Object... args) {
+        HotSpotReplayLog log = currentLog.get();
+        if (log != null) {
+            currentLog.set(null);
+            try {
+                String key = HotSpotReplayLog.key(query, args);
+                String value = HotSpotReplayLog.encode(result);
+                if (key != null && value != null) {
+                    log.record(key, value);
+                }
+            } finally {
+                currentLog.set(log);
+            }
+        }
+        return result;
+    }
+
+    private MethodDataOffset toMethodDataOffset(long address) {
+        HotSpotReplayLog log = currentLog.get();
+        return log == null ? null : log.toMethodDataOffset(address);
+    }
+
+    private long toOriginalMethodData(long address) {
+        HotSpotReplayLog log = currentLog.get();
+        return log == null ? address : log.toOriginalMethodData(address);
+    }
+
+    @Override
+    long getMetaspaceMethodData(HotSpotResolvedJavaMethodImpl method) {
+        long metaspaceMethodData = super.getMetaspaceMethodData(method);
+        HotSpotReplayLog log = currentLog.get();
+        if (log == null) {
+            return metaspaceMethodData;
+        } else if (metaspaceMethodData == 0L) {
+            return record(0L, "getMetaspaceMethodData", method);
+        }
+        return log.snapshotMethodData(method, metaspaceMethodData);
+    }
+
+    @Override
+    byte[] getBytecode(HotSpotResolvedJavaMethodImpl method) {
+        return record(super.getBytecode(method), "getBytecode", method);
+    }
+
+    @Override
+    int getExceptionTableLength(HotSpotResolvedJavaMethodImpl method) {
+        return record(super.getExceptionTableLength(method), "getExceptionTableLength", method);
+    }
+
+    @Override
+    boolean hasBalancedMonitors(HotSpotResolvedJavaMethodImpl method) {
+        return record(super.hasBalancedMonitors(method), "hasBalancedMonitors", method);
+    }
+
+    @Override
+    boolean canInlineMethod(HotSpotResolvedJavaMethodImpl method) {
+        return record(super.canInlineMethod(method), "canInlineMethod", method);
+    }
+
+    @Override
+    boolean shouldInlineMethod(HotSpotResolvedJavaMethodImpl method) {
+        return record(super.shouldInlineMethod(method), "shouldInlineMethod", method);
+    }
+
+    @Override
+    HotSpotResolvedJavaMethodImpl findUniqueConcreteMethod(HotSpotResolvedObjectTypeImpl actualHolderType, HotSpotResolvedJavaMethodImpl method) {
+        return record(super.findUniqueConcreteMethod(actualHolderType, method), "findUniqueConcreteMethod", actualHolderType, method);
+    }
+
+    @Override
+    HotSpotResolvedObjectTypeImpl getImplementor(HotSpotResolvedObjectTypeImpl type) {
+        return record(super.getImplementor(type), "getImplementor", type);
+    }
+
+    @Override
+    boolean methodIsIgnoredBySecurityStackWalk(HotSpotResolvedJavaMethodImpl method) {
+        return record(super.methodIsIgnoredBySecurityStackWalk(method), "methodIsIgnoredBySecurityStackWalk", method);
+    }
+
+    @Override
+    HotSpotResolvedObjectTypeImpl lookupType(String name, Class<?> accessingClass, boolean resolve) {
+        return record(super.lookupType(name, accessingClass, resolve), "lookupType", name, HotSpotResolvedObjectTypeImpl.fromObjectClass(accessingClass), resolve);
+    }
+
+    @Override
+    Object resolveConstantInPool(HotSpotConstantPool constantPool, int cpi) {
+        return record(super.resolveConstantInPool(constantPool, cpi), "resolveConstantInPool", constantPool, cpi);
+    }
+
+    @Override
+    Object resolvePossiblyCachedConstantInPool(HotSpotConstantPool constantPool, int cpi) {
+        return record(super.resolvePossiblyCachedConstantInPool(constantPool, cpi), "resolvePossiblyCachedConstantInPool", constantPool, cpi);
+    }
+
+    @Override
+    int lookupNameAndTypeRefIndexInPool(HotSpotConstantPool constantPool, int cpi) {
+        return record(super.lookupNameAndTypeRefIndexInPool(constantPool, cpi), "lookupNameAndTypeRefIndexInPool", constantPool, cpi);
+    }
+
+    @Override
+    String lookupNameInPool(HotSpotConstantPool constantPool, int which) {
+        return record(super.lookupNameInPool(constantPool, which), "lookupNameInPool", constantPool, which);
+    }
+
+    @Override
+    String lookupSignatureInPool(HotSpotConstantPool constantPool, int which) {
+        return record(super.lookupSignatureInPool(constantPool, which), "lookupSignatureInPool", constantPool, which);
+    }
+
+    @Override
+    int lookupKlassRefIndexInPool(HotSpotConstantPool constantPool, int cpi) {
+        return record(super.lookupKlassRefIndexInPool(constantPool, cpi), "lookupKlassRefIndexInPool", constantPool, cpi);
+    }
+
+    @Override
+    Object lookupKlassInPool(HotSpotConstantPool constantPool, int cpi) {
+        return record(super.lookupKlassInPool(constantPool, cpi), "lookupKlassInPool", constantPool, cpi);
+    }
+
+    @Override
+    HotSpotResolvedJavaMethodImpl lookupMethodInPool(HotSpotConstantPool constantPool, int cpi, byte opcode) {
+        return record(super.lookupMethodInPool(constantPool, cpi, opcode), "lookupMethodInPool", constantPool, cpi, opcode);
+    }
+
+    @Override
+    HotSpotResolvedObjectTypeImpl resolveTypeInPool(HotSpotConstantPool constantPool, int cpi) throws LinkageError {
+        try {
+            return record(super.resolveTypeInPool(constantPool, cpi), "resolveTypeInPool", constantPool, cpi);
+        } catch (LinkageError e) {
+            record(e, "resolveTypeInPool", constantPool, cpi);
+            throw e;
+        }
+    }
+
+    @Override
+    HotSpotResolvedObjectTypeImpl resolveFieldInPool(HotSpotConstantPool constantPool, int cpi, byte opcode, long[] info) {
+        HotSpotResolvedObjectTypeImpl result = super.resolveFieldInPool(constantPool, cpi, opcode, info);
+        record(info.clone(), "resolveFieldInPool.info", constantPool, cpi, opcode);
+        return record(result, "resolveFieldInPool", constantPool, cpi, opcode);
+    }
+
+    @Override
+    int constantPoolRemapInstructionOperandFromCache(HotSpotConstantPool constantPool, int cpci) {
+        return record(super.constantPoolRemapInstructionOperandFromCache(constantPool, cpci), "constantPoolRemapInstructionOperandFromCache", constantPool, cpci);
+    }
+
+    @Override
+    HotSpotResolvedJavaMethodImpl resolveMethod(HotSpotResolvedObjectTypeImpl exactReceiver, HotSpotResolvedJavaMethodImpl method, HotSpotResolvedObjectTypeImpl caller) {
+        return record(super.resolveMethod(exactReceiver, method, caller), "resolveMethod", exactReceiver, method, caller);
+    }
+
+    @Override
+    HotSpotResolvedJavaMethodImpl getClassInitializer(HotSpotResolvedObjectTypeImpl type) {
+        return record(super.getClassInitializer(type), "getClassInitializer", type);
+    }
+
+    @Override
+    HotSpotResolvedObjectTypeImpl getSubklass(HotSpotResolvedObjectTypeImpl type) {
+        return record(super.getSubklass(type), "getSubklass", type);
+    }
+
+    @Override
+    boolean hasNextSibling(HotSpotResolvedObjectTypeImpl type) {
+        return record(super.hasNextSibling(type), "hasNextSibling", type);
+    }
+
+    @Override
+    int getInitState(HotSpotResolvedObjectTypeImpl type) {
+        return record(super.getInitState(type), "getInitState", type);
+    }
+
+    @Override
+    boolean hasFinalizableSubclass(HotSpotResolvedObjectTypeImpl type) {
+        return record(super.hasFinalizableSubclass(type), "hasFinalizableSubclass", type);
+    }
+
+    @Override
+    long[] getLineNumberTable(HotSpotResolvedJavaMethodImpl method) {
+        return record(super.getLineNumberTable(method), "getLineNumberTable", method);
+    }
+
+    @Override
+    int getLocalVariableTableLength(HotSpotResolvedJavaMethodImpl method) {
+        return record(super.getLocalVariableTableLength(method), "getLocalVariableTableLength", method);
+    }
+
+    @Override
+    boolean isMature(long metaspaceMethodData) {
+        boolean result = super.isMature(toOriginalMethodData(metaspaceMethodData));
+        MethodDataOffset position = toMethodDataOffset(metaspaceMethodData);
+        if (position != null) {
+            record(result, "isMature", position);
+        }
+        return result;
+    }
+
+    @Override
+    boolean hasCompiledCodeForOSR(HotSpotResolvedJavaMethodImpl method, int entryBCI, int level) {
+        return record(super.hasCompiledCodeForOSR(method, entryBCI, level), "hasCompiledCodeForOSR", method, entryBCI, level);
+    }
+
+    @Override
+    int getVtableIndexForInterfaceMethod(HotSpotResolvedObjectTypeImpl type, HotSpotResolvedJavaMethodImpl method) {
+        return record(super.getVtableIndexForInterfaceMethod(type, method), "getVtableIndexForInterfaceMethod", type, method);
+    }
+
+    @Override
+    public boolean shouldDebugNonSafepoints() {
+        return record(super.shouldDebugNonSafepoints(), "shouldDebugNonSafepoints");
+    }
+
+    @Override
+    HotSpotResolvedJavaMethodImpl getResolvedJavaMethod(Object base, long displacement) {
+        HotSpotResolvedJavaMethodImpl result = super.getResolvedJavaMethod(base, displacement);
+        if (base == null) {
+            MethodDataOffset position = toMethodDataOffset(displacement);
+            if (position != null) {
+                record(result, "getResolvedJavaMethod", position);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    HotSpotResolvedObjectTypeImpl getResolvedJavaType(Object base, long displacement, boolean compressed) {
+        HotSpotResolvedObjectTypeImpl result = super.getResolvedJavaType(base, displacement, compressed);
+        if (base == null) {
+            MethodDataOffset position = toMethodDataOffset(displacement);
+            if (position != null) {
+                record(result, "getResolvedJavaType", position, compressed);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    int methodDataProfileDataSize(long metaspaceMethodData, int position) {
+        int result = super.methodDataProfileDataSize(toOriginalMethodData(metaspaceMethodData), position);
+        MethodDataOffset methodData = toMethodDataOffset(metaspaceMethodData);
+        if (methodData != null) {
+            record(result, "methodDataProfileDataSize", methodData, position);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package jdk.internal.jvmci.hotspot;
+
+import static jdk.internal.jvmci.hotspot.HotSpotJVMCIRuntime.runtime;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.internal.jvmci.common.JVMCIError;
+import jdk.internal.jvmci.compiler.Compiler;
+
+/**
+ * Replays a compilation recorded with {@code -Djvmci.replay.capture=<filter>} in a fresh VM:
+ *
+ * <pre>
+ * java -Djvmci.replay.file=jvmci_replay_42.log jdk.internal.jvmci.hotspot.HotSpotCompilationReplay [iterations]
+ * </pre>
+ *
+ * The classes of the recorded compilation are loaded from the class path stored in the log. The
+ * compilation is repeated {@code iterations} times (default 1) and the time taken by each
+ * iteration is printed, which makes the replay usable as a benchmark for compile time regressions.
+ */
+public final class HotSpotCompilationReplay {
+
+    private HotSpotCompilationReplay() {
+    }
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        if (System.getProperty("jvmci.replay.file") == null) {
+            throw new JVMCIError("the replay log must be specified with -Djvmci.replay.file=<log>");
+        }
+        HotSpotJVMCIRuntime runtime = runtime();
+        if (!(runtime.getCompilerToVM() instanceof HotSpotCompilationReplayer)) {
+            throw new JVMCIError("the JVMCI runtime was initialized before -Djvmci.replay.file was seen");
+        }
+        HotSpotCompilationReplayer replayer = (HotSpotCompilationReplayer) runtime.getCompilerToVM();
+        HotSpotReplayLog log = replayer.getLog();
+        log.setClassLoader(createClassLoader(log.classPath));
+
+        for (String mismatch : log.configMismatches(runtime.getConfig())) {
+            System.out.println("Warning: VM configuration differs from recording VM: " + mismatch);
+        }
+
+        HotSpotResolvedJavaMethod method = (HotSpotResolvedJavaMethod) log.decode(log.method);
+        Compiler compiler = runtime.getCompiler();
+        System.out.printf("Replaying compilation %d of %s (entry BCI %d, %d recorded answers)%n", log.compileId, method.format("%H.%n(%p)"), log.entryBCI, log.size());
+
+        long min = Long.MAX_VALUE;
+        long total = 0;
+        replayer.setReplayThread(Thread.currentThread());
+        try {
+            for (int i = 0; i < iterations; i++) {
+                replayer.rewind();
+                long start = System.nanoTime();
+                compiler.compileMethod(method, log.entryBCI, 0L, log.compileId);
+                long time = System.nanoTime() - start;
+                min = Math.min(min, time);
+                total += time;
+                System.out.printf("  iteration %d: %.3f ms, %d queries not in the log%n", i + 1, time / 1e6, replayer.getMisses());
+            }
+        } finally {
+            replayer.setReplayThread(null);
+            log.dispose();
+        }
+        System.out.printf("%d iterations: min %.3f ms, avg %.3f ms%n", iterations, min / 1e6, total / 1e6 / iterations);
+    }
+
+    private static ClassLoader createClassLoader(String classPath) {
+        ClassLoader parent = ClassLoader.getSystemClassLoader();
+        if (classPath == null) {
+            return parent;
+        }
+        List<URL> urls = new ArrayList<>();
+        for (String entry : classPath.split(File.pathSeparator)) {
+            try {
+                urls.add(new File(entry).toURI().toURL());
+            } catch (MalformedURLException e) {
+                throw new JVMCIError(e);
+            }
+        }
+        return new URLClassLoader(urls.toArray(new URL[urls.size()]), parent);
+    }
+}
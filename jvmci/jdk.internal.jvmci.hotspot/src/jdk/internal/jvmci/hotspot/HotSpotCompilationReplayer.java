@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package jdk.internal.jvmci.hotspot;
+
+import static jdk.internal.jvmci.hotspot.HotSpotVMConfig.config;
+
+import jdk.internal.jvmci.code.InstalledCode;
+import jdk.internal.jvmci.code.TargetDescription;
+import jdk.internal.jvmci.hotspot.HotSpotReplayLog.MethodDataOffset;
+import jdk.internal.jvmci.meta.SpeculationLog;
+
+/**
+ * A {@link CompilerToVM} that answers the queries of a compilation from a {@link HotSpotReplayLog}
+ * instead of asking the VM. Only queries made by the {@linkplain #setReplayThread(Thread) replay
+ * thread} are answered from the log. A query that is not in the log is forwarded to the VM and
+ * counted as a {@linkplain #getMisses() miss}; a replay without misses saw exactly the answers of
+ * the recorded compilation.
+ *
+ * The recorded profiles are replayed from native copies of the recorded {@code MethodData}
+ * contents. Metaspace pointers within such a copy refer to the recording VM and must never be
+ * dereferenced by this VM so queries about them that are missing from the log are answered
+ * conservatively instead of being forwarded. Code produced by a replayed compilation is never
+ * installed.
+ */
+final class HotSpotCompilationReplayer extends CompilerToVM {
+
+    private final HotSpotReplayLog log;
+    private volatile Thread replayThread;
+    private int misses;
+
+    HotSpotCompilationReplayer(HotSpotReplayLog log) {
+        this.log = log;
+    }
+
+    HotSpotReplayLog getLog() {
+        return log;
+    }
+
+    void setReplayThread(Thread thread) {
+        this.replayThread = thread;
+    }
+
+    /**
+     * Rewinds the log and resets the miss counter in preparation for replaying the compilation.
+     */
+    void rewind() {
+        log.rewind();
+        misses = 0;
+    }
+
+    int getMisses() {
+        return misses;
+    }
+
+    private boolean isReplaying() {
+        return Thread.currentThread() == replayThread;
+    }
+
+    /**
+     * Gets the recorded answer to {@code query}.
+     *
+     * @return {@code null} if there is no recorded answer in which case the caller must ask the VM
+     */
+    private String answer(String query, Object... args) {
+        if (!isReplaying()) {
+            return null;
+        }
+        String key = HotSpotReplayLog.key(query, args);
+        String value = key == null ? null : log.replay(key);
+        if (value == null) {
+            misses++;
+        }
+        return value;
+    }
+
+    /**
+     * Decodes a recorded answer, throwing it if it is a recorded exception.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T decode(String answer) {
+        Object value = log.decode(answer);
+        if (value instanceof RuntimeException) {
+            throw (RuntimeException) value;
+        } else if (value instanceof Error) {
+            throw (Error) value;
+        }
+        return (T) value;
+    }
+
+    private MethodDataOffset toMethodDataOffset(long address) {
+        return isReplaying() ? log.toMethodDataOffset(address) : null;
+    }
+
+    @Override
+    long getMetaspaceMethodData(HotSpotResolvedJavaMethodImpl method) {
+        if (isReplaying()) {
+            if (log.hasMethodData(method)) {
+                return log.replayMethodData(method);
+            }
+            if (answer("getMetaspaceMethodData", method) != null) {
+                // The method had no MethodData when the compilation was recorded
+                return 0L;
+            }
+        }
+        return super.getMetaspaceMethodData(method);
+    }
+
+    @Override
+    public int installCode(TargetDescription target, HotSpotCompiledCode compiledCode, InstalledCode code, SpeculationLog speculationLog) {
+        if (isReplaying()) {
+            return config().codeInstallResultOk;
+        }
+        return super.installCode(target, compiledCode, code, speculationLog);
+    }
+
+    @Override
+    public void notifyCompilationStatistics(int id, HotSpotResolvedJavaMethod method, boolean osr, int processedBytecodes, long time, long timeUnitsPerSecond, InstalledCode installedCode) {
+        if (!isReplaying()) {
+            super.notifyCompilationStatistics(id, method, osr, processedBytecodes, time, timeUnitsPerSecond, installedCode);
+        }
+    }
+
+    @Override
+    byte[] getBytecode(HotSpotResolvedJavaMethodImpl method) {
+        String answer = answer("getBytecode", method);
+        return answer == null ? super.getBytecode(method) : decode(answer);
+    }
+
+    @Override
+    int getExceptionTableLength(HotSpotResolvedJavaMethodImpl method) {
+        String answer = answer("getExceptionTableLength", method);
+        return answer == null ? super.getExceptionTableLength(method) : (Integer) decode(answer);
+    }
+
+    @Override
+    boolean hasBalancedMonitors(HotSpotResolvedJavaMethodImpl method) {
+        String answer = answer("hasBalancedMonitors", method);
+        return answer == null ? super.hasBalancedMonitors(method) : (Boolean) decode(answer);
+    }
+
+    @Override
+    boolean canInlineMethod(HotSpotResolvedJavaMethodImpl method) {
+        String answer = answer("canInlineMethod", method);
+        return answer == null ? super.canInlineMethod(method) : (Boolean) decode(answer);
+    }
+
+    @Override
+    boolean shouldInlineMethod(HotSpotResolvedJavaMethodImpl method) {
+        String answer = answer("shouldInlineMethod", method);
+        return answer == null ? super.shouldInlineMethod(method) : (Boolean) decode(answer);
+    }
+
+    @Override
+    HotSpotResolvedJavaMethodImpl findUniqueConcreteMethod(HotSpotResolvedObjectTypeImpl actualHolderType, HotSpotResolvedJavaMethodImpl method) {
+        String answer = answer("findUniqueConcreteMethod", actualHolderType, method);
+        return answer == null ? super.findUniqueConcreteMethod(actualHolderType, method) : decode(answer);
+    }
+
+    @Override
+    HotSpotResolvedObjectTypeImpl getImplementor(HotSpotResolvedObjectTypeImpl type) {
+        String answer = answer("getImplementor", type);
+        return answer == null ? super.getImplementor(type) : decode(answer);
+    }
+
+    @Override
+    boolean methodIsIgnoredBySecurityStackWalk(HotSpotResolvedJavaMethodImpl method) {
+        String answer = answer("methodIsIgnoredBySecurityStackWalk", method);
+        return answer == null ? super.methodIsIgnoredBySecurityStackWalk(method) : (Boolean) decode(answer);
+    }
+
+    @Override
+    HotSpotResolvedObjectTypeImpl lookupType(String name, Class<?> accessingClass, boolean resolve) {
+        String answer = isReplaying() ? answer("lookupType", name, HotSpotResolvedObjectTypeImpl.fromObjectClass(accessingClass), resolve) : null;
+        return answer == null ? super.lookupType(name, accessingClass, resolve) : decode(answer);
+    }
+
+    @Override
+    Object resolveConstantInPool(HotSpotConstantPool constantPool, int cpi) {
+        String answer = answer("resolveConstantInPool", constantPool, cpi);
+        return answer == null ? super.resolveConstantInPool(constantPool, cpi) : decode(answer);
+    }
+
+    @Override
+    Object resolvePossiblyCachedConstantInPool(HotSpotConstantPool constantPool, int cpi) {
+        String answer = answer("resolvePossiblyCachedConstantInPool", constantPool, cpi);
+        return answer == null ? super.resolvePossiblyCachedConstantInPool(constantPool, cpi) : decode(answer);
+    }
+
+    @Override
+    int lookupNameAndTypeRefIndexInPool(HotSpotConstantPool constantPool, int cpi) {
+        String answer = answer("lookupNameAndTypeRefIndexInPool", constantPool, cpi);
+        return answer == null ? super.lookupNameAndTypeRefIndexInPool(constantPool, cpi) : (Integer) decode(answer);
+    }
+
+    @Override
+    String lookupNameInPool(HotSpotConstantPool constantPool, int which) {
+        String answer = answer("lookupNameInPool", constantPool, which);
+        return answer == null ? super.lookupNameInPool(constantPool, which) : decode(answer);
+    }
+
+    @Override
+    String lookupSignatureInPool(HotSpotConstantPool constantPool, int which) {
+        String answer = answer("lookupSignatureInPool", constantPool, which);
+        return answer == null ? super.lookupSignatureInPool(constantPool, which) : decode(answer);
+    }
+
+    @Override
+    int lookupKlassRefIndexInPool(HotSpotConstantPool constantPool, int cpi) {
+        String answer = answer("lookupKlassRefIndexInPool", constantPool, cpi);
+        return answer == null ? super.lookupKlassRefIndexInPool(constantPool, cpi) : (Integer) decode(answer);
+    }
+
+    @Override
+    Object lookupKlassInPool(HotSpotConstantPool constantPool, int cpi) {
+        String answer = answer("lookupKlassInPool", constantPool, cpi);
+        return answer == null ? super.lookupKlassInPool(constantPool, cpi) : decode(answer);
+    }
+
+    @Override
+    HotSpotResolvedJavaMethodImpl lookupMethodInPool(HotSpotConstantPool constantPool, int cpi, byte opcode) {
+        String answer = answer("lookupMethodInPool", constantPool, cpi, opcode);
+        return answer == null ? super.lookupMethodInPool(constantPool, cpi, opcode) : decode(answer);
+    }
+
+    @Override
+    HotSpotResolvedObjectTypeImpl resolveTypeInPool(HotSpotConstantPool constantPool, int cpi) throws LinkageError {
+        String answer = answer("resolveTypeInPool", constantPool, cpi);
+        return answer == null ? super.resolveTypeInPool(constantPool, cpi) : decode(answer);
+    }
+
+    @Override
+    HotSpotResolvedObjectTypeImpl resolveFieldInPool(HotSpotConstantPool constantPool, int cpi, byte opcode, long[] info) {
+        String infoAnswer = answer("resolveFieldInPool.info", constantPool, cpi, opcode);
+        String answer = infoAnswer == null ? null : answer("resolveFieldInPool", constantPool, cpi, opcode);
+        if (answer == null) {
+            return super.resolveFieldInPool(constantPool, cpi, opcode, info);
+        }
+        long[] recordedInfo = decode(infoAnswer);
+        System.arraycopy(recordedInfo, 0, info, 0, recordedInfo.length);
+        return decode(answer);
+    }
+
+    @Override
+    int constantPoolRemapInstructionOperandFromCache(HotSpotConstantPool constantPool, int cpci) {
+        String answer = answer("constantPoolRemapInstructionOperandFromCache", constantPool, cpci);
+        return answer == null ? super.constantPoolRemapInstructionOperandFromCache(constantPool, cpci) : (Integer) decode(answer);
+    }
+
+    @Override
+    HotSpotResolvedJavaMethodImpl resolveMethod(HotSpotResolvedObjectTypeImpl exactReceiver, HotSpotResolvedJavaMethodImpl method, HotSpotResolvedObjectTypeImpl caller) {
+        String answer = answer("resolveMethod", exactReceiver, method, caller);
+        return answer == null ? super.resolveMethod(exactReceiver, method, caller) : decode(answer);
+    }
+
+    @Override
+    HotSpotResolvedJavaMethodImpl getClassInitializer(HotSpotResolvedObjectTypeImpl type) {
+        String answer = answer("getClassInitializer", type);
+        return answer == null ? super.getClassInitializer(type) : decode(answer);
+    }
+
+    @Override
+    HotSpotResolvedObjectTypeImpl getSubklass(HotSpotResolvedObjectTypeImpl type) {
+        String answer = answer("getSubklass", type);
+        return answer == null ? super.getSubklass(type) : decode(answer);
+    }
+
+    @Override
+    boolean hasNextSibling(HotSpotResolvedObjectTypeImpl type) {
+        String answer = answer("hasNextSibling", type);
+        return answer == null ? super.hasNextSibling(type) : (Boolean) decode(answer);
+    }
+
+    @Override
+    int getInitState(HotSpotResolvedObjectTypeImpl type) {
+        String answer = answer("getInitState", type);
+        return answer == null ? super.getInitState(type) : (Integer) decode(answer);
+    }
+
+    @Override
+    boolean hasFinalizableSubclass(HotSpotResolvedObjectTypeImpl type) {
+        String answer = answer("hasFinalizableSubclass", type);
+        return answer == null ? super.hasFinalizableSubclass(type) : (Boolean) decode(answer);
+    }
+
+    @Override
+    long[] getLineNumberTable(HotSpotResolvedJavaMethodImpl method) {
+        String answer = answer("getLineNumberTable", method);
+        return answer == null ? super.getLineNumberTable(method) : decode(answer);
+    }
+
+    @Override
+    int getLocalVariableTableLength(HotSpotResolvedJavaMethodImpl method) {
+        String answer = answer("getLocalVariableTableLength", method);
+        return answer == null ? super.getLocalVariableTableLength(method) : (Integer) decode(answer);
+    }
+
+    @Override
+    boolean isMature(long metaspaceMethodData) {
+        MethodDataOffset position = toMethodDataOffset(metaspaceMethodData);
+        if (position == null) {
+            return super.isMature(metaspaceMethodData);
+        }
+        String answer = answer("isMature", position);
+        return answer == null ? false : (Boolean) decode(answer);
+    }
+
+    @Override
+    boolean hasCompiledCodeForOSR(HotSpotResolvedJavaMethodImpl method, int entryBCI, int level) {
+        String answer = answer("hasCompiledCodeForOSR", method, entryBCI, level);
+        return answer == null ? super.hasCompiledCodeForOSR(method, entryBCI, level) : (Boolean) decode(answer);
+    }
+
+    @Override
+    int getVtableIndexForInterfaceMethod(HotSpotResolvedObjectTypeImpl type, HotSpotResolvedJavaMethodImpl method) {
+        String answer = answer("getVtableIndexForInterfaceMethod", type, method);
+        return answer == null ? super.getVtableIndexForInterfaceMethod(type, method) : (Integer) decode(answer);
+    }
+
+    @Override
+    public boolean shouldDebugNonSafepoints() {
+        String answer = answer("shouldDebugNonSafepoints");
+        return answer == null ? super.shouldDebugNonSafepoints() : (Boolean) decode(answer);
+    }
+
+    @Override
+    HotSpotResolvedJavaMethodImpl getResolvedJavaMethod(Object base, long displacement) {
+        MethodDataOffset position = base == null ? toMethodDataOffset(displacement) : null;
+        if (position == null) {
+            return super.getResolvedJavaMethod(base, displacement);
+        }
+        String answer = answer("getResolvedJavaMethod", position);
+        return answer == null ? null : decode(answer);
+    }
+
+    @Override
+    HotSpotResolvedObjectTypeImpl getResolvedJavaType(Object base, long displacement, boolean compressed) {
+        MethodDataOffset position = base == null ? toMethodDataOffset(displacement) : null;
+        if (position == null) {
+            return super.getResolvedJavaType(base, displacement, compressed);
+        }
+        String answer = answer("getResolvedJavaType", position, compressed);
+        return answer == null ? null : decode(answer);
+    }
+
+    @Override
+    int methodDataProfileDataSize(long metaspaceMethodData, int position) {
+        MethodDataOffset methodData = toMethodDataOffset(metaspaceMethodData);
+        String answer = methodData == null ? null : answer("methodDataProfileDataSize", methodData, position);
+        return answer == null ? super.methodDataProfileDataSize(metaspaceMethodData, position) : (Integer) decode(answer);
+    }
+}
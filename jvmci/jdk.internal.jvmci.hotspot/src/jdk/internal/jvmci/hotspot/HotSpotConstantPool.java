@@ -208,7 +208,7 @@ final class HotSpotConstantPool implements ConstantPool, HotSpotProxified, Metas
      *
      * @return holder for this constant pool
      */
-    private HotSpotResolvedObjectType getHolder() {
+    HotSpotResolvedObjectType getHolder() {
         return compilerToVM().getResolvedJavaType(this, config().constantPoolHolderOffset, false);
     }
 
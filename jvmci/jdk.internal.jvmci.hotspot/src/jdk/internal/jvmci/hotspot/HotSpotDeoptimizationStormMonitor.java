@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package jdk.internal.jvmci.hotspot;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import jdk.internal.jvmci.code.CompilationResult;
+import jdk.internal.jvmci.code.InstalledCode;
+import jdk.internal.jvmci.hotspot.events.EmptyEventProvider;
+import jdk.internal.jvmci.hotspot.events.EventProvider;
+import jdk.internal.jvmci.hotspot.events.EventProvider.DeoptimizationStormEvent;
+import jdk.internal.jvmci.meta.DeoptimizationReason;
+import jdk.internal.jvmci.meta.ProfilingInfo;
+import jdk.internal.jvmci.service.Services;
+
+/**
+ * Detects methods that are caught in a cycle of being compiled, deoptimized or invalidated and
+ * compiled again. A compilation request for a method and entry BCI completes such a cycle if the
+ * decompile or trap counts in the {@code MethodData} of the method increased since the previous
+ * request, or if the default code installed for the previous request has been invalidated. If at
+ * least {@code jvmci.deoptStorm.threshold} cycles fall within a sliding window of
+ * {@code jvmci.deoptStorm.window} milliseconds, compilation of the method is throttled:
+ *
+ * <ol>
+ * <li>The method is {@linkplain CompilerToVM#reprofile(HotSpotResolvedJavaMethodImpl) reprofiled}
+ * and compilation requests for it are ignored for a back-off period that starts at one window and
+ * doubles with each further storm.</li>
+ * <li>After {@code jvmci.deoptStorm.maxBackoffs} storms the method is
+ * {@linkplain CompilerToVM#doNotInlineOrCompile(HotSpotResolvedJavaMethodImpl) excluded} from
+ * compilation and inlining.</li>
+ * </ol>
+ *
+ * Each storm is reported as a {@link DeoptimizationStormEvent} with the trap counts of the method.
+ * A throttled compilation request is reported to the compile broker as a failed compilation. The
+ * monitor is disabled unless {@code jvmci.deoptStorm.threshold} is set to a positive value.
+ */
+final class HotSpotDeoptimizationStormMonitor {
+
+    private static final int Threshold = Integer.getInteger("jvmci.deoptStorm.threshold", 0);
+    private static final long WindowMillis = Long.getLong("jvmci.deoptStorm.window", 30000L);
+    private static final int MaxBackoffs = Integer.getInteger("jvmci.deoptStorm.maxBackoffs", 3);
+
+    /**
+     * Compilation history of a single method and entry BCI.
+     */
+    static final class History {
+        /**
+         * Ring buffer holding the times of the most recent cycles.
+         */
+        final long[] cycles;
+        final long windowMillis;
+        int next;
+        int count;
+
+        /**
+         * The sum of the decompile and trap counts of the method at the previous request.
+         */
+        int deoptimizations;
+
+        /**
+         * The default code installed for the previous request.
+         */
+        WeakReference<InstalledCode> installedCode;
+
+        int backoffs;
+        long backoffEnd;
+
+        History(int threshold, long windowMillis, int deoptimizations) {
+            this.cycles = new long[threshold];
+            this.windowMillis = windowMillis;
+            this.deoptimizations = deoptimizations;
+        }
+
+        void installed(InstalledCode code) {
+            installedCode = new WeakReference<>(code);
+        }
+
+        /**
+         * Records a compilation request at {@code now}.
+         *
+         * @param deoptimizations the current sum of the decompile and trap counts of the method
+         * @return the number of cycles within the window ending at {@code now}
+         */
+        int recordRequest(long now, int deoptimizations) {
+            InstalledCode code = installedCode == null ? null : installedCode.get();
+            boolean cycle = deoptimizations > this.deoptimizations || (code != null && !code.isValid());
+            this.deoptimizations = deoptimizations;
+            installedCode = null;
+            if (cycle) {
+                cycles[next] = now;
+                next = (next + 1) % cycles.length;
+                count = Math.min(count + 1, cycles.length);
+            }
+            int inWindow = 0;
+            for (int i = 0; i < count; i++) {
+                if (now - cycles[i] <= windowMillis) {
+                    inWindow++;
+                }
+            }
+            return inWindow;
+        }
+
+        void clearCycles() {
+            next = 0;
+            count = 0;
+        }
+    }
+
+    private final CompilerToVM compilerToVm;
+    private final EventProvider eventProvider;
+    private final Map<HotSpotResolvedJavaMethod, Map<Integer, History>> histories = new WeakHashMap<>();
+
+    private HotSpotDeoptimizationStormMonitor(CompilerToVM compilerToVm) {
+        this.compilerToVm = compilerToVm;
+        EventProvider provider = null;
+        for (EventProvider p : Services.load(EventProvider.class)) {
+            provider = p;
+            break;
+        }
+        this.eventProvider = provider == null ? new EmptyEventProvider() : provider;
+    }
+
+    /**
+     * Creates a monitor unless it is disabled.
+     *
+     * @return {@code null} unless {@code jvmci.deoptStorm.threshold} is positive
+     */
+    static HotSpotDeoptimizationStormMonitor create(CompilerToVM compilerToVm) {
+        return Threshold > 0 ? new HotSpotDeoptimizationStormMonitor(compilerToVm) : null;
+    }
+
+    private History getHistory(HotSpotResolvedJavaMethod method, int entryBCI, boolean create, int deoptimizations) {
+        Map<Integer, History> byEntryBCI = histories.get(method);
+        if (byEntryBCI == null) {
+            if (!create) {
+                return null;
+            }
+            byEntryBCI = new HashMap<>(2);
+            histories.put(method, byEntryBCI);
+        }
+        History history = byEntryBCI.get(entryBCI);
+        if (history == null && create) {
+            history = new History(Threshold, WindowMillis, deoptimizations);
+            byEntryBCI.put(entryBCI, history);
+        }
+        return history;
+    }
+
+    /**
+     * Records a request to compile {@code method} at {@code entryBCI} and determines if it should
+     * be honored.
+     *
+     * @return {@code null} if the request should be honored, otherwise the reason why compilation
+     *         of {@code method} is throttled
+     */
+    String throttle(HotSpotResolvedJavaMethod method, int entryBCI) {
+        HotSpotResolvedJavaMethodImpl m = (HotSpotResolvedJavaMethodImpl) method;
+        int deoptimizations = deoptimizationCount(m);
+        long now = System.currentTimeMillis();
+        int recompilations;
+        int backoffs;
+        synchronized (this) {
+            History history = getHistory(method, entryBCI, true, deoptimizations);
+            if (now < history.backoffEnd) {
+                return "deoptimization storm: compilation suspended for another " + (history.backoffEnd - now) + " ms";
+            }
+            recompilations = history.recordRequest(now, deoptimizations);
+            if (recompilations < Threshold) {
+                return null;
+            }
+            history.clearCycles();
+            backoffs = ++history.backoffs;
+            history.backoffEnd = now + (WindowMillis << Math.min(backoffs - 1, 16));
+        }
+
+        String reasons = reasonHistogram(method);
+        String action;
+        if (backoffs > MaxBackoffs) {
+            action = "excluded from compilation";
+            compilerToVm.doNotInlineOrCompile(m);
+        } else {
+            action = "reprofiled, compilation suspended for " + (WindowMillis << Math.min(backoffs - 1, 16)) + " ms";
+            compilerToVm.reprofile(m);
+        }
+
+        DeoptimizationStormEvent event = eventProvider.newDeoptimizationStormEvent();
+        if (event.shouldWrite()) {
+            event.setMethod(method.format("%H.%n(%p)"));
+            event.setRecompilations(recompilations);
+            event.setWindow(WindowMillis);
+            event.setAction(action);
+            event.setReasons(reasons);
+            event.commit();
+        }
+        return "deoptimization storm: " + recompilations + " recompilations within " + WindowMillis + " ms, " + action;
+    }
+
+    /**
+     * Notes the default code installed for a compilation request so that its invalidation
+     * completes a cycle.
+     */
+    void notifyInstall(InstalledCode installedCode, CompilationResult compResult) {
+        if (installedCode instanceof HotSpotNmethod && ((HotSpotNmethod) installedCode).isDefault()) {
+            HotSpotResolvedJavaMethod method = (HotSpotResolvedJavaMethod) ((HotSpotNmethod) installedCode).getMethod();
+            synchronized (this) {
+                History history = getHistory(method, compResult.getEntryBCI(), false, 0);
+                if (history != null) {
+                    history.installed(installedCode);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the sum of the decompile and trap counts of {@code method}.
+     */
+    private int deoptimizationCount(HotSpotResolvedJavaMethodImpl method) {
+        long metaspaceMethodData = compilerToVm.getMetaspaceMethodData(method);
+        if (metaspaceMethodData == 0) {
+            return 0;
+        }
+        HotSpotMethodData data = new HotSpotMethodData(metaspaceMethodData, method);
+        int count = data.getDecompileCount();
+        for (DeoptimizationReason reason : DeoptimizationReason.values()) {
+            count += data.getDeoptimizationCount(reason);
+        }
+        return count;
+    }
+
+    /**
+     * Gets the trap counts of {@code method} for each deoptimization reason that occurred.
+     */
+    private static String reasonHistogram(HotSpotResolvedJavaMethod method) {
+        ProfilingInfo info = method.getProfilingInfo();
+        StringBuilder sb = new StringBuilder();
+        for (DeoptimizationReason reason : DeoptimizationReason.values()) {
+            int count = info.getDeoptimizationCount(reason);
+            if (count > 0) {
+                sb.append(sb.length() == 0 ? "" : ",").append(reason).append('=').append(count);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -24,6 +24,8 @@ package jdk.internal.jvmci.hotspot;
 
 import static jdk.internal.jvmci.inittimer.InitTimer.timer;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
@@ -129,6 +131,7 @@ public final class HotSpotJVMCIRuntime implements HotSpotJVMCIRuntimeProvider, H
     }
 
     protected final CompilerToVM compilerToVm;
+    private final HotSpotDeoptimizationStormMonitor deoptimizationStormMonitor;
 
     protected final HotSpotVMConfig config;
     private final JVMCIBackend hostBackend;
@@ -144,7 +147,8 @@ public final class HotSpotJVMCIRuntime implements HotSpotJVMCIRuntimeProvider, H
 
     @SuppressWarnings("try")
     private HotSpotJVMCIRuntime() {
-        compilerToVm = new CompilerToVM();
+        compilerToVm = createCompilerToVM();
+        deoptimizationStormMonitor = HotSpotDeoptimizationStormMonitor.create(compilerToVm);
 
         try (InitTimer t = timer("HotSpotVMConfig<init>")) {
             config = new HotSpotVMConfig(compilerToVm);
@@ -180,6 +184,27 @@ public final class HotSpotJVMCIRuntime implements HotSpotJVMCIRuntimeProvider, H
         }
     }
 
+    /**
+     * Creates the {@link CompilerToVM} instance. The {@code jvmci.replay.file} system property
+     * selects a {@link HotSpotCompilationReplayer} and the {@code jvmci.replay.capture} system
+     * property a {@link HotSpotCompilationRecorder}.
+     */
+    private static CompilerToVM createCompilerToVM() {
+        String replayFile = System.getProperty("jvmci.replay.file");
+        if (replayFile != null) {
+            try {
+                return new HotSpotCompilationReplayer(HotSpotReplayLog.read(new File(replayFile)));
+            } catch (IOException e) {
+                throw new JVMCIError("Error reading replay log %s: %s", replayFile, e);
+            }
+        }
+        String captureFilter = System.getProperty("jvmci.replay.capture");
+        if (captureFilter != null) {
+            return new HotSpotCompilationRecorder(captureFilter, new File(System.getProperty("jvmci.replay.dir", ".")));
+        }
+        return new CompilerToVM();
+    }
+
     private JVMCIBackend registerBackend(JVMCIBackend backend) {
         Class<? extends Architecture> arch = backend.getCodeCache().getTarget().arch.getClass();
         JVMCIBackend oldValue = backends.put(arch, backend);
@@ -244,6 +269,24 @@ public final class HotSpotJVMCIRuntime implements HotSpotJVMCIRuntimeProvider, H
      */
     @SuppressWarnings({"unused"})
     private void compileMethod(HotSpotResolvedJavaMethod method, int entryBCI, long jvmciEnv, int id) {
+        if (deoptimizationStormMonitor != null) {
+            String reason = deoptimizationStormMonitor.throttle(method, entryBCI);
+            if (reason != null) {
+                compilerToVm.setCompilationFailure(jvmciEnv, reason);
+                return;
+            }
+        }
+        if (compilerToVm instanceof HotSpotCompilationRecorder) {
+            HotSpotCompilationRecorder recorder = (HotSpotCompilationRecorder) compilerToVm;
+            if (recorder.beginCompilation(method, entryBCI, id)) {
+                try {
+                    compiler.compileMethod(method, entryBCI, jvmciEnv, id);
+                } finally {
+                    recorder.endCompilation();
+                }
+                return;
+            }
+        }
         compiler.compileMethod(method, entryBCI, jvmciEnv, id);
     }
 
@@ -267,6 +310,9 @@ public final class HotSpotJVMCIRuntime implements HotSpotJVMCIRuntimeProvider, H
      * @param compResult
      */
     void notifyInstall(HotSpotCodeCacheProvider hotSpotCodeCacheProvider, InstalledCode installedCode, CompilationResult compResult) {
+        if (deoptimizationStormMonitor != null) {
+            deoptimizationStormMonitor.notifyInstall(installedCode, compResult);
+        }
         for (HotSpotVMEventListener vmEventListener : vmEventListeners) {
             vmEventListener.notifyInstall(hotSpotCodeCacheProvider, installedCode, compResult);
         }
@@ -81,6 +81,10 @@ public final class HotSpotMethodData {
         this.method = method;
     }
 
+    long getMetaspaceMethodData() {
+        return metaspaceMethodData;
+    }
+
     /**
      * @return value of the MethodData::_data_size field
      */
@@ -122,6 +126,14 @@ public final class HotSpotMethodData {
         return UNSAFE.getByte(metaspaceMethodData + config.methodDataOopTrapHistoryOffset + reasonIndex) & 0xFF;
     }
 
+    /**
+     * Gets the number of times compiled code for the method was removed because of a
+     * deoptimization.
+     */
+    public int getDecompileCount() {
+        return UNSAFE.getInt(metaspaceMethodData + config.methodDataDecompilesOffset);
+    }
+
     public int getOSRDeoptimizationCount(DeoptimizationReason reason) {
         HotSpotMetaAccessProvider metaAccess = (HotSpotMetaAccessProvider) runtime().getHostJVMCIBackend().getMetaAccess();
         int reasonIndex = metaAccess.convertDeoptReason(reason);
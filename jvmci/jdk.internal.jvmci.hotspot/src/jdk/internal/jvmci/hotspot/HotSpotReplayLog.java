@@ -0,0 +1,595 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package jdk.internal.jvmci.hotspot;
+
+import static jdk.internal.jvmci.hotspot.HotSpotVMConfig.config;
+import static jdk.internal.jvmci.hotspot.UnsafeAccess.UNSAFE;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jdk.internal.jvmci.common.JVMCIError;
+import jdk.internal.jvmci.meta.ResolvedJavaMethod;
+
+/**
+ * The answers given by the VM to the queries of a single compilation. A log is filled in by
+ * {@link HotSpotCompilationRecorder} and consumed by {@link HotSpotCompilationReplayer}.
+ *
+ * A log is stored as a line based text file. Each line starts with a keyword followed by space
+ * separated tokens:
+ *
+ * <pre>
+ * compile &lt;method&gt; &lt;entryBCI&gt; &lt;id&gt;
+ * classpath &lt;string&gt;
+ * config &lt;field&gt; &lt;value&gt;
+ * methoddata &lt;method&gt; &lt;bytes&gt;
+ * answer &lt;query&gt;|&lt;arg&gt;|... &lt;value&gt;
+ * </pre>
+ *
+ * Values are encoded such that they never contain white space or {@code '|'}: strings and names
+ * are escaped. Metaspace objects are encoded symbolically so that they can be resolved again in a
+ * different VM. The holder, name and signature of a method are each prefixed by their length (e.g.
+ * {@code M18:Ljava/lang/Object;8:hashCode3:()I}) since a method name may contain any character
+ * other than those escaped. A recorded exception is encoded the same way by its class name and
+ * message. A query may be answered differently over the course of a compilation (e.g.,
+ * once a constant pool entry has been resolved) so all answers to a query are kept in order.
+ */
+final class HotSpotReplayLog {
+
+    private static final String HEADER = "# JVMCI compilation replay log, version 3";
+
+    /**
+     * Position within a {@code MethodData} snapshot. Addresses pointing into a snapshot are
+     * recorded relative to the method owning the snapshot as the snapshot's address differs
+     * between the recording and the replaying VM.
+     */
+    static final class MethodDataOffset {
+        final String method;
+        final long offset;
+
+        MethodDataOffset(String method, long offset) {
+            this.method = method;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * A native copy of a {@code MethodData} used in place of the original during a compilation.
+     */
+    private static final class MethodDataSnapshot {
+        final String method;
+        final HotSpotResolvedJavaMethodImpl owner;
+        final long address;
+        final long size;
+        final long original;
+
+        MethodDataSnapshot(String method, HotSpotResolvedJavaMethodImpl owner, long address, long size, long original) {
+            this.method = method;
+            this.owner = owner;
+            this.address = address;
+            this.size = size;
+            this.original = original;
+        }
+    }
+
+    String method;
+    int entryBCI;
+    int compileId;
+    String classPath;
+
+    final Map<String, String> config = new TreeMap<>();
+    private final Map<String, byte[]> methodData = new LinkedHashMap<>();
+    private final Map<String, List<String>> answers = new LinkedHashMap<>();
+
+    private final Map<String, Integer> cursors = new HashMap<>();
+    private final Map<String, MethodDataSnapshot> snapshots = new HashMap<>();
+    private final Map<String, Object> decoded = new HashMap<>();
+    private ClassLoader loader;
+
+    synchronized void record(String key, String value) {
+        List<String> values = answers.get(key);
+        if (values == null) {
+            values = new ArrayList<>(1);
+            answers.put(key, values);
+        }
+        values.add(value);
+    }
+
+    /**
+     * Gets the next recorded answer for {@code key}.
+     *
+     * @return {@code null} if the query was never recorded or all its recorded answers have been
+     *         consumed
+     */
+    synchronized String replay(String key) {
+        List<String> values = answers.get(key);
+        if (values == null) {
+            return null;
+        }
+        Integer cursor = cursors.get(key);
+        int index = cursor == null ? 0 : cursor;
+        if (index >= values.size()) {
+            return null;
+        }
+        cursors.put(key, index + 1);
+        return values.get(index);
+    }
+
+    /**
+     * Resets the log such that a subsequent replay starts from the first recorded answers again.
+     */
+    synchronized void rewind() {
+        cursors.clear();
+    }
+
+    synchronized int size() {
+        int size = 0;
+        for (List<String> values : answers.values()) {
+            size += values.size();
+        }
+        return size;
+    }
+
+    /**
+     * Records the current values of all {@link HotSpotVMConfig} fields that can be encoded.
+     */
+    void recordConfig(HotSpotVMConfig vmConfig) {
+        for (Field f : HotSpotVMConfig.class.getDeclaredFields()) {
+            if (!f.isSynthetic() && !Modifier.isStatic(f.getModifiers())) {
+                try {
+                    f.setAccessible(true);
+                    String value = encode(f.get(vmConfig));
+                    if (value != null) {
+                        config.put(f.getName(), value);
+                    }
+                } catch (IllegalAccessException e) {
+                    throw new JVMCIError(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the names of the {@link HotSpotVMConfig} fields whose values in {@code vmConfig} differ
+     * from the recorded values.
+     */
+    List<String> configMismatches(HotSpotVMConfig vmConfig) {
+        HotSpotReplayLog current = new HotSpotReplayLog();
+        current.recordConfig(vmConfig);
+        List<String> mismatches = new ArrayList<>();
+        for (Map.Entry<String, String> e : config.entrySet()) {
+            String value = current.config.get(e.getKey());
+            if (!e.getValue().equals(value)) {
+                mismatches.add(e.getKey() + ": recorded " + e.getValue() + ", current " + value);
+            }
+        }
+        return mismatches;
+    }
+
+    /**
+     * Copies the {@code MethodData} at {@code metaspaceMethodData} into native memory owned by
+     * this log and records its contents.
+     *
+     * @return the address of the copy
+     */
+    synchronized long snapshotMethodData(HotSpotResolvedJavaMethodImpl method, long metaspaceMethodData) {
+        String owner = encode(method);
+        MethodDataSnapshot snapshot = snapshots.get(owner);
+        if (snapshot == null) {
+            int size = UNSAFE.getInt(metaspaceMethodData + config().methodDataSize);
+            byte[] bytes = new byte[size];
+            for (int i = 0; i < size; i++) {
+                bytes[i] = UNSAFE.getByte(metaspaceMethodData + i);
+            }
+            methodData.put(owner, bytes);
+            snapshot = allocateSnapshot(owner, method, bytes, metaspaceMethodData);
+        }
+        return snapshot.address;
+    }
+
+    /**
+     * Gets the address of a native copy of the recorded {@code MethodData} for {@code method}.
+     *
+     * @return 0 if no {@code MethodData} was recorded for {@code method}
+     */
+    synchronized long replayMethodData(HotSpotResolvedJavaMethodImpl method) {
+        String owner = encode(method);
+        MethodDataSnapshot snapshot = snapshots.get(owner);
+        if (snapshot == null) {
+            byte[] bytes = methodData.get(owner);
+            if (bytes == null) {
+                return 0L;
+            }
+            snapshot = allocateSnapshot(owner, method, bytes, 0L);
+        }
+        return snapshot.address;
+    }
+
+    synchronized boolean hasMethodData(HotSpotResolvedJavaMethodImpl method) {
+        return methodData.containsKey(encode(method));
+    }
+
+    /**
+     * Frees the native copies of the {@code MethodData} made by {@link #snapshotMethodData} and
+     * {@link #replayMethodData}. Must only be called once no compilation uses them any more. The
+     * {@link HotSpotMethodData} cached for a copy by its method is dropped first. The recorded
+     * contents are kept, so a later replay allocates new copies.
+     */
+    synchronized void dispose() {
+        for (MethodDataSnapshot snapshot : snapshots.values()) {
+            snapshot.owner.clearMethodData(snapshot.address);
+            UNSAFE.freeMemory(snapshot.address);
+        }
+        snapshots.clear();
+    }
+
+    private MethodDataSnapshot allocateSnapshot(String owner, HotSpotResolvedJavaMethodImpl method, byte[] bytes, long original) {
+        long address = UNSAFE.allocateMemory(bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            UNSAFE.putByte(address + i, bytes[i]);
+        }
+        MethodDataSnapshot snapshot = new MethodDataSnapshot(owner, method, address, bytes.length, original);
+        snapshots.put(owner, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Translates an address within a {@code MethodData} snapshot to a position that is stable
+     * across VMs.
+     *
+     * @return {@code null} if {@code address} is not within a snapshot
+     */
+    synchronized MethodDataOffset toMethodDataOffset(long address) {
+        for (MethodDataSnapshot snapshot : snapshots.values()) {
+            if (address >= snapshot.address && address < snapshot.address + snapshot.size) {
+                return new MethodDataOffset(snapshot.method, address - snapshot.address);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the address of the original {@code MethodData} for the snapshot at {@code address}.
+     *
+     * @return {@code address} if it does not denote a snapshot taken in this VM
+     */
+    synchronized long toOriginalMethodData(long address) {
+        for (MethodDataSnapshot snapshot : snapshots.values()) {
+            if (address == snapshot.address && snapshot.original != 0L) {
+                return snapshot.original;
+            }
+        }
+        return address;
+    }
+
+    /**
+     * Sets the class loader used to resolve types named in the log.
+     */
+    void setClassLoader(ClassLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Builds the key under which the answer to {@code query} with arguments {@code args} is
+     * recorded.
+     *
+     * @return {@code null} if one of the arguments cannot be encoded
+     */
+    static String key(String query, Object... args) {
+        StringBuilder sb = new StringBuilder(query);
+        for (Object arg : args) {
+            String value = encode(arg);
+            if (value == null) {
+                return null;
+            }
+            sb.append('|').append(value);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Encodes {@code value} such that it can be {@linkplain #decode(String) decoded} in another VM.
+     *
+     * @return {@code null} if {@code value} cannot be encoded
+     */
+    static String encode(Object value) {
+        if (value == null) {
+            return "N";
+        } else if (value instanceof Boolean) {
+            return ((Boolean) value) ? "Z1" : "Z0";
+        } else if (value instanceof Byte) {
+            return "B" + value;
+        } else if (value instanceof Integer) {
+            return "I" + value;
+        } else if (value instanceof Long) {
+            return "J" + value;
+        } else if (value instanceof String) {
+            return "S" + escape((String) value);
+        } else if (value instanceof long[]) {
+            StringBuilder sb = new StringBuilder("[J");
+            long[] array = (long[]) value;
+            for (int i = 0; i < array.length; i++) {
+                sb.append(i == 0 ? "" : ",").append(array[i]);
+            }
+            return sb.toString();
+        } else if (value instanceof byte[]) {
+            return "[B" + toHex((byte[]) value);
+        } else if (value instanceof HotSpotResolvedObjectTypeImpl) {
+            return "T" + escape(((HotSpotResolvedObjectTypeImpl) value).getName());
+        } else if (value instanceof HotSpotResolvedJavaMethodImpl) {
+            ResolvedJavaMethod method = (ResolvedJavaMethod) value;
+            StringBuilder sb = new StringBuilder("M");
+            appendField(sb, method.getDeclaringClass().getName());
+            appendField(sb, method.getName());
+            appendField(sb, method.getSignature().toMethodDescriptor());
+            return sb.toString();
+        } else if (value instanceof HotSpotConstantPool) {
+            HotSpotConstantPool constantPool = (HotSpotConstantPool) value;
+            HotSpotResolvedObjectTypeImpl holder = (HotSpotResolvedObjectTypeImpl) constantPool.getHolder();
+            if (holder.getConstantPool().getMetaspaceConstantPool() != constantPool.getMetaspaceConstantPool()) {
+                // A method specific constant pool (e.g., of a method handle intrinsic)
+                return null;
+            }
+            return "P" + escape(holder.getName());
+        } else if (value instanceof MethodDataOffset) {
+            MethodDataOffset position = (MethodDataOffset) value;
+            return "A" + position.method + "+" + position.offset;
+        } else if (value instanceof Throwable) {
+            Throwable t = (Throwable) value;
+            StringBuilder sb = new StringBuilder("E");
+            appendField(sb, t.getClass().getName());
+            appendField(sb, String.valueOf(t.getMessage()));
+            return sb.toString();
+        }
+        return null;
+    }
+
+    /**
+     * Decodes a value produced by {@link #encode(Object)}. A recorded exception is returned as a
+     * {@link Throwable} object.
+     */
+    synchronized Object decode(String value) {
+        switch (value.charAt(0)) {
+            case 'N':
+                return null;
+            case 'Z':
+                return value.charAt(1) == '1';
+            case 'B':
+                return Byte.parseByte(value.substring(1));
+            case 'I':
+                return Integer.parseInt(value.substring(1));
+            case 'J':
+                return Long.parseLong(value.substring(1));
+            case 'S':
+                return unescape(value.substring(1));
+            case '[':
+                if (value.charAt(1) == 'B') {
+                    return fromHex(value.substring(2));
+                }
+                String[] elements = value.substring(2).split(",");
+                long[] array = new long[value.length() == 2 ? 0 : elements.length];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = Long.parseLong(elements[i]);
+                }
+                return array;
+            case 'T':
+            case 'M':
+            case 'P': {
+                Object result = decoded.get(value);
+                if (result == null) {
+                    result = decodeMetaspaceObject(value);
+                    decoded.put(value, result);
+                }
+                return result;
+            }
+            case 'E': {
+                String[] fields = readFields(value, 1, 2);
+                String message = fields[1];
+                try {
+                    Class<?> c = Class.forName(fields[0]);
+                    return c.getConstructor(String.class).newInstance(message);
+                } catch (ReflectiveOperationException e) {
+                    return new LinkageError(message);
+                }
+            }
+        }
+        throw new JVMCIError("cannot decode replay value %s", value);
+    }
+
+    private Object decodeMetaspaceObject(String value) {
+        char tag = value.charAt(0);
+        if (tag == 'T') {
+            return lookupType(unescape(value.substring(1)));
+        } else if (tag == 'P') {
+            return lookupType(unescape(value.substring(1))).getConstantPool();
+        }
+        String[] fields = readFields(value, 1, 3);
+        HotSpotResolvedObjectTypeImpl holder = lookupType(fields[0]);
+        String name = fields[1];
+        String signature = fields[2];
+        if (name.equals("<clinit>")) {
+            return holder.getClassInitializer();
+        }
+        for (ResolvedJavaMethod m : name.equals("<init>") ? holder.getDeclaredConstructors() : holder.getDeclaredMethods()) {
+            if (m.getName().equals(name) && m.getSignature().toMethodDescriptor().equals(signature)) {
+                return m;
+            }
+        }
+        throw new JVMCIError("cannot find method %s", value);
+    }
+
+    private HotSpotResolvedObjectTypeImpl lookupType(String descriptor) {
+        String className;
+        if (descriptor.charAt(0) == '[') {
+            className = descriptor.replace('/', '.');
+        } else {
+            className = descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+        }
+        try {
+            return HotSpotResolvedObjectTypeImpl.fromObjectClass(Class.forName(className, false, loader));
+        } catch (ClassNotFoundException e) {
+            throw new JVMCIError("cannot load %s for replay: %s", className, e);
+        }
+    }
+
+    /**
+     * Appends {@code s} escaped and prefixed by the length of the escaped form.
+     */
+    private static void appendField(StringBuilder sb, String s) {
+        String escaped = escape(s);
+        sb.append(escaped.length()).append(':').append(escaped);
+    }
+
+    /**
+     * Reads {@code count} fields written by {@link #appendField} starting at {@code start}.
+     */
+    private static String[] readFields(String value, int start, int count) {
+        String[] fields = new String[count];
+        int pos = start;
+        for (int i = 0; i < count; i++) {
+            int colon = value.indexOf(':', pos);
+            if (colon < 0) {
+                throw new JVMCIError("malformed replay value %s", value);
+            }
+            int end = colon + 1 + Integer.parseInt(value.substring(pos, colon));
+            fields[i] = unescape(value.substring(colon + 1, end));
+            pos = end;
+        }
+        if (pos != value.length()) {
+            throw new JVMCIError("malformed replay value %s", value);
+        }
+        return fields;
+    }
+
+    private static String escape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c <= ' ' || c > '~' || c == '\\' || c == '|') {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String unescape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\') {
+                sb.append((char) Integer.parseInt(s.substring(i + 2, i + 6), 16));
+                i += 5;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+
+    synchronized void write(File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            out.println(HEADER);
+            out.println("compile " + method + " " + entryBCI + " " + compileId);
+            out.println("classpath " + encode(classPath));
+            for (Map.Entry<String, String> e : config.entrySet()) {
+                out.println("config " + e.getKey() + " " + e.getValue());
+            }
+            for (Map.Entry<String, byte[]> e : methodData.entrySet()) {
+                out.println("methoddata " + e.getKey() + " " + encode(e.getValue()));
+            }
+            for (Map.Entry<String, List<String>> e : answers.entrySet()) {
+                for (String value : e.getValue()) {
+                    out.println("answer " + e.getKey() + " " + value);
+                }
+            }
+        }
+    }
+
+    static HotSpotReplayLog read(File file) throws IOException {
+        HotSpotReplayLog log = new HotSpotReplayLog();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line = in.readLine();
+            if (!HEADER.equals(line)) {
+                throw new IOException(file + " is not a JVMCI replay log");
+            }
+            while ((line = in.readLine()) != null) {
+                String[] tokens = line.split(" ");
+                switch (tokens[0]) {
+                    case "compile":
+                        log.method = tokens[1];
+                        log.entryBCI = Integer.parseInt(tokens[2]);
+                        log.compileId = Integer.parseInt(tokens[3]);
+                        break;
+                    case "classpath":
+                        log.classPath = (String) log.decode(tokens[1]);
+                        break;
+                    case "config":
+                        log.config.put(tokens[1], tokens[2]);
+                        break;
+                    case "methoddata":
+                        log.methodData.put(tokens[1], (byte[]) log.decode(tokens[2]));
+                        break;
+                    case "answer":
+                        log.record(tokens[1], tokens[2]);
+                        break;
+                    default:
+                        throw new IOException("unknown entry in " + file + ": " + line);
+                }
+            }
+        }
+        return log;
+    }
+}
@@ -438,29 +438,48 @@ final class HotSpotResolvedJavaMethodImpl extends HotSpotMethod implements HotSp
         return false;
     }
 
+    /**
+     * Drops the cached {@link HotSpotMethodData} if it wraps the {@code MethodData} at
+     * {@code metaspaceMethodData}, which is about to be freed.
+     */
+    void clearMethodData(long metaspaceMethodData) {
+        HotSpotMethodData data = methodData;
+        if (data != null && data.getMetaspaceMethodData() == metaspaceMethodData) {
+            methodData = null;
+        }
+    }
+
     private static final String TraceMethodDataFilter = System.getProperty("jvmci.traceMethodDataFilter");
 
     @Override
     public ProfilingInfo getProfilingInfo(boolean includeNormal, boolean includeOSR) {
         ProfilingInfo info;
 
-        if (UseProfilingInformation.getValue() && methodData == null) {
-            long metaspaceMethodData = UNSAFE.getAddress(metaspaceMethod + config().methodDataOffset);
-            if (metaspaceMethodData != 0) {
-                methodData = new HotSpotMethodData(metaspaceMethodData, this);
+        HotSpotMethodData data = methodData;
+        if (UseProfilingInformation.getValue()) {
+            /*
+             * The MethodData is looked up each time as it may have been created since the last
+             * call or be substituted by a snapshot while a compilation is recorded or replayed.
+             */
+            long metaspaceMethodData = compilerToVM().getMetaspaceMethodData(this);
+            if (metaspaceMethodData == 0) {
+                data = null;
+            } else if (data == null || data.getMetaspaceMethodData() != metaspaceMethodData) {
+                data = new HotSpotMethodData(metaspaceMethodData, this);
                 if (TraceMethodDataFilter != null && this.format("%H.%n").contains(TraceMethodDataFilter)) {
                     System.out.println("Raw method data for " + this.format("%H.%n(%p)") + ":");
-                    System.out.println(methodData.toString());
+                    System.out.println(data.toString());
                 }
             }
+            methodData = data;
         }
 
-        if (methodData == null || (!methodData.hasNormalData() && !methodData.hasExtraData())) {
+        if (data == null || (!data.hasNormalData() && !data.hasExtraData())) {
             // Be optimistic and return false for exceptionSeen. A methodDataOop is allocated in
             // case of a deoptimization.
             info = DefaultProfilingInfo.get(TriState.FALSE);
         } else {
-            info = new HotSpotProfilingInfo(methodData, this, includeNormal, includeOSR);
+            info = new HotSpotProfilingInfo(data, this, includeNormal, includeOSR);
         }
         return info;
     }
@@ -102,4 +102,39 @@ public final class EmptyEventProvider implements EventProvider {
         }
     }
 
+    public DeoptimizationStormEvent newDeoptimizationStormEvent() {
+        return new EmptyDeoptimizationStormEvent();
+    }
+
+    public static class EmptyDeoptimizationStormEvent implements DeoptimizationStormEvent {
+        public void commit() {
+            throw JVMCIError.shouldNotReachHere();
+        }
+
+        public boolean shouldWrite() {
+            // Events of this class should never been written.
+            return false;
+        }
+
+        public void setMethod(String method) {
+            throw JVMCIError.shouldNotReachHere();
+        }
+
+        public void setRecompilations(int recompilations) {
+            throw JVMCIError.shouldNotReachHere();
+        }
+
+        public void setWindow(long windowMillis) {
+            throw JVMCIError.shouldNotReachHere();
+        }
+
+        public void setAction(String action) {
+            throw JVMCIError.shouldNotReachHere();
+        }
+
+        public void setReasons(String reasons) {
+            throw JVMCIError.shouldNotReachHere();
+        }
+    }
+
 }
@@ -102,4 +102,31 @@ public interface EventProvider {
 
         void setMessage(String message);
     }
+
+    /**
+     * Creates a new {@link DeoptimizationStormEvent}.
+     *
+     * @return a deoptimization storm event
+     */
+    DeoptimizationStormEvent newDeoptimizationStormEvent();
+
+    /**
+     * An event signaling that a method was repeatedly deoptimized and recompiled within a short
+     * period of time and that its compilation is being throttled.
+     */
+    interface DeoptimizationStormEvent extends InstantEvent {
+        void setMethod(String method);
+
+        void setRecompilations(int recompilations);
+
+        void setWindow(long windowMillis);
+
+        void setAction(String action);
+
+        /**
+         * Sets the per {@link jdk.internal.jvmci.meta.DeoptimizationReason reason} trap counts of
+         * the method, formatted as a comma separated list of {@code reason=count} pairs.
+         */
+        void setReasons(String reasons);
+    }
 }
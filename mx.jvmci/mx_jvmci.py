@@ -1231,6 +1231,22 @@ def deoptalot(args):
         if not run_vm(['-XX:-TieredCompilation', '-XX:+DeoptimizeALot', '-XX:+VerifyOops'] + args + ['-version']) == 0:
             mx.abort("Failed")
 
+def replaycompilation(args):
+    """replay a JVMCI compilation recorded with -Djvmci.replay.capture=<filter>
+
+    The first argument is the replay log written by the recording VM. If the
+    second argument is a number, the compilation is repeated this number of
+    times. All other arguments are passed to the VM."""
+    if len(args) == 0:
+        mx.abort('replay log expected')
+    replayLog = args[0]
+    iterations = '1'
+    args = args[1:]
+    if len(args) > 0 and args[0].isdigit():
+        iterations = args[0]
+        del args[0]
+    run_vm(['-Djvmci.replay.file=' + replayLog] + args + ['jdk.internal.jvmci.hotspot.HotSpotCompilationReplay', iterations])
+
 def longtests(args):
 
     deoptalot(['15', '-Xmx48m'])
@@ -1659,6 +1675,7 @@ mx.update_commands(_suite, {
     'shortunittest' : [shortunittest, '[unittest options] [--] [VM options] [filters...]', mx_unittest.unittestHelpSuffix],
     'vm': [run_vm, '[-options] class [args...]'],
     'deoptalot' : [deoptalot, '[n]'],
+    'replaycompilation' : [replaycompilation, 'replaylog [n] [VM options]'],
     'longtests' : [longtests, ''],
     'jol' : [jol, ''],
     'makefile' : [mx_jvmci_makefile.build_makefile, 'build makefiles for JDK build', None, {'keepUnsatisfiedDependencies': True}],
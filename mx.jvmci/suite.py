@@ -223,6 +223,18 @@ suite = {
       "workingSets" : "JVMCI",
     },
 
+    "jdk.internal.jvmci.hotspot.test" : {
+      "subDir" : "jvmci",
+      "sourceDirs" : ["src"],
+      "dependencies" : [
+        "mx:JUNIT",
+        "jdk.internal.jvmci.hotspot",
+      ],
+      "checkstyle" : "jdk.internal.jvmci.service",
+      "javaCompliance" : "1.8",
+      "workingSets" : "JVMCI,HotSpot",
+    },
+
     "jdk.internal.jvmci.hotspotvmconfig" : {
       "subDir" : "jvmci",
       "sourceDirs" : ["src"],
@@ -414,9 +426,11 @@ suite = {
       "dependencies" : [
         "jdk.internal.jvmci.options.test",
         "jdk.internal.jvmci.runtime.test",
+        "jdk.internal.jvmci.hotspot.test",
       ],
       "distDependencies" : [
         "JVMCI_API",
+        "JVMCI_HOTSPOT",
       ],
       "exclude" : ["mx:JUNIT"],
     },
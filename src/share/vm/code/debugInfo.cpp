@@ -62,6 +62,19 @@ ScopeValue* DebugInfoReadStream::read_object_value() {
   return result;
 }
 
+ScopeValue* DebugInfoReadStream::read_shared_object_value() {
+  int id = read_int();
+  int description_offset = read_int();
+  assert(_obj_pool != NULL, "object pool does not exist");
+  assert(description_offset != 0, "shared description must exist");
+  ObjectValue* result = new ObjectValue(id);
+  // The description can reference objects later in the pool, so it is only
+  // read once the whole pool has been decoded (see ScopeDesc::decode_object_values).
+  _obj_pool->push(result);
+  result->set_description_offset(description_offset);
+  return result;
+}
+
 ScopeValue* DebugInfoReadStream::get_cached_object() {
   int id = read_int();
   assert(_obj_pool != NULL, "object pool does not exist");
@@ -79,7 +92,8 @@ ScopeValue* DebugInfoReadStream::get_cached_object() {
 
 enum { LOCATION_CODE = 0, CONSTANT_INT_CODE = 1,  CONSTANT_OOP_CODE = 2,
                           CONSTANT_LONG_CODE = 3, CONSTANT_DOUBLE_CODE = 4,
-                          OBJECT_CODE = 5,        OBJECT_ID_CODE = 6 };
+                          OBJECT_CODE = 5,        OBJECT_ID_CODE = 6,
+                          OBJECT_SHARED_CODE = 7 };
 
 ScopeValue* ScopeValue::read_from(DebugInfoReadStream* stream) {
   ScopeValue* result = NULL;
@@ -91,6 +105,7 @@ ScopeValue* ScopeValue::read_from(DebugInfoReadStream* stream) {
    case CONSTANT_DOUBLE_CODE: result = new ConstantDoubleValue(stream);  break;
    case OBJECT_CODE:          result = stream->read_object_value();      break;
    case OBJECT_ID_CODE:       result = stream->get_cached_object();      break;
+   case OBJECT_SHARED_CODE:   result = stream->read_shared_object_value(); break;
    default: ShouldNotReachHere();
   }
   return result;
@@ -131,15 +146,26 @@ void ObjectValue::write_on(DebugInfoWriteStream* stream) {
     _visited = true;
     stream->write_int(OBJECT_CODE);
     stream->write_int(_id);
-    _klass->write_on(stream);
-    int length = _field_values.length();
-    stream->write_int(length);
-    for (int i = 0; i < length; i++) {
-      _field_values.at(i)->write_on(stream);
-    }
+    write_description_on(stream);
   }
 }
 
+void ObjectValue::write_description_on(DebugInfoWriteStream* stream) {
+  _klass->write_on(stream);
+  int length = _field_values.length();
+  stream->write_int(length);
+  for (int i = 0; i < length; i++) {
+    _field_values.at(i)->write_on(stream);
+  }
+}
+
+void ObjectValue::write_shared_on(DebugInfoWriteStream* stream, int description_offset) {
+  assert(_visited, "references in shared descriptions must be written as ids");
+  stream->write_int(OBJECT_SHARED_CODE);
+  stream->write_int(_id);
+  stream->write_int(description_offset);
+}
+
 void ObjectValue::print_on(outputStream* st) const {
   st->print("obj[%d]", _id);
 }
@@ -99,6 +99,7 @@ class ObjectValue: public ScopeValue {
   GrowableArray<ScopeValue*> _field_values;
   Handle                     _value;
   bool                       _visited;
+  int                        _description_offset;  // shared description not yet read, or 0
 
  public:
   ObjectValue(int id, ScopeValue* klass)
@@ -106,7 +107,8 @@ class ObjectValue: public ScopeValue {
      , _klass(klass)
      , _field_values()
      , _value()
-     , _visited(false) {
+     , _visited(false)
+     , _description_offset(0) {
     assert(klass->is_constant_oop(), "should be constant java mirror oop");
   }
 
@@ -115,7 +117,8 @@ class ObjectValue: public ScopeValue {
      , _klass(NULL)
      , _field_values()
      , _value()
-     , _visited(false) {}
+     , _visited(false)
+     , _description_offset(0) {}
 
   // Accessors
   bool                        is_object() const         { return true; }
@@ -126,13 +129,19 @@ class ObjectValue: public ScopeValue {
   int                         field_size()              { return _field_values.length(); }
   Handle                      value() const             { return _value; }
   bool                        is_visited() const        { return _visited; }
+  int                         description_offset() const { return _description_offset; }
 
   void                        set_value(oop value)      { _value = Handle(value); }
-  void                        set_visited(bool visited) { _visited = false; }
+  void                        set_visited(bool visited) { _visited = visited; }
+  void                        set_description_offset(int offset) { _description_offset = offset; }
 
   // Serialization of debugging information
   void read_object(DebugInfoReadStream* stream);
   void write_on(DebugInfoWriteStream* stream);
+  // The klass and field values, which are written separately from the
+  // object pool entry when descriptions are shared between safepoints.
+  void write_description_on(DebugInfoWriteStream* stream);
+  void write_shared_on(DebugInfoWriteStream* stream, int description_offset);
 
   // Printing
   void print_on(outputStream* st) const;
@@ -284,6 +293,7 @@ class DebugInfoReadStream : public CompressedReadStream {
     return o;
   }
   ScopeValue* read_object_value();
+  ScopeValue* read_shared_object_value();
   ScopeValue* get_cached_object();
   // BCI encoding is mostly unsigned, but -1 is a distinguished value
   int read_bci() { return read_int() + InvocationEntryBci; }
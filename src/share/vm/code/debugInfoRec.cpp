@@ -140,6 +140,8 @@ DebugInformationRecorder::DebugInformationRecorder(OopRecorder* oop_recorder)
   _all_chunks    = new GrowableArray<DIR_Chunk*>(300);
 #if !INCLUDE_JVMCI
   _shared_chunks = new GrowableArray<DIR_Chunk*>(30);
+#else
+  _shared_data_size = 0;
 #endif
   _next_chunk = _next_chunk_limit = NULL;
 
@@ -284,6 +286,7 @@ int DebugInformationRecorder::find_sharable_decode_offset(int stream_offset) {
     NOT_PRODUCT(++dir_stats.chunks_shared);
     assert(ns+1 == _next_chunk, "");
     _next_chunk = ns;
+    _shared_data_size += stream_length;
     return match->_offset;
   } else {
     // Inserted this chunk, so nothing to do
@@ -399,6 +402,66 @@ void DebugInformationRecorder::dump_object_pool(GrowableArray<ScopeValue*>* obje
   last_pd->set_obj_decode_offset(offset);
 }
 
+#if INCLUDE_JVMCI
+void DebugInformationRecorder::dump_shared_object_pool(GrowableArray<ScopeValue*>* objects) {
+  guarantee( _pcs_length > 0, "safepoint must exist before describing scopes");
+  PcDesc* last_pd = &_pcs[_pcs_length-1];
+  if (objects == NULL || objects->is_empty()) {
+    last_pd->set_obj_decode_offset(serialized_null);
+    return;
+  }
+  assert(_recording_state == rs_safepoint, "must be recording a safepoint");
+  int length = objects->length();
+  int start = stream()->position();
+
+  // Measure the inline encoding written by dump_object_pool so that the
+  // saving can be reported, then discard it.
+  for (int i = 0; i < length; i++) {
+    objects->at(i)->as_ObjectValue()->set_visited(false);
+  }
+  stream()->write_int(length);
+  for (int i = 0; i < length; i++) {
+    objects->at(i)->write_on(stream());
+  }
+  int inline_size = stream()->position() - start;
+  stream()->set_position(start);
+
+  // Each description (klass and field values) is a chunk of its own so that
+  // an identical object at another safepoint of the nmethod reuses it.  All
+  // references to objects of the pool, within descriptions and in the scope
+  // values that follow, are written as ids.
+  int shared_size = _shared_data_size;
+  for (int i = 0; i < length; i++) {
+    objects->at(i)->as_ObjectValue()->set_visited(true);
+  }
+  int* description_offsets = NEW_RESOURCE_ARRAY(int, length);
+  for (int i = 0; i < length; i++) {
+    int offset = stream()->position();
+    objects->at(i)->as_ObjectValue()->write_description_on(stream());
+    int shared_offset = find_sharable_decode_offset(offset);
+    if (shared_offset != serialized_null) {
+      stream()->set_position(offset);
+      offset = shared_offset;
+    }
+    description_offsets[i] = offset;
+  }
+  int result = stream()->position();
+  stream()->write_int(length);
+  for (int i = 0; i < length; i++) {
+    objects->at(i)->as_ObjectValue()->write_shared_on(stream(), description_offsets[i]);
+  }
+  int shared_result = find_sharable_decode_offset(result);
+  if (shared_result != serialized_null) {
+    stream()->set_position(result);
+    result = shared_result;
+  }
+
+  // Account for the pool as a whole against its inline encoding.
+  _shared_data_size = shared_size + inline_size - (stream()->position() - start);
+  last_pd->set_obj_decode_offset(result);
+}
+#endif
+
 void DebugInformationRecorder::end_scopes(int pc_offset, bool is_safepoint) {
   assert(_recording_state == (is_safepoint? rs_safepoint: rs_non_safepoint),
          "nesting of recording calls");
@@ -111,6 +111,11 @@ class DebugInformationRecorder: public ResourceObj {
 
 
   void dump_object_pool(GrowableArray<ScopeValue*>* objects);
+#if INCLUDE_JVMCI
+  // Like dump_object_pool but writes each object once per nmethod and
+  // shares identical object descriptions between safepoints.
+  void dump_shared_object_pool(GrowableArray<ScopeValue*>* objects);
+#endif
 
   // This call must follow every add_safepoint,
   // after any intervening describe_scope calls.
@@ -126,6 +131,12 @@ class DebugInformationRecorder: public ResourceObj {
   int pcs_size();
   int oop_size() { return oop_recorder()->oop_size(); }
   int metadata_size() { return oop_recorder()->metadata_size(); }
+#if INCLUDE_JVMCI
+  // returns the number of scope bytes that were saved by sharing
+  int shared_data_size() { return _shared_data_size; }
+  // returns the size the scopeDescs would have without sharing
+  int unshared_data_size() { return data_size() + _shared_data_size; }
+#endif
 
   // copy the generated debugging information to nmethod
   void copy_to(nmethod* nm);
@@ -165,6 +176,8 @@ class DebugInformationRecorder: public ResourceObj {
   GrowableArray<DIR_Chunk*>* _all_chunks;
 #if !INCLUDE_JVMCI
   GrowableArray<DIR_Chunk*>* _shared_chunks;
+#else
+  int _shared_data_size;
 #endif
   DIR_Chunk* _next_chunk;
   DIR_Chunk* _next_chunk_limit;
@@ -112,6 +112,14 @@ GrowableArray<ScopeValue*>* ScopeDesc::decode_object_values(int decode_offset) {
     (void)ScopeValue::read_from(stream);
   }
   assert(result->length() == length, "inconsistent debug information");
+  // Shared descriptions are read once every object they could reference exists.
+  for (int index = 0; index < length; index++) {
+    ObjectValue* ov = result->at(index)->as_ObjectValue();
+    if (ov->description_offset() != 0) {
+      ov->read_object(new DebugInfoReadStream(_code, ov->description_offset(), result));
+      ov->set_description_offset(0);
+    }
+  }
   return result;
 }
 
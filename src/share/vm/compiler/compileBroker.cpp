@@ -303,6 +303,12 @@ void CompileTask::free(CompileTask* task) {
     JNIHandles::destroy_global(task->_method_holder);
     JNIHandles::destroy_global(task->_hot_method_holder);
 
+    if (task->_failure_reason_on_C_heap && task->_failure_reason != NULL) {
+      os::free((void*) task->_failure_reason, mtCompiler);
+    }
+    task->_failure_reason = NULL;
+    task->_failure_reason_on_C_heap = false;
+
     task->set_is_free(true);
     task->set_next(_task_free_list);
     _task_free_list = task;
@@ -337,6 +343,7 @@ void CompileTask::initialize(int compile_id,
   _time_queued = 0;  // tidy
   _comment = comment;
   _failure_reason = NULL;
+  _failure_reason_on_C_heap = false;
 
   if (LogCompilation) {
     _time_queued = os::elapsed_counter();
@@ -2091,6 +2098,18 @@ void CompileBroker::invoke_compiler_on_method(CompileTask* task) {
     JVMCIEnv env(task, system_dictionary_modification_counter);
     jvmci->compile_method(target_handle, osr_bci, &env);
 
+    if (env.failing()) {
+      // The reason is on the C heap and is now owned by the task
+      task->set_failure_reason(env.failure_reason(), true);
+      if (_compilation_log != NULL) {
+        _compilation_log->log_failure(thread, task, env.failure_reason(), NULL);
+      }
+      if (PrintCompilation) {
+        FormatBufferResource msg = err_msg_res("COMPILE SKIPPED: %s", env.failure_reason());
+        task->print_compilation(tty, msg);
+      }
+    }
+
     post_compile(thread, task, event, task->code() != NULL, NULL);
   } else
 #endif // COMPILERJVMCI
@@ -88,6 +88,7 @@ VMReg getVMRegFromLocation(oop location, int total_frame_size) {
 
 // creates a HotSpot oop map out of the byte arrays provided by DebugInfo
 OopMap* CodeInstaller::create_oop_map(oop debug_info) {
+  TraceTime t(NULL, &_oop_map_timer, true);
   oop reference_map = DebugInfo::referenceMap(debug_info);
   if (HotSpotReferenceMap::maxRegisterSize(reference_map) > 16) {
     _has_wide_vector = true;
@@ -385,9 +386,17 @@ void CodeInstaller::initialize_dependencies(oop compiled_code) {
 
 // constructor used to create a method
 JVMCIEnv::CodeInstallResult CodeInstaller::install(Handle target, Handle& compiled_code, CodeBlob*& cb, Handle installed_code, Handle speculation_log) {
+  elapsedTimer install_timer;
+  install_timer.start();
   CodeBuffer buffer("JVMCI Compiler CodeBuffer");
   jobject compiled_code_obj = JNIHandles::make_local(compiled_code());
-  initialize_dependencies(JNIHandles::resolve(compiled_code_obj));
+  {
+    elapsedTimer dependencies_timer;
+    dependencies_timer.start();
+    initialize_dependencies(JNIHandles::resolve(compiled_code_obj));
+    dependencies_timer.stop();
+    JVMCICompiler::record_install_phase(JVMCICompiler::install_dependencies, dependencies_timer.ticks());
+  }
 
   // Get instructions and constants CodeSections early because we need it.
   _instructions = buffer.insts();
@@ -428,12 +437,24 @@ JVMCIEnv::CodeInstallResult CodeInstaller::install(Handle target, Handle& compil
                                        JVMCICompiler::instance(), _debug_recorder, _dependencies, env, id,
                                        has_unsafe_access, _has_wide_vector, installed_code, compiled_code, speculation_log);
     cb = nm;
+    if (result == JVMCIEnv::ok) {
+      int data_size = _debug_recorder->data_size();
+      int unshared_size = _debug_recorder->unshared_data_size();
+      int pcs_size = _debug_recorder->pcs_size();
+      int nmethod_size = nm->total_size();
+      TRACE_jvmci_2("debug info for %s: scopes %d bytes (%d before sharing), pcs %d bytes, nmethod %d bytes (%d before sharing)",
+                    method->name_and_sig_as_C_string(), data_size, unshared_size, pcs_size,
+                    nmethod_size, nmethod_size + unshared_size - data_size);
+      JVMCICompiler::record_debug_info_statistics(data_size, unshared_size, pcs_size, nmethod_size);
+    }
   }
 
   if (cb != NULL) {
     // Make sure the pre-calculated constants section size was correct.
     guarantee((cb->code_begin() - cb->content_begin()) >= _constants_size, err_msg("%d < %d", (int)(cb->code_begin() - cb->content_begin()), _constants_size));
   }
+  install_timer.stop();
+  JVMCICompiler::record_install_time(install_timer.ticks());
   return result;
 }
 
@@ -498,6 +519,8 @@ int CodeInstaller::estimate_stubs_size() {
 // perform data and call relocation on the CodeBuffer
 JVMCIEnv::CodeInstallResult CodeInstaller::initialize_buffer(CodeBuffer& buffer) {
   HandleMark hm;
+  elapsedTimer buffer_timer;
+  buffer_timer.start();
   objArrayHandle sites = this->sites();
   int locs_buffer_size = sites->length() * (relocInfo::length_limit + sizeof(relocInfo));
 
@@ -569,6 +592,11 @@ JVMCIEnv::CodeInstallResult CodeInstaller::initialize_buffer(CodeBuffer& buffer)
       ShouldNotReachHere();
     }
   }
+  buffer_timer.stop();
+  JVMCICompiler::record_install_phase(JVMCICompiler::install_buffer, buffer_timer.ticks());
+
+  elapsedTimer sites_timer;
+  sites_timer.start();
   jint last_pc_offset = -1;
   for (int i = 0; i < sites->length(); i++) {
     {
@@ -607,6 +635,12 @@ JVMCIEnv::CodeInstallResult CodeInstaller::initialize_buffer(CodeBuffer& buffer)
       ThreadToNativeFromVM ttnfv(JavaThread::current());
     }
   }
+  sites_timer.stop();
+  // Oop maps and scopes are created while processing the sites
+  JVMCICompiler::record_install_phase(JVMCICompiler::install_oop_maps, _oop_map_timer.ticks());
+  JVMCICompiler::record_install_phase(JVMCICompiler::install_scopes, _scope_timer.ticks());
+  JVMCICompiler::record_install_phase(JVMCICompiler::install_relocation,
+                                      sites_timer.ticks() - _oop_map_timer.ticks() - _scope_timer.ticks());
 
 #ifndef PRODUCT
   if (comments() != NULL) {
@@ -719,11 +753,12 @@ GrowableArray<ScopeValue*>* CodeInstaller::record_virtual_objects(oop debug_info
     int id = VirtualObject::id(value);
     record_object_value(objects->at(id)->as_ObjectValue(), value, objects);
   }
-  _debug_recorder->dump_object_pool(objects);
+  _debug_recorder->dump_shared_object_pool(objects);
   return objects;
 }
 
 void CodeInstaller::record_scope(jint pc_offset, oop debug_info) {
+  TraceTime t(NULL, &_scope_timer, true);
   oop position = DebugInfo::bytecodePosition(debug_info);
   if (position == NULL) {
     // Stubs do not record scope info, just oop maps
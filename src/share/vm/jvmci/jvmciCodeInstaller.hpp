@@ -91,6 +91,10 @@ private:
   static ConstantIntValue*    _int_2_scope_value;
   static LocationValue*       _illegal_value;
 
+  // Time spent in creating oop maps and recording scopes
+  elapsedTimer  _oop_map_timer;
+  elapsedTimer  _scope_timer;
+
   jint pd_next_offset(NativeInstruction* inst, jint pc_offset, oop method);
   void pd_patch_OopConstant(int pc_offset, Handle& constant);
   void pd_patch_MetaspaceConstant(int pc_offset, Handle& constant);
@@ -28,11 +28,23 @@
 #include "jvmci/jvmciCompiler.hpp"
 #include "jvmci/jvmciEnv.hpp"
 #include "jvmci/jvmciRuntime.hpp"
+#include "runtime/atomic.inline.hpp"
 #include "runtime/compilationPolicy.hpp"
 #include "runtime/globals_extension.hpp"
+#include "runtime/perfData.hpp"
 
 JVMCICompiler* JVMCICompiler::_instance = NULL;
 elapsedTimer JVMCICompiler::_codeInstallTimer;
+volatile jint     JVMCICompiler::_debugInfoNMethods = 0;
+volatile intptr_t JVMCICompiler::_debugInfoScopesSize = 0;
+volatile intptr_t JVMCICompiler::_debugInfoUnsharedScopesSize = 0;
+volatile intptr_t JVMCICompiler::_debugInfoPcsSize = 0;
+volatile intptr_t JVMCICompiler::_debugInfoNMethodsSize = 0;
+const char* JVMCICompiler::_installPhaseNames[] = {
+  "buffer", "relocation", "oopMaps", "scopes", "dependencies", "lockWait", "nmethod"
+};
+volatile jlong JVMCICompiler::_installPhaseTicks[] = { 0 };
+volatile jlong JVMCICompiler::_installHistogram[] = { 0 };
 
 JVMCICompiler::JVMCICompiler() : AbstractCompiler(jvmci) {
 #ifdef COMPILERJVMCI
@@ -41,6 +53,19 @@ JVMCICompiler::JVMCICompiler() : AbstractCompiler(jvmci) {
 #endif
   assert(_instance == NULL, "only one instance allowed");
   _instance = this;
+
+  if (UsePerfData) {
+    EXCEPTION_MARK;
+    ResourceMark rm;
+    for (int i = 0; i < install_phase_limit; i++) {
+      char* name = PerfDataManager::counter_name("jvmciInstall", _installPhaseNames[i]);
+      PerfDataManager::create_counter(SUN_CI, name, PerfData::U_Ticks, (jlong*) &_installPhaseTicks[i], CHECK);
+    }
+    for (int i = 0; i < install_histogram_length; i++) {
+      char* name = PerfDataManager::name_space("jvmciInstallHistogram", i);
+      PerfDataManager::create_counter(SUN_CI, name, PerfData::U_Events, (jlong*) &_installHistogram[i], CHECK);
+    }
+  }
 }
 
 // Initialization
@@ -171,4 +196,58 @@ void JVMCICompiler::print_timers() {
 void JVMCICompiler::print_compilation_timers() {
   TRACE_jvmci_1("JVMCICompiler::print_timers");
   tty->print_cr("       JVMCI code install time:        %6.3f s",    _codeInstallTimer.seconds());
+  if (_debugInfoNMethods > 0) {
+    intx saved = (intx) (_debugInfoUnsharedScopesSize - _debugInfoScopesSize);
+    tty->print_cr("       JVMCI nmethod debug info:       %d nmethods, scopes " INTX_FORMAT " bytes (" INTX_FORMAT " before sharing), pcs " INTX_FORMAT " bytes",
+                  _debugInfoNMethods, (intx) _debugInfoScopesSize, (intx) _debugInfoUnsharedScopesSize, (intx) _debugInfoPcsSize);
+    tty->print_cr("       JVMCI nmethod code cache size:  " INTX_FORMAT " bytes (" INTX_FORMAT " before sharing)",
+                  (intx) _debugInfoNMethodsSize, (intx) _debugInfoNMethodsSize + saved);
+  }
+  print_install_times();
+}
+
+void JVMCICompiler::record_install_phase(InstallPhase phase, jlong ticks) {
+  Atomic::add(ticks, &_installPhaseTicks[phase]);
+}
+
+void JVMCICompiler::record_install_time(jlong ticks) {
+  jlong micros = ticks * 1000000 / os::elapsed_frequency();
+  int bucket = 0;
+  while (bucket < install_histogram_length - 1 && micros >= ((jlong) 1 << bucket)) {
+    bucket++;
+  }
+  Atomic::add((jlong) 1, &_installHistogram[bucket]);
+}
+
+void JVMCICompiler::print_install_times() {
+  jlong total = 0;
+  for (int i = 0; i < install_phase_limit; i++) {
+    total += _installPhaseTicks[i];
+  }
+  double frequency = (double) os::elapsed_frequency();
+  tty->print_cr("       JVMCI code install phases:");
+  for (int i = 0; i < install_phase_limit; i++) {
+    jlong ticks = _installPhaseTicks[i];
+    tty->print_cr("         %-14s %6.3f s (%5.1f%%)", _installPhaseNames[i], ticks / frequency,
+                  total == 0 ? 0.0 : ticks * 100.0 / total);
+  }
+  tty->print_cr("       JVMCI code install time histogram:");
+  for (int i = 0; i < install_histogram_length; i++) {
+    jlong count = _installHistogram[i];
+    if (count != 0) {
+      if (i < install_histogram_length - 1) {
+        tty->print_cr("         < %6d us " JLONG_FORMAT, 1 << i, count);
+      } else {
+        tty->print_cr("        >= %6d us " JLONG_FORMAT, 1 << (i - 1), count);
+      }
+    }
+  }
+}
+
+void JVMCICompiler::record_debug_info_statistics(int scopes_size, int unshared_scopes_size, int pcs_size, int nmethod_size) {
+  Atomic::inc(&_debugInfoNMethods);
+  Atomic::add_ptr(scopes_size, &_debugInfoScopesSize);
+  Atomic::add_ptr(unshared_scopes_size, &_debugInfoUnsharedScopesSize);
+  Atomic::add_ptr(pcs_size, &_debugInfoPcsSize);
+  Atomic::add_ptr(nmethod_size, &_debugInfoNMethodsSize);
 }
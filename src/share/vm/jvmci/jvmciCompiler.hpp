@@ -46,6 +46,35 @@ private:
  
   static elapsedTimer _codeInstallTimer;
 
+public:
+  // Phases of installing code, see CodeInstaller::install and JVMCIEnv::register_method
+  enum InstallPhase {
+    install_buffer,        // creating the code buffer and copying code and data into it
+    install_relocation,    // processing the sites other than their debug info
+    install_oop_maps,      // creating oop maps
+    install_scopes,        // recording scopes and virtual objects
+    install_dependencies,  // recording and checking dependencies
+    install_lock_wait,     // acquiring the locks taken by JVMCIEnv::register_method
+    install_nmethod,       // creating the nmethod, including waiting for CodeCache_lock
+    install_phase_limit
+  };
+
+private:
+  // Buckets of the code install time histogram. Bucket i counts the installations
+  // that took less than 2^i microseconds, the last bucket counts the rest.
+  enum { install_histogram_length = 16 };
+
+  static const char* _installPhaseNames[install_phase_limit];
+  static volatile jlong _installPhaseTicks[install_phase_limit];
+  static volatile jlong _installHistogram[install_histogram_length];
+
+  // Size of the debug info of installed nmethods
+  static volatile jint     _debugInfoNMethods;
+  static volatile intptr_t _debugInfoScopesSize;
+  static volatile intptr_t _debugInfoUnsharedScopesSize;
+  static volatile intptr_t _debugInfoPcsSize;
+  static volatile intptr_t _debugInfoNMethodsSize;
+
 public:
 
   JVMCICompiler();
@@ -88,6 +117,14 @@ public:
   static void print_compilation_timers();
 
   static elapsedTimer* codeInstallTimer() { return &_codeInstallTimer; }
+
+  static void record_debug_info_statistics(int scopes_size, int unshared_scopes_size, int pcs_size, int nmethod_size);
+
+  static void record_install_phase(InstallPhase phase, jlong ticks);
+  static void record_install_time(jlong ticks);
+
+  // Print the time spent in each phase of code installation
+  static void print_install_times();
 };
 
 #endif // SHARE_VM_JVMCI_JVMCI_COMPILER_HPP
@@ -1129,6 +1129,14 @@ C2V_VMENTRY(void, flushDebugOutputImpl, (JNIEnv*, jobject))
   tty->flush();
 C2V_END
 
+C2V_VMENTRY(void, setCompilationFailure, (JNIEnv*, jobject, jlong jvmci_env, jstring reason))
+  JVMCIEnv* env = (JVMCIEnv*) (address) jvmci_env;
+  if (env != NULL) {
+    ResourceMark rm;
+    env->set_failure_reason(java_lang_String::as_utf8_string(JNIHandles::resolve(reason)));
+  }
+C2V_END
+
 C2V_VMENTRY(int, methodDataProfileDataSize, (JNIEnv*, jobject, jlong metaspace_method_data, jint position))
   ResourceMark rm;
   MethodData* mdo = CompilerToVM::asMethodData(metaspace_method_data);
@@ -1227,6 +1235,7 @@ JNINativeMethod CompilerToVM::methods[] = {
   {CC"writeDebugOutputImpl",                         CC"([BII)V",                                                                      FN_PTR(writeDebugOutputImpl)},
   {CC"flushDebugOutputImpl",                         CC"()V",                                                                          FN_PTR(flushDebugOutputImpl)},
   {CC"methodDataProfileDataSize",                    CC"(JI)I",                                                                        FN_PTR(methodDataProfileDataSize)},
+  {CC"setCompilationFailure",                        CC"(J"STRING")V",                                                                 FN_PTR(setCompilationFailure)},
 };
 
 int CompilerToVM::methods_count() {
@@ -45,12 +45,14 @@
 #include "runtime/reflection.hpp"
 #include "runtime/sharedRuntime.hpp"
 #include "utilities/dtrace.hpp"
+#include "jvmci/jvmciCompiler.hpp"
 #include "jvmci/jvmciRuntime.hpp"
 #include "jvmci/jvmciJavaClasses.hpp"
 
 JVMCIEnv::JVMCIEnv(CompileTask* task, int system_dictionary_modification_counter) {
   _task = task;
   _system_dictionary_modification_counter = system_dictionary_modification_counter;
+  _failure_reason = NULL;
   {
     // Get Jvmti capabilities under lock to get consistent values.
     MutexLocker mu(JvmtiThreadState_lock);
@@ -60,6 +62,14 @@ JVMCIEnv::JVMCIEnv(CompileTask* task, int system_dictionary_modification_counter
   }
 }
 
+// ------------------------------------------------------------------
+// JVMCIEnv::set_failure_reason
+void JVMCIEnv::set_failure_reason(const char* reason) {
+  if (_failure_reason == NULL) {
+    _failure_reason = os::strdup(reason, mtCompiler);
+  }
+}
+
 // ------------------------------------------------------------------
 // Note: the logic of this method should mirror the logic of
 // constantPoolOopDesc::verify_constant_pool_resolve.
@@ -478,6 +488,8 @@ JVMCIEnv::CodeInstallResult JVMCIEnv::register_method(
   int comp_level = CompLevel_full_optimization;
   char* failure_detail = NULL;
   JVMCIEnv::CodeInstallResult result;
+  elapsedTimer lock_wait_timer;
+  lock_wait_timer.start();
   {
     // To prevent compile queue updates.
     MutexLocker locker(MethodCompileQueue_lock, THREAD);
@@ -485,12 +497,19 @@ JVMCIEnv::CodeInstallResult JVMCIEnv::register_method(
     // Prevent SystemDictionary::add_to_hierarchy from running
     // and invalidating our dependencies until we install this method.
     MutexLocker ml(Compile_lock);
+    lock_wait_timer.stop();
+    JVMCICompiler::record_install_phase(JVMCICompiler::install_lock_wait, lock_wait_timer.ticks());
+
+    elapsedTimer dependencies_timer;
+    dependencies_timer.start();
 
     // Encode the dependencies now, so we can check them right away.
     dependencies->encode_content_bytes();
 
     // Check for {class loads, evolution, breakpoints} during compilation
     result = check_for_system_dictionary_modification(dependencies, compiled_code, env, &failure_detail);
+    dependencies_timer.stop();
+    JVMCICompiler::record_install_phase(JVMCICompiler::install_dependencies, dependencies_timer.ticks());
     if (result != JVMCIEnv::ok) {
       // While not a true deoptimization, it is a preemptive decompile.
       MethodData* mdp = method()->method_data();
@@ -510,6 +529,8 @@ JVMCIEnv::CodeInstallResult JVMCIEnv::register_method(
       //code_buffer->free_blob();
     } else {
       ImplicitExceptionTable implicit_tbl;
+      elapsedTimer nmethod_timer;
+      nmethod_timer.start();
       nm =  nmethod::new_nmethod(method,
                                  compile_id,
                                  entry_bci,
@@ -519,6 +540,8 @@ JVMCIEnv::CodeInstallResult JVMCIEnv::register_method(
                                  frame_words, oop_map_set,
                                  handler_table, &implicit_tbl,
                                  compiler, comp_level, installed_code, speculation_log);
+      nmethod_timer.stop();
+      JVMCICompiler::record_install_phase(JVMCICompiler::install_nmethod, nmethod_timer.ticks());
 
       // Free codeBlobs
       //code_buffer->free_blob();
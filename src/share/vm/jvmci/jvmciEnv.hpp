@@ -99,6 +99,10 @@ private:
   CompileTask*     _task;
   int              _system_dictionary_modification_counter;
 
+  // Why the compilation did not produce code, as reported by the JVMCI compiler.
+  // Allocated on the C heap and handed over to the task by the CompileBroker.
+  const char*      _failure_reason;
+
   // Cache JVMTI state
   bool  _jvmti_can_hotswap_or_post_breakpoint;
   bool  _jvmti_can_access_local_variables;
@@ -140,6 +144,10 @@ private:
 public:
   CompileTask* task() { return _task; }
 
+  bool failing() { return _failure_reason != NULL; }
+  const char* failure_reason() { return _failure_reason; }
+  void set_failure_reason(const char* reason);
+
   // Register the result of a compilation.
   static JVMCIEnv::CodeInstallResult register_method(
                        methodHandle&             target,
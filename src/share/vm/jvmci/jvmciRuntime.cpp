@@ -26,12 +26,14 @@
 #include "code/codeCache.hpp"
 #include "compiler/compileBroker.hpp"
 #include "compiler/disassembler.hpp"
+#include "gc_interface/allocTracer.hpp"
 #include "jvmci/jvmciRuntime.hpp"
 #include "jvmci/jvmciCompilerToVM.hpp"
 #include "jvmci/jvmciCompiler.hpp"
 #include "jvmci/jvmciJavaClasses.hpp"
 #include "jvmci/jvmciEnv.hpp"
 #include "memory/oopFactory.hpp"
+#include "memory/threadLocalAllocBuffer.inline.hpp"
 #include "oops/oop.inline.hpp"
 #include "prims/jvm.h"
 #include "runtime/biasedLocking.hpp"
@@ -132,6 +134,70 @@ static void deopt_caller() {
   }
 }
 
+// Makes sure the TLAB of thread can hold words heap words so that a batch of
+// allocations made in one runtime call does not take the TLAB slow path for
+// each object. This follows CollectedHeap::allocate_from_tlab_slow, including
+// its accounting: if the space left in the current TLAB is too large to be
+// discarded, the TLAB is retained and the miss is recorded as a slow allocation.
+static void ensure_tlab_space(JavaThread* thread, KlassHandle klass, size_t words) {
+  if (!UseTLAB || words == 0) {
+    return;
+  }
+  ThreadLocalAllocBuffer& tlab = thread->tlab();
+  if (tlab.free() >= words) {
+    return;
+  }
+  if (tlab.free() > tlab.refill_waste_limit()) {
+    tlab.record_slow_allocation(words);
+    return;
+  }
+  size_t new_tlab_size = tlab.compute_size(words);
+  if (new_tlab_size == 0) {
+    // Too large for a TLAB, the objects are allocated in the shared space
+    return;
+  }
+  tlab.clear_before_allocation();
+  HeapWord* start = Universe::heap()->allocate_new_tlab(new_tlab_size);
+  if (start == NULL) {
+    return;
+  }
+  AllocTracer::send_allocation_in_new_tlab_event(klass, new_tlab_size * HeapWordSize, words * HeapWordSize);
+  if (ZeroTLAB) {
+    Copy::zero_to_words(start, new_tlab_size);
+  }
+  tlab.fill(start, start, new_tlab_size);
+}
+
+// Computes the size in words of all the arrays allocated for a multi-dimensional
+// array with the given dimensions. Returns 0 if the size exceeds the maximum TLAB
+// size or if a dimension is negative.
+static size_t multi_array_size(Klass* klass, int rank, jint* dims) {
+  size_t total = 0;
+  julong count = 1;
+  for (int i = 0; i < rank; i++) {
+    jint length = dims[i];
+    if (length < 0) {
+      return 0;
+    }
+    size_t size;
+    if (klass->oop_is_typeArray()) {
+      size = typeArrayOopDesc::object_size(klass->layout_helper(), length);
+    } else {
+      size = objArrayOopDesc::object_size(length);
+    }
+    total += (size_t) count * size;
+    if (total > ThreadLocalAllocBuffer::max_size()) {
+      return 0;
+    }
+    count *= length;
+    if (count == 0 || i == rank - 1) {
+      break;
+    }
+    klass = ObjArrayKlass::cast(klass)->element_klass();
+  }
+  return total;
+}
+
 JRT_BLOCK_ENTRY(void, JVMCIRuntime::new_instance(JavaThread* thread, Klass* klass))
   JRT_BLOCK;
   assert(klass->is_klass(), "not a class");
@@ -200,11 +266,19 @@ void JVMCIRuntime::new_store_pre_barrier(JavaThread* thread) {
   thread->set_vm_result(new_obj);
 }
 
-JRT_ENTRY(void, JVMCIRuntime::new_multi_array(JavaThread* thread, Klass* klass, int rank, jint* dims))
+JRT_BLOCK_ENTRY(void, JVMCIRuntime::new_multi_array(JavaThread* thread, Klass* klass, int rank, jint* dims))
+  JRT_BLOCK;
   assert(klass->is_klass(), "not a class");
   assert(rank >= 1, "rank must be nonzero");
+  // All dimensions are allocated in this call so reserve the space for them up front
+  ensure_tlab_space(thread, klass, multi_array_size(klass, rank, dims));
   oop obj = ArrayKlass::cast(klass)->multi_allocate(rank, dims, CHECK);
   thread->set_vm_result(obj);
+  JRT_BLOCK_END;
+
+  if (ReduceInitialCardMarks) {
+    new_store_pre_barrier(thread);
+  }
 JRT_END
 
 JRT_ENTRY(void, JVMCIRuntime::dynamic_new_array(JavaThread* thread, oopDesc* element_mirror, jint length))
@@ -983,6 +1057,9 @@ Handle JVMCIRuntime::create_Service(const char* name, TRAPS) {
 }
 
 void JVMCIRuntime::shutdown() {
+  if (PrintJVMCIInstallTimes && !CITime) {
+    JVMCICompiler::print_install_times();
+  }
   if (_HotSpotJVMCIRuntime_instance != NULL) {
     _shutdown_called = true;
     JavaThread* THREAD = JavaThread::current();
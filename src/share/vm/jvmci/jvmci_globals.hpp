@@ -79,6 +79,10 @@
           "1 means emit a message for each CompilerToVM call,"              \
           "levels greater than 1 provide progressively greater detail")     \
                                                                             \
+  product(bool, PrintJVMCIInstallTimes, false,                              \
+          "Print the time spent in each phase of JVMCI code installation "  \
+          "at exit")                                                        \
+                                                                            \
   product(intx, JVMCICounterSize, 0,                                        \
           "Reserved size for benchmark counters")                           \
                                                                             \
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+/*
+ * @test
+ * @summary Multi-dimensional arrays allocated by compiled code through the
+ *          runtime, which reserves TLAB space for all dimensions at once,
+ *          have the right shape and contents.
+ * @run main/othervm -Xbatch -XX:-TieredCompilation MultiArrayAllocationTest
+ * @run main/othervm -Xbatch -XX:-TieredCompilation -XX:-ResizeTLAB -XX:TLABSize=4k MultiArrayAllocationTest
+ * @run main/othervm -Xbatch -XX:-TieredCompilation -XX:-UseTLAB MultiArrayAllocationTest
+ */
+
+/*
+ * The compiler that compiles the allocations is the top tier of the VM under
+ * test: the JVMCI compiler with "mx --vm jvmci" and C2 with "mx --vm server".
+ * Passing an iteration count as argument also prints timings, which can be
+ * used to compare the two.
+ */
+
+public class MultiArrayAllocationTest {
+
+    static final int WARMUP = 20000;
+
+    static int[][] multi(int d1, int d2) {
+        return new int[d1][d2];
+    }
+
+    static Object[][][] multi3(int d1, int d2, int d3) {
+        return new Object[d1][d2][d3];
+    }
+
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new RuntimeException(message);
+        }
+    }
+
+    static void checkMulti(int[][] a, int d1, int d2) {
+        check(a.length == d1, "wrong first dimension");
+        for (int i = 0; i < d1; i++) {
+            check(a[i].length == d2, "wrong second dimension");
+            for (int j = 0; j < d2; j++) {
+                check(a[i][j] == 0, "element not zeroed");
+                a[i][j] = i * d2 + j;
+            }
+            for (int k = 0; k < i; k++) {
+                check(a[k] != a[i], "rows are shared");
+            }
+        }
+        for (int i = 0; i < d1; i++) {
+            for (int j = 0; j < d2; j++) {
+                check(a[i][j] == i * d2 + j, "rows overlap");
+            }
+        }
+    }
+
+    static void checkMulti3(Object[][][] a, int d1, int d2, int d3) {
+        check(a.length == d1, "wrong first dimension");
+        for (int i = 0; i < d1; i++) {
+            check(a[i].length == d2, "wrong second dimension");
+            for (int j = 0; j < d2; j++) {
+                check(a[i][j].length == d3, "wrong third dimension");
+                for (int k = 0; k < d3; k++) {
+                    check(a[i][j][k] == null, "element not cleared");
+                }
+            }
+        }
+    }
+
+    static void checkNegative(int d1, int d2) {
+        try {
+            multi(d1, d2);
+        } catch (NegativeArraySizeException e) {
+            return;
+        }
+        throw new RuntimeException("expected NegativeArraySizeException for " + d1 + ", " + d2);
+    }
+
+    static long time(int n, int d1, int d2) {
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            multi(d1, d2);
+        }
+        return (System.nanoTime() - start) / 1000;
+    }
+
+    static long time3(int n, int d1, int d2, int d3) {
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            multi3(d1, d2, d3);
+        }
+        return (System.nanoTime() - start) / 1000;
+    }
+
+    public static void main(String[] args) {
+        for (int i = 0; i < WARMUP; i++) {
+            checkMulti(multi(4, 4), 4, 4);
+            checkMulti3(multi3(2, 3, 4), 2, 3, 4);
+        }
+        // Arrays that are too large for a TLAB, empty dimensions and
+        // negative dimensions take the other paths of the runtime call.
+        checkMulti(multi(16, 64), 16, 64);
+        checkMulti(multi(2, 1 << 20), 2, 1 << 20);
+        checkMulti(multi(0, 4), 0, 4);
+        checkMulti(multi(4, 0), 4, 0);
+        checkMulti3(multi3(3, 0, 5), 3, 0, 5);
+        checkNegative(-1, 4);
+        checkNegative(4, -1);
+
+        if (args.length > 0) {
+            int n = Integer.parseInt(args[0]);
+            System.out.println("==> int[4][4]        " + time(n, 4, 4) + " us");
+            System.out.println("==> int[16][64]      " + time(n / 10, 16, 64) + " us");
+            System.out.println("==> Object[2][3][4]  " + time3(n, 2, 3, 4) + " us");
+        }
+    }
+}
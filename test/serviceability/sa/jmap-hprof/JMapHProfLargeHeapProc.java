@@ -32,6 +32,7 @@ import sun.management.VMManagement;
 
 public class JMapHProfLargeHeapProc {
     private static final List<byte[]> heapGarbage = new ArrayList<>();
+    private static long[] largeArray;
 
     public static void main(String[] args) throws Exception {
 
@@ -48,6 +49,10 @@ public class JMapHProfLargeHeapProc {
         for (long i = 0; i < Integer.parseInt(args[0]); i++) {
             heapGarbage.add(new byte[1024]);
         }
+        // An array larger than the segments buffered by the heap dumper
+        if (args.length > 1) {
+            largeArray = new long[Integer.parseInt(args[1]) / 8];
+        }
     }
 
     public static int getProcessId() throws Exception {
@@ -21,8 +21,12 @@
  * questions.
  */
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
@@ -52,6 +56,8 @@ public class JMapHProfLargeHeapTest {
     private static final String HEAP_DUMP_FILE_NAME = "heap.hprof";
     private static final String HPROF_HEADER_1_0_1 = "JAVA PROFILE 1.0.1";
     private static final String HPROF_HEADER_1_0_2 = "JAVA PROFILE 1.0.2";
+    private static final int HPROF_HEAP_DUMP_SEGMENT = 0x1C;
+    private static final int HPROF_HEAP_DUMP_END = 0x2C;
     private static final long M = 1024L;
     private static final long G = 1024L * M;
 
@@ -78,6 +84,11 @@ public class JMapHProfLargeHeapTest {
         // Small heap 22 megabytes, should create 1.0.1 file format
         testHProfFileFormat("-Xmx1g", 22 * M, HPROF_HEADER_1_0_1);
 
+        // The SA heap dumper (jmap -F) writes segments in parallel by
+        // default, which always creates 1.0.2 file format. The 64 megabyte
+        // array is streamed in a segment of its own.
+        testHProfFileFormat("-Xmx1g", 22 * M, 64 * M * M, HPROF_HEADER_1_0_2, "-F");
+
         /**
          * This test was deliberately commented out since the test system lacks
          * support to handle the requirements for this kind of heap size in a
@@ -91,8 +102,16 @@ public class JMapHProfLargeHeapTest {
     private static void testHProfFileFormat(String vmArgs, long heapSize,
             String expectedFormat) throws Exception, IOException,
             InterruptedException, FileNotFoundException {
+        testHProfFileFormat(vmArgs, heapSize, 0, expectedFormat, null);
+    }
+
+    private static void testHProfFileFormat(String vmArgs, long heapSize,
+            long largeArraySize, String expectedFormat, String jmapArg)
+            throws Exception, IOException, InterruptedException,
+            FileNotFoundException {
         ProcessBuilder procBuilder = ProcessTools.createJavaProcessBuilder(
-                vmArgs, "JMapHProfLargeHeapProc", String.valueOf(heapSize));
+                vmArgs, "JMapHProfLargeHeapProc", String.valueOf(heapSize),
+                String.valueOf(largeArraySize));
         procBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
         Process largeHeapProc = procBuilder.start();
 
@@ -108,6 +127,9 @@ public class JMapHProfLargeHeapTest {
 
             JDKToolLauncher jMapLauncher = JDKToolLauncher
                     .createUsingTestJDK("jmap");
+            if (jmapArg != null) {
+                jMapLauncher.addToolArg(jmapArg);
+            }
             jMapLauncher.addToolArg("-dump:format=b,file=" + pid + "-"
                     + HEAP_DUMP_FILE_NAME);
             jMapLauncher.addToolArg(String.valueOf(pid));
@@ -137,10 +159,54 @@ public class JMapHProfLargeHeapTest {
                                 + "', but found '" + buf.toString() + "'");
             }
 
+            if (expectedFormat.equals(HPROF_HEADER_1_0_2)) {
+                long largestSegment = checkSegments(dumpFile);
+                Asserts.assertGTE(largestSegment, largeArraySize,
+                        "No heap dump segment holds the large array");
+            }
+
             System.out.println("Success!");
 
         } finally {
             largeHeapProc.destroyForcibly();
         }
     }
+
+    // Checks that the records of a segmented dump follow each other up to
+    // the end record and returns the length of the largest segment
+    private static long checkSegments(File dumpFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(dumpFile)))) {
+            while (in.readByte() != 0) {
+                // header string
+            }
+            in.readInt();  // identifier size
+            in.readLong(); // time stamp
+            long largestSegment = 0;
+            while (true) {
+                int tag;
+                try {
+                    tag = in.readUnsignedByte();
+                } catch (EOFException e) {
+                    throw new RuntimeException("Heap dump end record not found");
+                }
+                in.readInt();
+                long length = in.readInt() & 0xFFFFFFFFL;
+                if (tag == HPROF_HEAP_DUMP_END) {
+                    Asserts.assertEQ(in.read(), -1, "Data after heap dump end record");
+                    return largestSegment;
+                }
+                if (tag == HPROF_HEAP_DUMP_SEGMENT) {
+                    largestSegment = Math.max(largestSegment, length);
+                }
+                while (length > 0) {
+                    long skipped = in.skip(length);
+                    if (skipped <= 0) {
+                        throw new RuntimeException("Truncated record with tag " + tag);
+                    }
+                    length -= skipped;
+                }
+            }
+        }
+    }
 }
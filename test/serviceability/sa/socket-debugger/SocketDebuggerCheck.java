@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+
+import java.io.*;
+import java.net.*;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.*;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import sun.jvm.hotspot.debugger.DebuggerException;
+import sun.jvm.hotspot.debugger.ReadResult;
+import sun.jvm.hotspot.debugger.remote.*;
+
+/*
+ * Run by SocketDebuggerTest with sa-jdi.jar on the class path. Serves
+ * a synthetic target on the loopback interface and checks that single,
+ * batched, pipelined and compressed reads through SocketRemoteDebugger
+ * return the same bytes as reading the target directly, and that the
+ * server rejects wrong secrets and malformed requests.
+ */
+public class SocketDebuggerCheck {
+    private static final long MAPPED_SIZE = 1024 * 1024;
+
+    // The wire protocol, see SocketDebuggerServer
+    private static final int  MAGIC          = 0x53415250;
+    private static final int  VERSION        = 2;
+    private static final byte OP_READ        = 1;
+    private static final byte STATUS_OK      = 0;
+    private static final byte STATUS_ERROR   = 1;
+    private static final int  CHALLENGE_SIZE = 32;
+    private static final int  MAX_BLOCK_SIZE = 16 * 1024 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        Target target = new Target();
+        String secret = SocketDebuggerServer.newSecret();
+        SocketDebuggerServer server = new SocketDebuggerServer(target, 0, secret);
+        server.start();
+        try {
+            check(server.getAddress().isLoopbackAddress(),
+                  "Server listens on " + server.getAddress());
+            String host = server.getAddress().getHostAddress();
+            int port = server.getPort();
+
+            SocketRemoteDebugger plain = new SocketRemoteDebugger(host, port, secret, false);
+            SocketRemoteDebugger deflating = new SocketRemoteDebugger(host, port, secret, true);
+            try {
+                checkReads(target, plain);
+                checkReads(target, deflating);
+                checkErrors(target, plain);
+            } finally {
+                plain.close();
+                deflating.close();
+            }
+
+            checkWrongSecret(host, port);
+            checkBadLengths(host, port, secret);
+            checkBadCount(host, port, secret, -1);
+            checkBadCount(host, port, secret, Integer.MAX_VALUE);
+
+            // The server survives all of the above
+            SocketRemoteDebugger again = new SocketRemoteDebugger(host, port, secret, true);
+            try {
+                checkReads(target, again);
+            } finally {
+                again.close();
+            }
+        } finally {
+            server.close();
+            UnicastRemoteObject.unexportObject(target, true);
+        }
+        System.out.println("Passed");
+    }
+
+    private static void checkReads(Target target, SocketRemoteDebugger dbg) throws Exception {
+        List blocks = new ArrayList();
+        // Small, page sized, unaligned, highly compressible and
+        // partially or entirely unmapped blocks
+        long[][] shapes = {
+            { 0, 1 }, { 3, 7 }, { 4096, 4096 }, { 8190, 5000 }, { 65536, 65536 },
+            { 12345, 100000 }, { MAPPED_SIZE - 100, 200 }, { MAPPED_SIZE + 4096, 16 }, { 0, 0 }
+        };
+        for (int i = 0; i < shapes.length; i++) {
+            blocks.add(shapes[i]);
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            blocks.add(new long[] { random.nextInt((int) MAPPED_SIZE), 1 + random.nextInt(8192) });
+        }
+        long[] addresses = new long[blocks.size()];
+        long[] numBytes = new long[blocks.size()];
+        ReadResult[] expected = new ReadResult[blocks.size()];
+        for (int i = 0; i < addresses.length; i++) {
+            long[] block = (long[]) blocks.get(i);
+            addresses[i] = block[0];
+            numBytes[i] = block[1];
+            expected[i] = target.readBytesFromProcess(addresses[i], numBytes[i]);
+        }
+
+        for (int i = 0; i < addresses.length; i++) {
+            checkSame(expected[i], dbg.readBytesFromProcess(addresses[i], numBytes[i]), "single read", i);
+        }
+
+        ReadResult[] batched = dbg.readBlocksFromProcess(addresses, numBytes);
+        check(batched.length == addresses.length, "Batched read returned " + batched.length + " blocks");
+        for (int i = 0; i < addresses.length; i++) {
+            checkSame(expected[i], batched[i], "batched read", i);
+        }
+
+        // Submit everything in small batches before waiting for any
+        int batch = 8;
+        List requests = new ArrayList();
+        for (int start = 0; start < addresses.length; start += batch) {
+            int count = Math.min(batch, addresses.length - start);
+            requests.add(dbg.submitRead(Arrays.copyOfRange(addresses, start, start + count),
+                                        Arrays.copyOfRange(numBytes, start, start + count)));
+        }
+        for (int r = 0; r < requests.size(); r++) {
+            ReadResult[] res = (ReadResult[]) ((SocketRemoteDebugger.Request) requests.get(r)).get();
+            for (int j = 0; j < res.length; j++) {
+                checkSame(expected[r * batch + j], res[j], "pipelined read", r * batch + j);
+            }
+        }
+    }
+
+    private static void checkErrors(Target target, SocketRemoteDebugger dbg) throws Exception {
+        try {
+            dbg.getOS();
+            throw new RuntimeException("getOS() did not fail");
+        } catch (DebuggerException e) {
+            check("No OS".equals(e.getMessage()), "Unexpected message " + e.getMessage());
+        }
+        try {
+            dbg.getCPU();
+            throw new RuntimeException("getCPU() did not fail");
+        } catch (RemoteException e) {
+            check(e.getMessage().contains("java.lang.IllegalStateException: No CPU"),
+                  "Unexpected message " + e.getMessage());
+        }
+        try {
+            dbg.readBytesFromProcess(0, MAX_BLOCK_SIZE + 1);
+            throw new RuntimeException("Oversized read was sent");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Expected: " + e);
+        }
+        // The connection is still usable
+        checkSame(target.readBytesFromProcess(100, 100), dbg.readBytesFromProcess(100, 100), "read after errors", 0);
+    }
+
+    private static void checkWrongSecret(String host, int port) throws Exception {
+        try {
+            new SocketRemoteDebugger(host, port, "wrong", false);
+            throw new RuntimeException("Connected with a wrong secret");
+        } catch (IOException e) {
+            System.out.println("Expected: " + e);
+        }
+    }
+
+    // Bad block sizes are answered with an error and leave the
+    // connection usable
+    private static void checkBadLengths(String host, int port, String secret) throws Exception {
+        Socket socket = connect(host, port, secret);
+        try {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            int[] lengths = { -1, MAX_BLOCK_SIZE + 1, 16 };
+            for (int i = 0; i < lengths.length; i++) {
+                out.writeInt(i);
+                out.writeByte(OP_READ);
+                out.writeInt(1);
+                out.writeLong(0);
+                out.writeInt(lengths[i]);
+                out.flush();
+                check(in.readInt() == i, "Unexpected response id");
+                byte status = in.readByte();
+                if (lengths[i] == 16) {
+                    check(status == STATUS_OK, "Valid read failed");
+                    return;
+                }
+                check(status == STATUS_ERROR, "Read of " + lengths[i] + " bytes was not rejected");
+                check(in.readBoolean(), "Not a DebuggerException");
+                String className = in.readUTF();
+                String message = in.readBoolean() ? in.readUTF() : null;
+                System.out.println("Expected: " + className + ": " + message);
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    // A bad block count can not be skipped, so the server hangs up
+    private static void checkBadCount(String host, int port, String secret, int count) throws Exception {
+        Socket socket = connect(host, port, secret);
+        try {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(0);
+            out.writeByte(OP_READ);
+            out.writeInt(count);
+            out.flush();
+            socket.setSoTimeout(60 * 1000);
+            try {
+                check(socket.getInputStream().read() == -1, "Read of " + count + " blocks was answered");
+            } catch (SocketException e) {
+                System.out.println("Expected: " + e);
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static Socket connect(String host, int port, String secret) throws Exception {
+        Socket socket = new Socket(host, port);
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.flush();
+        check(in.readInt() == MAGIC, "Bad handshake");
+        byte[] challenge = new byte[CHALLENGE_SIZE];
+        in.readFully(challenge);
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret.getBytes("UTF-8"), "HmacSHA256"));
+        out.write(mac.doFinal(challenge));
+        out.writeBoolean(false);
+        out.flush();
+        check(in.readBoolean(), "Secret rejected");
+        return socket;
+    }
+
+    private static void checkSame(ReadResult expected, ReadResult actual, String what, int block) {
+        if (expected.getData() == null) {
+            check(actual.getData() == null && actual.getFailureAddress() == expected.getFailureAddress(),
+                  what + " of block " + block + " did not fail at 0x" +
+                  Long.toHexString(expected.getFailureAddress()));
+        } else {
+            check(Arrays.equals(expected.getData(), actual.getData()),
+                  what + " of block " + block + " returned different bytes");
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new RuntimeException(message);
+        }
+    }
+
+    /** MAPPED_SIZE bytes of alternately zero and pseudo-random pages */
+    static class Target extends RemoteDebuggerServer {
+        Target() throws RemoteException {
+            super();
+        }
+
+        static byte byteAt(long addr) {
+            if (((addr >> 12) & 1) == 0) {
+                return 0;
+            }
+            return (byte) ((addr * 0x9E3779B97F4A7C15L) >>> 56);
+        }
+
+        public String getOS() {
+            throw new DebuggerException("No OS");
+        }
+
+        public String getCPU() {
+            throw new IllegalStateException("No CPU");
+        }
+
+        public ReadResult readBytesFromProcess(long address, long numBytes) {
+            if (address + numBytes > MAPPED_SIZE) {
+                return new ReadResult(Math.max(address, MAPPED_SIZE));
+            }
+            byte[] data = new byte[(int) numBytes];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = byteAt(address + i);
+            }
+            return new ReadResult(data);
+        }
+
+        public ReadResult[] readBlocksFromProcess(long[] addresses, long[] numBytes) {
+            ReadResult[] res = new ReadResult[addresses.length];
+            for (int i = 0; i < res.length; i++) {
+                res[i] = readBytesFromProcess(addresses[i], numBytes[i]);
+            }
+            return res;
+        }
+    }
+}
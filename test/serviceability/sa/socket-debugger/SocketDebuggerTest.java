@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ *
+ */
+
+
+/*
+ * @test
+ * @summary Test that the socket transport of the Serviceability Agent's
+ *          remote debugger returns the same bytes as direct reads
+ * @library /testlibrary
+ * @build com.oracle.java.testlibrary.*
+ * @run main SocketDebuggerTest
+ */
+
+import java.io.File;
+
+import com.oracle.java.testlibrary.JDKToolLauncher;
+import com.oracle.java.testlibrary.OutputAnalyzer;
+import com.oracle.java.testlibrary.ProcessTools;
+
+/*
+ * SocketDebuggerCheck needs sa-jdi.jar, which is not on the class path
+ * of jtreg tests, so it is compiled and run here.
+ */
+public class SocketDebuggerTest {
+
+    public static void main(String[] args) throws Throwable {
+        File saJar = new File(System.getProperty("test.jdk"), "lib" + File.separator + "sa-jdi.jar");
+        if (!saJar.exists()) {
+            System.out.println("Skipping the test, " + saJar + " does not exist");
+            return;
+        }
+        String src = System.getProperty("test.src", ".");
+        JDKToolLauncher javac = JDKToolLauncher.createUsingTestJDK("javac")
+                                               .addToolArg("-cp")
+                                               .addToolArg(saJar.getPath())
+                                               .addToolArg("-d")
+                                               .addToolArg(".")
+                                               .addToolArg(src + File.separator + "SocketDebuggerCheck.java");
+        OutputAnalyzer output = ProcessTools.executeProcess(new ProcessBuilder(javac.getCommand()));
+        System.out.println(output.getOutput());
+        output.shouldHaveExitValue(0);
+
+        JDKToolLauncher java = JDKToolLauncher.createUsingTestJDK("java")
+                                              .addToolArg("-cp")
+                                              .addToolArg("." + File.pathSeparator + saJar.getPath())
+                                              .addToolArg("SocketDebuggerCheck");
+        output = ProcessTools.executeProcess(new ProcessBuilder(java.getCommand()));
+        System.out.println(output.getOutput());
+        output.shouldHaveExitValue(0);
+        output.shouldContain("Passed");
+    }
+}